@@ -0,0 +1,421 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * ALLOCATION-FREE COMPOSITE KEYS
+ * ==============================
+ *
+ * Person and GoodKey in HashMapStepByStepDemo hash with
+ *
+ *     return Objects.hash(name, age);
+ *
+ * which allocates an Object[] for the varargs and boxes the int on EVERY
+ * hashCode() call - that is, on every map lookup. Student in
+ * HashMapInternalWorkingTutorial avoids the allocation but recomputes
+ * name.hashCode() * 31 + id each time, and "* 31 + id" leaves neighbouring
+ * ids in neighbouring buckets.
+ *
+ * CompositeKey fixes both:
+ * 1. FLAT STORAGE: up to 4 primitive and 3 object components live in plain
+ *    fields of the key itself - no arrays, one object per key
+ * 2. PRECOMPUTED HASH: mixed once (64-bit multiply/rotate, then a finalizer)
+ *    when the key is built; hashCode() is a field read
+ * 3. CHEAP equals(): the stored hashes are compared first
+ * 4. A reusable CompositeKey.Lookup probe: fill it and call map.get(probe)
+ *    without allocating a key at all (never store a Lookup in a map)
+ *
+ *   CompositeKey key = CompositeKey.of("Alice", 30);
+ *   map.put(key, value);
+ *   map.get(lookup.reset().with("Alice").with(30));   // same hash, equal
+ *
+ * The component sequence (which positions are primitives and which are
+ * objects) is part of the key, so of("a", 1) never equals of(1, "a").
+ */
+
+public final class CompositeKey {
+
+    static final int MAX_PRIMITIVES = 4;
+    static final int MAX_OBJECTS = 3;
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long PRIMITIVE_TAG = 0x5851F42D4C957F2DL;
+    private static final long OBJECT_TAG = 0x14057B7EF767814FL;
+
+    private final long p0, p1, p2, p3;
+    private final Object r0, r1, r2;
+    private final int shape;   // bit i set = component i is an object; bits 24+ = component count
+    private final int hash;
+
+    private CompositeKey(long p0, long p1, long p2, long p3, Object r0, Object r1, Object r2, int shape, int hash) {
+        this.p0 = p0;
+        this.p1 = p1;
+        this.p2 = p2;
+        this.p3 = p3;
+        this.r0 = r0;
+        this.r1 = r1;
+        this.r2 = r2;
+        this.shape = shape;
+        this.hash = hash;
+    }
+
+    // ===========================================
+    // FACTORIES
+    // ===========================================
+
+    // The fixed-shape factories hash straight into the new key: one allocation each
+
+    public static CompositeKey of(Object a, int b) {
+        return of(a, (long) b);
+    }
+
+    public static CompositeKey of(Object a, long b) {
+        long h = mixPrimitive(mixObject(SEED, a), b);
+        return new CompositeKey(b, 0, 0, 0, a, null, null, (2 << 24) | 0b01, finish(h, 2));
+    }
+
+    public static CompositeKey of(Object a, Object b) {
+        long h = mixObject(mixObject(SEED, a), b);
+        return new CompositeKey(0, 0, 0, 0, a, b, null, (2 << 24) | 0b11, finish(h, 2));
+    }
+
+    public static CompositeKey of(long a, long b) {
+        long h = mixPrimitive(mixPrimitive(SEED, a), b);
+        return new CompositeKey(a, b, 0, 0, null, null, null, 2 << 24, finish(h, 2));
+    }
+
+    public static CompositeKey of(Object a, Object b, int c) {
+        long h = mixPrimitive(mixObject(mixObject(SEED, a), b), c);
+        return new CompositeKey(c, 0, 0, 0, a, b, null, (3 << 24) | 0b011, finish(h, 3));
+    }
+
+    /** For other shapes: CompositeKey.builder().with(..).with(..).freeze() */
+    public static Lookup builder() {
+        return new Lookup();
+    }
+
+    // ===========================================
+    // HASHING AND EQUALITY
+    // ===========================================
+
+    static long mixPrimitive(long h, long value) {
+        return Long.rotateLeft(h ^ ((value ^ PRIMITIVE_TAG) * 0xBF58476D1CE4E5B9L), 31) * 0x94D049BB133111EBL;
+    }
+
+    static long mixObject(long h, Object value) {
+        long v = value == null ? 0 : value.hashCode();
+        return Long.rotateLeft(h ^ ((v ^ OBJECT_TAG) * 0xBF58476D1CE4E5B9L), 31) * 0x94D049BB133111EBL;
+    }
+
+    /** Final avalanche, so every input bit can reach the low bits HashMap uses */
+    static int finish(long h, int count) {
+        h ^= count;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof CompositeKey) {
+            CompositeKey k = (CompositeKey) o;
+            return hash == k.hash && shape == k.shape
+                    && p0 == k.p0 && p1 == k.p1 && p2 == k.p2 && p3 == k.p3
+                    && Objects.equals(r0, k.r0) && Objects.equals(r1, k.r1) && Objects.equals(r2, k.r2);
+        }
+        return o instanceof Lookup && o.equals(this); // symmetric with Lookup.equals
+    }
+
+    public int size() {
+        return shape >>> 24;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "(", ")");
+        long[] p = {p0, p1, p2, p3};
+        Object[] r = {r0, r1, r2};
+        int pi = 0;
+        int ri = 0;
+        for (int i = 0; i < size(); i++) {
+            joiner.add((shape & (1 << i)) != 0 ? String.valueOf(r[ri++]) : String.valueOf(p[pi++]));
+        }
+        return joiner.toString();
+    }
+
+    // ===========================================
+    // BUILDER / REUSABLE LOOKUP PROBE
+    // ===========================================
+
+    /**
+     * Mutable key under construction. It hashes and compares like the
+     * CompositeKey it would freeze into, so a single Lookup per thread can
+     * probe a map with no allocation. Never use a Lookup as a stored key.
+     */
+    public static final class Lookup {
+        private final long[] p = new long[MAX_PRIMITIVES];
+        private final Object[] r = new Object[MAX_OBJECTS];
+        private int primitives;
+        private int objects;
+        private int objectBits;
+        private long h = SEED;
+
+        public Lookup reset() {
+            Arrays.fill(p, 0L);
+            Arrays.fill(r, null);
+            primitives = 0;
+            objects = 0;
+            objectBits = 0;
+            h = SEED;
+            return this;
+        }
+
+        public Lookup with(long value) {
+            if (primitives == MAX_PRIMITIVES) {
+                throw new IllegalStateException("At most " + MAX_PRIMITIVES + " primitive components");
+            }
+            p[primitives++] = value;
+            h = mixPrimitive(h, value);
+            return this;
+        }
+
+        public Lookup with(int value) {
+            return with((long) value);
+        }
+
+        public Lookup with(double value) {
+            return with(Double.doubleToLongBits(value)); // same rule as Double.equals
+        }
+
+        public Lookup with(boolean value) {
+            return with(value ? 1L : 0L);
+        }
+
+        public Lookup with(Object value) {
+            if (objects == MAX_OBJECTS) {
+                throw new IllegalStateException("At most " + MAX_OBJECTS + " object components");
+            }
+            objectBits |= 1 << (primitives + objects);
+            r[objects++] = value;
+            h = mixObject(h, value);
+            return this;
+        }
+
+        int shape() {
+            return ((primitives + objects) << 24) | objectBits;
+        }
+
+        /** Immutable key with the current components; the Lookup can be reused */
+        public CompositeKey freeze() {
+            return new CompositeKey(p[0], p[1], p[2], p[3], r[0], r[1], r[2], shape(), hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return finish(h, primitives + objects);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof CompositeKey) {
+                CompositeKey k = (CompositeKey) o;
+                return hashCode() == k.hash && shape() == k.shape
+                        && p[0] == k.p0 && p[1] == k.p1 && p[2] == k.p2 && p[3] == k.p3
+                        && Objects.equals(r[0], k.r0) && Objects.equals(r[1], k.r1) && Objects.equals(r[2], k.r2);
+            }
+            return this == o;
+        }
+    }
+
+    // ===========================================
+    // EXAMPLE AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) {
+        System.out.println("=== ALLOCATION-FREE COMPOSITE KEYS ===\n");
+
+        basicExample();
+        lookupBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000);
+    }
+
+    public static void basicExample() {
+        System.out.println("1. BASIC USAGE");
+        System.out.println("==============");
+
+        Map<CompositeKey, String> people = new HashMap<>();
+        people.put(CompositeKey.of("Alice", 30), "Engineer");
+        people.put(CompositeKey.of("Bob", 25), "Designer");
+
+        Lookup probe = CompositeKey.builder();
+        System.out.println("Alice/30 -> " + people.get(probe.reset().with("Alice").with(30)));
+        System.out.println("Alice/31 -> " + people.get(probe.reset().with("Alice").with(31)));
+        System.out.println("of(\"a\", 1) equals of(1, \"a\"): "
+                + CompositeKey.builder().with("a").with(1).freeze().equals(CompositeKey.builder().with(1).with("a").freeze()));
+        System.out.println("Key: " + CompositeKey.of("Alice", 30) + ", hash " + CompositeKey.of("Alice", 30).hashCode());
+        System.out.println();
+    }
+
+    /**
+     * n (name, id) keys in each map. Every lookup builds its key from the
+     * raw fields, as a request handler would, then calls get().
+     */
+    public static void lookupBenchmark(int n) {
+        String title = String.format("2. LOOKUPS IN A %,d-ENTRY HashMap", n);
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+
+        String[] names = new String[1_000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "user-" + i;
+        }
+        int ids = Math.max(1, n / names.length);
+        Map<ObjectsHashKey, Integer> objectsHash = new HashMap<>();
+        Map<ManualHashKey, Integer> manualHash = new HashMap<>();
+        Map<CompositeKey, Integer> composite = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            String name = names[i % names.length];
+            int id = i / names.length;
+            objectsHash.put(new ObjectsHashKey(name, id), i);
+            manualHash.put(new ManualHashKey(name, id), i);
+            composite.put(CompositeKey.of(name, id), i);
+        }
+
+        int lookups = 2_000_000;
+        int[] order = new Random(1).ints(lookups, 0, n).toArray();
+        System.out.printf("%-40s %10s %14s%n", "KEY", "ns/lookup", "bytes/lookup");
+        for (int round = 0; round < 3; round++) { // rounds 0-1 warm up the JIT
+            boolean print = round == 2;
+            measure("Objects.hash(name, id) (GoodKey)", print, lookups, () -> {
+                long sum = 0;
+                for (int i : order) {
+                    sum += objectsHash.get(new ObjectsHashKey(names[i % names.length], i / names.length));
+                }
+                return sum;
+            });
+            measure("name.hashCode()*31 + id (Student)", print, lookups, () -> {
+                long sum = 0;
+                for (int i : order) {
+                    sum += manualHash.get(new ManualHashKey(names[i % names.length], i / names.length));
+                }
+                return sum;
+            });
+            measure("CompositeKey.of(name, id)", print, lookups, () -> {
+                long sum = 0;
+                for (int i : order) {
+                    sum += composite.get(CompositeKey.of(names[i % names.length], i / names.length));
+                }
+                return sum;
+            });
+            Lookup probe = CompositeKey.builder();
+            measure("CompositeKey.Lookup (reused probe)", print, lookups, () -> {
+                long sum = 0;
+                for (int i : order) {
+                    sum += composite.get(probe.reset().with(names[i % names.length]).with(i / names.length));
+                }
+                return sum;
+            });
+        }
+        System.out.println("(" + names.length + " names x " + ids + " ids; bytes/lookup from ThreadMXBean)");
+        System.out.println();
+    }
+
+    interface LookupLoop {
+        long run();
+    }
+
+    private static void measure(String name, boolean print, int lookups, LookupLoop loop) {
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = mx.getCurrentThreadAllocatedBytes();
+        long t0 = System.nanoTime();
+        long sum = loop.run();
+        long elapsed = System.nanoTime() - t0;
+        long allocated = mx.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        if (print) {
+            System.out.printf("%-40s %10.1f %14.1f%n", name, (double) elapsed / lookups, (double) allocated / lookups);
+        }
+        if (sum == 42) {
+            System.out.println(); // keeps the loop from being optimized away
+        }
+    }
+
+    /** GoodKey / Person style: Objects.hash on every call */
+    static final class ObjectsHashKey {
+        private final String name;
+        private final int id;
+
+        ObjectsHashKey(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ObjectsHashKey)) return false;
+            ObjectsHashKey k = (ObjectsHashKey) o;
+            return id == k.id && Objects.equals(name, k.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, id);
+        }
+    }
+
+    /** Student style: hand-written hash recomputed on every call */
+    static final class ManualHashKey {
+        private final String name;
+        private final int id;
+
+        ManualHashKey(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ManualHashKey)) return false;
+            ManualHashKey k = (ManualHashKey) o;
+            return id == k.id && name.equals(k.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + id;
+        }
+    }
+}
+
+/*
+ * ===========================================
+ * COMPOSITE KEY SUMMARY
+ * ===========================================
+ *
+ * 1. Objects.hash(a, b):
+ *    - Allocates an Object[] and boxes primitives on every hashCode() call
+ *    - Fine for rarely used keys, costly on hot lookup paths
+ *
+ * 2. PRECOMPUTE THE HASH:
+ *    - Keys are immutable, so hash once in the constructor (String does the same)
+ *    - Mix well: "* 31 + id" keeps consecutive ids in consecutive buckets
+ *
+ * 3. FLAT FIELDS:
+ *    - Components stored in fields, not arrays: one object per key
+ *    - equals() compares the hash first, then plain fields
+ *
+ * 4. REUSABLE PROBES:
+ *    - A mutable lookup key avoids even the key allocation on get()
+ *    - Must never be stored in a map (its hash changes when refilled)
+ */
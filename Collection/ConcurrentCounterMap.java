@@ -0,0 +1,488 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HOT-KEY SHARDED COUNTER MAP
+ * ===========================
+ *
+ * HashMapVsConcurrentHashMapDemo counts with
+ *
+ *     safeMap.compute("counter", (k, v) -> v + 1)                      (demonstrateConcurrentHashMapSolution)
+ *     map.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet()   (threadSafetyTest)
+ *
+ * Both are correct, but every thread updating the same key meets at the
+ * same place: compute() locks the key's bin, and incrementAndGet() spins on
+ * one CAS whose cache line bounces between cores. One hot key turns N cores
+ * into one.
+ *
+ * ConcurrentCounterMap<K> gives every key its own small counter that
+ * adapts to contention, the way LongAdder does for a single number:
+ *
+ * 1. COLD KEY: one long, updated by CAS - no extra memory
+ * 2. FIRST FAILED CAS = the key is contended: it is split into 2 cells
+ * 3. STILL COLLIDING: the cells double (up to ~2 per CPU); each thread
+ *    hashes to its own cell and moves to another one after a collision
+ *
+ *        "counter" -> base | [cell0][cell1][cell2][cell3]   (padded: one cache line each)
+ *
+ * 4. READS add the base and the cells: sum(), snapshot() and topK() are
+ *    weakly consistent, like LongAdder.sum() - exact once updates stop
+ *
+ * Writes to different keys never touch the same memory, and writes to the
+ * same hot key spread across cells, so throughput can grow with cores.
+ */
+
+public class ConcurrentCounterMap<K> {
+
+    private static final int MAX_CELLS = Math.max(2, Integer.highestOneBit(
+            Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+    /** Collisions per cell tolerated before a hot key is split further */
+    private static final int SPLIT_AFTER_COLLISIONS = 8;
+
+    private final ConcurrentHashMap<K, Counter> counters = new ConcurrentHashMap<>();
+
+    /** A thread's preferred cell; rehashed when it collides with another thread */
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> {
+        int h = (int) (Thread.currentThread().getId() * 0x9E3779B9L);
+        return new int[] {h == 0 ? 1 : h};
+    });
+
+    public void increment(K key) {
+        add(key, 1L);
+    }
+
+    public void decrement(K key) {
+        add(key, -1L);
+    }
+
+    public void add(K key, long delta) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new Counter());
+        }
+        counter.add(delta);
+    }
+
+    /** Current total for key (0 if never counted) */
+    public long sum(K key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    /**
+     * Removes key and returns its total. Updates racing with the removal may
+     * land on the removed counter and be lost, as with LongAdder.reset().
+     */
+    public long remove(K key) {
+        Counter counter = counters.remove(key);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /** Every key's total at about this moment (weakly consistent) */
+    public Map<K, Long> snapshot() {
+        Map<K, Long> snapshot = new HashMap<>(counters.size() * 2);
+        counters.forEach((key, counter) -> snapshot.put(key, counter.sum()));
+        return snapshot;
+    }
+
+    /** The k largest counters, largest first; a k-sized min-heap keeps this O(n log k) */
+    public List<Map.Entry<K, Long>> topK(int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        PriorityQueue<Map.Entry<K, Long>> heap = new PriorityQueue<>(k + 1, Map.Entry.comparingByValue());
+        counters.forEach((key, counter) -> {
+            long sum = counter.sum();
+            if (heap.size() < k) {
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(key, sum));
+            } else if (sum > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(key, sum));
+            }
+        });
+        List<Map.Entry<K, Long>> top = new ArrayList<>(heap);
+        top.sort(Map.Entry.<K, Long>comparingByValue().reversed());
+        return top;
+    }
+
+    /** Keys that have been split because of contention, with their cell counts */
+    public Map<K, Integer> hotKeys() {
+        Map<K, Integer> hot = new HashMap<>();
+        counters.forEach((key, counter) -> {
+            Cell[] cells = counter.cells;
+            if (cells != null) {
+                hot.put(key, cells.length);
+            }
+        });
+        return hot;
+    }
+
+    // ===========================================
+    // PER-KEY ADAPTIVE COUNTER
+    // ===========================================
+
+    private static final VarHandle BASE;
+    private static final VarHandle CELLS_BUSY;
+    private static final VarHandle CELL_VALUE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BASE = lookup.findVarHandle(Counter.class, "base", long.class);
+            CELLS_BUSY = lookup.findVarHandle(Counter.class, "cellsBusy", int.class);
+            CELL_VALUE = lookup.findVarHandle(Cell.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class Counter {
+        volatile long base;
+        volatile Cell[] cells;    // null while the key is cold
+        volatile int cellsBusy;   // spin lock for creating / growing cells
+        int collisions;           // racy on purpose: only a hint for splitting
+
+        void add(long delta) {
+            Cell[] cs = cells;
+            if (cs == null) {
+                long b = base;
+                if (BASE.compareAndSet(this, b, b + delta)) {
+                    return; // the common, uncontended case
+                }
+                split(null); // another thread got there first: this key is hot
+                cs = cells;
+                if (cs == null) {
+                    BASE.getAndAdd(this, delta); // someone else is splitting; don't wait
+                    return;
+                }
+            }
+            int[] probe = PROBE.get();
+            while (true) {
+                cs = cells;
+                Cell cell = cs[probe[0] & (cs.length - 1)];
+                long v = cell.value;
+                if (CELL_VALUE.compareAndSet(cell, v, v + delta)) {
+                    return;
+                }
+                // Collision: move this thread to another cell, and split further if it keeps happening
+                int h = probe[0];
+                h ^= h << 13;
+                h ^= h >>> 17;
+                h ^= h << 5;
+                probe[0] = h;
+                if (++collisions > SPLIT_AFTER_COLLISIONS * cs.length && cs.length < MAX_CELLS) {
+                    split(cs);
+                }
+            }
+        }
+
+        /** Creates the first 2 cells, or doubles current if it is still the live array */
+        private void split(Cell[] current) {
+            if (cells != current || !CELLS_BUSY.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            try {
+                if (cells == current) {
+                    int length = current == null ? 2 : current.length << 1;
+                    Cell[] grown = new Cell[length];
+                    int kept = current == null ? 0 : current.length;
+                    if (current != null) {
+                        System.arraycopy(current, 0, grown, 0, kept);
+                    }
+                    for (int i = kept; i < length; i++) {
+                        grown[i] = new Cell();
+                    }
+                    cells = grown;
+                    collisions = 0;
+                }
+            } finally {
+                cellsBusy = 0;
+            }
+        }
+
+        long sum() {
+            long sum = base;
+            Cell[] cs = cells;
+            if (cs != null) {
+                for (Cell cell : cs) {
+                    sum += cell.value;
+                }
+            }
+            return sum;
+        }
+    }
+
+    /** One counter cell, padded so two cells never share a cache line */
+    @SuppressWarnings("unused")
+    private static final class Cell {
+        long p0, p1, p2, p3, p4, p5, p6;
+        volatile long value;
+        long q0, q1, q2, q3, q4, q5, q6;
+    }
+
+    // ===========================================
+    // DEMO AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== HOT-KEY SHARDED COUNTER MAP ===\n");
+
+        demo();
+        correctnessCheck();
+        scalingBenchmark();
+    }
+
+    public static void demo() throws InterruptedException {
+        System.out.println("1. COUNTING PAGE VIEWS");
+        System.out.println("======================");
+
+        ConcurrentCounterMap<String> views = new ConcurrentCounterMap<>();
+        String[] pages = {"home", "home", "home", "home", "search", "search", "cart", "about"};
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    views.increment(pages[i & 7]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("sum(\"home\") = " + views.sum("home"));
+        System.out.println("topK(3)     = " + views.topK(3));
+        System.out.println("snapshot()  = " + new TreeMap<>(views.snapshot()));
+        System.out.println("hotKeys()   = " + views.hotKeys() + " (keys split into cells, cell count)\n");
+    }
+
+    public static void correctnessCheck() throws Exception {
+        System.out.println("2. CORRECTNESS UNDER CONTENTION");
+        System.out.println("===============================");
+
+        ConcurrentCounterMap<Integer> map = new ConcurrentCounterMap<>();
+        int threads = 8;
+        int perThread = 500_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    map.add(i & 3, (i & 1) == 0 ? 3 : -1); // 4 hot keys, mixed deltas
+                    map.increment(1_000 + id);           // one private key per thread
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long hot = 0;
+        for (int k = 0; k < 4; k++) {
+            hot += map.sum(k);
+        }
+        long expectedHot = (long) threads * perThread; // half +3, half -1 -> +1 per op on average
+        check(hot == expectedHot, "hot sum " + hot + " != " + expectedHot);
+        for (int t = 0; t < threads; t++) {
+            check(map.sum(1_000 + t) == perThread, "private key " + t);
+        }
+        check(map.topK(1).get(0).getKey() < 4, "topK finds a hot key");
+        check(map.remove(0) + map.sum(1) + map.sum(2) + map.sum(3) == expectedHot && map.sum(0) == 0, "remove");
+        System.out.printf("%d threads x %,d adds: every total exact (hot keys split: %s)%n%n",
+                threads, perThread * 2, map.hotKeys().isEmpty() ? "none on this machine" : map.hotKeys());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /** Counting strategies compared in the benchmark */
+    private interface Counting {
+        void increment(Integer key);
+
+        long total();
+    }
+
+    public static void scalingBenchmark() throws Exception {
+        System.out.println("3. SCALING: increments per microsecond");
+        System.out.println("======================================");
+
+        int keyCount = 10_000;
+        Integer[] keys = new Integer[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = i;
+        }
+        ZipfSampler zipf = new ZipfSampler(keyCount, 0.99);
+        int[][] zipfSamples = new int[8][1 << 16];
+        for (int t = 0; t < zipfSamples.length; t++) {
+            Random random = new Random(t);
+            for (int i = 0; i < zipfSamples[t].length; i++) {
+                zipfSamples[t][i] = zipf.next(random);
+            }
+        }
+        int[][] hotSamples = new int[8][1 << 16]; // all zeros: one key
+
+        String[] names = {"CHM.compute(k, v+1)", "CHM<AtomicLong>", "CHM<LongAdder>", "ConcurrentCounterMap"};
+        System.out.printf("%-12s %-22s %8s %8s %8s %8s%n", "WORKLOAD", "COUNTER", "1T", "2T", "4T", "8T");
+        for (int round = 0; round < 2; round++) { // round 0 warms up the JIT
+            for (String workload : List.of("hot key", "zipf 0.99")) {
+                int[][] samples = workload.equals("hot key") ? hotSamples : zipfSamples;
+                for (String name : names) {
+                    StringBuilder row = new StringBuilder(String.format("%-12s %-22s", workload, name));
+                    for (int threads : new int[] {1, 2, 4, 8}) {
+                        Counting counting = newCounting(name);
+                        double rate = run(counting, keys, samples, threads, round == 0 ? 50 : 200);
+                        row.append(String.format(" %8.1f", rate));
+                    }
+                    if (round == 1) {
+                        System.out.println(row);
+                    }
+                }
+            }
+        }
+        System.out.println("(" + Runtime.getRuntime().availableProcessors() + " CPU(s) here: scaling needs "
+                + "cores; with one, this shows each strategy's single-thread cost)\n");
+    }
+
+    private static Counting newCounting(String name) {
+        switch (name) {
+            case "CHM.compute(k, v+1)": {
+                ConcurrentHashMap<Integer, Long> map = new ConcurrentHashMap<>();
+                return new Counting() {
+                    public void increment(Integer key) {
+                        map.compute(key, (k, v) -> v == null ? 1L : v + 1);
+                    }
+
+                    public long total() {
+                        return map.reduceValuesToLong(Long.MAX_VALUE, Long::longValue, 0L, Long::sum);
+                    }
+                };
+            }
+            case "CHM<AtomicLong>": {
+                ConcurrentHashMap<Integer, AtomicLong> map = new ConcurrentHashMap<>();
+                return new Counting() {
+                    public void increment(Integer key) {
+                        AtomicLong counter = map.get(key);
+                        if (counter == null) {
+                            counter = map.computeIfAbsent(key, k -> new AtomicLong());
+                        }
+                        counter.incrementAndGet();
+                    }
+
+                    public long total() {
+                        return map.reduceValuesToLong(Long.MAX_VALUE, AtomicLong::get, 0L, Long::sum);
+                    }
+                };
+            }
+            case "CHM<LongAdder>": {
+                ConcurrentHashMap<Integer, LongAdder> map = new ConcurrentHashMap<>();
+                return new Counting() {
+                    public void increment(Integer key) {
+                        LongAdder counter = map.get(key);
+                        if (counter == null) {
+                            counter = map.computeIfAbsent(key, k -> new LongAdder());
+                        }
+                        counter.increment();
+                    }
+
+                    public long total() {
+                        return map.reduceValuesToLong(Long.MAX_VALUE, LongAdder::sum, 0L, Long::sum);
+                    }
+                };
+            }
+            default: {
+                ConcurrentCounterMap<Integer> map = new ConcurrentCounterMap<>();
+                return new Counting() {
+                    public void increment(Integer key) {
+                        map.increment(key);
+                    }
+
+                    public long total() {
+                        return map.snapshot().values().stream().mapToLong(Long::longValue).sum();
+                    }
+                };
+            }
+        }
+    }
+
+    /** Stop flag for run(): a plain volatile read in the loop, no shared monitor to contend on */
+    private static volatile boolean running;
+
+    /** Runs for a fixed time, then checks the counter's total against the operations done */
+    private static double run(Counting counting, Integer[] keys, int[][] samples, int threads, long millis)
+            throws Exception {
+        long[] counts = new long[threads * 16];
+        running = true;
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            int[] sample = samples[t];
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    return;
+                }
+                long ops = 0;
+                int i = 0;
+                while ((ops & 255) != 0 || running) {
+                    counting.increment(keys[sample[i]]);
+                    i = (i + 1) & (sample.length - 1);
+                    ops++;
+                }
+                counts[id * 16] = ops;
+            });
+            workers[t].start();
+        }
+        start.await();
+        long t0 = System.nanoTime();
+        Thread.sleep(millis);
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - t0;
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        check(counting.total() == total, "lost increments");
+        return total / (elapsed / 1_000.0);
+    }
+}
+
+/*
+ * ===========================================
+ * HOT-KEY SHARDED COUNTER MAP SUMMARY
+ * ===========================================
+ *
+ * 1. THE PROBLEM:
+ *    - compute(k, v + 1) locks k's bin; AtomicLong spins on one cache line
+ *    - all threads counting one key run one at a time
+ *
+ * 2. THE FIX (per key, like LongAdder):
+ *    - cold keys: a single CAS'd long
+ *    - a failed CAS marks the key hot and splits it into padded cells
+ *    - repeated collisions double the cells, up to ~2 per CPU
+ *
+ * 3. API:
+ *    - increment / decrement / add(key, delta)
+ *    - sum(key), snapshot(), topK(k), hotKeys(), remove(key)
+ *
+ * 4. TRADE-OFFS:
+ *    - reads add up cells: weakly consistent while updates are running
+ *    - hot keys cost ~128 bytes per cell; cold keys stay small
+ *    - a counter map, not a general map: no get-and-set semantics
+ */
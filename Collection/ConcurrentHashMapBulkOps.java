@@ -0,0 +1,402 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.*;
+
+/**
+ * AUTO-TUNED PARALLELISM THRESHOLDS FOR ConcurrentHashMap BULK OPERATIONS
+ * ======================================================================
+ *
+ * ConcurrentHashMapTutorial.advancedFeatures and
+ * ConcurrentHashMapQuickReference.performanceTips call
+ *
+ *     map.forEach(1, action)   map.reduceValues(1, Integer::sum)   map.searchKeys(1, ...)
+ *
+ * The first argument is the PARALLELISM THRESHOLD: the operation runs
+ * sequentially when the map has fewer elements than this, otherwise it is
+ * split into up to 4 x commonPool parallelism ForkJoin tasks. A threshold
+ * of 1 forks tasks even for a 4-entry map, and every such call queues work
+ * on the shared common pool.
+ *
+ * ConcurrentHashMapBulkOps picks the threshold per call from:
+ *
+ * 1. PER-ELEMENT COST: an estimate of what the lambda costs (Cost.TRIVIAL
+ *    for a sum, Cost.HEAVY for parsing or I/O-free computation)
+ * 2. TASK OVERHEAD: forking, scheduling and joining one task costs a few
+ *    microseconds, so a task must carry enough elements to amortize it
+ * 3. MAP SIZE: total work = size x cost; small totals stay sequential
+ * 4. COMMON-POOL LOAD: only idle workers help; a saturated pool (or one with
+ *    parallelism 1) means sequential, instead of queueing more tasks
+ *
+ *     elementsPerTask = OVERHEAD x 10 / cost        (overhead <= ~10% of a task)
+ *     threshold       = max(elementsPerTask, size / (4 x idle workers))
+ *     sequential      if size < 2 x elementsPerTask or fewer than 2 idle workers
+ *
+ * It also offers the primitive reducers (reduceValuesToLong, ...) that the
+ * tutorial does not show: they avoid boxing every intermediate result.
+ */
+
+public final class ConcurrentHashMapBulkOps<K, V> {
+
+    /** Rough cost per element in nanoseconds: the lambda plus walking the map's nodes */
+    public enum Cost {
+        TRIVIAL(20),     // field read, sum, compare
+        LIGHT(50),       // small computation, a hash lookup
+        MODERATE(250),   // string building, formatting
+        HEAVY(2_500);    // parsing, crypto, nested loops
+
+        final double nanosPerElement;
+
+        Cost(double nanosPerElement) {
+            this.nanosPerElement = nanosPerElement;
+        }
+    }
+
+    /** Fork + schedule + join of one task; section 3 of main() measures it on this machine */
+    static final double TASK_OVERHEAD_NANOS = 5_000;
+    /** A task should do this many times its own overhead in real work */
+    static final double WORK_TO_OVERHEAD = 10;
+
+    private final ConcurrentHashMap<K, V> map;
+    private final double nanosPerElement;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool(); // the pool CHM bulk ops use
+
+    private ConcurrentHashMapBulkOps(ConcurrentHashMap<K, V> map, double nanosPerElement) {
+        this.map = Objects.requireNonNull(map);
+        if (!(nanosPerElement > 0)) {
+            throw new IllegalArgumentException("Cost must be positive: " + nanosPerElement);
+        }
+        this.nanosPerElement = nanosPerElement;
+    }
+
+    public static <K, V> ConcurrentHashMapBulkOps<K, V> over(ConcurrentHashMap<K, V> map) {
+        return new ConcurrentHashMapBulkOps<>(map, Cost.LIGHT.nanosPerElement);
+    }
+
+    public ConcurrentHashMapBulkOps<K, V> withCost(Cost cost) {
+        return new ConcurrentHashMapBulkOps<>(map, cost.nanosPerElement);
+    }
+
+    /** For lambdas whose cost has been measured */
+    public ConcurrentHashMapBulkOps<K, V> withCostNanos(double nanosPerElement) {
+        return new ConcurrentHashMapBulkOps<>(map, nanosPerElement);
+    }
+
+    // ===========================================
+    // THRESHOLD POLICY
+    // ===========================================
+
+    /**
+     * The decision for one call, with its inputs (for logging and the demo)
+     */
+    public static final class Plan {
+        final long size;
+        final double nanosPerElement;
+        final int idleWorkers;
+        final long threshold;
+        final String reason;
+
+        Plan(long size, double nanosPerElement, int idleWorkers, long threshold, String reason) {
+            this.size = size;
+            this.nanosPerElement = nanosPerElement;
+            this.idleWorkers = idleWorkers;
+            this.threshold = threshold;
+            this.reason = reason;
+        }
+
+        public long threshold() {
+            return threshold;
+        }
+
+        public boolean parallel() {
+            return threshold != Long.MAX_VALUE;
+        }
+
+        /** Roughly how many tasks ConcurrentHashMap will split the map into */
+        public long tasks() {
+            if (!parallel() || size < threshold) {
+                return 1;
+            }
+            return Math.min(size / threshold, 4L * ForkJoinPool.getCommonPoolParallelism());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size=%,d cost=%.0fns idle=%d -> %s (%s)", size, nanosPerElement, idleWorkers,
+                    parallel() ? String.format("threshold %,d, ~%d tasks", threshold, tasks()) : "sequential",
+                    reason);
+        }
+    }
+
+    public Plan plan() {
+        return plan(map.mappingCount(), nanosPerElement, idleWorkers());
+    }
+
+    /**
+     * Threads that could work on the job now: pool workers not running a
+     * task and with nothing queued for them, plus the caller (CHM's invoke()
+     * runs part of the job itself). Capped by the CPUs: on one CPU a worker
+     * only takes turns with the caller.
+     */
+    int idleWorkers() {
+        int parallelism = pool.getParallelism();
+        long queued = pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        long idle = parallelism - pool.getActiveThreadCount() - queued;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        return (int) Math.max(0, Math.min(cpus - 1, idle)) + 1;
+    }
+
+    static Plan plan(long size, double nanosPerElement, int idleWorkers) {
+        long elementsPerTask = (long) Math.ceil(TASK_OVERHEAD_NANOS * WORK_TO_OVERHEAD / nanosPerElement);
+        if (idleWorkers < 2) {
+            return new Plan(size, nanosPerElement, idleWorkers, Long.MAX_VALUE, "no idle workers");
+        }
+        if (size < 2 * elementsPerTask) {
+            return new Plan(size, nanosPerElement, idleWorkers, Long.MAX_VALUE,
+                    "total work below 2 tasks of " + elementsPerTask);
+        }
+        long threshold = Math.max(elementsPerTask, size / (4L * idleWorkers));
+        return new Plan(size, nanosPerElement, idleWorkers, threshold, "split");
+    }
+
+    private long threshold() {
+        return plan().threshold;
+    }
+
+    // ===========================================
+    // BULK OPERATIONS (same semantics as ConcurrentHashMap's)
+    // ===========================================
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        map.forEach(threshold(), action);
+    }
+
+    public void forEachValue(Consumer<? super V> action) {
+        map.forEachValue(threshold(), action);
+    }
+
+    public <U> U search(BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        return map.search(threshold(), searchFunction);
+    }
+
+    public <U> U searchKeys(Function<? super K, ? extends U> searchFunction) {
+        return map.searchKeys(threshold(), searchFunction);
+    }
+
+    public <U> U searchValues(Function<? super V, ? extends U> searchFunction) {
+        return map.searchValues(threshold(), searchFunction);
+    }
+
+    public V reduceValues(BiFunction<? super V, ? super V, ? extends V> reducer) {
+        return map.reduceValues(threshold(), reducer);
+    }
+
+    public <U> U reduce(BiFunction<? super K, ? super V, ? extends U> transformer,
+                        BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return map.reduce(threshold(), transformer, reducer);
+    }
+
+    // ===========================================
+    // PRIMITIVE REDUCERS (no boxing of intermediate results)
+    // ===========================================
+
+    public long reduceValuesToLong(ToLongFunction<? super V> transformer, long basis, LongBinaryOperator reducer) {
+        return map.reduceValuesToLong(threshold(), transformer, basis, reducer);
+    }
+
+    public int reduceValuesToInt(ToIntFunction<? super V> transformer, int basis, IntBinaryOperator reducer) {
+        return map.reduceValuesToInt(threshold(), transformer, basis, reducer);
+    }
+
+    public double reduceValuesToDouble(ToDoubleFunction<? super V> transformer, double basis,
+                                       DoubleBinaryOperator reducer) {
+        return map.reduceValuesToDouble(threshold(), transformer, basis, reducer);
+    }
+
+    public long reduceKeysToLong(ToLongFunction<? super K> transformer, long basis, LongBinaryOperator reducer) {
+        return map.reduceKeysToLong(threshold(), transformer, basis, reducer);
+    }
+
+    public long reduceToLong(ToLongBiFunction<? super K, ? super V> transformer, long basis,
+                             LongBinaryOperator reducer) {
+        return map.reduceToLong(threshold(), transformer, basis, reducer);
+    }
+
+    public long sumValues(ToLongFunction<? super V> transformer) {
+        return reduceValuesToLong(transformer, 0L, Long::sum);
+    }
+
+    public long maxValue(ToLongFunction<? super V> transformer) {
+        return reduceValuesToLong(transformer, Long.MIN_VALUE, Math::max);
+    }
+
+    public long countValues(Predicate<? super V> predicate) {
+        return reduceValuesToLong(v -> predicate.test(v) ? 1L : 0L, 0L, Long::sum);
+    }
+
+    // ===========================================
+    // DEMO AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) {
+        System.out.println("=== AUTO-TUNED BULK OPERATIONS ===\n");
+
+        tutorialMap();
+        policyTable();
+        crossoverBenchmark();
+    }
+
+    /** ConcurrentHashMapTutorial.advancedFeatures' map, through the facade */
+    public static void tutorialMap() {
+        System.out.println("1. THE TUTORIAL'S 4-ENTRY MAP");
+        System.out.println("=============================");
+
+        ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+        map.put("A", 1);
+        map.put("B", 2);
+        map.put("C", 3);
+        map.put("D", 4);
+        ConcurrentHashMapBulkOps<String, Integer> ops = ConcurrentHashMapBulkOps.over(map);
+
+        System.out.println("Plan: " + ops.plan());
+        System.out.println("Sum of all values:  " + ops.sumValues(Integer::intValue));
+        System.out.println("Maximum value:      " + ops.maxValue(Integer::intValue));
+        System.out.println("Found key 'B':      " + ops.searchKeys(key -> key.equals("B") ? key : null));
+        System.out.println("Values > 2:         " + ops.countValues(v -> v > 2));
+        System.out.println("Common pool: parallelism " + ForkJoinPool.getCommonPoolParallelism()
+                + ", " + Runtime.getRuntime().availableProcessors() + " CPU(s)\n");
+    }
+
+    /** What the policy decides for a few sizes and costs, on an idle 8-worker pool */
+    public static void policyTable() {
+        System.out.println("2. POLICY (assuming 7 idle workers + the caller)");
+        System.out.println("================================================");
+
+        long[] sizes = {4, 1_000, 10_000, 100_000, 1_000_000};
+        System.out.printf("%-10s", "COST");
+        for (long size : sizes) {
+            System.out.printf(" %14s", String.format("n=%,d", size));
+        }
+        System.out.println();
+        for (Cost cost : Cost.values()) {
+            System.out.printf("%-10s", cost);
+            for (long size : sizes) {
+                Plan plan = plan(size, cost.nanosPerElement, 8);
+                System.out.printf(" %14s", plan.parallel() ? String.format("%,d", plan.threshold) : "seq");
+            }
+            System.out.println();
+        }
+        System.out.println("(numbers are thresholds handed to ConcurrentHashMap; the tutorial passes 1 everywhere)");
+        System.out.println("Busy pool: " + plan(1_000_000, Cost.HEAVY.nanosPerElement, 1) + "\n");
+    }
+
+    /**
+     * For each size and cost: time threshold 1 (tutorial), Long.MAX_VALUE
+     * (sequential) and the facade's choice. The crossover is where threshold
+     * 1 starts beating sequential.
+     */
+    public static void crossoverBenchmark() {
+        System.out.println("3. CROSSOVER BENCHMARK (microseconds per reduceValuesToLong)");
+        System.out.println("============================================================");
+
+        int[] sizes = {4, 64, 1_024, 16_384, 262_144};
+        System.out.printf("%-10s %9s %12s %12s %12s %8s%n", "COST", "SIZE", "THRESHOLD 1", "SEQUENTIAL", "AUTO", "TASKS");
+        long sink = 0;
+        double overheadSum = 0;
+        int overheadSamples = 0;
+        for (Cost cost : List.of(Cost.TRIVIAL, Cost.MODERATE)) {
+            int spins = cost == Cost.TRIVIAL ? 0 : 100; // ~250 ns of work per element here
+            ToLongFunction<Long> work = v -> spin(v, spins);
+            for (int size : sizes) {
+                ConcurrentHashMap<Integer, Long> map = new ConcurrentHashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    map.put(i, (long) i);
+                }
+                ConcurrentHashMapBulkOps<Integer, Long> ops = ConcurrentHashMapBulkOps.over(map).withCost(cost);
+                int reps = (int) Math.max(20, Math.min(20_000, 50_000_000L / ((long) size * (spins + 4))));
+                double parallel = 0, sequential = 0, auto = 0;
+                for (int round = 0; round < 2; round++) { // round 0 warms up the JIT
+                    long t0 = System.nanoTime();
+                    for (int r = 0; r < reps; r++) {
+                        sink += map.reduceValuesToLong(1, work, 0L, Long::sum);
+                    }
+                    long t1 = System.nanoTime();
+                    for (int r = 0; r < reps; r++) {
+                        sink += map.reduceValuesToLong(Long.MAX_VALUE, work, 0L, Long::sum);
+                    }
+                    long t2 = System.nanoTime();
+                    for (int r = 0; r < reps; r++) {
+                        sink += ops.reduceValuesToLong(work, 0L, Long::sum);
+                    }
+                    long t3 = System.nanoTime();
+                    parallel = (t1 - t0) / 1e3 / reps;
+                    sequential = (t2 - t1) / 1e3 / reps;
+                    auto = (t3 - t2) / 1e3 / reps;
+                }
+                long tasks = Math.min(size, 4L * ForkJoinPool.getCommonPoolParallelism());
+                if (size <= 64) { // small maps: the difference is all fork overhead, little noise
+                    overheadSum += (parallel - sequential) * 1e3 / tasks;
+                    overheadSamples++;
+                }
+                System.out.printf("%-10s %,9d %12.2f %12.2f %12.2f %8d%n", cost, size, parallel, sequential, auto, tasks);
+            }
+        }
+        int cpus = Runtime.getRuntime().availableProcessors();
+        double overhead = Math.max(0, overheadSum / overheadSamples);
+        System.out.printf("%nMeasured overhead of threshold 1: ~%,.0f ns per forked task (policy assumes %,.0f)%n",
+                overhead, TASK_OVERHEAD_NANOS);
+        if (ForkJoinPool.getCommonPoolParallelism() < 2 || cpus < 2) {
+            System.out.println("With " + cpus + " CPU(s) there is no speed-up to win: threshold 1 only adds that");
+            System.out.println("overhead, and the facade stays sequential because no worker is idle.");
+        }
+        System.out.println("Waking workers on other cores usually costs more than this, hence the policy's margin.");
+        for (int workers : new int[] {4, 8}) {
+            System.out.printf("Predicted crossover with %d workers: TRIVIAL n ~ %,.0f, MODERATE n ~ %,.0f%n",
+                    workers, crossover(overhead, Cost.TRIVIAL, workers), crossover(overhead, Cost.MODERATE, workers));
+        }
+        System.out.println("(sink " + (sink & 1) + ")\n");
+    }
+
+    private static long spin(long v, int spins) {
+        long x = v + 1;
+        for (int i = 0; i < spins; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        return x;
+    }
+
+    /** Size where n*c > n*c/w + tasks*overhead, with CHM's 4*w tasks */
+    private static double crossover(double overheadNanos, Cost cost, int workers) {
+        double tasks = 4.0 * workers;
+        return tasks * overheadNanos / (cost.nanosPerElement * (1 - 1.0 / workers));
+    }
+}
+
+/*
+ * ===========================================
+ * AUTO-TUNED BULK OPERATIONS SUMMARY
+ * ===========================================
+ *
+ * 1. WHAT THE THRESHOLD MEANS:
+ *    - map.forEach(threshold, ...) is sequential below `threshold` elements
+ *    - above it, ConcurrentHashMap forks up to 4 x commonPool parallelism tasks
+ *    - 1 = always fork; Long.MAX_VALUE = never fork
+ *
+ * 2. HOW THE FACADE CHOOSES:
+ *    - elements per task so real work is ~10x the fork overhead
+ *    - sequential when the whole job is smaller than two such tasks
+ *    - sequential when the common pool has no idle workers
+ *    - otherwise enough tasks for the idle workers, no more
+ *
+ * 3. PRIMITIVE REDUCERS:
+ *    - reduceValuesToLong / ToInt / ToDouble, reduceKeysToLong, reduceToLong
+ *    - no Integer/Long boxing of partial results
+ *
+ * 4. RULES OF THUMB:
+ *    - trivial lambdas need tens of thousands of elements before forking pays off
+ *    - expensive lambdas pay off at a few hundred elements
+ *    - single-CPU machines never benefit; the common pool is shared by
+ *      parallel streams too, so don't flood it
+ */
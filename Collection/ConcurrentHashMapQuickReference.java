@@ -168,7 +168,9 @@ public class ConcurrentHashMapQuickReference {
             
             🔧 OPTIMIZATION TECHNIQUES:
             • Set initial capacity: new ConcurrentHashMap<>(1000)
-            • Use parallel operations: map.forEach(1, action)
+            • Use parallel operations: map.forEach(threshold, action) with a
+              threshold sized to the work (1 forks even for tiny maps;
+              see ConcurrentHashMapBulkOps)
             • Batch operations when possible
             • Use appropriate concurrency level
             
@@ -0,0 +1,489 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * CONTENTION MATRIX FOR THE REPO'S THREAD-SAFE MAPS
+ * =================================================
+ *
+ * HashMapVsConcurrentHashMapDemo.performanceComparison and
+ * ConcurrentHashMapTutorial.performanceComparison time one workload, once,
+ * with no warm-up. One number like that cannot tell you which map to pick,
+ * because the answer depends on the workload:
+ *
+ *   MAPS:          Hashtable (HashtableDemo), Collections.synchronizedMap,
+ *                  ConcurrentHashMap, ConcurrentSkipListMap, a striped-lock
+ *                  map, NonBlockingHashMap
+ *   THREADS:       1, 2, 4, 8
+ *   MIX:           read-mostly (90% get / 10% put), balanced (50/50),
+ *                  compute-heavy (50% get / 50% compute(k, v + 1))
+ *   KEY COUNT:     1,000 and 100,000
+ *   DISTRIBUTION:  uniform, Zipf 0.99, a single hot key
+ *
+ * Every cell is measured JMH-style: a fresh pre-filled map, warm-up
+ * iterations that are thrown away, then several timed iterations whose
+ * mean and 99.9% error are reported. Worker threads start together on a
+ * barrier, run for a fixed time, and feed every result into a sink so the
+ * JIT cannot remove the work.
+ *
+ * Output: contention-matrix.csv (one row per cell) and
+ * contention-matrix.html (per workload: each map's throughput as a
+ * heat-map cell, relative to the best, plus the winner).
+ *
+ * Running (NonBlockingHashMap.java provides one of the maps):
+ *     javac ContentionMatrixBenchmark.java NonBlockingHashMap.java ZipfSampler.java
+ *     java ContentionMatrixBenchmark [outputDir] [--quick]
+ */
+
+public class ContentionMatrixBenchmark {
+
+    static final int[] THREADS = {1, 2, 4, 8};
+    static final int[] KEY_COUNTS = {1_000, 100_000};
+    static final String[] MIXES = {"read-mostly", "balanced", "compute-heavy"};
+    static final String[] DISTRIBUTIONS = {"uniform", "zipf-0.99", "hot-key"};
+
+    static final Map<String, Supplier<Map<Integer, Integer>>> MAPS = new LinkedHashMap<>();
+
+    static {
+        MAPS.put("Hashtable", Hashtable::new);
+        MAPS.put("synchronizedMap", () -> Collections.synchronizedMap(new HashMap<>()));
+        MAPS.put("ConcurrentHashMap", ConcurrentHashMap::new);
+        MAPS.put("ConcurrentSkipListMap", ConcurrentSkipListMap::new);
+        MAPS.put("StripedLockMap", () -> new StripedLockMap<>(64));
+        MAPS.put("NonBlockingHashMap", NonBlockingHashMap::new);
+    }
+
+    private static final int SAMPLE_LENGTH = 1 << 16;
+    private static final BiFunction<Integer, Integer, Integer> INCREMENT = (k, v) -> v == null ? 1 : v + 1;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationMillis;
+    private final Integer[] keys = new Integer[KEY_COUNTS[KEY_COUNTS.length - 1]];
+    private final Map<String, int[][]> samples = new HashMap<>();
+    private volatile boolean running;
+    private volatile long sink;
+
+    ContentionMatrixBenchmark(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationMillis = iterationMillis;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+    }
+
+    /** One measured cell of the matrix */
+    static final class Result {
+        final String map;
+        final int threads;
+        final String mix;
+        final int keyCount;
+        final String distribution;
+        final double opsPerMicro;
+        final double error;
+
+        Result(String map, int threads, String mix, int keyCount, String distribution,
+               double opsPerMicro, double error) {
+            this.map = map;
+            this.threads = threads;
+            this.mix = mix;
+            this.keyCount = keyCount;
+            this.distribution = distribution;
+            this.opsPerMicro = opsPerMicro;
+            this.error = error;
+        }
+
+        String workload() {
+            return mix + " / " + String.format("%,d", keyCount) + " keys / " + distribution + " / " + threads + "T";
+        }
+    }
+
+    // ===========================================
+    // WORKLOAD
+    // ===========================================
+
+    /** Pre-drawn key indexes per thread, so sampling costs nothing while timing */
+    private int[][] samplesFor(String distribution, int keyCount) {
+        return samples.computeIfAbsent(distribution + "/" + keyCount, d -> {
+            int[][] perThread = new int[THREADS[THREADS.length - 1]][SAMPLE_LENGTH];
+            ZipfSampler zipf = distribution.startsWith("zipf") ? new ZipfSampler(keyCount, 0.99) : null;
+            for (int t = 0; t < perThread.length; t++) {
+                Random random = new Random(31L * t + keyCount);
+                for (int i = 0; i < SAMPLE_LENGTH; i++) {
+                    perThread[t][i] = switch (distribution) {
+                        case "uniform" -> random.nextInt(keyCount);
+                        case "hot-key" -> 0;
+                        default -> zipf.next(random);
+                    };
+                }
+            }
+            return perThread;
+        });
+    }
+
+    /** Percentage of writes (put or compute) for the mix */
+    private static int writePercent(String mix) {
+        return mix.equals("read-mostly") ? 10 : 50;
+    }
+
+    private Result measure(String mapName, int threads, String mix, int keyCount, String distribution)
+            throws Exception {
+        Map<Integer, Integer> map = MAPS.get(mapName).get();
+        for (int i = 0; i < keyCount; i++) {
+            map.put(keys[i], 0);
+        }
+        int[][] perThread = samplesFor(distribution, keyCount);
+        boolean compute = mix.equals("compute-heavy");
+        int writes = writePercent(mix);
+
+        double[] scores = new double[measurementIterations];
+        for (int iteration = -warmupIterations; iteration < measurementIterations; iteration++) {
+            long[] counts = new long[threads * 16]; // one counter per 128-byte block: no false sharing
+            CyclicBarrier start = new CyclicBarrier(threads + 1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                int[] sample = perThread[t];
+                workers[t] = new Thread(() -> {
+                    await(start);
+                    long ops = 0;
+                    long local = 0;
+                    int i = 0;
+                    while (running) {
+                        Integer key = keys[sample[i]];
+                        // A fixed pseudo-random op sequence per position: same mix for every map
+                        if (ZipfSampler.percentile(i) >= writes) {
+                            Integer v = map.get(key);
+                            local += v == null ? 0 : v;
+                        } else if (compute) {
+                            local += map.compute(key, INCREMENT);
+                        } else {
+                            map.put(key, i);
+                        }
+                        i = (i + 1) & (SAMPLE_LENGTH - 1);
+                        ops++;
+                    }
+                    counts[id * 16] = ops;
+                    sink += local;
+                });
+                workers[t].start();
+            }
+            running = true;
+            await(start);
+            long t0 = System.nanoTime();
+            Thread.sleep(iterationMillis);
+            running = false;
+            long elapsed = System.nanoTime() - t0;
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (iteration >= 0) {
+                scores[iteration] = total / (elapsed / 1_000.0);
+            }
+        }
+        double mean = Arrays.stream(scores).average().orElse(0);
+        double variance = Arrays.stream(scores).map(s -> (s - mean) * (s - mean)).sum()
+                / Math.max(1, scores.length - 1);
+        // Like JMH's "error": half-width of the 99.9% confidence interval (normal approximation)
+        double error = scores.length > 1 ? 3.29 * Math.sqrt(variance / scores.length) : Double.NaN;
+        return new Result(mapName, threads, mix, keyCount, distribution, mean, error);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    List<Result> runMatrix() throws Exception {
+        List<Result> results = new ArrayList<>();
+        int cells = MIXES.length * KEY_COUNTS.length * DISTRIBUTIONS.length * THREADS.length * MAPS.size();
+        int done = 0;
+        long started = System.nanoTime();
+        for (String mix : MIXES) {
+            for (int keyCount : KEY_COUNTS) {
+                for (String distribution : DISTRIBUTIONS) {
+                    for (int threads : THREADS) {
+                        for (String map : MAPS.keySet()) {
+                            results.add(measure(map, threads, mix, keyCount, distribution));
+                            done++;
+                        }
+                        Result best = best(results.subList(results.size() - MAPS.size(), results.size()));
+                        System.out.printf("[%3d/%d %4ds] %-50s best: %-22s %8.2f ops/us%n", done, cells,
+                                (System.nanoTime() - started) / 1_000_000_000L, best.workload(), best.map,
+                                best.opsPerMicro);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    static Result best(List<Result> cell) {
+        return cell.stream().max(Comparator.comparingDouble(r -> r.opsPerMicro)).orElseThrow();
+    }
+
+    // ===========================================
+    // REPORTS
+    // ===========================================
+
+    static void writeCsv(List<Result> results, Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("map,threads,mix,keys,distribution,ops_per_us,error_99_9");
+            for (Result r : results) {
+                out.printf(Locale.ROOT, "%s,%d,%s,%d,%s,%.4f,%.4f%n", r.map, r.threads, r.mix, r.keyCount,
+                        r.distribution, r.opsPerMicro, r.error);
+            }
+        }
+    }
+
+    /**
+     * One table per mix: rows = key count x distribution x threads, columns =
+     * maps. Cell colour is throughput relative to the row's best map.
+     */
+    static void writeHtml(List<Result> results, Path file, String environment) throws IOException {
+        List<String> mapNames = new ArrayList<>(MAPS.keySet());
+        Map<String, Integer> wins = new LinkedHashMap<>();
+        mapNames.forEach(m -> wins.put(m, 0));
+
+        StringBuilder tables = new StringBuilder();
+        for (String mix : MIXES) {
+            tables.append("<h2>").append(mix).append(" (").append(writePercent(mix)).append("% ")
+                    .append(mix.equals("compute-heavy") ? "compute" : "put").append(")</h2>\n<table>\n<tr>")
+                    .append("<th>keys</th><th>distribution</th><th>threads</th>");
+            mapNames.forEach(m -> tables.append("<th>").append(m).append("</th>"));
+            tables.append("<th>choose</th></tr>\n");
+            for (int keyCount : KEY_COUNTS) {
+                for (String distribution : DISTRIBUTIONS) {
+                    for (int threads : THREADS) {
+                        List<Result> row = new ArrayList<>();
+                        for (Result r : results) {
+                            if (r.mix.equals(mix) && r.keyCount == keyCount
+                                    && r.distribution.equals(distribution) && r.threads == threads) {
+                                row.add(r);
+                            }
+                        }
+                        if (row.isEmpty()) {
+                            continue;
+                        }
+                        Result best = best(row);
+                        wins.merge(best.map, 1, Integer::sum);
+                        tables.append(String.format("<tr><td>%,d</td><td>%s</td><td>%d</td>",
+                                keyCount, distribution, threads));
+                        for (String m : mapNames) {
+                            Result r = row.stream().filter(x -> x.map.equals(m)).findFirst().orElse(null);
+                            if (r == null) {
+                                tables.append("<td></td>");
+                                continue;
+                            }
+                            double relative = r.opsPerMicro / best.opsPerMicro;
+                            tables.append(String.format(Locale.ROOT,
+                                    "<td style=\"background:hsl(%d,70%%,80%%)\" title=\"&plusmn;%.2f\">%.2f</td>",
+                                    (int) (120 * relative), r.error, r.opsPerMicro));
+                        }
+                        tables.append("<td><b>").append(best.map).append("</b></td></tr>\n");
+                    }
+                }
+            }
+            tables.append("</table>\n");
+        }
+
+        StringBuilder summary = new StringBuilder("<ul>\n");
+        wins.forEach((m, w) -> summary.append("<li>").append(m).append(": best in ").append(w)
+                .append(" workloads</li>\n"));
+        summary.append("</ul>\n");
+
+        String html = "<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\">"
+                + "<title>Thread-safe map contention matrix</title>\n<style>"
+                + "body{font-family:sans-serif;margin:2em}table{border-collapse:collapse;margin-bottom:2em}"
+                + "td,th{border:1px solid #999;padding:3px 8px;text-align:right}th{background:#eee}"
+                + "</style></head><body>\n<h1>Thread-safe map contention matrix</h1>\n"
+                + "<p>Throughput in operations per microsecond (all threads together); green = best in its row, "
+                + "red = slowest. Hover a cell for the 99.9% error.</p>\n"
+                + "<p>" + environment + "</p>\n<h2>Summary</h2>\n" + summary + tables + "</body></html>\n";
+        Files.write(file, html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== CONTENTION MATRIX BENCHMARK ===\n");
+
+        boolean quick = Arrays.asList(args).contains("--quick");
+        Path outputDir = Paths.get(args.length > 0 && !args[0].startsWith("--") ? args[0] : ".");
+        Files.createDirectories(outputDir);
+        ContentionMatrixBenchmark benchmark = quick
+                ? new ContentionMatrixBenchmark(1, 2, 50)
+                : new ContentionMatrixBenchmark(2, 3, 100);
+        String environment = String.format("%d CPU(s), %s %s, %d warm-up + %d measured iterations of %d ms per cell",
+                Runtime.getRuntime().availableProcessors(), System.getProperty("java.vm.name"),
+                System.getProperty("java.version"), benchmark.warmupIterations,
+                benchmark.measurementIterations, benchmark.iterationMillis);
+        System.out.println("1. RUNNING THE MATRIX");
+        System.out.println("=====================");
+        System.out.println(environment + "\n");
+
+        List<Result> results = benchmark.runMatrix();
+
+        System.out.println("\n2. REPORTS");
+        System.out.println("==========");
+        Path csv = outputDir.resolve("contention-matrix.csv");
+        Path html = outputDir.resolve("contention-matrix.html");
+        writeCsv(results, csv);
+        writeHtml(results, html, environment);
+        System.out.println("CSV:  " + csv.toAbsolutePath());
+        System.out.println("HTML: " + html.toAbsolutePath());
+        Map<String, Long> wins = new TreeMap<>();
+        for (int i = 0; i < results.size(); i += MAPS.size()) {
+            wins.merge(best(results.subList(i, i + MAPS.size())).map, 1L, Long::sum);
+        }
+        System.out.println("Workloads won: " + wins + " (sink " + (benchmark.sink & 1) + ")");
+        if (Runtime.getRuntime().availableProcessors() < 2) {
+            System.out.println("Note: with one CPU, threads take turns instead of contending; run this on the");
+            System.out.println("target hardware before choosing a map for a multi-threaded workload.");
+        }
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * The classic middle ground between one lock (Hashtable) and CHM: N
+ * independent HashMaps, each guarded by its own lock, chosen by key hash.
+ * Threads only block each other when their keys share a stripe.
+ */
+final class StripedLockMap<K, V> extends AbstractMap<K, V> {
+    private final Object[] locks;
+    private final HashMap<K, V>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    StripedLockMap(int stripeCount) {
+        int n = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        locks = new Object[n];
+        stripes = (HashMap<K, V>[]) new HashMap<?, ?>[n];
+        for (int i = 0; i < n; i++) {
+            locks[i] = new Object();
+            stripes[i] = new HashMap<>();
+        }
+    }
+
+    private int stripeOf(Object key) {
+        int h = Objects.hashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (locks.length - 1);
+    }
+
+    @Override
+    public V get(Object key) {
+        int s = stripeOf(key);
+        synchronized (locks[s]) {
+            return stripes[s].get(key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int s = stripeOf(key);
+        synchronized (locks[s]) {
+            return stripes[s].containsKey(key);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int s = stripeOf(key);
+        synchronized (locks[s]) {
+            return stripes[s].put(key, value);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        int s = stripeOf(key);
+        synchronized (locks[s]) {
+            return stripes[s].remove(key);
+        }
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        int s = stripeOf(key);
+        synchronized (locks[s]) {
+            return stripes[s].compute(key, remappingFunction);
+        }
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        int s = stripeOf(key);
+        synchronized (locks[s]) {
+            return stripes[s].computeIfAbsent(key, mappingFunction);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int s = 0; s < locks.length; s++) {
+            synchronized (locks[s]) {
+                size += stripes[s].size();
+            }
+        }
+        return size;
+    }
+
+    /** A stripe-by-stripe snapshot: each stripe is consistent, the whole map need not be */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Map<K, V> snapshot = new LinkedHashMap<>();
+        for (int s = 0; s < locks.length; s++) {
+            synchronized (locks[s]) {
+                snapshot.putAll(stripes[s]);
+            }
+        }
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+}
+
+/*
+ * ===========================================
+ * CONTENTION MATRIX SUMMARY
+ * ===========================================
+ *
+ * 1. WHY A MATRIX:
+ *    - The best map changes with threads, read/write mix, key count and skew
+ *    - One currentTimeMillis() run measures JIT warm-up and noise, not the map
+ *
+ * 2. WHAT TO EXPECT (on multi-core hardware):
+ *    - Hashtable / synchronizedMap: fine single-threaded, flat or worse
+ *      as threads are added - every operation takes the one lock
+ *    - StripedLockMap: scales with uniform keys, collapses on a hot key
+ *    - ConcurrentHashMap: lock-free reads; writes lock one bin
+ *    - ConcurrentSkipListMap: sorted, O(log n): slower, but never blocks
+ *    - NonBlockingHashMap: CAS-only; shines on write-heavy hot keys
+ *
+ * 3. METHOD:
+ *    - Fresh pre-filled map per cell, warm-up iterations discarded
+ *    - Mean of timed iterations with a 99.9% error, as JMH reports
+ *    - Pre-drawn keys; results consumed by a sink
+ *
+ * 4. READING THE REPORT:
+ *    - contention-matrix.csv for your own analysis
+ *    - contention-matrix.html: per workload, colour = share of the best
+ */
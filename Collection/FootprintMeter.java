@@ -0,0 +1,472 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * COLLECTION MEMORY FOOTPRINT METER
+ * =================================
+ *
+ * EnumMapDemo says EnumMap is "more memory efficient than HashMap", and
+ * AllListClass notes that every LinkedList node needs extra memory for its
+ * links. FootprintMeter measures such claims instead of stating them:
+ *
+ * 1. A java.lang.instrument agent provides Instrumentation.getObjectSize -
+ *    the JVM's own size for each object (headers, padding, compressed oops)
+ * 2. measure(collection) walks the object graph from the collection
+ *    (nodes, tables, boxed keys and values) and adds up every object once
+ * 3. The result is grouped per class and divided by the element count, e.g.
+ *      HashMap<Integer,Integer>: HashMap$Node 32.0 + Integer 32.0 + Node[] 5.4 bytes/element
+ *
+ * Enum constants and Class objects are shared by the whole program, so they
+ * are not counted as part of a collection.
+ *
+ * Running: the agent must be loaded with -javaagent. If it was not, main()
+ * writes a small agent jar and starts a child JVM with it, so simply run
+ *     javac FootprintMeter.java
+ *     java -Xmx4g FootprintMeter [sizes, e.g. 1000,1000000,10000000]
+ * The agent also opens java.util to this class (Instrumentation.redefineModule),
+ * so no --add-opens flags are needed to read the collections' private fields.
+ */
+
+public class FootprintMeter {
+
+    private static volatile Instrumentation instrumentation;
+
+    /** Agent entry point for -javaagent:footprint-agent.jar */
+    public static void premain(String agentArgs, Instrumentation inst) {
+        instrumentation = inst;
+        Module self = FootprintMeter.class.getModule();
+        Module javaBase = Object.class.getModule();
+        Map<String, Set<Module>> opens = new HashMap<>();
+        for (String pkg : List.of("java.util", "java.lang", "java.util.concurrent")) {
+            opens.put(pkg, Set.of(self));
+        }
+        inst.redefineModule(javaBase, Set.of(), Map.of(), opens, Set.of(), Map.of());
+    }
+
+    /** Same, when the agent is attached to a running JVM */
+    public static void agentmain(String agentArgs, Instrumentation inst) {
+        premain(agentArgs, inst);
+    }
+
+    public static boolean isAgentLoaded() {
+        return instrumentation != null;
+    }
+
+    // ===========================================
+    // OBJECT GRAPH WALK
+    // ===========================================
+
+    private static final Map<Class<?>, Field[]> REFERENCE_FIELDS = new HashMap<>();
+
+    /**
+     * Retained footprint of everything reachable from root (except shared
+     * enum constants and classes). Not thread-safe against concurrent
+     * modification of the measured structure.
+     */
+    public static Footprint measure(Object root) {
+        if (instrumentation == null) {
+            throw new IllegalStateException("Instrumentation agent is not loaded; run with -javaagent");
+        }
+        Footprint footprint = new Footprint();
+        IdentitySet visited = new IdentitySet();
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        visited.add(root);
+        while (!pending.isEmpty()) {
+            Object obj = pending.pop();
+            Class<?> type = obj.getClass();
+            footprint.add(type, instrumentation.getObjectSize(obj));
+            if (type.isArray()) {
+                if (!type.getComponentType().isPrimitive()) {
+                    for (Object element : (Object[]) obj) {
+                        push(element, visited, pending);
+                    }
+                }
+                continue;
+            }
+            for (Field field : referenceFields(type)) {
+                try {
+                    push(field.get(obj), visited, pending);
+                } catch (IllegalAccessException e) {
+                    footprint.unreadableFields++;
+                }
+            }
+        }
+        return footprint;
+    }
+
+    private static void push(Object value, IdentitySet visited, ArrayDeque<Object> pending) {
+        if (value == null || value instanceof Class || value instanceof Enum || value instanceof ClassLoader
+                || value instanceof Thread) {
+            return; // shared with the rest of the program
+        }
+        if (visited.add(value)) {
+            pending.push(value);
+        }
+    }
+
+    /** Non-static, non-primitive fields of the class and its superclasses, made accessible */
+    private static Field[] referenceFields(Class<?> type) {
+        Field[] cached = REFERENCE_FIELDS.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    fields.add(field);
+                } catch (RuntimeException e) {
+                    // Package not opened to us; the field is skipped and its target not counted
+                }
+            }
+        }
+        cached = fields.toArray(new Field[0]);
+        REFERENCE_FIELDS.put(type, cached);
+        return cached;
+    }
+
+    /** Visited set by identity; lighter than IdentityHashMap for tens of millions of objects */
+    private static final class IdentitySet {
+        private Object[] table = new Object[1 << 10];
+        private int size;
+
+        boolean add(Object obj) {
+            int mask = table.length - 1;
+            int i = mix(System.identityHashCode(obj)) & mask;
+            for (Object cur; (cur = table[i]) != null; i = (i + 1) & mask) {
+                if (cur == obj) {
+                    return false;
+                }
+            }
+            table[i] = obj;
+            if (++size > table.length / 2) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            Object[] old = table;
+            table = new Object[old.length << 1];
+            int mask = table.length - 1;
+            for (Object obj : old) {
+                if (obj != null) {
+                    int i = mix(System.identityHashCode(obj)) & mask;
+                    while (table[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = obj;
+                }
+            }
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Bytes and object counts per class for one measured structure
+     */
+    public static final class Footprint {
+        private final Map<Class<?>, long[]> perClass = new HashMap<>(); // {objects, bytes}
+        private long totalBytes;
+        private long objects;
+        private int unreadableFields;
+
+        void add(Class<?> type, long bytes) {
+            long[] stats = perClass.computeIfAbsent(type, t -> new long[2]);
+            stats[0]++;
+            stats[1] += bytes;
+            totalBytes += bytes;
+            objects++;
+        }
+
+        public long totalBytes() {
+            return totalBytes;
+        }
+
+        public long objects() {
+            return objects;
+        }
+
+        public double bytesPerElement(long elements) {
+            return (double) totalBytes / Math.max(1, elements);
+        }
+
+        /** "HashMap$Node 32.0 + Integer 32.0 + ..." - the biggest contributors first */
+        public String breakdown(long elements) {
+            StringJoiner joiner = new StringJoiner(" + ");
+            perClass.entrySet().stream()
+                    .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+                    .limit(4)
+                    .forEach(e -> joiner.add(String.format("%s %.1f",
+                            simpleName(e.getKey()), (double) e.getValue()[1] / Math.max(1, elements))));
+            return joiner + (unreadableFields > 0 ? " (" + unreadableFields + " fields unreadable)" : "");
+        }
+
+        private static String simpleName(Class<?> type) {
+            String name = type.getName();
+            if (type.isArray()) {
+                return simpleName(type.getComponentType()) + "[]";
+            }
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+    }
+
+    // ===========================================
+    // COMPARISON REPORT
+    // ===========================================
+
+    enum Weekday { MONDAY, TUESDAY, WEDNESDAY, THURSDAY, FRIDAY, SATURDAY, SUNDAY }
+
+    public static void main(String[] args) throws Exception {
+        if (!isAgentLoaded()) {
+            System.exit(relaunchWithAgent(args));
+        }
+        System.out.println("=== COLLECTION MEMORY FOOTPRINT ===\n");
+
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[] {1_000, 1_000_000, 10_000_000};
+
+        enumKeyedReport();
+        int section = 2;
+        for (int n : sizes) {
+            sizedReport(section++, n);
+        }
+    }
+
+    /** EnumMap can only hold one entry per constant, so it is compared on its own */
+    public static void enumKeyedReport() {
+        System.out.println("1. ENUM KEYS: EnumMap vs HashMap (7 entries, EnumMapDemo's claim)");
+        System.out.println("==================================================================");
+
+        Map<Weekday, String> enumMap = new EnumMap<>(Weekday.class);
+        Map<Weekday, String> hashMap = new HashMap<>();
+        for (Weekday day : Weekday.values()) {
+            String shift = "shift-" + day.ordinal();
+            enumMap.put(day, shift);
+            hashMap.put(day, shift);
+        }
+        printHeader();
+        // The value strings are shared, so only the map structure differs
+        printRow("EnumMap<Weekday,String>", enumMap, 7);
+        printRow("HashMap<Weekday,String>", hashMap, 7);
+        System.out.println();
+    }
+
+    public static void sizedReport(int section, int n) {
+        String title = String.format("%d. %,d ELEMENTS", section, n);
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+        printHeader();
+
+        measureAndDrop("ArrayList<Integer>", n, size -> {
+            List<Integer> list = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                list.add(i);
+            }
+            return list;
+        });
+        measureAndDrop("LinkedList<Integer>", n, size -> {
+            List<Integer> list = new LinkedList<>();
+            for (int i = 0; i < size; i++) {
+                list.add(i);
+            }
+            return list;
+        });
+        measureAndDrop("int[] (primitive)", n, size -> {
+            int[] array = new int[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = i;
+            }
+            return array;
+        });
+        measureAndDrop("HashMap<Integer,Integer>", n, size -> fill(new HashMap<>(), size));
+        measureAndDrop("LinkedHashMap<Integer,Integer>", n, size -> fill(new LinkedHashMap<>(), size));
+        measureAndDrop("TreeMap<Integer,Integer>", n, size -> fill(new TreeMap<>(), size));
+        measureAndDrop("IntIntTable (primitive)", n, size -> {
+            IntIntTable map = new IntIntTable();
+            for (int i = 0; i < size; i++) {
+                map.put(i, i);
+            }
+            return map;
+        });
+        System.out.println();
+    }
+
+    private static Map<Integer, Integer> fill(Map<Integer, Integer> map, int size) {
+        for (int i = 0; i < size; i++) {
+            map.put(i, i); // boxes key and value separately, as real code does
+        }
+        return map;
+    }
+
+    /** Builds, measures and releases one structure, so only one is in memory at a time */
+    private static void measureAndDrop(String name, int n, IntFunction<Object> builder) {
+        try {
+            printRow(name, builder.apply(n), n);
+        } catch (OutOfMemoryError e) {
+            System.out.printf("%-32s %s%n", name, "out of memory - run with a larger -Xmx");
+        }
+    }
+
+    private static void printHeader() {
+        System.out.printf("%-32s %14s %12s %10s   %s%n", "STRUCTURE", "total bytes", "objects", "B/elem", "BREAKDOWN (B/elem)");
+    }
+
+    private static void printRow(String name, Object structure, long elements) {
+        Footprint f = measure(structure);
+        System.out.printf("%-32s %,14d %,12d %10.1f   %s%n", name, f.totalBytes(), f.objects(),
+                f.bytesPerElement(elements), f.breakdown(elements));
+    }
+
+    /**
+     * The layout of PrimitiveMaps' IntIntMap - two int[] arrays with linear
+     * probing, load factor 0.75 - reduced to put(), so this file measures
+     * a primitive map without depending on another source file
+     */
+    private static final class IntIntTable {
+        private static final int EMPTY = Integer.MIN_VALUE; // the one key it cannot store
+        private int[] keys = emptyKeys(16);
+        private int[] values = new int[16];
+        private int size;
+
+        void put(int key, int value) {
+            if (key == EMPTY) {
+                throw new IllegalArgumentException("Reserved key: " + key);
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                if (++size > keys.length * 3 / 4) {
+                    values[i] = value;
+                    grow();
+                    return;
+                }
+            }
+            values[i] = value;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = emptyKeys(oldKeys.length << 1);
+            values = new int[oldKeys.length << 1];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != EMPTY) {
+                    int i = slot(oldKeys[j], mask);
+                    while (keys[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int[] emptyKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        private static int slot(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    // ===========================================
+    // AGENT JAR AND CHILD JVM
+    // ===========================================
+
+    /**
+     * Writes a jar whose manifest names this class as Premain-Class and runs
+     * this program again in a child JVM with -javaagent and the same JVM options.
+     * The jar holds this class and its nested classes - everything this file needs.
+     */
+    private static int relaunchWithAgent(String[] args) throws IOException, InterruptedException {
+        Path jar = Files.createTempFile("footprint-agent", ".jar");
+        jar.toFile().deleteOnExit();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Premain-Class"), FootprintMeter.class.getName());
+        manifest.getMainAttributes().put(new Attributes.Name("Agent-Class"), FootprintMeter.class.getName());
+        List<Class<?>> classes = new ArrayList<>(List.of(FootprintMeter.class.getDeclaredClasses()));
+        classes.add(FootprintMeter.class);
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            for (Class<?> type : classes) {
+                String file = type.getName() + ".class";
+                try (InputStream classFile = FootprintMeter.class.getResourceAsStream(file)) {
+                    if (classFile != null) {
+                        out.putNextEntry(new JarEntry(file));
+                        classFile.transferTo(out);
+                        out.closeEntry();
+                    }
+                }
+            }
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-javaagent:" + jar);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(FootprintMeter.class.getName());
+        command.addAll(Arrays.asList(args));
+        System.out.println("(agent not loaded - restarting with -javaagent:" + jar.getFileName() + ")\n");
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+}
+
+/*
+ * ===========================================
+ * MEMORY FOOTPRINT SUMMARY
+ * ===========================================
+ *
+ * 1. WHERE THE BYTES GO (64-bit JVM, compressed oops):
+ *    - Object header: 12 bytes, objects padded to 8 bytes
+ *    - Integer: 16 bytes for 4 bytes of data
+ *    - HashMap.Node: 32 bytes; LinkedHashMap.Entry: 40; TreeMap.Entry: 40
+ *    - LinkedList.Node: 24 bytes per element on top of the element itself
+ *
+ * 2. WHAT THE NUMBERS SHOW:
+ *    - ArrayList vs LinkedList: the reference array (4-6 B/elem) vs 24 B nodes
+ *    - Boxed keys and values often cost more than the map structure itself
+ *    - Primitive arrays and maps remove both the nodes and the boxes
+ *
+ * 3. ENUMMAP:
+ *    - One array slot per constant, no nodes and no hashing
+ *
+ * 4. HOW IT IS MEASURED:
+ *    - Instrumentation.getObjectSize: exact per-object size from the JVM
+ *    - Graph walk with an identity set, so shared objects count once
+ *    - Enum constants and classes are shared program-wide and skipped
+ */
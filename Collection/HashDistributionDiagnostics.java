@@ -0,0 +1,401 @@
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LIVE HASH-DISTRIBUTION DIAGNOSTICS
+ * ==================================
+ *
+ * HashMapInternalWorkingTutorial.getCapacity reflects into HashMap.table, and
+ * BadKey in HashMapStepByStepDemo returns a constant hash of 42. A map full of
+ * such keys still "works" - every lookup just walks one long chain (or, from 8
+ * entries on, a red-black tree that needs compareTo to help).
+ *
+ * HashDistributionDiagnostics.inspect(map) looks at a live HashMap,
+ * LinkedHashMap or ConcurrentHashMap and reports:
+ * 1. Capacity, size and load (size / capacity)
+ * 2. Bucket-occupancy histogram (how many buckets hold 0, 1, 2, ... entries)
+ * 3. Longest chain, treeified bins, and the keys sharing the worst bucket
+ * 4. A hash-quality score: ideal lookup cost for this load divided by the
+ *    actual average lookup cost (100 = as good as random hashing)
+ *
+ * The table is read by reflection. On Java 9+ that needs
+ *     --add-opens java.base/java.util=ALL-UNNAMED
+ *     --add-opens java.base/java.util.concurrent=ALL-UNNAMED
+ * Without the flags the report is SIMULATED: the buckets are recomputed from
+ * the keys' hashCode() with the same spread function and capacity rules the
+ * JDK uses, so the distribution is the same; only tree bins are inferred.
+ */
+
+public class HashDistributionDiagnostics {
+
+    private static final int TREEIFY_THRESHOLD = 8;    // same constants as java.util.HashMap
+    private static final int MIN_TREEIFY_CAPACITY = 64;
+    private static final int WORST_KEYS_SHOWN = 10;
+
+    public static void main(String[] args) {
+        System.out.println("=== HASH DISTRIBUTION DIAGNOSTICS ===\n");
+
+        goodKeysExample();
+        badKeysExample();
+        concurrentMapExample();
+    }
+
+    // ===========================================
+    // EXAMPLES
+    // ===========================================
+
+    public static void goodKeysExample() {
+        System.out.println("1. HEALTHY MAP (String keys)");
+        System.out.println("============================");
+
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            map.put("order-" + i, i);
+        }
+        System.out.println(inspect(map));
+    }
+
+    public static void badKeysExample() {
+        System.out.println("2. DEGENERATE MAPS (bad hashCode implementations)");
+        System.out.println("=================================================");
+
+        Map<ConstantHashKey, String> constant = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            constant.put(new ConstantHashKey("user", i), "v" + i);
+        }
+        System.out.println("Keys whose hashCode() is always 42 (like BadKey):");
+        System.out.println(inspect(constant));
+
+        Map<FewHashesKey, String> few = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            few.put(new FewHashesKey(i), "v" + i);
+        }
+        System.out.println("Keys whose hashCode() only uses id % 16:");
+        System.out.println(inspect(few));
+    }
+
+    public static void concurrentMapExample() {
+        System.out.println("3. CONCURRENTHASHMAP");
+        System.out.println("====================");
+
+        Map<Long, Long> map = new ConcurrentHashMap<>();
+        for (long i = 0; i < 50_000; i++) {
+            map.put(i << 32, i); // Long.hashCode folds the halves, so these still spread
+        }
+        System.out.println(inspect(map));
+    }
+
+    // ===========================================
+    // INSPECTION
+    // ===========================================
+
+    /**
+     * Reports on a HashMap, LinkedHashMap or ConcurrentHashMap (or any map,
+     * simulated as a HashMap). Safe to call on a map that is being modified
+     * concurrently; the report is then a best-effort snapshot.
+     */
+    public static Report inspect(Map<?, ?> map) {
+        List<List<Object>> buckets = null;
+        int[] treeBins = new int[1];
+        String fallbackReason;
+        try {
+            buckets = readTable(map, treeBins);
+            fallbackReason = map instanceof HashMap || map instanceof ConcurrentHashMap
+                    ? "a resize was in progress"
+                    : "not a HashMap or ConcurrentHashMap";
+        } catch (RuntimeException | ReflectiveOperationException e) {
+            fallbackReason = "table not accessible; add --add-opens to read the live table";
+        }
+        String source;
+        if (buckets != null) {
+            source = "live table, via reflection";
+        } else {
+            source = "simulated from hashCode(): " + fallbackReason;
+            buckets = simulateTable(map);
+            treeBins[0] = 0;
+            for (List<Object> bucket : buckets) {
+                if (bucket.size() >= TREEIFY_THRESHOLD && buckets.size() >= MIN_TREEIFY_CAPACITY) {
+                    treeBins[0]++;
+                }
+            }
+        }
+        return new Report(map.getClass().getSimpleName(), source, buckets, treeBins[0]);
+    }
+
+    /** Same bit spreading as HashMap.hash and ConcurrentHashMap.spread */
+    private static int spread(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Walks the real bucket array; returns null if the map type is not supported */
+    private static List<List<Object>> readTable(Map<?, ?> map, int[] treeBins) throws ReflectiveOperationException {
+        Object[] table;
+        if (map instanceof HashMap) { // LinkedHashMap is a HashMap
+            table = (Object[]) field(HashMap.class, "table").get(map);
+        } else if (map instanceof ConcurrentHashMap) {
+            table = (Object[]) field(ConcurrentHashMap.class, "table").get(map);
+        } else {
+            return null;
+        }
+        List<List<Object>> buckets = new ArrayList<>();
+        if (table == null) {
+            return buckets;
+        }
+        for (Object head : table) {
+            List<Object> bucket = new ArrayList<>();
+            Object node = head;
+            if (node != null) {
+                String type = node.getClass().getSimpleName();
+                if (type.equals("ForwardingNode")) {
+                    return null; // a resize is in progress; the simulation is more useful
+                }
+                if (type.equals("TreeBin")) {
+                    treeBins[0]++;
+                    node = field(node.getClass(), "first").get(node);
+                } else if (type.equals("TreeNode")) {
+                    treeBins[0]++; // HashMap tree nodes still keep the 'next' links
+                }
+            }
+            while (node != null) {
+                bucket.add(field(nodeClass(node), "key").get(node));
+                node = field(nodeClass(node), "next").get(node);
+            }
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    /** The class that declares key/next: HashMap.Node or ConcurrentHashMap.Node */
+    private static Class<?> nodeClass(Object node) {
+        Class<?> type = node.getClass();
+        while (type.getSuperclass() != null && !type.getSimpleName().equals("Node")) {
+            type = type.getSuperclass();
+        }
+        return type;
+    }
+
+    private static final Map<String, Field> FIELDS = new ConcurrentHashMap<>();
+
+    private static Field field(Class<?> owner, String name) throws NoSuchFieldException {
+        Field cached = FIELDS.get(owner.getName() + "#" + name);
+        if (cached != null) {
+            return cached;
+        }
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true); // throws InaccessibleObjectException without --add-opens
+        FIELDS.put(owner.getName() + "#" + name, field);
+        return field;
+    }
+
+    /**
+     * Rebuilds the buckets the JDK would use: capacity is the smallest power
+     * of two that keeps size under 0.75 * capacity (what a HashMap reaches by
+     * doubling from 16), index = spread(hashCode) & (capacity - 1).
+     */
+    private static List<List<Object>> simulateTable(Map<?, ?> map) {
+        int capacity = 16;
+        while (map.size() > capacity * 0.75 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        List<List<Object>> buckets = new ArrayList<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (Object key : map.keySet()) {
+            buckets.get(spread(key) & (capacity - 1)).add(key);
+        }
+        return buckets;
+    }
+
+    // ===========================================
+    // REPORT
+    // ===========================================
+
+    public static final class Report {
+        private final String mapType;
+        private final String source;
+        private final int capacity;
+        private final int size;
+        private final int[] histogram = new int[TREEIFY_THRESHOLD + 1]; // last bucket: 8 or more
+        private final int maxChain;
+        private final int treeifiedBins;
+        private final List<Object> worstBucketKeys;
+        private final int distinctHashCodes;
+        private final double averageLookupCost;
+        private final double idealLookupCost;
+
+        Report(String mapType, String source, List<List<Object>> buckets, int treeifiedBins) {
+            this.mapType = mapType;
+            this.source = source;
+            this.capacity = buckets.size();
+            this.treeifiedBins = treeifiedBins;
+
+            int total = 0;
+            int max = 0;
+            List<Object> worst = List.of();
+            long probes = 0;
+            Set<Integer> hashes = new HashSet<>();
+            for (List<Object> bucket : buckets) {
+                int n = bucket.size();
+                total += n;
+                histogram[Math.min(n, TREEIFY_THRESHOLD)]++;
+                probes += (long) n * (n + 1) / 2; // finding the i-th key of a chain costs i comparisons
+                if (n > max) {
+                    max = n;
+                    worst = bucket;
+                }
+                for (Object key : bucket) {
+                    hashes.add(key == null ? 0 : key.hashCode());
+                }
+            }
+            this.size = total;
+            this.maxChain = max;
+            this.worstBucketKeys = new ArrayList<>(worst.subList(0, Math.min(worst.size(), WORST_KEYS_SHOWN)));
+            this.distinctHashCodes = hashes.size();
+            this.averageLookupCost = total == 0 ? 1.0 : (double) probes / total;
+            // Random hashing: a successful lookup costs 1 + (load / 2) comparisons on average
+            this.idealLookupCost = 1.0 + (capacity == 0 ? 0 : (double) total / capacity) / 2;
+        }
+
+        public int capacity() {
+            return capacity;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double load() {
+            return capacity == 0 ? 0 : (double) size / capacity;
+        }
+
+        public int maxChainLength() {
+            return maxChain;
+        }
+
+        public int treeifiedBins() {
+            return treeifiedBins;
+        }
+
+        public List<Object> worstBucketKeys() {
+            return Collections.unmodifiableList(worstBucketKeys);
+        }
+
+        /** 0-100: ideal lookup cost / actual lookup cost */
+        public int qualityScore() {
+            return (int) Math.round(Math.min(100.0, 100.0 * idealLookupCost / averageLookupCost));
+        }
+
+        public String verdict() {
+            int score = qualityScore();
+            if (score >= 80) {
+                return "GOOD";
+            }
+            return score >= 50 ? "FAIR - check hashCode()" : "POOR - hashCode() is degenerating lookups";
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("  Map:            %s (%s)%n", mapType, source));
+            sb.append(String.format("  Size/capacity:  %,d / %,d (load %.2f)%n", size, capacity, load()));
+            sb.append("  Bucket sizes:   ");
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] > 0) {
+                    sb.append(i == TREEIFY_THRESHOLD ? "8+" : String.valueOf(i))
+                            .append(':').append(String.format("%,d", histogram[i])).append("  ");
+                }
+            }
+            sb.append(String.format("%n  Longest chain:  %,d (treeified bins: %d)%n", maxChain, treeifiedBins));
+            sb.append(String.format("  Distinct hashCode() values: %,d of %,d keys%n", distinctHashCodes, size));
+            sb.append(String.format("  Lookup cost:    %.2f comparisons (ideal %.2f)%n", averageLookupCost, idealLookupCost));
+            sb.append(String.format("  Quality score:  %d/100 - %s%n", qualityScore(), verdict()));
+            if (maxChain > 2) {
+                sb.append("  Worst bucket:   ").append(worstBucketKeys)
+                        .append(maxChain > worstBucketKeys.size() ? " ..." : "").append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    // ===========================================
+    // KEYS WITH BAD hashCode() IMPLEMENTATIONS
+    // ===========================================
+
+    /** Like BadKey: equal objects have equal hashes, but so does everything else */
+    static final class ConstantHashKey {
+        private final String name;
+        private final int id;
+
+        ConstantHashKey(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ConstantHashKey && ((ConstantHashKey) o).id == id
+                    && ((ConstantHashKey) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public String toString() {
+            return name + "#" + id;
+        }
+    }
+
+    /** Uses only a few bits of the id, so at most 16 hash codes exist */
+    static final class FewHashesKey {
+        private final int id;
+
+        FewHashesKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FewHashesKey && ((FewHashesKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 16;
+        }
+
+        @Override
+        public String toString() {
+            return "key" + id;
+        }
+    }
+}
+
+/*
+ * ===========================================
+ * HASH DISTRIBUTION SUMMARY
+ * ===========================================
+ *
+ * 1. WHAT HEALTHY LOOKS LIKE:
+ *    - At load 0.75 with random hashes, bucket sizes follow a Poisson
+ *      distribution: ~47% empty, ~35% one entry, chains of 8 are ~1 in 10 million
+ *    - Average successful lookup ~1.4 comparisons
+ *
+ * 2. WARNING SIGNS:
+ *    - Few distinct hashCode() values compared with the number of keys
+ *    - Longest chain far above 3-4, any treeified bin in a small map
+ *
+ * 3. TREEIFICATION IS A SAFETY NET, NOT A FIX:
+ *    - Bins of 8+ entries become red-black trees (O(log n) instead of O(n))
+ *    - With a constant hashCode() and no Comparable keys, trees still
+ *      fall back to scanning
+ *
+ * 4. FIXES:
+ *    - Use Objects.hash(...) over the same fields as equals()
+ *    - Use every significant field; avoid modulo of a small number
+ */
@@ -0,0 +1,572 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * INCREMENTALLY REHASHING MAP
+ * ===========================
+ *
+ * HashMapVisualizationDemo.demonstrateResizing shows a resize as one step:
+ * allocate a table twice as large, then move EVERY entry. In java.util.HashMap
+ * that happens inside the put() that crosses the threshold, so with millions
+ * of entries one unlucky put() takes tens of milliseconds.
+ *
+ * IncrementalRehashMap spreads the work out, the way Redis rehashes its dicts:
+ *
+ *   rehashing:   old table  [ moved | moved | moved | b3 | b4 | b5 | ... ]
+ *                                                  ^ rehashIndex
+ *                new table  [ .. | .. | .. | .. | .. | .. | .. | .. | ... ]
+ *
+ * 1. Crossing the threshold only creates the new table; both stay live
+ * 2. Every later put/remove moves a few old buckets (MIGRATE_BUCKETS) across
+ * 3. Lookups check the old bucket (if not moved yet) and the new one
+ * 4. New entries always go into the new table
+ * 5. The new table is a two-level array whose chunks are allocated when
+ *    first written, so even allocating (and zeroing) a huge table is spread out
+ *
+ * Each put() therefore does a bounded amount of work. The cost: lookups
+ * during a rehash may probe two buckets, and both tables use memory until
+ * the move is done.
+ *
+ * main() checks the Map contract against HashMap and compares the put()
+ * latency distribution across resizes with HashMap.
+ */
+
+public class IncrementalRehashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIGRATE_BUCKETS = 8;              // buckets moved per write
+    private static final int MAX_EMPTY_VISITS = MIGRATE_BUCKETS * 10;
+    private static final int CHUNK_SHIFT = 14;                 // 16K buckets per chunk
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private Table<K, V> table;        // receives new entries
+    private Table<K, V> oldTable;     // non-null while rehashing
+    private int rehashIndex;          // old buckets below this index have been moved
+    private int size;
+    private int modCount;
+
+    public IncrementalRehashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IncrementalRehashMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < initialCapacity && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        table = new Table<>(capacity);
+    }
+
+    // ===========================================
+    // TABLE: CHUNKED BUCKET ARRAY
+    // ===========================================
+
+    /** Bucket array split into chunks that are allocated on first write */
+    private static final class Table<K, V> {
+        final Node<K, V>[][] chunks;
+        final int capacity;
+        final int mask;
+
+        @SuppressWarnings("unchecked")
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.chunks = (Node<K, V>[][]) new Node<?, ?>[(capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT][];
+        }
+
+        Node<K, V> bucket(int index) {
+            Node<K, V>[] chunk = chunks[index >>> CHUNK_SHIFT];
+            return chunk == null ? null : chunk[index & (CHUNK_SIZE - 1)];
+        }
+
+        @SuppressWarnings("unchecked")
+        void setBucket(int index, Node<K, V> node) {
+            Node<K, V>[] chunk = chunks[index >>> CHUNK_SHIFT];
+            if (chunk == null) {
+                if (node == null) {
+                    return;
+                }
+                chunk = (Node<K, V>[]) new Node<?, ?>[Math.min(CHUNK_SIZE, capacity)];
+                chunks[index >>> CHUNK_SHIFT] = chunk;
+            }
+            chunk[index & (CHUNK_SIZE - 1)] = node;
+        }
+    }
+
+    /** Same shape as HashMapNode in HashMapVisualizationDemo */
+    private static final class Node<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        V value;
+        Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V newValue) {
+            V old = value;
+            value = newValue;
+            return old;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry
+                    && Objects.equals(key, ((Map.Entry<?, ?>) o).getKey())
+                    && Objects.equals(value, ((Map.Entry<?, ?>) o).getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // ===========================================
+    // INCREMENTAL MIGRATION
+    // ===========================================
+
+    public boolean isRehashing() {
+        return oldTable != null;
+    }
+
+    /**
+     * Moves up to MIGRATE_BUCKETS non-empty old buckets into the new table,
+     * visiting at most MAX_EMPTY_VISITS empty ones, so a step is always cheap.
+     */
+    private void migrateStep() {
+        int moved = 0;
+        int emptyVisits = 0;
+        while (oldTable != null && moved < MIGRATE_BUCKETS && emptyVisits < MAX_EMPTY_VISITS) {
+            if (rehashIndex == oldTable.capacity) {
+                oldTable = null; // done: the old table becomes garbage
+                return;
+            }
+            Node<K, V> node = oldTable.bucket(rehashIndex);
+            if (node == null) {
+                emptyVisits++;
+            } else {
+                while (node != null) {
+                    Node<K, V> next = node.next;
+                    int index = node.hash & table.mask;
+                    node.next = table.bucket(index);
+                    table.setBucket(index, node);
+                    node = next;
+                }
+                oldTable.setBucket(rehashIndex, null);
+                moved++;
+            }
+            rehashIndex++;
+        }
+    }
+
+    private void startRehash() {
+        if (oldTable != null) {
+            // Grew past the new table before the move finished: finish it now (rare with 8 per step)
+            while (oldTable != null) {
+                migrateStep();
+            }
+        }
+        if (table.capacity >= (1 << 30)) {
+            return;
+        }
+        oldTable = table;
+        table = new Table<>(oldTable.capacity << 1);
+        rehashIndex = 0;
+    }
+
+    private Node<K, V> findNode(Object key) {
+        int h = hash(key);
+        if (oldTable != null) {
+            int oldIndex = h & oldTable.mask;
+            if (oldIndex >= rehashIndex) {
+                for (Node<K, V> n = oldTable.bucket(oldIndex); n != null; n = n.next) {
+                    if (n.hash == h && Objects.equals(n.key, key)) {
+                        return n;
+                    }
+                }
+            }
+        }
+        for (Node<K, V> n = table.bucket(h & table.mask); n != null; n = n.next) {
+            if (n.hash == h && Objects.equals(n.key, key)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    // ===========================================
+    // MAP OPERATIONS
+    // ===========================================
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findNode(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (oldTable != null) {
+            migrateStep();
+        }
+        Node<K, V> existing = findNode(key);
+        if (existing != null) {
+            return existing.setValue(value);
+        }
+        int h = hash(key);
+        int index = h & table.mask;
+        table.setBucket(index, new Node<>(h, key, value, table.bucket(index)));
+        size++;
+        modCount++;
+        if (size > table.capacity * LOAD_FACTOR) {
+            startRehash();
+        }
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (oldTable != null) {
+            migrateStep();
+        }
+        Node<K, V> removed = removeNode(key);
+        return removed == null ? null : removed.value;
+    }
+
+    /** Unlinks the node without a migration step (iterators rely on this) */
+    private Node<K, V> removeNode(Object key) {
+        int h = hash(key);
+        if (oldTable != null && (h & oldTable.mask) >= rehashIndex) {
+            Node<K, V> removed = unlink(oldTable, h & oldTable.mask, h, key);
+            if (removed != null) {
+                return removed;
+            }
+        }
+        return unlink(table, h & table.mask, h, key);
+    }
+
+    private Node<K, V> unlink(Table<K, V> t, int index, int h, Object key) {
+        Node<K, V> prev = null;
+        for (Node<K, V> n = t.bucket(index); n != null; prev = n, n = n.next) {
+            if (n.hash == h && Objects.equals(n.key, key)) {
+                if (prev == null) {
+                    t.setBucket(index, n.next);
+                } else {
+                    prev.next = n.next;
+                }
+                size--;
+                modCount++;
+                return n;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        table = new Table<>(DEFAULT_CAPACITY);
+        oldTable = null;
+        rehashIndex = 0;
+        size = 0;
+        modCount++;
+    }
+
+    // ===========================================
+    // VIEWS
+    // ===========================================
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            public Iterator<Entry<K, V>> iterator() {
+                return new NodeIterator();
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
+                Node<K, V> node = findNode(((Entry<?, ?>) o).getKey());
+                return node != null && Objects.equals(node.value, ((Entry<?, ?>) o).getValue());
+            }
+
+            public boolean remove(Object o) {
+                if (!contains(o)) {
+                    return false;
+                }
+                IncrementalRehashMap.this.remove(((Entry<?, ?>) o).getKey());
+                return true;
+            }
+
+            public void clear() {
+                IncrementalRehashMap.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Walks the unmoved part of the old table, then the new table. Only
+     * writes migrate buckets, and iterator.remove() does not, so nothing
+     * moves under the iterator; other writes cause a
+     * ConcurrentModificationException as usual.
+     */
+    private final class NodeIterator implements Iterator<Entry<K, V>> {
+        private final Table<K, V> first = oldTable;
+        private final Table<K, V> second = table;
+        private Table<K, V> current;
+        private int index;
+        private Node<K, V> next;
+        private Node<K, V> last;
+        private int expectedModCount = modCount;
+
+        NodeIterator() {
+            current = first != null ? first : second;
+            index = first != null ? rehashIndex : 0;
+            advance();
+        }
+
+        private void advance() {
+            while (next == null) {
+                if (index == current.capacity) {
+                    if (current == second) {
+                        return;
+                    }
+                    current = second;
+                    index = 0;
+                    continue;
+                }
+                Node<K, V>[] chunk = current.chunks[index >>> CHUNK_SHIFT];
+                if (chunk == null) {
+                    index = Math.min(current.capacity, ((index >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT);
+                    continue;
+                }
+                next = chunk[index & (CHUNK_SIZE - 1)];
+                index++;
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = next.next;
+            if (next == null) {
+                advance();
+            }
+            return last;
+        }
+
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeNode(last.key);
+            last = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    // ===========================================
+    // CONTRACT CHECK AND LATENCY BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) {
+        System.out.println("=== INCREMENTALLY REHASHING MAP ===\n");
+
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 6_000_000;
+
+        contractCheck();
+        latencyBenchmark(n);
+    }
+
+    /**
+     * Random operations against HashMap with a tiny initial table, so most
+     * operations happen while a rehash is in progress.
+     */
+    public static void contractCheck() {
+        System.out.println("1. MAP CONTRACT CHECK (vs java.util.HashMap)");
+        System.out.println("============================================");
+
+        Random random = new Random(5);
+        IncrementalRehashMap<Integer, Integer> map = new IncrementalRehashMap<>();
+        Map<Integer, Integer> reference = new HashMap<>();
+        int duringRehash = 0;
+        int ops = 1_000_000;
+        for (int op = 0; op < ops; op++) {
+            Integer key = random.nextInt(50) == 0 ? null : random.nextInt(op / 10 + 10);
+            int choice = random.nextInt(10);
+            if (choice < 6) {
+                check(Objects.equals(map.put(key, op), reference.put(key, op)), "put");
+            } else if (choice < 8) {
+                check(Objects.equals(map.remove(key), reference.remove(key)), "remove");
+            } else if (choice < 9) {
+                check(Objects.equals(map.get(key), reference.get(key)), "get");
+            } else if (op % 1000 == 0) {
+                int cut = random.nextInt(op / 10 + 10);
+                map.keySet().removeIf(k -> k != null && k % 97 == cut % 97);
+                reference.keySet().removeIf(k -> k != null && k % 97 == cut % 97);
+            }
+            check(map.size() == reference.size(), "size");
+            if (map.isRehashing()) {
+                duringRehash++;
+            }
+        }
+        check(map.equals(reference) && reference.equals(map), "equals");
+        check(map.hashCode() == reference.hashCode(), "hashCode");
+        System.out.printf("All %,d operations matched HashMap (%,d of them during a rehash).%n%n", ops, duringRehash);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError("Map contract violated: " + what);
+        }
+    }
+
+    /**
+     * Times every single put() while filling each map from empty, so the
+     * run crosses every resize up to n entries.
+     */
+    public static void latencyBenchmark(int n) {
+        String title = String.format("2. PUT LATENCY WHILE GROWING TO %,d ENTRIES", n);
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+
+        Integer[] keys = new Integer[n];
+        Random random = new Random(9);
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        long[] nanos = new long[n];
+
+        for (int round = 0; round < 2; round++) { // round 0 is JIT warm-up
+            boolean print = round == 1;
+            if (print) {
+                System.out.printf("%-22s %8s %8s %8s %10s %10s %10s %10s%n",
+                        "MAP", "p50 ns", "p99 ns", "p99.9", "max us", "puts >1ms", "GC-hit", "total ms");
+            }
+            runPuts("HashMap", new HashMap<>(), keys, nanos, print);
+            runPuts("IncrementalRehashMap", new IncrementalRehashMap<>(), keys, nanos, print);
+        }
+        System.out.println("(puts during which a GC ran are counted under GC-hit and left out of the percentiles)\n");
+    }
+
+    private static void runPuts(String name, Map<Integer, Integer> map, Integer[] keys, long[] nanos, boolean print) {
+        System.gc();
+        int gcHit = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < keys.length; i++) {
+            long collections = gcCount();
+            long t0 = System.nanoTime();
+            map.put(keys[i], i);
+            long t1 = System.nanoTime();
+            if (gcCount() != collections) {
+                gcHit++; // a GC pause is not the map's doing; leave this put out
+                continue;
+            }
+            nanos[i - gcHit] = t1 - t0;
+        }
+        long total = System.nanoTime() - begin;
+        if (!print) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(nanos, keys.length - gcHit);
+        Arrays.sort(sorted);
+        long slow = 0;
+        for (long t : sorted) {
+            if (t > 1_000_000) {
+                slow++;
+            }
+        }
+        System.out.printf("%-22s %,8d %,8d %,8d %,10d %,10d %,10d %,10d%n", name,
+                sorted[sorted.length / 2],
+                sorted[(int) (sorted.length * 0.99)],
+                sorted[(int) (sorted.length * 0.999)],
+                sorted[sorted.length - 1] / 1000, slow, gcHit, total / 1_000_000);
+    }
+
+    private static final List<GarbageCollectorMXBean> GCS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : GCS) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+}
+
+/*
+ * ===========================================
+ * INCREMENTAL REHASHING SUMMARY
+ * ===========================================
+ *
+ * 1. THE PROBLEM:
+ *    - HashMap resizes inside one put(): O(n) work in a single call
+ *    - Average cost is fine (amortized O(1)), tail latency is not
+ *
+ * 2. THE IDEA (as in Redis):
+ *    - Keep old and new tables live at the same time
+ *    - Each write moves a few buckets; lookups check both tables
+ *    - The move finishes long before the new table fills up
+ *
+ * 3. DETAILS THAT MATTER:
+ *    - Bound the empty buckets visited per step, not just the moved ones
+ *    - Allocate the big new table lazily in chunks (zeroing is O(n) too)
+ *    - Iterators must not see buckets move: only writes migrate
+ *
+ * 4. TRADE-OFFS:
+ *    - Slightly slower lookups during a rehash (two buckets)
+ *    - Old + new table memory during the move
+ *    - Presizing a HashMap (new HashMap<>(expected)) avoids resizes entirely
+ *      when the final size is known
+ */
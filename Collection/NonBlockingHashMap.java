@@ -0,0 +1,925 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NON-BLOCKING RESIZABLE CONCURRENT HASH MAP
+ * ==========================================
+ *
+ * ConcurrentHashMapTutorial.internalWorking explains that Java 8+
+ * ConcurrentHashMap uses CAS for empty bins but a synchronized block for
+ * every write to a non-empty bin, and a resize moves bins under those locks.
+ *
+ * NonBlockingHashMap (after Cliff Click's design) uses NO locks at all:
+ *
+ *   keys: [ k0 ][ k1 ][    ][ k3 ]...     a key slot is claimed once by CAS and never changes
+ *   vals: [ v0 ][ P(v1) ][ ][ TOMB ]...   values change only by CAS
+ *
+ * 1. Linear probing over two arrays; every write is one CAS on a value slot
+ * 2. remove() CASes the value to TOMBSTONE; the key slot stays (cleaned by resize)
+ * 3. RESIZE: a new table is hung off the old one (next). Each old slot is
+ *    copied in three CAS steps:
+ *      value -> Prime(value)     (frozen: writers must now go to the new table)
+ *      new table: put value only if that slot was never set
+ *      Prime(value) -> TOMBPRIME (this slot is done)
+ * 4. COOPERATIVE MIGRATION: every writer that sees a resize copies a chunk
+ *    of slots first; a reader that meets a frozen slot copies that slot.
+ *    Once every slot is done the new table is promoted to the top.
+ *
+ * No thread ever waits for another: a stalled thread cannot block progress,
+ * because any other thread can finish its copy work.
+ *
+ * main() runs a linearizability check on concurrent histories, an atomic
+ * counter stress test under constant resizing, and a throughput comparison
+ * with ConcurrentHashMap across read/write mixes and Zipfian key skew.
+ */
+
+public class NonBlockingHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    // Value-slot states (and TOMBSTONE also marks a key slot killed during a copy)
+    private static final Object TOMBSTONE = new Object();
+    private static final Prime TOMBPRIME = new Prime(TOMBSTONE);
+
+    // "expected value" modes of putIfMatch
+    private static final Object ANY = new Object();        // unconditional
+    private static final Object ABSENT = new Object();     // only if absent (putIfAbsent)
+    private static final Object PRESENT = new Object();    // only if present (replace)
+    private static final Object NEVER_SET = new Object();  // only if the slot was never written (copy)
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int COPY_CHUNK = 1024;
+
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle TOP;
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            TOP = MethodHandles.lookup().findVarHandle(NonBlockingHashMap.class, "top", Table.class);
+            NEXT = MethodHandles.lookup().findVarHandle(Table.class, "next", Table.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Value wrapper meaning "frozen for copying; the live value is in the next table" */
+    private static final class Prime {
+        final Object value;
+
+        Prime(Object value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Table {
+        final Object[] keys;
+        final Object[] vals;
+        final int mask;
+        final AtomicInteger slots = new AtomicInteger();      // key slots claimed
+        final AtomicInteger copyIndex = new AtomicInteger();  // next chunk to copy (wraps around)
+        final AtomicInteger copyDone = new AtomicInteger();   // slots fully copied
+        volatile Table next;
+
+        Table(int capacity) {
+            keys = new Object[capacity];
+            vals = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        int length() {
+            return keys.length;
+        }
+
+        int reprobeLimit() {
+            return 10 + (keys.length >> 2);
+        }
+
+        Object key(int i) {
+            return SLOT.getVolatile(keys, i);
+        }
+
+        Object val(int i) {
+            return SLOT.getVolatile(vals, i);
+        }
+
+        boolean casKey(int i, Object expected, Object key) {
+            return SLOT.compareAndSet(keys, i, expected, key);
+        }
+
+        boolean casVal(int i, Object expected, Object value) {
+            return SLOT.compareAndSet(vals, i, expected, value);
+        }
+    }
+
+    private volatile Table top;
+    private final LongAdder size = new LongAdder();
+
+    public NonBlockingHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public NonBlockingHashMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < initialCapacity * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        top = new Table(capacity);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    // ===========================================
+    // READS
+    // ===========================================
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object v = getImpl(top, Objects.requireNonNull(key), hash(key));
+        return v == null || v == TOMBSTONE ? null : (V) v;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    private Object getImpl(Table t, Object key, int h) {
+        outer:
+        while (true) {
+            int idx = h & t.mask;
+            int reprobes = 0;
+            while (true) {
+                Object k = t.key(idx);
+                if (k == null) {
+                    return null; // a put of this key would have claimed this slot: clear miss
+                }
+                if (k == key || (k != TOMBSTONE && k.equals(key))) {
+                    Object v = t.val(idx);
+                    if (!(v instanceof Prime)) {
+                        return v;
+                    }
+                    t = copySlotAndCheck(t, idx, false); // frozen: finish its copy, read the new table
+                    continue outer;
+                }
+                if (++reprobes >= t.reprobeLimit() || k == TOMBSTONE) {
+                    Table next = t.next;
+                    if (next == null) {
+                        return null;
+                    }
+                    t = next; // no room here (or slot killed by a copy): the key can only be newer
+                    continue outer;
+                }
+                idx = (idx + 1) & t.mask;
+            }
+        }
+    }
+
+    // ===========================================
+    // WRITES
+    // ===========================================
+
+    @Override
+    public V put(K key, V value) {
+        return write(key, Objects.requireNonNull(value), ANY);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return write(key, Objects.requireNonNull(value), ABSENT);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return write(key, TOMBSTONE, ANY);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Object prev = write(key, TOMBSTONE, Objects.requireNonNull(value));
+        return prev != null && prev.equals(value);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        return write(key, Objects.requireNonNull(value), PRESENT);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Object prev = write(key, Objects.requireNonNull(newValue), Objects.requireNonNull(oldValue));
+        return prev != null && prev.equals(oldValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V write(Object key, Object put, Object expected) {
+        Objects.requireNonNull(key);
+        Table t = top;
+        if (t.next != null) {
+            helpCopy(t); // cooperative migration: every writer does a chunk
+        }
+        Object prev = putIfMatch(t, key, hash(key), put, expected, true);
+        return prev == null || prev == TOMBSTONE ? null : (V) prev;
+    }
+
+    /**
+     * The single write path. Returns the value seen when the write happened
+     * or was refused (null or TOMBSTONE = absent); never a Prime.
+     */
+    private Object putIfMatch(Table t, Object key, int h, Object put, Object expected, boolean count) {
+        outer:
+        while (true) {
+            int idx = h & t.mask;
+            int reprobes = 0;
+            // 1. Find the key's slot, claiming an empty one for a new key
+            while (true) {
+                Object k = t.key(idx);
+                if (k == null) {
+                    if (put == TOMBSTONE || expected == PRESENT || !isMode(expected)) {
+                        return null; // removing / replacing a key that is not here
+                    }
+                    if (t.casKey(idx, null, key)) {
+                        t.slots.incrementAndGet();
+                        break;
+                    }
+                    k = t.key(idx); // lost the race for this slot; maybe to the same key
+                }
+                if (k == key || (k != TOMBSTONE && k.equals(key))) {
+                    break;
+                }
+                if (++reprobes >= t.reprobeLimit() || k == TOMBSTONE) {
+                    Table next = resize(t); // table full, or being copied: continue in the new one
+                    if (expected != NEVER_SET) {
+                        helpCopy(t);
+                    }
+                    t = next;
+                    continue outer;
+                }
+                idx = (idx + 1) & t.mask;
+            }
+
+            // 2. Key found at idx. Move on to the new table if a resize is (or should be) under way
+            Object v = t.val(idx);
+            Table next = t.next;
+            if (next == null && v == null && t.slots.get() > (t.length() >> 1)) {
+                next = resize(t); // just claimed a key and the table is half full
+            }
+            if (next != null) {
+                t = copySlotAndCheck(t, idx, expected != NEVER_SET);
+                continue;
+            }
+
+            // 3. CAS the value
+            while (true) {
+                if (v instanceof Prime) {
+                    t = copySlotAndCheck(t, idx, expected != NEVER_SET);
+                    continue outer;
+                }
+                boolean live = v != null && v != TOMBSTONE;
+                if (expected == NEVER_SET ? v != null
+                        : expected == ABSENT ? live
+                        : expected == PRESENT ? !live
+                        : expected != ANY && (!live || !(v == expected || v.equals(expected)))) {
+                    return v; // condition not met
+                }
+                if (put == TOMBSTONE && !live) {
+                    return v; // nothing to remove
+                }
+                if (t.casVal(idx, v, put)) {
+                    if (count) {
+                        if (!live && put != TOMBSTONE) {
+                            size.increment();
+                        } else if (live && put == TOMBSTONE) {
+                            size.decrement();
+                        }
+                    }
+                    return v;
+                }
+                v = t.val(idx);
+            }
+        }
+    }
+
+    private static boolean isMode(Object expected) {
+        return expected == ANY || expected == ABSENT || expected == NEVER_SET;
+    }
+
+    // ===========================================
+    // RESIZE AND COOPERATIVE COPY
+    // ===========================================
+
+    /** Returns the table that replaces t, creating it if nobody has yet */
+    private Table resize(Table t) {
+        Table next = t.next;
+        if (next != null) {
+            return next;
+        }
+        long live = size.sum();
+        int length = t.length();
+        int newLength = length;            // same size still drops dead keys
+        if (live >= length >> 2) {
+            newLength = length << 1;
+        }
+        if (live >= length >> 1) {
+            newLength = length << 2;
+        }
+        newLength = Math.max(MIN_CAPACITY, Math.min(newLength, 1 << 30));
+        Table created = new Table(newLength);
+        return NEXT.compareAndSet(t, null, created) ? created : t.next;
+    }
+
+    /** Copies one chunk of t's slots into t.next (wrapping, so stalled chunks get redone) */
+    private void helpCopy(Table t) {
+        int length = t.length();
+        if (t.copyDone.get() >= length) {
+            promote();
+            return;
+        }
+        int start = t.copyIndex.getAndAdd(COPY_CHUNK) & t.mask;
+        for (int i = 0; i < Math.min(COPY_CHUNK, length); i++) {
+            copyAndCount(t, (start + i) & t.mask);
+        }
+        promote();
+    }
+
+    /**
+     * Copies every remaining slot of every pending table and returns the
+     * newest one; used before iterating. One full pass per table is enough:
+     * afterwards every slot is copied, whatever copyDone says. Waiting for
+     * copyDone instead would spin for as long as some stalled helper still
+     * owes its count.
+     */
+    private Table helpCopyAll() {
+        Table t = top;
+        while (t.next != null) {
+            for (int i = 0; i < t.length(); i++) {
+                copyAndCount(t, i);
+            }
+            promote();
+            t = t.next;
+        }
+        return t;
+    }
+
+    private Table copySlotAndCheck(Table t, int idx, boolean helpMore) {
+        Table next = t.next;
+        copyAndCount(t, idx);
+        promote();
+        if (helpMore) {
+            helpCopy(t);
+        }
+        return next;
+    }
+
+    /**
+     * Copies slot idx of old into next. Returns true only for the one thread
+     * whose CAS finished the slot, so copyDone counts each slot exactly once.
+     */
+    private boolean copySlot(Table old, int idx, Table next) {
+        Object key;
+        while ((key = old.key(idx)) == null) {
+            old.casKey(idx, null, TOMBSTONE); // kill the empty slot: no new key may land here
+        }
+        Object v = old.val(idx);
+        while (!(v instanceof Prime)) {
+            Prime box = (v == null || v == TOMBSTONE) ? TOMBPRIME : new Prime(v);
+            if (old.casVal(idx, v, box)) {
+                if (box == TOMBPRIME) {
+                    return true; // nothing to carry over
+                }
+                v = box;
+                break;
+            }
+            v = old.val(idx);
+        }
+        if (v == TOMBPRIME) {
+            return false; // somebody else finished this slot
+        }
+        // Only if the new slot was never written: a newer put or remove there must win
+        putIfMatch(next, key, hash(key), ((Prime) v).value, NEVER_SET, false);
+        return old.casVal(idx, v, TOMBPRIME);
+    }
+
+    /** Credits copyDone per slot, right after the CAS that finished it */
+    private void copyAndCount(Table t, int idx) {
+        if (copySlot(t, idx, t.next)) {
+            t.copyDone.incrementAndGet();
+        }
+    }
+
+    /** Moves top forward over every fully copied table */
+    private void promote() {
+        Table t;
+        while ((t = top).next != null && t.copyDone.get() >= t.length()) {
+            TOP.compareAndSet(this, t, t.next);
+        }
+    }
+
+    // ===========================================
+    // SIZE, VIEWS
+    // ===========================================
+
+    @Override
+    public int size() {
+        long n = size.sum();
+        return n < 0 ? 0 : (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (K key : keySet()) {
+            remove(key);
+        }
+    }
+
+    /** Current table capacity (after finishing any pending copy) */
+    int capacity() {
+        return helpCopyAll().length();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            public Iterator<Entry<K, V>> iterator() {
+                return new SnapshotIterator();
+            }
+
+            public int size() {
+                return NonBlockingHashMap.this.size();
+            }
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
+                Object v = get(((Entry<?, ?>) o).getKey());
+                return v != null && v.equals(((Entry<?, ?>) o).getValue());
+            }
+
+            public boolean remove(Object o) {
+                return o instanceof Entry
+                        && NonBlockingHashMap.this.remove(((Entry<?, ?>) o).getKey(), ((Entry<?, ?>) o).getValue());
+            }
+        };
+    }
+
+    /**
+     * Weakly consistent, like ConcurrentHashMap's iterators: pending copies
+     * are finished first, then the top table is walked. Keys present when
+     * the iterator was created are seen once; later changes may or may not be.
+     */
+    private final class SnapshotIterator implements Iterator<Entry<K, V>> {
+        private final Table table;
+        private int index;
+        private Entry<K, V> next;
+        private K lastKey;
+
+        SnapshotIterator() {
+            table = helpCopyAll();
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (next == null && index < table.length()) {
+                int i = index++;
+                Object k = table.key(i);
+                if (k == null || k == TOMBSTONE) {
+                    continue;
+                }
+                Object v = table.val(i);
+                if (v instanceof Prime) {
+                    v = get(k); // moved on by a later resize
+                }
+                if (v != null && v != TOMBSTONE) {
+                    next = new WriteThroughEntry((K) k, (V) v);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> e = next;
+            lastKey = e.getKey();
+            advance();
+            return e;
+        }
+
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            NonBlockingHashMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    private final class WriteThroughEntry extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        WriteThroughEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    // ===========================================
+    // TESTS AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== NON-BLOCKING HASH MAP ===\n");
+
+        linearizabilityCheck(args.length > 0 ? Integer.parseInt(args[0]) : 3_000);
+        counterStressTest();
+        throughputComparison();
+    }
+
+    /**
+     * Threads run short random histories on a few hot keys while filler
+     * inserts keep the table resizing. Each recorded history is checked for a
+     * legal sequential order that respects real time (per key - linearizability
+     * is compositional, so keys can be checked independently).
+     */
+    public static void linearizabilityCheck(int rounds) throws Exception {
+        System.out.println("1. LINEARIZABILITY CHECK");
+        System.out.println("========================");
+
+        int threads = 3;
+        int opsPerThread = 24;
+        int hotKeys = 3;
+        long overlapping = 0;
+        long checkedOps = 0;
+        for (int round = 0; round < rounds; round++) {
+            NonBlockingHashMap<Integer, Integer> map = new NonBlockingHashMap<>(2);
+            List<List<HistoryOp>> perThread = new ArrayList<>();
+            CyclicBarrier start = new CyclicBarrier(threads);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                List<HistoryOp> history = new ArrayList<>();
+                perThread.add(history);
+                int id = t;
+                int seed = round * 31 + t;
+                workers[t] = new Thread(() -> {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (Exception e) {
+                        return;
+                    }
+                    for (int i = 0; i < opsPerThread; i++) {
+                        if (random.nextInt(3) == 0) {
+                            map.put(1_000 + id * 1_000 + i, i); // filler: forces resizes
+                            continue;
+                        }
+                        int key = random.nextInt(hotKeys);
+                        int value = (id + 1) * 100 + i; // unique per op
+                        history.add(HistoryOp.run(map, key, random.nextInt(5), value,
+                                random.nextInt(2) == 0 ? null : (random.nextInt(threads) + 1) * 100 + random.nextInt(i + 1)));
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            List<HistoryOp> all = new ArrayList<>();
+            perThread.forEach(all::addAll);
+            for (int key = 0; key < hotKeys; key++) {
+                List<HistoryOp> ops = new ArrayList<>();
+                for (HistoryOp op : all) {
+                    if (op.key == key) {
+                        ops.add(op);
+                    }
+                }
+                overlapping += HistoryOp.countOverlaps(ops);
+                checkedOps += ops.size();
+                if (!HistoryOp.linearizable(ops)) {
+                    throw new AssertionError("Non-linearizable history for key " + key + ": " + ops);
+                }
+            }
+        }
+        System.out.printf("%,d rounds, %,d operations: every history linearizable "
+                + "(%,d overlapping operation pairs).%n%n", rounds, checkedOps, overlapping);
+    }
+
+    /** Counter increments via get + replace(k, old, new) loops while other threads force resizes */
+    public static void counterStressTest() throws InterruptedException {
+        System.out.println("2. ATOMIC COUNTERS UNDER CONSTANT RESIZING");
+        System.out.println("==========================================");
+
+        NonBlockingHashMap<Integer, Integer> map = new NonBlockingHashMap<>();
+        int threads = 4;
+        int increments = 200_000;
+        Thread[] workers = new Thread[threads + 1];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < increments; i++) {
+                    Integer key = random.nextInt(1_000);
+                    while (true) {
+                        Integer current = map.get(key);
+                        if (current == null ? map.putIfAbsent(key, 1) == null : map.replace(key, current, current + 1)) {
+                            break;
+                        }
+                    }
+                }
+            });
+        }
+        int[] resizes = new int[1];
+        workers[threads] = new Thread(() -> {
+            // Grows and shrinks the table over and over with unrelated keys
+            for (int cycle = 0; cycle < 40; cycle++) {
+                for (int k = 0; k < 20_000; k++) {
+                    map.put(-1 - k, k);
+                }
+                for (int k = 0; k < 20_000; k++) {
+                    map.remove(-1 - k);
+                }
+                resizes[0]++;
+            }
+        });
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long total = 0;
+        for (Entry<Integer, Integer> e : map.entrySet()) {
+            total += e.getKey() >= 0 ? e.getValue() : 0;
+        }
+        System.out.printf("Expected %,d increments, counted %,d (%s); %d grow/shrink cycles, final capacity %,d%n%n",
+                (long) threads * increments, total, total == (long) threads * increments ? "OK" : "LOST UPDATES",
+                resizes[0], map.capacity());
+        if (total != (long) threads * increments) {
+            throw new AssertionError("Lost updates");
+        }
+    }
+
+    public static void throughputComparison() throws InterruptedException {
+        System.out.println("3. THROUGHPUT vs ConcurrentHashMap (4 threads, ops/ms)");
+        System.out.println("======================================================");
+
+        int keys = 1 << 16;
+        Integer[] boxed = new Integer[keys];
+        for (int i = 0; i < keys; i++) {
+            boxed[i] = i;
+        }
+        int[][] uniform = new int[4][];
+        int[][] zipf = new int[4][];
+        ZipfSampler sampler = new ZipfSampler(keys, 0.99);
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            uniform[t] = random.ints(1 << 20, 0, keys).toArray();
+            zipf[t] = new int[1 << 20];
+            for (int i = 0; i < zipf[t].length; i++) {
+                zipf[t][i] = sampler.next(random);
+            }
+        }
+
+        System.out.printf("%-10s %-8s %14s %14s%n", "WRITES", "KEYS", "CHM", "NonBlocking");
+        for (int round = 0; round < 2; round++) { // round 0 warms up the JIT
+            for (int writePercent : new int[] {10, 50, 90}) {
+                for (int[][] pattern : List.of(uniform, zipf)) {
+                    long chm = runMix(new ConcurrentHashMap<>(), boxed, pattern, writePercent);
+                    long nbhm = runMix(new NonBlockingHashMap<>(), boxed, pattern, writePercent);
+                    if (round == 1) {
+                        System.out.printf("%-10s %-8s %,14d %,14d%n", writePercent + "%",
+                                pattern == uniform ? "uniform" : "zipf", chm, nbhm);
+                    }
+                }
+            }
+        }
+
+        long chm = runGrowth(new ConcurrentHashMap<>());
+        long nbhm = runGrowth(new NonBlockingHashMap<>());
+        System.out.printf("%-19s %14d %14d   (ms to insert 2M keys from empty)%n", "growth", chm, nbhm);
+        System.out.println("(writes: 80% put, 20% remove; reads: get)\n");
+    }
+
+    private static long runMix(ConcurrentMap<Integer, Integer> map, Integer[] keys, int[][] pattern,
+                               int writePercent) throws InterruptedException {
+        for (Integer key : keys) {
+            map.put(key, key);
+        }
+        long millis = 250;
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        LongAdder ops = new LongAdder();
+        Thread[] workers = new Thread[pattern.length];
+        for (int t = 0; t < workers.length; t++) {
+            int[] sample = pattern[t];
+            workers[t] = new Thread(() -> {
+                long done = 0;
+                int i = 0;
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    Integer key = keys[sample[i]];
+                    int dice = ZipfSampler.percentile(i);
+                    if (dice >= writePercent) {
+                        map.get(key);
+                    } else if (dice % 5 == 0) {
+                        map.remove(key);
+                    } else {
+                        map.put(key, key);
+                    }
+                    i = (i + 1) & (sample.length - 1);
+                    done++;
+                }
+                ops.add(done);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() / millis;
+    }
+
+    private static long runGrowth(ConcurrentMap<Integer, Integer> map) throws InterruptedException {
+        int perThread = 500_000;
+        Thread[] workers = new Thread[4];
+        long t0 = System.nanoTime();
+        for (int t = 0; t < workers.length; t++) {
+            int base = t * perThread;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    map.put(base + i, i);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (System.nanoTime() - t0) / 1_000_000;
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * One recorded operation on a hot key, with its real-time interval
+ */
+final class HistoryOp {
+    static final int GET = 0, PUT = 1, PUT_IF_ABSENT = 2, REMOVE = 3, REPLACE = 4;
+    private static final String[] NAMES = {"get", "put", "putIfAbsent", "remove", "replace"};
+
+    final int key;
+    final int type;
+    final Integer arg;       // value written
+    final Integer expected;  // for replace(k, expected, arg)
+    Object result;
+    long start;
+    long end;
+
+    private HistoryOp(int key, int type, Integer arg, Integer expected) {
+        this.key = key;
+        this.type = type;
+        this.arg = arg;
+        this.expected = expected;
+    }
+
+    static HistoryOp run(ConcurrentMap<Integer, Integer> map, int key, int type, int value, Integer expected) {
+        HistoryOp op = new HistoryOp(key, type, value, expected == null ? Integer.valueOf(-1) : expected);
+        op.start = System.nanoTime();
+        switch (type) {
+            case GET -> op.result = map.get(key);
+            case PUT -> op.result = map.put(key, value);
+            case PUT_IF_ABSENT -> op.result = map.putIfAbsent(key, value);
+            case REMOVE -> op.result = map.remove(key);
+            default -> op.result = map.replace(key, op.expected, value);
+        }
+        op.end = System.nanoTime();
+        return op;
+    }
+
+    /** Applies the op to a sequential map state; returns the new state, or null-marker on mismatch */
+    private static final Object MISMATCH = new Object();
+
+    private Object apply(Integer state) {
+        switch (type) {
+            case GET:
+                return Objects.equals(result, state) ? state : MISMATCH;
+            case PUT:
+                return Objects.equals(result, state) ? arg : MISMATCH;
+            case PUT_IF_ABSENT:
+                return Objects.equals(result, state) ? (state == null ? arg : state) : MISMATCH;
+            case REMOVE:
+                return Objects.equals(result, state) ? null : MISMATCH;
+            default:
+                boolean matched = Objects.equals(state, expected);
+                return result.equals(matched) ? (matched ? arg : state) : MISMATCH;
+        }
+    }
+
+    /** Depth-first search for a legal order (Wing & Gong), memoizing (done set, state) */
+    static boolean linearizable(List<HistoryOp> ops) {
+        if (ops.size() > 62) {
+            throw new IllegalArgumentException("History too long to check: " + ops.size());
+        }
+        return search(ops, 0L, null, new HashSet<>());
+    }
+
+    private static boolean search(List<HistoryOp> ops, long done, Integer state, Set<String> seen) {
+        if (Long.bitCount(done) == ops.size()) {
+            return true;
+        }
+        if (!seen.add(done + ":" + state)) {
+            return false;
+        }
+        long earliestEnd = Long.MAX_VALUE;
+        for (int i = 0; i < ops.size(); i++) {
+            if ((done & (1L << i)) == 0) {
+                earliestEnd = Math.min(earliestEnd, ops.get(i).end);
+            }
+        }
+        for (int i = 0; i < ops.size(); i++) {
+            HistoryOp op = ops.get(i);
+            // Only ops that started before every pending op ended can go next
+            if ((done & (1L << i)) != 0 || op.start > earliestEnd) {
+                continue;
+            }
+            Object next = op.apply(state);
+            if (next != MISMATCH && search(ops, done | (1L << i), (Integer) next, seen)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static long countOverlaps(List<HistoryOp> ops) {
+        long overlaps = 0;
+        for (int i = 0; i < ops.size(); i++) {
+            for (int j = i + 1; j < ops.size(); j++) {
+                HistoryOp a = ops.get(i);
+                HistoryOp b = ops.get(j);
+                if (a.start < b.end && b.start < a.end) {
+                    overlaps++;
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    @Override
+    public String toString() {
+        return NAMES[type] + "(" + arg + (type == REPLACE ? ", expected " + expected : "") + ") -> " + result
+                + " [" + start + ".." + end + "]";
+    }
+}
+
+/*
+ * ===========================================
+ * NON-BLOCKING HASH MAP SUMMARY
+ * ===========================================
+ *
+ * 1. STATE MACHINES INSTEAD OF LOCKS:
+ *    - Key slot: null -> key (once) or null -> TOMBSTONE (killed by a copy)
+ *    - Value slot: null / value / TOMBSTONE, then Prime(value) -> TOMBPRIME
+ *    - Every transition is one CAS; a failed CAS just re-reads and retries
+ *
+ * 2. RESIZE WITHOUT STOPPING ANYONE:
+ *    - Writers that see a new table copy a chunk of slots first
+ *    - A frozen (Prime) slot tells everyone to continue in the new table
+ *    - "Only if never set" copies can't overwrite newer writes
+ *
+ * 3. LINEARIZABILITY:
+ *    - Each operation takes effect at one CAS (or one volatile read)
+ *    - The test searches for a legal sequential order of recorded histories
+ *
+ * 4. COMPARED WITH ConcurrentHashMap:
+ *    - CHM locks a bin per write: cheap when uncontended, blocking when hot
+ *    - Removed keys keep their slot until the next resize
+ *    - Single-CPU machines mostly show the constant-factor costs, not the
+ *      contention benefits
+ */
@@ -0,0 +1,817 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * OFF-HEAP HASH MAP (DIRECT BYTEBUFFERS, STRIPED LOCKS)
+ * =====================================================
+ *
+ * A HashMap<Long, Long> with 50 million entries is 150 million objects
+ * (Node, Long key, Long value). The garbage collector has to trace every one
+ * of them on each full marking cycle, so GC time grows with the map even when
+ * the map never changes.
+ *
+ * OffHeapHashMap keeps entries OUTSIDE the Java heap, in direct ByteBuffers:
+ *
+ *   index (per segment):  [ tag | chunk | offset ] [ empty ] [ tag | chunk | offset ] ...
+ *                                  |
+ *   data chunks:          [keyLen][valueLen][key bytes...][value bytes...] [next record] ...
+ *
+ * 1. Keys and values are serialized by pluggable ByteCodecs (fixed or
+ *    variable size); equality is byte equality of the encoded key
+ * 2. The map is split into SEGMENTS, each with its own StampedLock, open
+ *    addressing index and append-only data chunks - lock striping like
+ *    AccountLedger, so threads on different segments do not wait
+ * 3. An update with a value of the same size is written in place; otherwise
+ *    the new record is appended and the old one becomes garbage, which is
+ *    reclaimed by compacting the segment when it outweighs live data
+ * 4. close() frees the native memory immediately instead of waiting for GC
+ *
+ * The heap holds only a few hundred small objects, whatever the size.
+ * This is not a java.util.Map: get() returns a decoded copy of the value.
+ *
+ * main() fills 50,000,000 entries and reports heap used and GC time next to
+ * a HashMap. Run with: java -Xmx3g -XX:MaxDirectMemorySize=4g OffHeapHashMap
+ */
+
+public class OffHeapHashMap<K, V> implements AutoCloseable {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int RECORD_HEADER = 8;             // int keyLength, int valueLength
+    private static final int MIN_CHUNK = 64 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024 * 1024;
+    private static final int MAX_INDEX_SLOTS = 1 << 27;     // 1 GB of index per segment
+    private static final long OFFSET_MASK = (1L << 30) - 1; // offset inside a chunk: 30 bits
+    private static final long CHUNK_MASK = (1L << 10) - 1;  // chunk number: 10 bits
+    private static final int TAG_SHIFT = 40;                // upper 24 bits: part of the key hash
+
+    /** Reused encode buffer, one per thread, so put/get allocate nothing on the heap */
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+    private final ByteCodec<K> keyCodec;
+    private final ByteCodec<V> valueCodec;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private volatile boolean closed;
+
+    public OffHeapHashMap(ByteCodec<K> keyCodec, ByteCodec<V> valueCodec, long expectedSize, int segmentCount) {
+        if (segmentCount < 1 || segmentCount > 1024 || Integer.bitCount(segmentCount) != 1) {
+            throw new IllegalArgumentException("segmentCount must be a power of two up to 1024: " + segmentCount);
+        }
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        }
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.segments = new Segment[segmentCount];
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+        long perSegment = expectedSize / segmentCount + 1;
+        int slots = 16;
+        while (slots < MAX_INDEX_SLOTS && slots * LOAD_FACTOR < perSegment) {
+            slots <<= 1;
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(slots);
+        }
+    }
+
+    public OffHeapHashMap(ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) {
+        this(keyCodec, valueCodec, 0, 16);
+    }
+
+    // ===========================================
+    // PUBLIC OPERATIONS
+    // ===========================================
+
+    /** Stores the entry; returns true if the key was new */
+    public boolean put(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        ByteBuffer scratch = encode(key, value);
+        int keyLength = scratch.getInt(0);
+        long hash = hash(scratch, RECORD_HEADER, keyLength);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            checkOpen();
+            return segment.put(hash, scratch);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Decoded copy of the value, or null */
+    public V get(K key) {
+        ByteBuffer scratch = encode(key, null);
+        int keyLength = scratch.getInt(0);
+        long hash = hash(scratch, RECORD_HEADER, keyLength);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.readLock();
+        try {
+            checkOpen();
+            long slot = segment.find(hash, scratch, keyLength);
+            if (slot < 0) {
+                return null;
+            }
+            long ref = segment.index.getLong((int) (slot << 3));
+            ByteBuffer chunk = segment.chunks.get(chunkOf(ref));
+            int offset = offsetOf(ref);
+            int valueLength = chunk.getInt(offset + 4);
+            return valueCodec.decode(chunk, offset + RECORD_HEADER + keyLength, valueLength);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(K key) {
+        ByteBuffer scratch = encode(key, null);
+        int keyLength = scratch.getInt(0);
+        long hash = hash(scratch, RECORD_HEADER, keyLength);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.readLock();
+        try {
+            checkOpen();
+            return segment.find(hash, scratch, keyLength) >= 0;
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns true if the key was present */
+    public boolean remove(K key) {
+        ByteBuffer scratch = encode(key, null);
+        int keyLength = scratch.getInt(0);
+        long hash = hash(scratch, RECORD_HEADER, keyLength);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            checkOpen();
+            return segment.remove(hash, scratch, keyLength);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public long size() {
+        long total = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                total += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return total;
+    }
+
+    /** Native bytes reserved for index and data chunks */
+    public long offHeapBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                total += segment.reservedBytes();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Frees all native memory now. Every segment is write-locked in order
+     * (like AccountLedger.snapshot), so no operation is still reading a
+     * buffer when it is released. Later calls throw IllegalStateException.
+     */
+    @Override
+    public void close() {
+        long[] stamps = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            stamps[i] = segments[i].lock.writeLock();
+        }
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments) {
+                segment.release();
+            }
+        } finally {
+            for (int i = segments.length - 1; i >= 0; i--) {
+                segments[i].lock.unlockWrite(stamps[i]);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    /** Writes [keyLength][valueLength][key][value] into this thread's scratch buffer */
+    private ByteBuffer encode(K key, V value) {
+        int keyLength = keyCodec.encodedSize(key);
+        int valueLength = value == null ? 0 : valueCodec.encodedSize(value);
+        int needed = RECORD_HEADER + keyLength + valueLength;
+        ByteBuffer scratch = SCRATCH.get();
+        if (scratch.capacity() < needed) {
+            scratch = ByteBuffer.allocate(Integer.highestOneBit(needed) << 1);
+            SCRATCH.set(scratch);
+        }
+        scratch.clear();
+        scratch.putInt(keyLength).putInt(valueLength);
+        keyCodec.encode(key, scratch);
+        if (value != null) {
+            valueCodec.encode(value, scratch);
+        }
+        if (scratch.position() != needed) {
+            throw new IllegalStateException("Codec wrote " + (scratch.position() - RECORD_HEADER)
+                    + " bytes but declared " + (keyLength + valueLength));
+        }
+        return scratch;
+    }
+
+    /** 64-bit hash of encoded key bytes; the same bytes give the same hash in heap and native buffers */
+    static long hash(ByteBuffer buffer, int offset, int length) {
+        long h = 0x9E3779B97F4A7C15L ^ length;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            h = Long.rotateLeft(h ^ buffer.getLong(offset + i) * 0xBF58476D1CE4E5B9L, 27) * 0x94D049BB133111EBL;
+        }
+        for (; i < length; i++) {
+            h = (h ^ buffer.get(offset + i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 31;
+        h *= 0x7FB5D329728EA185L;
+        h ^= h >>> 27;
+        h *= 0x81DADEF4BC2DD44DL;
+        return h ^ (h >>> 33);
+    }
+
+    private static int chunkOf(long ref) {
+        return (int) ((ref >>> 30) & CHUNK_MASK);
+    }
+
+    private static int offsetOf(long ref) {
+        return (int) (ref & OFFSET_MASK);
+    }
+
+    private static long tagOf(long hash) {
+        return (hash >>> 28) & 0xFFFFFFL; // bits used neither for the segment nor for the slot
+    }
+
+    // ===========================================
+    // SEGMENT: ONE LOCK, ONE INDEX, ITS OWN CHUNKS
+    // ===========================================
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        ByteBuffer index;                        // capacity * 8 bytes; 0 = empty slot
+        int capacity;
+        int size;
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        int writeOffset;                         // next free byte in the last chunk
+        long liveBytes;
+        long garbageBytes;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.index = ByteBuffer.allocateDirect(capacity * 8);
+        }
+
+        private long ref(int slot) {
+            return index.getLong(slot << 3);
+        }
+
+        private int homeSlot(long hash, int mask) {
+            return (int) hash & mask;
+        }
+
+        /** Slot holding the key, or -1 */
+        long find(long hash, ByteBuffer key, int keyLength) {
+            int mask = capacity - 1;
+            long tag = tagOf(hash);
+            for (int i = homeSlot(hash, mask); ; i = (i + 1) & mask) {
+                long ref = ref(i);
+                if (ref == 0) {
+                    return -1;
+                }
+                if ((ref >>> TAG_SHIFT) == tag && keyEquals(ref, key, keyLength)) {
+                    return i;
+                }
+            }
+        }
+
+        private boolean keyEquals(long ref, ByteBuffer key, int keyLength) {
+            ByteBuffer chunk = chunks.get(chunkOf(ref));
+            int offset = offsetOf(ref);
+            if (chunk.getInt(offset) != keyLength) {
+                return false;
+            }
+            int stored = offset + RECORD_HEADER;
+            int i = 0;
+            for (; i + 8 <= keyLength; i += 8) {
+                if (chunk.getLong(stored + i) != key.getLong(RECORD_HEADER + i)) {
+                    return false;
+                }
+            }
+            for (; i < keyLength; i++) {
+                if (chunk.get(stored + i) != key.get(RECORD_HEADER + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean put(long hash, ByteBuffer record) {
+            int keyLength = record.getInt(0);
+            int valueLength = record.getInt(4);
+            long slot = find(hash, record, keyLength);
+            if (slot >= 0) {
+                long ref = ref((int) slot);
+                ByteBuffer chunk = chunks.get(chunkOf(ref));
+                int offset = offsetOf(ref);
+                int oldValueLength = chunk.getInt(offset + 4);
+                if (oldValueLength == valueLength) {
+                    // Same size: overwrite the value bytes in place, no garbage
+                    chunk.put(offset + RECORD_HEADER + keyLength, record.array(),
+                            RECORD_HEADER + keyLength, valueLength);
+                    return false;
+                }
+                long oldSize = RECORD_HEADER + keyLength + oldValueLength;
+                garbageBytes += oldSize;
+                liveBytes -= oldSize;
+                index.putLong((int) slot << 3, append(hash, record));
+                maybeCompact();
+                return false;
+            }
+            if (size + 1 > capacity * LOAD_FACTOR) {
+                resizeIndex();
+            }
+            long ref = append(hash, record);
+            int mask = capacity - 1;
+            int i = homeSlot(hash, mask);
+            while (ref(i) != 0) {
+                i = (i + 1) & mask;
+            }
+            index.putLong(i << 3, ref);
+            size++;
+            return true;
+        }
+
+        /** Appends the record to the data chunks and returns its packed index reference */
+        private long append(long hash, ByteBuffer record) {
+            int length = record.position();
+            ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (chunk == null || chunk.capacity() - writeOffset < length) {
+                int chunkSize = chunk == null ? MIN_CHUNK : Math.min(MAX_CHUNK, chunk.capacity() * 2);
+                while (chunkSize < length + 8) {
+                    chunkSize <<= 1;
+                    if (chunkSize <= 0 || chunkSize > (int) OFFSET_MASK) {
+                        throw new IllegalArgumentException("Record too large: " + length + " bytes");
+                    }
+                }
+                if (chunks.size() > CHUNK_MASK) {
+                    throw new IllegalStateException("Segment is full: " + chunks.size() + " chunks");
+                }
+                chunk = ByteBuffer.allocateDirect(chunkSize);
+                chunks.add(chunk);
+                writeOffset = 8; // offset 0 in chunk 0 would pack to an empty-looking reference
+            }
+            int offset = writeOffset;
+            chunk.put(offset, record.array(), 0, length);
+            writeOffset += length;
+            liveBytes += length;
+            return (tagOf(hash) << TAG_SHIFT) | ((long) (chunks.size() - 1) << 30) | offset;
+        }
+
+        boolean remove(long hash, ByteBuffer key, int keyLength) {
+            long found = find(hash, key, keyLength);
+            if (found < 0) {
+                return false;
+            }
+            int hole = (int) found;
+            long removed = ref(hole);
+            ByteBuffer chunk = chunks.get(chunkOf(removed));
+            long recordSize = RECORD_HEADER + keyLength + chunk.getInt(offsetOf(removed) + 4);
+            garbageBytes += recordSize;
+            liveBytes -= recordSize;
+
+            // Backward-shift deletion, as in OpenHashMap; homes come from the stored key bytes
+            int mask = capacity - 1;
+            for (int i = (hole + 1) & mask; ref(i) != 0; i = (i + 1) & mask) {
+                int home = homeSlot(storedHash(ref(i)), mask);
+                if (hole <= i ? (home <= hole || home > i) : (home <= hole && home > i)) {
+                    index.putLong(hole << 3, ref(i));
+                    hole = i;
+                }
+            }
+            index.putLong(hole << 3, 0L);
+            size--;
+            maybeCompact();
+            return true;
+        }
+
+        private long storedHash(long ref) {
+            ByteBuffer chunk = chunks.get(chunkOf(ref));
+            int offset = offsetOf(ref);
+            return hash(chunk, offset + RECORD_HEADER, chunk.getInt(offset));
+        }
+
+        private void resizeIndex() {
+            if (capacity >= MAX_INDEX_SLOTS) {
+                throw new IllegalStateException("Segment index is full; use more segments");
+            }
+            ByteBuffer old = index;
+            int oldCapacity = capacity;
+            capacity <<= 1;
+            index = ByteBuffer.allocateDirect(capacity * 8);
+            int mask = capacity - 1;
+            for (int j = 0; j < oldCapacity; j++) {
+                long ref = old.getLong(j << 3);
+                if (ref != 0) {
+                    int i = homeSlot(storedHash(ref), mask);
+                    while (ref(i) != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    index.putLong(i << 3, ref);
+                }
+            }
+            NativeMemory.free(old);
+        }
+
+        /** Copies live records into fresh chunks once garbage outweighs live data */
+        private void maybeCompact() {
+            if (garbageBytes < MIN_CHUNK || garbageBytes < liveBytes) {
+                return;
+            }
+            List<ByteBuffer> oldChunks = new ArrayList<>(chunks);
+            chunks.clear();
+            liveBytes = 0;
+            garbageBytes = 0;
+            ByteBuffer record = ByteBuffer.allocate(256);
+            for (int i = 0; i < capacity; i++) {
+                long ref = ref(i);
+                if (ref == 0) {
+                    continue;
+                }
+                ByteBuffer chunk = oldChunks.get(chunkOf(ref));
+                int offset = offsetOf(ref);
+                int length = RECORD_HEADER + chunk.getInt(offset) + chunk.getInt(offset + 4);
+                if (record.capacity() < length) {
+                    record = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+                }
+                record.clear();
+                chunk.get(offset, record.array(), 0, length);
+                record.position(length);
+                long tagged = append(0, record) & ~(0xFFFFFFL << TAG_SHIFT);
+                index.putLong(i << 3, tagged | (ref & (0xFFFFFFL << TAG_SHIFT)));
+            }
+            for (ByteBuffer chunk : oldChunks) {
+                NativeMemory.free(chunk);
+            }
+        }
+
+        long reservedBytes() {
+            long total = index == null ? 0 : index.capacity();
+            for (ByteBuffer chunk : chunks) {
+                total += chunk.capacity();
+            }
+            return total;
+        }
+
+        void release() {
+            NativeMemory.free(index);
+            for (ByteBuffer chunk : chunks) {
+                NativeMemory.free(chunk);
+            }
+            index = null;
+            chunks.clear();
+            size = 0;
+        }
+    }
+
+    // ===========================================
+    // EXAMPLES AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== OFF-HEAP HASH MAP ===\n");
+
+        long n = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+
+        basicExample();
+        concurrentExample();
+        footprintBenchmark(n);
+    }
+
+    public static void basicExample() {
+        System.out.println("1. VARIABLE-SIZE KEYS AND VALUES");
+        System.out.println("================================");
+
+        OffHeapHashMap<String, String> cities = new OffHeapHashMap<>(ByteCodec.STRING, ByteCodec.STRING);
+        cities.put("IN", "New Delhi");
+        cities.put("FR", "Paris");
+        cities.put("JP", "Tokyo");
+        cities.put("FR", "Paris, France"); // larger value: appended, old record becomes garbage
+        cities.remove("JP");
+        System.out.println("IN -> " + cities.get("IN") + ", FR -> " + cities.get("FR")
+                + ", JP -> " + cities.get("JP"));
+        System.out.println("Size: " + cities.size() + ", native bytes: " + cities.offHeapBytes());
+
+        // Values that keep changing size leave garbage behind; compaction reclaims it
+        for (int i = 0; i < 200_000; i++) {
+            cities.put("FR", "Paris" + "!".repeat(i % 40));
+        }
+        System.out.println("After 200,000 resized updates: FR -> " + cities.get("FR").length() + " chars"
+                + ", native bytes: " + cities.offHeapBytes());
+
+        cities.close(); // native memory is released here, not at the next GC
+        try {
+            cities.get("IN");
+        } catch (IllegalStateException e) {
+            System.out.println("After close(): " + e.getMessage());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Four writers on interleaved keys, each checking its own last write.
+     * Segments are locked independently, so this is the striped path.
+     */
+    public static void concurrentExample() throws InterruptedException {
+        System.out.println("2. CONCURRENT ACCESS (64 segments)");
+        System.out.println("==================================");
+
+        int perThread = 250_000;
+        try (OffHeapHashMap<Long, Long> map = new OffHeapHashMap<>(ByteCodec.LONG, ByteCodec.LONG, 0, 64)) {
+            Thread[] writers = new Thread[4];
+            long[] errors = new long[writers.length];
+            for (int t = 0; t < writers.length; t++) {
+                int id = t;
+                writers[t] = new Thread(() -> {
+                    for (long i = 0; i < perThread; i++) {
+                        long key = i * writers.length + id;
+                        map.put(key, key * 10);
+                        if (i % 3 == 0) {
+                            map.remove(key - writers.length * 2L); // churn: makes garbage and compactions
+                        }
+                        Long read = map.get(key);
+                        if (read == null || read != key * 10) {
+                            errors[id]++;
+                        }
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            long expected = 0;
+            for (long key = 0; key < (long) perThread * writers.length; key++) {
+                Long value = map.get(key);
+                if (value != null) {
+                    expected++;
+                    if (value != key * 10) {
+                        errors[0]++;
+                    }
+                }
+            }
+            System.out.println("Entries: " + map.size() + " (found by scan: " + expected + "), errors: "
+                    + Arrays.stream(errors).sum());
+        }
+        System.out.println();
+    }
+
+    public static void footprintBenchmark(long n) {
+        String title = String.format("3. HEAP AND GC COST AT %,d ENTRIES", n);
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+
+        long heapBefore = usedHeap();
+        long gcBefore = gcMillis();
+        long t0 = System.nanoTime();
+        OffHeapHashMap<Long, Long> map = new OffHeapHashMap<>(ByteCodec.LONG, ByteCodec.LONG, n, 256);
+        for (long i = 0; i < n; i++) {
+            map.put(i * 0x9E3779B9L, i);
+        }
+        long fillMs = (System.nanoTime() - t0) / 1_000_000;
+        long gcFill = gcMillis() - gcBefore;
+        long heap = usedHeap() - heapBefore;
+        long gcFull = timedFullGc();
+        System.out.printf("%-22s %12s %10s %10s %14s %14s%n",
+                "MAP", "entries", "fill ms", "GC ms", "heap MB", "native MB");
+        System.out.printf("%-22s %,12d %,10d %,10d %,14.1f %,14.1f%n", "OffHeapHashMap", map.size(),
+                fillMs, gcFill, heap / 1048576.0, map.offHeapBytes() / 1048576.0);
+        System.out.printf("  full GC with the map alive: %,d ms%n", gcFull);
+        Random random = new Random(1);
+        long hits = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < 1_000_000; i++) {
+            long k = (long) (random.nextDouble() * n);
+            hits += map.get(k * 0x9E3779B9L) == k ? 1 : 0;
+        }
+        System.out.printf("  1M random gets: %,d ms, %,d hits%n", (System.nanoTime() - t0) / 1_000_000, hits);
+        map.close();
+
+        // The boxed map is capped so it fits next to the JVM's default heap sizes
+        long boxedN = Math.min(n, 10_000_000L);
+        heapBefore = usedHeap();
+        gcBefore = gcMillis();
+        t0 = System.nanoTime();
+        Map<Long, Long> boxed = new HashMap<>();
+        for (long i = 0; i < boxedN; i++) {
+            boxed.put(i * 0x9E3779B9L, i);
+        }
+        fillMs = (System.nanoTime() - t0) / 1_000_000;
+        gcFill = gcMillis() - gcBefore;
+        heap = usedHeap() - heapBefore;
+        gcFull = timedFullGc();
+        System.out.printf("%-22s %,12d %,10d %,10d %,14.1f %14s%n", "HashMap<Long,Long>", boxed.size(),
+                fillMs, gcFill, heap / 1048576.0, "-");
+        System.out.printf("  full GC with the map alive: %,d ms%n", gcFull);
+        java.lang.ref.Reference.reachabilityFence(boxed);
+        System.out.println();
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long timedFullGc() {
+        long t0 = System.nanoTime();
+        System.gc();
+        return (System.nanoTime() - t0) / 1_000_000;
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Serializes keys or values to bytes. encode() writes exactly
+ * encodedSize(value) bytes at the buffer's position; decode() reads
+ * 'length' bytes at an absolute offset without moving any position.
+ */
+interface ByteCodec<T> {
+    int encodedSize(T value);
+
+    void encode(T value, ByteBuffer target);
+
+    T decode(ByteBuffer source, int offset, int length);
+
+    ByteCodec<Long> LONG = new ByteCodec<>() {
+        public int encodedSize(Long value) {
+            return Long.BYTES;
+        }
+
+        public void encode(Long value, ByteBuffer target) {
+            target.putLong(value);
+        }
+
+        public Long decode(ByteBuffer source, int offset, int length) {
+            return source.getLong(offset);
+        }
+    };
+
+    ByteCodec<String> STRING = new ByteCodec<>() {
+        public int encodedSize(String value) {
+            int bytes = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            return bytes;
+        }
+
+        public void encode(String value, ByteBuffer target) {
+            target.put(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public String decode(ByteBuffer source, int offset, int length) {
+            byte[] bytes = new byte[length];
+            source.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    ByteCodec<byte[]> BYTES = new ByteCodec<>() {
+        public int encodedSize(byte[] value) {
+            return value.length;
+        }
+
+        public void encode(byte[] value, ByteBuffer target) {
+            target.put(value);
+        }
+
+        public byte[] decode(ByteBuffer source, int offset, int length) {
+            byte[] bytes = new byte[length];
+            source.get(offset, bytes);
+            return bytes;
+        }
+    };
+}
+
+/**
+ * Releases direct buffers without waiting for the garbage collector.
+ * Java 17 has no public API for this; sun.misc.Unsafe.invokeCleaner (module
+ * jdk.unsupported) is used when present, otherwise the buffer is left to GC.
+ */
+final class NativeMemory {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private NativeMemory() {
+    }
+
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // Fall back to the GC cleaner
+        }
+    }
+}
+
+/*
+ * ===========================================
+ * OFF-HEAP MAP SUMMARY
+ * ===========================================
+ *
+ * 1. WHY OFF-HEAP:
+ *    - GC cost grows with the number of live objects, not just their bytes
+ *    - Native memory holds millions of records as plain bytes: nothing to trace
+ *
+ * 2. LAYOUT:
+ *    - Index: open addressing, 8 bytes per slot (hash tag + chunk + offset)
+ *    - Data: append-only chunks of [keyLen][valueLen][key][value]
+ *    - The hash tag skips most key comparisons on collisions
+ *
+ * 3. CONCURRENCY:
+ *    - Segments with independent StampedLocks (lock striping)
+ *    - close() takes every lock in order before freeing memory
+ *
+ * 4. COSTS:
+ *    - Every get() decodes a copy (for Long values: one boxed Long)
+ *    - Serialization must be deterministic: equal keys -> equal bytes
+ *    - Native memory is not limited by -Xmx; size -XX:MaxDirectMemorySize
+ *
+ * 5. FREEING:
+ *    - Direct buffers are normally freed only when GC finds them unreachable
+ *    - close() frees them at once via invokeCleaner (jdk.unsupported)
+ */
@@ -0,0 +1,688 @@
+import java.lang.ref.Reference;
+import java.util.*;
+
+/**
+ * OPEN-ADDRESSING HASH MAP (LINEAR PROBING + BACKWARD-SHIFT DELETION)
+ * ===================================================================
+ *
+ * HashMapVisualizationDemo draws HashMap as a table of HashMapNode objects
+ * chained through 'next'. Every entry in java.util.HashMap really is such a
+ * node: an object header, hash, key, value and next pointer - about 32 bytes
+ * per entry before the key and value themselves, plus a pointer chase per lookup.
+ *
+ * OpenHashMap drops the nodes entirely:
+ *
+ *   keys:   [ K0 ][    ][ K2 ][ K3 ][    ][ K5 ] ...
+ *   values: [ V0 ][    ][ V2 ][ V3 ][    ][ V5 ] ...
+ *
+ * 1. Keys and values live in two parallel arrays (8 bytes per slot each)
+ * 2. A collision moves on to the NEXT slot (linear probing) - neighbouring
+ *    slots are usually in the same cache line
+ * 3. remove() uses BACKWARD-SHIFT deletion: later entries of the same probe
+ *    run are moved back into the hole, so there are no tombstones and
+ *    lookups never slow down after many removals
+ * 4. The load factor is tunable (default 0.5; up to 0.9)
+ *
+ * It implements the full java.util.Map contract (null keys and values,
+ * views, iterator.remove, equals/hashCode compatible with HashMap).
+ * main() runs a differential contract check against HashMap and a benchmark.
+ */
+
+public class OpenHashMap<K, V> extends AbstractMap<K, V> {
+
+    /** Stands in for the null key, because null in keys[] means "empty slot" */
+    private static final Object NULL_KEY = new Object();
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+    private int modCount;
+    private final float loadFactor;
+
+    public OpenHashMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OpenHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OpenHashMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        }
+        if (!(loadFactor > 0.1f && loadFactor <= 0.9f)) {
+            throw new IllegalArgumentException("Load factor must be in (0.1, 0.9]: " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / loadFactor) + 1);
+        allocate(capacity);
+    }
+
+    public OpenHashMap(Map<? extends K, ? extends V> m) {
+        this(m.size());
+        putAll(m);
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+        if (capacity <= 0) {
+            throw new IllegalStateException("Map too large");
+        }
+        return Math.max(capacity, 2);
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * Spreads the hashCode so that keys with similar hash codes (like small
+     * Integers) do not fill one run of neighbouring slots
+     */
+    private static int mix(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static Object mask(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K unmask(Object key) {
+        return key == NULL_KEY ? null : (K) key;
+    }
+
+    /** Slot holding the key, or -1 */
+    private int indexOf(Object key) {
+        Object k = mask(key);
+        Object[] tab = keys;
+        int m = tab.length - 1;
+        for (int i = mix(k) & m; ; i = (i + 1) & m) {
+            Object cur = tab[i];
+            if (cur == null) {
+                return -1;
+            }
+            if (cur == k || cur.equals(k)) {
+                return i;
+            }
+        }
+    }
+
+    // ===========================================
+    // MAP OPERATIONS
+    // ===========================================
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : (V) values[i];
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        Object k = mask(key);
+        Object[] tab = keys;
+        int m = tab.length - 1;
+        int i = mix(k) & m;
+        for (Object cur; (cur = tab[i]) != null; i = (i + 1) & m) {
+            if (cur == k || cur.equals(k)) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        tab[i] = k;
+        values[i] = value;
+        modCount++;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        removeAt(i, -1, null);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+            modCount++;
+        }
+    }
+
+    private void resize(int newCapacity) {
+        if (newCapacity <= 0) {
+            throw new IllegalStateException("Map too large");
+        }
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        int m = newCapacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = mix(k) & m;
+                while (keys[i] != null) {
+                    i = (i + 1) & m;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Backward-shift deletion. Walks the probe run after the hole and moves
+     * back every entry whose home slot is not between the hole and itself,
+     * so every remaining key stays reachable from its home slot.
+     *
+     * An iterator walking DOWN the table passes its position and a list: an
+     * entry that wraps around from below the position to at-or-above it
+     * would otherwise be skipped, so its key is handed to the iterator.
+     */
+    private void removeAt(int hole, int iteratorPos, ArrayDeque<Object> skipped) {
+        Object[] tab = keys;
+        int m = tab.length - 1;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & m;
+            Object k = tab[i];
+            if (k == null) {
+                break;
+            }
+            int home = mix(k) & m;
+            // Can k move back to 'hole'? Only if home is cyclically outside (hole, i]
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                if (skipped != null && i < iteratorPos && hole >= iteratorPos) {
+                    skipped.add(k);
+                }
+                tab[hole] = k;
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        tab[hole] = null;
+        values[hole] = null;
+        size--;
+        modCount++;
+    }
+
+    // ===========================================
+    // VIEWS
+    // ===========================================
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            public Iterator<Entry<K, V>> iterator() {
+                return new SlotIterator<Entry<K, V>>() {
+                    Entry<K, V> element(int slot) {
+                        return new SlotEntry(slot);
+                    }
+
+                    Entry<K, V> element(Object key) {
+                        return new SimpleEntry<>(unmask(key), OpenHashMap.this.get(unmask(key)));
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
+                Entry<?, ?> e = (Entry<?, ?>) o;
+                int i = indexOf(e.getKey());
+                return i >= 0 && Objects.equals(values[i], e.getValue());
+            }
+
+            public boolean remove(Object o) {
+                if (!contains(o)) {
+                    return false;
+                }
+                OpenHashMap.this.remove(((Entry<?, ?>) o).getKey());
+                return true;
+            }
+
+            public void clear() {
+                OpenHashMap.this.clear();
+            }
+        };
+    }
+
+    /** Live entry backed by a slot, like HashMap's nodes */
+    private final class SlotEntry implements Entry<K, V> {
+        private final K key;
+        private int slot;
+
+        SlotEntry(int slot) {
+            this.key = unmask(keys[slot]);
+            this.slot = slot;
+        }
+
+        /** The entry may have been moved by a later removal; find it again */
+        private int slot() {
+            if (slot >= keys.length || keys[slot] != mask(key)) {
+                slot = indexOf(key);
+                if (slot < 0) {
+                    throw new IllegalStateException("Entry was removed");
+                }
+            }
+            return slot;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) values[slot()];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V setValue(V value) {
+            int i = slot();
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    /**
+     * Walks the table from the last slot down to slot 0. Walking down means a
+     * backward shift can only pull not-yet-visited entries past the cursor in
+     * the wrap-around case, and removeAt() reports exactly those.
+     */
+    private abstract class SlotIterator<E> implements Iterator<E> {
+        private int next;               // next slot to look at (walking down)
+        private int lastSlot = -1;
+        private Object lastKey;
+        private ArrayDeque<Object> skipped;
+        private int expectedModCount = modCount;
+
+        SlotIterator() {
+            next = keys.length - 1;
+            advance();
+        }
+
+        private void advance() {
+            while (next >= 0 && keys[next] == null) {
+                next--;
+            }
+        }
+
+        abstract E element(int slot);
+
+        abstract E element(Object key);
+
+        public boolean hasNext() {
+            return next >= 0 || (skipped != null && !skipped.isEmpty());
+        }
+
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= 0) {
+                lastSlot = next;
+                lastKey = keys[next];
+                next--;
+                advance();
+                return element(lastSlot);
+            }
+            if (skipped != null && !skipped.isEmpty()) {
+                lastSlot = -1;
+                lastKey = skipped.poll();
+                return element(lastKey);
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (lastSlot >= 0) {
+                if (skipped == null) {
+                    skipped = new ArrayDeque<>();
+                }
+                removeAt(lastSlot, lastSlot, skipped);
+                // An entry may have been shifted into lastSlot from above: already visited
+                next = Math.min(next, lastSlot - 1);
+                advance();
+            } else {
+                OpenHashMap.this.remove(unmask(lastKey));
+            }
+            lastKey = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            public Iterator<K> iterator() {
+                return new SlotIterator<K>() {
+                    K element(int slot) {
+                        return unmask(keys[slot]);
+                    }
+
+                    K element(Object key) {
+                        return unmask(key);
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            public boolean remove(Object o) {
+                int i = indexOf(o);
+                if (i < 0) {
+                    return false;
+                }
+                removeAt(i, -1, null);
+                return true;
+            }
+
+            public void clear() {
+                OpenHashMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @SuppressWarnings("unchecked")
+                    V element(int slot) {
+                        return (V) values[slot];
+                    }
+
+                    V element(Object key) {
+                        return OpenHashMap.this.get(unmask(key));
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public boolean contains(Object o) {
+                return containsValue(o);
+            }
+
+            public void clear() {
+                OpenHashMap.this.clear();
+            }
+        };
+    }
+
+    /** Longest probe distance from a key's home slot - a quick health check */
+    public int maxProbeLength() {
+        int max = 0;
+        int m = keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                max = Math.max(max, (i - (mix(keys[i]) & m)) & m);
+            }
+        }
+        return max;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    // ===========================================
+    // CONTRACT CHECK AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) {
+        System.out.println("=== OPEN-ADDRESSING HASH MAP ===\n");
+
+        basicExample();
+        contractCheck();
+        benchmark();
+    }
+
+    public static void basicExample() {
+        System.out.println("1. BASIC USAGE");
+        System.out.println("==============");
+
+        OpenHashMap<String, Integer> marks = new OpenHashMap<>();
+        marks.put("Alice", 95);
+        marks.put("Bob", 87);
+        marks.put("Charlie", 92);
+        marks.put(null, 0);
+        marks.remove("Bob");
+        System.out.println("Map: " + marks);
+        System.out.println("Equal to HashMap with same entries: "
+                + marks.equals(new HashMap<>(Map.of("Alice", 95, "Charlie", 92)) {{ put(null, 0); }}));
+        System.out.println("Capacity: " + marks.capacity() + ", max probe length: " + marks.maxProbeLength());
+        System.out.println();
+    }
+
+    /**
+     * Differential test: the same random operations on OpenHashMap and
+     * HashMap must always give the same answers. Small key ranges and a
+     * small table force long probe runs, wrap-around and many shifts.
+     */
+    public static void contractCheck() {
+        System.out.println("2. MAP CONTRACT CHECK (vs java.util.HashMap)");
+        System.out.println("============================================");
+
+        Random random = new Random(7);
+        int checks = 0;
+        for (int round = 0; round < 200; round++) {
+            OpenHashMap<Integer, Integer> open = new OpenHashMap<>(4, 0.9f);
+            Map<Integer, Integer> reference = new HashMap<>();
+            for (int op = 0; op < 2_000; op++) {
+                Integer key = random.nextInt(10) == 0 ? null : random.nextInt(64);
+                Integer value = random.nextInt(10) == 0 ? null : random.nextInt(1000);
+                switch (random.nextInt(6)) {
+                    case 0, 1 -> check(Objects.equals(open.put(key, value), reference.put(key, value)), "put");
+                    case 2 -> check(Objects.equals(open.remove(key), reference.remove(key)), "remove");
+                    case 3 -> check(open.containsKey(key) == reference.containsKey(key), "containsKey");
+                    case 4 -> {
+                        // iterator.remove of every entry matching a predicate
+                        int cut = random.nextInt(64);
+                        open.entrySet().removeIf(e -> e.getKey() != null && e.getKey() < cut);
+                        reference.entrySet().removeIf(e -> e.getKey() != null && e.getKey() < cut);
+                    }
+                    default -> {
+                        for (Entry<Integer, Integer> e : open.entrySet()) {
+                            if (e.getKey() != null && e.getKey() % 7 == 0) {
+                                e.setValue(-1);
+                            }
+                        }
+                        reference.replaceAll((k, v) -> k != null && k % 7 == 0 ? Integer.valueOf(-1) : v);
+                    }
+                }
+                check(open.size() == reference.size(), "size");
+                checks++;
+            }
+            check(open.equals(reference) && reference.equals(open), "equals");
+            check(open.hashCode() == reference.hashCode(), "hashCode");
+            check(open.keySet().equals(reference.keySet()), "keySet");
+            check(new ArrayList<>(open.values()).containsAll(reference.values()), "values");
+        }
+        System.out.println("All " + checks + " operations matched HashMap.\n");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError("Map contract violated: " + what);
+        }
+    }
+
+    /**
+     * put / get / iterate on 1M Integer keys, plus heap bytes per entry
+     */
+    public static void benchmark() {
+        System.out.println("3. BENCHMARK (1,000,000 Integer keys)");
+        System.out.println("=====================================");
+
+        int n = 1_000_000;
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i * 7919; // boxed up front so both maps share the same key objects
+        }
+        for (int round = 0; round < 3; round++) { // first rounds are warm-up
+            String[] lines = {
+                    run("HashMap", new HashMap<>(), keys),
+                    run("OpenHashMap(0.5)", new OpenHashMap<>(), keys),
+                    run("OpenHashMap(0.75)", new OpenHashMap<>(16, 0.75f), keys)
+            };
+            if (round == 2) {
+                System.out.printf("%-18s %10s %10s %10s %14s%n", "MAP", "put ms", "get ms", "iter ms", "bytes/entry");
+                for (String line : lines) {
+                    System.out.println(line);
+                }
+            }
+        }
+        System.out.println("(bytes/entry = map structure only; the shared key and value objects are not counted)\n");
+    }
+
+    private static String run(String name, Map<Integer, Integer> map, Integer[] keys) {
+        long before = usedHeap();
+        long t0 = System.nanoTime();
+        for (Integer key : keys) {
+            map.put(key, key);
+        }
+        long t1 = System.nanoTime();
+        long sum = 0;
+        for (Integer key : keys) {
+            sum += map.get(key);
+        }
+        long t2 = System.nanoTime();
+        for (Entry<Integer, Integer> e : map.entrySet()) {
+            sum += e.getValue();
+        }
+        long t3 = System.nanoTime();
+        long bytes = usedHeap() - before;
+        Reference.reachabilityFence(map); // keep the map alive while the heap is measured
+        if (sum == 42) {
+            System.out.println(); // keeps the loops from being optimized away
+        }
+        return String.format("%-18s %,10d %,10d %,10d %,14.1f", name,
+                (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000,
+                (double) bytes / keys.length);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
+
+/*
+ * ===========================================
+ * OPEN ADDRESSING SUMMARY
+ * ===========================================
+ *
+ * 1. CHAINING (java.util.HashMap) vs OPEN ADDRESSING (OpenHashMap):
+ *    - Chaining: table of pointers to Node objects, ~32+ bytes per entry
+ *    - Open addressing: entries live in the table itself, 2 references per slot
+ *
+ * 2. LINEAR PROBING:
+ *    - On collision try slot+1, slot+2, ... (cache friendly)
+ *    - Needs a good hash spread (mix()) and a load factor well below 1
+ *
+ * 3. BACKWARD-SHIFT DELETION:
+ *    - Removing from a probe run would break lookups of later keys
+ *    - Instead of tombstones, later keys are moved back into the hole
+ *    - The table never degrades after many put/remove cycles
+ *
+ * 4. LOAD FACTOR TRADE-OFF:
+ *    - 0.5: short probes, 2x slots per entry
+ *    - 0.75-0.9: less memory, longer probe runs on misses
+ *
+ * 5. CAVEATS:
+ *    - Not thread-safe (like HashMap)
+ *    - A bad hashCode() hurts more than with chaining (no treeification)
+ */
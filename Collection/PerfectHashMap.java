@@ -0,0 +1,660 @@
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.*;
+
+/**
+ * MINIMAL PERFECT HASH MAP FOR FIXED STRING KEYS
+ * ==============================================
+ *
+ * hmap.java's capitalCities and EnumMapDemo's error-message and config tables
+ * are filled once and then only read. A HashMap still pays for the general
+ * case: a Node per entry, collision chains, and a table that is up to 25%
+ * empty. When the key set is known up front we can do better:
+ *
+ * A MINIMAL PERFECT HASH sends each of the n keys to a different slot in
+ * 0..n-1, so the map is one dense array and a tiny hash description.
+ *
+ * 1. BUILD (CHD/PTHash style "hash and displace"):
+ *      key --hash--> bucket b (about 5 keys per bucket, skewed so that
+ *                    60% of the keys share 30% of the buckets)
+ *      buckets are placed largest first; for each, try pilot = 0, 1, 2, ...
+ *      until every key of the bucket lands on a free slot:
+ *          slot = mix(hash ^ pilot * C) mod m
+ *    m is n / 0.99, so the last buckets still find room quickly; the few
+ *    slots that land at or beyond n are remapped to the holes below n.
+ *
+ * 2. STORE: one pilot per bucket. Pilots repeat a lot, so each bucket
+ *    keeps a small index into a dictionary of distinct pilots, bit-packed
+ *    at the minimum width - about 3 bits per key for large key sets.
+ *
+ * 3. LOOKUP - exactly one probe:
+ *      hash -> bucket -> pilot -> slot -> key at slot equals? its value : null
+ *    Keys and values are interleaved in one array, so the key check and the
+ *    value read share a cache line.
+ *
+ * The keys are stored too, because a perfect hash maps EVERY string to some
+ * slot; the equality check is what rejects keys that were never added.
+ * String.hashCode() is reused when it has no collisions in the key set;
+ * it is only 32 bits, though, and a million keys already contain ~100
+ * colliding pairs no pilot could separate - those sets use a 64-bit hash.
+ */
+
+public final class PerfectHashMap<V> extends AbstractMap<String, V> {
+
+    private static final double LOAD_FACTOR = 0.99;
+    private static final double KEYS_PER_BUCKET = 5.0;
+    private static final long PILOT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final int MAX_PILOT = 1 << 20;
+    private static final int MAX_SEEDS = 64;
+    private static final long DENSE_KEYS = 0x99999999L;    // 0.6 * 2^32
+    private static final long DENSE_SCALE = 0x1AAAAAAAAL;  // 2^32 / 0.6
+
+    private final Object[] table;   // key0, value0, key1, value1, ... - one cache line per probe
+    private final int size;
+    private final long seed;
+    private final boolean wideHash;  // false: derived from the (cached) String.hashCode()
+    private final int buckets;
+    private final int slots;        // m >= n: positions before remapping
+    private final PackedInts pilotIds;
+    private final int[] pilots;     // dictionary of distinct pilot values
+    private final int[] remap;      // slot n + i -> free slot remap[i] < n
+
+    private PerfectHashMap(Object[] table, long seed, boolean wideHash, int buckets, int slots,
+                           PackedInts pilotIds, int[] pilots, int[] remap) {
+        this.table = table;
+        this.size = table.length >> 1;
+        this.seed = seed;
+        this.wideHash = wideHash;
+        this.buckets = buckets;
+        this.slots = slots;
+        this.pilotIds = pilotIds;
+        this.pilots = pilots;
+        this.remap = remap;
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /** Like Map.copyOf: no null keys or values */
+    public static <V> PerfectHashMap<V> copyOf(Map<String, ? extends V> map) {
+        Builder<V> builder = new Builder<>();
+        map.forEach(builder::put);
+        return builder.build();
+    }
+
+    // ===========================================
+    // LOOKUP
+    // ===========================================
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (!(key instanceof String) || size == 0) {
+            return null;
+        }
+        int slot = slotOf((String) key) << 1;
+        return key.equals(table[slot]) ? (V) table[slot + 1] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /** The key's index in 0..n-1; arbitrary (but in range) for keys not in the map, -1 if the map is empty */
+    public int indexOf(String key) {
+        if (size == 0) {
+            return -1; // no slots: position() would still return 0
+        }
+        return slotOf(key);
+    }
+
+    private int slotOf(String key) {
+        long h = hash(key, seed, wideHash);
+        int pilot = pilots[(int) pilotIds.get(bucketOf(h, buckets))];
+        int slot = position(h, pilot, slots);
+        return slot < size ? slot : remap[slot - size];
+    }
+
+    // ===========================================
+    // HASHING
+    // ===========================================
+
+    /**
+     * String.hashCode() is computed once per String instance and cached, so
+     * when it already tells the keys apart it is the cheapest 64-bit seed
+     * source. Only key sets with 32-bit collisions pay for the wide hash.
+     */
+    static long hash(String key, long seed, boolean wideHash) {
+        return wideHash ? wideHash(key, seed) : mix(seed * PILOT_MULTIPLIER + key.hashCode());
+    }
+
+    /**
+     * 64-bit seeded string hash. Even and odd characters go to two independent
+     * lanes so the multiplies overlap, then a murmur3 finalizer mixes them.
+     */
+    static long wideHash(String key, long seed) {
+        int length = key.length();
+        long a = seed ^ (length * PILOT_MULTIPLIER);
+        long b = ~seed;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            a = (a ^ key.charAt(i)) * 0x100000001B3L;
+            b = (b ^ key.charAt(i + 1)) * 0xC2B2AE3D27D4EB4FL;
+        }
+        if (i < length) {
+            a = (a ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(a ^ Long.rotateLeft(b, 31));
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Skewed bucket choice (from PTHash): 60% of the keys share the first 30%
+     * of the buckets. The big buckets are placed first, while the table is
+     * still empty, which leaves more room for the many small ones.
+     * Multiply-shift maps a 32-bit value onto a range without a division.
+     */
+    private static int bucketOf(long h, int buckets) {
+        long x = h & 0xFFFFFFFFL;
+        int dense = denseBuckets(buckets);
+        if (x < DENSE_KEYS) {
+            return (int) ((((x * DENSE_SCALE) >>> 32) * dense) >>> 32);
+        }
+        return dense + (int) (((h >>> 32) * (buckets - dense)) >>> 32);
+    }
+
+    private static int denseBuckets(int buckets) {
+        return (int) ((buckets * 3L) / 10);
+    }
+
+    private static int position(long h, int pilot, int slots) {
+        long x = mix(h ^ (pilot * PILOT_MULTIPLIER));
+        return (int) (((x >>> 32) * slots) >>> 32);
+    }
+
+    // ===========================================
+    // MAP VIEWS
+    // ===========================================
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            public int size() {
+                return size;
+            }
+
+            public Iterator<Entry<String, V>> iterator() {
+                return new Iterator<Entry<String, V>>() {
+                    private int index;
+
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    public Entry<String, V> next() {
+                        if (index >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = index++ << 1;
+                        return new SimpleImmutableEntry<>((String) table[i], (V) table[i + 1]);
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public V put(String key, V value) {
+        throw new UnsupportedOperationException("PerfectHashMap is immutable");
+    }
+
+    @Override
+    public V remove(Object key) {
+        throw new UnsupportedOperationException("PerfectHashMap is immutable");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("PerfectHashMap is immutable");
+    }
+
+    /** Bits spent on the hash function itself (pilot ids, dictionary, remap table) per key */
+    public double bitsPerKey() {
+        if (size == 0) {
+            return 0;
+        }
+        long bits = pilotIds.sizeInBits() + 32L * pilots.length + 32L * remap.length;
+        return (double) bits / size;
+    }
+
+    public String describe() {
+        return String.format("%,d keys, %,d buckets, %,d slots, %,d distinct pilots (%d-bit ids), "
+                        + "%,d remapped slots, seed #%d, %s hash -> %.2f bits/key",
+                size, buckets, slots, pilots.length, pilotIds.width(), remap.length,
+                seed, wideHash ? "wide" : "hashCode", bitsPerKey());
+    }
+
+    // ===========================================
+    // BUILDER
+    // ===========================================
+
+    /**
+     * Collects the fixed key set, then builds the frozen map. Duplicate keys
+     * and null keys or values are rejected, as with Map.of.
+     */
+    public static final class Builder<V> {
+        private final Map<String, V> entries = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder<V> put(String key, V value) {
+            Objects.requireNonNull(key, "key");
+            Objects.requireNonNull(value, "value");
+            if (entries.putIfAbsent(key, value) != null) {
+                throw new IllegalArgumentException("duplicate key: " + key);
+            }
+            return this;
+        }
+
+        public PerfectHashMap<V> build() {
+            int n = entries.size();
+            String[] inputKeys = entries.keySet().toArray(new String[0]);
+            if (n == 0) {
+                return new PerfectHashMap<>(new Object[0], 0, false, 1, 0,
+                        new PackedInts(1, 1), new int[] {0}, new int[0]);
+            }
+            boolean wideHash = hashCodesCollide(inputKeys);
+            for (long seed = 0; seed < MAX_SEEDS; seed++) {
+                PerfectHashMap<V> map = tryBuild(inputKeys, seed, wideHash);
+                if (map != null) {
+                    return map;
+                }
+            }
+            throw new IllegalStateException("No perfect hash found after " + MAX_SEEDS + " seeds");
+        }
+
+        private static boolean hashCodesCollide(String[] keys) {
+            int[] codes = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                codes[i] = keys[i].hashCode();
+            }
+            Arrays.sort(codes);
+            for (int i = 1; i < codes.length; i++) {
+                if (codes[i] == codes[i - 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private PerfectHashMap<V> tryBuild(String[] inputKeys, long seed, boolean wideHash) {
+            int n = inputKeys.length;
+            int slots = Math.max(n, (int) Math.ceil(n / LOAD_FACTOR));
+            int buckets = Math.max(1, (int) Math.ceil(n / KEYS_PER_BUCKET));
+
+            // 1. Hash every key once and group the keys by bucket (counting sort)
+            long[] hashes = new long[n];
+            int[] bucketStart = new int[buckets + 1];
+            for (int i = 0; i < n; i++) {
+                hashes[i] = hash(inputKeys[i], seed, wideHash);
+                bucketStart[bucketOf(hashes[i], buckets) + 1]++;
+            }
+            for (int b = 0; b < buckets; b++) {
+                bucketStart[b + 1] += bucketStart[b];
+            }
+            int[] fill = Arrays.copyOf(bucketStart, buckets);
+            Object[] inputValues = entries.values().toArray();
+            long[] grouped = new long[n];
+            int[] groupedKey = new int[n];
+            for (int i = 0; i < n; i++) {
+                int b = bucketOf(hashes[i], buckets);
+                grouped[fill[b]] = hashes[i];
+                groupedKey[fill[b]++] = i;
+            }
+
+            // 2. Largest buckets first: they need the most free slots at once
+            int maxBucket = 0;
+            for (int b = 0; b < buckets; b++) {
+                maxBucket = Math.max(maxBucket, bucketStart[b + 1] - bucketStart[b]);
+            }
+            int[] order = new int[buckets];
+            int[] sizeStart = new int[maxBucket + 2];
+            for (int b = 0; b < buckets; b++) {
+                sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+            }
+            for (int s = 0; s <= maxBucket; s++) {
+                sizeStart[s + 1] += sizeStart[s];
+            }
+            for (int b = 0; b < buckets; b++) {
+                order[sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+            }
+
+            // 3. Find a pilot per bucket that places all of its keys on free slots
+            BitSet taken = new BitSet(slots);
+            int[] slotKey = new int[slots];
+            int[] bucketPilot = new int[buckets];
+            int[] placed = new int[maxBucket];
+            for (int b : order) {
+                int from = bucketStart[b];
+                int count = bucketStart[b + 1] - from;
+                if (count == 0) {
+                    continue;
+                }
+                int pilot = 0;
+                search:
+                for (; pilot < MAX_PILOT; pilot++) {
+                    for (int j = 0; j < count; j++) {
+                        int slot = position(grouped[from + j], pilot, slots);
+                        if (taken.get(slot)) {
+                            continue search;
+                        }
+                        for (int k = 0; k < j; k++) {
+                            if (placed[k] == slot) {
+                                continue search; // two keys of this bucket collide with each other
+                            }
+                        }
+                        placed[j] = slot;
+                    }
+                    break;
+                }
+                if (pilot == MAX_PILOT) {
+                    return null; // e.g. two keys with the same 64-bit hash: try another seed
+                }
+                bucketPilot[b] = pilot;
+                for (int j = 0; j < count; j++) {
+                    taken.set(placed[j]);
+                    slotKey[placed[j]] = groupedKey[from + j];
+                }
+            }
+
+            // 4. Make it minimal: slots >= n move into the holes below n
+            int[] remap = new int[slots - n];
+            Object[] table = new Object[2 * n];
+            int hole = taken.nextClearBit(0);
+            for (int slot = 0; slot < slots; slot++) {
+                if (!taken.get(slot)) {
+                    continue;
+                }
+                int target = slot;
+                if (slot >= n) {
+                    target = hole;
+                    remap[slot - n] = hole;
+                    hole = taken.nextClearBit(hole + 1);
+                }
+                table[2 * target] = inputKeys[slotKey[slot]];
+                table[2 * target + 1] = inputValues[slotKey[slot]];
+            }
+
+            // 5. Compress the pilots: most frequent first, so dictionary ids stay small
+            Map<Integer, Integer> frequency = new HashMap<>();
+            for (int pilot : bucketPilot) {
+                frequency.merge(pilot, 1, Integer::sum);
+            }
+            Integer[] distinct = frequency.keySet().toArray(new Integer[0]);
+            Arrays.sort(distinct, (a, b) -> frequency.get(b) - frequency.get(a));
+            int[] dictionary = new int[distinct.length];
+            Map<Integer, Integer> idOf = new HashMap<>();
+            for (int i = 0; i < distinct.length; i++) {
+                dictionary[i] = distinct[i];
+                idOf.put(distinct[i], i);
+            }
+            int width = Math.max(1, 32 - Integer.numberOfLeadingZeros(dictionary.length - 1));
+            PackedInts ids = new PackedInts(buckets, width);
+            for (int b = 0; b < buckets; b++) {
+                ids.set(b, idOf.get(bucketPilot[b]));
+            }
+            return new PerfectHashMap<>(table, seed, wideHash, buckets, slots, ids, dictionary, remap);
+        }
+    }
+
+    // ===========================================
+    // DEMO AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) {
+        System.out.println("=== MINIMAL PERFECT HASH MAP ===\n");
+
+        readOnlyTables();
+        correctnessCheck();
+        benchmark("3", 10_000);   // fits in cache: hashing cost dominates
+        benchmark("4", args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000); // cache misses dominate
+    }
+
+    public static void readOnlyTables() {
+        System.out.println("1. THE TUTORIAL'S READ-ONLY TABLES");
+        System.out.println("==================================");
+
+        // hmap.java's capitalCities, with a few more entries
+        PerfectHashMap<String> capitalCities = PerfectHashMap.<String>builder()
+                .put("Eng", "LD").put("IND", "DHL").put("FRA", "PAR")
+                .put("GER", "BER").put("JPN", "TYO").put("USA", "WAS")
+                .build();
+        System.out.println("capitalCities: " + capitalCities);
+        System.out.println("  get(\"IND\") = " + capitalCities.get("IND")
+                + ", get(\"XYZ\") = " + capitalCities.get("XYZ"));
+        System.out.println("  " + capitalCities.describe());
+
+        // EnumMapDemo's error-message table, keyed by the code's name (e.g. from a config file)
+        Map<String, String> errorMessages = new LinkedHashMap<>();
+        errorMessages.put("SUCCESS", "Operation completed successfully");
+        errorMessages.put("NOT_FOUND", "Resource not found");
+        errorMessages.put("UNAUTHORIZED", "Access denied");
+        errorMessages.put("SERVER_ERROR", "Internal server error");
+        PerfectHashMap<String> frozen = PerfectHashMap.copyOf(errorMessages);
+        System.out.println("errorMessages: slot of each key:");
+        for (String code : errorMessages.keySet()) {
+            System.out.printf("  %-13s -> slot %d -> %s%n", code, frozen.indexOf(code), frozen.get(code));
+        }
+        System.out.println("(tables this small still read one slot; with enum keys, EnumMap");
+        System.out.println(" is already a perfect hash - ordinal() - and remains the better choice)\n");
+    }
+
+    public static void correctnessCheck() {
+        System.out.println("2. CORRECTNESS CHECK");
+        System.out.println("====================");
+
+        Random random = new Random(42);
+        for (int n : new int[] {1, 2, 3, 10, 100, 1_000, 50_000}) {
+            Map<String, Integer> reference = new HashMap<>();
+            while (reference.size() < n) {
+                reference.put(Long.toString(random.nextLong(), 36), reference.size());
+            }
+            PerfectHashMap<Integer> map = PerfectHashMap.copyOf(reference);
+            check(map.size() == n, "size " + n);
+            check(map.equals(reference) && reference.equals(map), "equals for n=" + n);
+            BitSet used = new BitSet();
+            for (Entry<String, Integer> e : reference.entrySet()) {
+                check(e.getValue().equals(map.get(e.getKey())), "get " + e.getKey());
+                check(!used.get(map.indexOf(e.getKey())), "index collision");
+                used.set(map.indexOf(e.getKey()));
+            }
+            check(used.cardinality() == n && used.length() == n, "indexes are exactly 0..n-1");
+            for (int i = 0; i < 1_000; i++) {
+                String absent = "absent-" + random.nextInt();
+                check(map.get(absent) == null, "absent key " + absent);
+            }
+        }
+        check(PerfectHashMap.copyOf(Map.of()).get("x") == null, "empty map");
+        // "Aa" and "BB" share a String.hashCode(): this set needs the wide hash
+        PerfectHashMap<Integer> colliding = PerfectHashMap.copyOf(Map.of("Aa", 1, "BB", 2, "AaAa", 3, "BBBB", 4, "AaBB", 5));
+        check(colliding.describe().contains("wide") && colliding.get("BB") == 2 && colliding.get("AaBB") == 5,
+                "hashCode collisions");
+        try {
+            PerfectHashMap.builder().put("a", 1).put("a", 2);
+            throw new AssertionError("duplicate key accepted");
+        } catch (IllegalArgumentException expected) {
+            // like Map.of
+        }
+        try {
+            PerfectHashMap.copyOf(Map.of("a", 1)).put("b", 2);
+            throw new AssertionError("mutation accepted");
+        } catch (UnsupportedOperationException expected) {
+            // immutable
+        }
+        System.out.println("Sizes 0..50,000 and a set of colliding hashCodes: every key gets its own index");
+        System.out.println("in 0..n-1, absent keys miss, equals(HashMap) holds.\n");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void benchmark(String section, int n) {
+        String title = section + ". BENCHMARK: " + String.format("%,d", n) + " STRING KEYS";
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+
+        String[] keys = new String[n];
+        Integer[] values = new Integer[n];
+        Map<String, Integer> source = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            keys[i] = "user:" + Integer.toHexString(i * 0x9E3779B1) + ":" + i;
+            values[i] = i;
+            source.put(keys[i], values[i]);
+        }
+        Random random = new Random(7);
+        String[] probes = new String[1 << 20];
+
+        System.out.printf("%-16s %12s %16s %14s%n", "MAP", "BUILD ms", "OVERHEAD B/key", "GET ns/op");
+        long sink = 0;
+        for (int round = 0; round < 2; round++) { // round 0 warms up the JIT
+            for (String kind : List.of("HashMap", "Map.copyOf", "PerfectHashMap")) {
+                long before = usedHeap();
+                long t0 = System.nanoTime();
+                Map<String, Integer> map = switch (kind) {
+                    case "HashMap" -> new HashMap<>(source);
+                    case "Map.copyOf" -> Map.copyOf(source);
+                    default -> PerfectHashMap.copyOf(source);
+                };
+                long buildNanos = System.nanoTime() - t0;
+                long bytes = usedHeap() - before;
+
+                long getNanos = 0;
+                for (int rep = 0; rep < 4; rep++) {
+                    // Fresh Strings with their own chars, as if parsed from input: no cached hashCode
+                    for (int i = 0; i < probes.length; i++) {
+                        probes[i] = new String(keys[random.nextInt(n)].toCharArray());
+                    }
+                    long t1 = System.nanoTime();
+                    for (String probe : probes) {
+                        sink += map.get(probe);
+                    }
+                    getNanos += System.nanoTime() - t1;
+                }
+                if (round == 1) {
+                    System.out.printf("%-16s %,12d %16.1f %14.1f%n", kind, buildNanos / 1_000_000,
+                            (double) bytes / n, (double) getNanos / (4L * probes.length));
+                    if (map instanceof PerfectHashMap) {
+                        System.out.println("  " + ((PerfectHashMap<?>) map).describe());
+                    }
+                }
+                Reference.reachabilityFence(map);
+            }
+        }
+        Reference.reachabilityFence(keys);
+        Reference.reachabilityFence(values);
+        System.out.println("(overhead excludes the key and value objects, which all three share; sink " + (sink & 1) + ")\n");
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Fixed-width unsigned integers packed into a long[] (an entry may straddle two words)
+ */
+final class PackedInts {
+    private final long[] words;
+    private final int width;
+    private final long mask;
+
+    PackedInts(int size, int width) {
+        if (width < 1 || width > 63) {
+            throw new IllegalArgumentException("width must be 1..63: " + width);
+        }
+        this.width = width;
+        this.mask = (1L << width) - 1;
+        this.words = new long[(int) (((long) size * width + 63) >>> 6)];
+    }
+
+    long get(int index) {
+        long bit = (long) index * width;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = words[word] >>> shift;
+        if (shift + width > 64) {
+            value |= words[word + 1] << (64 - shift);
+        }
+        return value & mask;
+    }
+
+    void set(int index, long value) {
+        long bit = (long) index * width;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        words[word] = (words[word] & ~(mask << shift)) | ((value & mask) << shift);
+        if (shift + width > 64) {
+            int spill = 64 - shift;
+            words[word + 1] = (words[word + 1] & ~(mask >>> spill)) | ((value & mask) >>> spill);
+        }
+    }
+
+    int width() {
+        return width;
+    }
+
+    long sizeInBits() {
+        return (long) words.length * 64;
+    }
+}
+
+/*
+ * ===========================================
+ * MINIMAL PERFECT HASH MAP SUMMARY
+ * ===========================================
+ *
+ * 1. WHEN IT FITS:
+ *    - Key set known when the map is built, never changed afterwards
+ *    - Read-heavy lookup tables: codes, config keys, dictionaries
+ *
+ * 2. HOW IT WORKS:
+ *    - Keys hashed into small buckets; each bucket gets a "pilot" that
+ *      moves all of its keys onto free slots
+ *    - Pilots are dictionary-coded and bit-packed: ~3 bits per key
+ *    - Slots past n are remapped, so keys/values fill one dense array
+ *
+ * 3. LOOKUP:
+ *    - One hash, one packed read, one slot, one equals() - no chains
+ *    - Keys are still stored: equals() is what rejects unknown keys
+ *
+ * 4. TRADE-OFFS:
+ *    - Build is a search (slower than HashMap), done once
+ *    - Any change means rebuilding; use HashMap for mutable data
+ *    - Enum keys: EnumMap is already perfect (ordinal) and simpler
+ */
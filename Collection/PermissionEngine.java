@@ -0,0 +1,577 @@
+import java.util.*;
+
+/**
+ * COMPILED BITMASK PERMISSION ENGINE
+ * ==================================
+ *
+ * EnumSetDemo.practicalExample keeps one EnumSet<Permission> per user and
+ * asks contains() one question at a time. Inside, a RegularEnumSet is
+ * already a single long - this engine makes that long the data model:
+ *
+ * 1. COMPILE: a permission set becomes a long with bit (1L << ordinal)
+ *    set for each permission; "has all of required" is
+ *        (userMask & required) == required
+ * 2. ROLES: a role's effective mask is its own grants OR'd with the
+ *    effective masks of its parent roles (inheritance). Parents must be
+ *    defined first, so role ids are already in topological order.
+ * 3. USERS: effective masks live in one long[] column, indexed by user id,
+ *    = direct grants | effective masks of the user's roles
+ * 4. BATCH CHECKS: evaluating (user, required) pairs is a loop over
+ *    primitive arrays - no Set objects, no iterators, no boxing
+ * 5. INCREMENTAL UPDATES: granting a permission to a role only touches
+ *    that role, the roles that inherit from it, and their users. Granting
+ *    just ORs a bit in; revoking recomputes the affected masks, because
+ *    another role may still grant the same permission.
+ *
+ * Works for any enum with at most 64 constants (the same limit as
+ * RegularEnumSet). Not thread-safe: mutate from one thread, or guard with
+ * a lock, as with the other unsynchronized collections in these tutorials.
+ */
+
+public class PermissionEngine<P extends Enum<P>> {
+
+    private final Class<P> type;
+    private final P[] universe;
+
+    // Roles, in definition (= topological) order
+    private final Map<String, Integer> roleIds = new HashMap<>();
+    private final List<String> roleNames = new ArrayList<>();
+    private long[] roleGrants = new long[8];
+    private long[] roleMasks = new long[8];       // effective: grants + inherited
+    private int[][] roleParents = new int[8][];
+    private IntList[] roleMembers = new IntList[8];
+
+    // Users: column-oriented
+    private long[] userDirect = new long[16];
+    private long[] userMasks = new long[16];      // effective
+    private IntList[] userRoles = new IntList[16];
+    private int userCount;
+
+    public PermissionEngine(Class<P> type) {
+        this.type = type;
+        this.universe = type.getEnumConstants();
+        if (universe.length > 64) {
+            throw new IllegalArgumentException(type.getSimpleName() + " has more than 64 constants");
+        }
+    }
+
+    // ===========================================
+    // COMPILING PERMISSION SETS
+    // ===========================================
+
+    public long mask(Collection<P> permissions) {
+        long mask = 0;
+        for (P p : permissions) {
+            mask |= 1L << p.ordinal();
+        }
+        return mask;
+    }
+
+    @SafeVarargs
+    public final long mask(P... permissions) {
+        long mask = 0;
+        for (P p : permissions) {
+            mask |= 1L << p.ordinal();
+        }
+        return mask;
+    }
+
+    public EnumSet<P> decode(long mask) {
+        EnumSet<P> set = EnumSet.noneOf(type);
+        for (long m = mask; m != 0; m &= m - 1) {
+            set.add(universe[Long.numberOfTrailingZeros(m)]);
+        }
+        return set;
+    }
+
+    // ===========================================
+    // ROLES AND USERS
+    // ===========================================
+
+    /** Defines a role; parents must already exist, which keeps the hierarchy acyclic */
+    public int defineRole(String name, Set<P> grants, String... parents) {
+        if (roleIds.containsKey(name)) {
+            throw new IllegalArgumentException("Role already defined: " + name);
+        }
+        int id = roleNames.size();
+        if (id == roleGrants.length) {
+            int n = 2 * id;
+            roleGrants = Arrays.copyOf(roleGrants, n);
+            roleMasks = Arrays.copyOf(roleMasks, n);
+            roleParents = Arrays.copyOf(roleParents, n);
+            roleMembers = Arrays.copyOf(roleMembers, n);
+        }
+        int[] parentIds = new int[parents.length];
+        long mask = mask(grants);
+        for (int i = 0; i < parents.length; i++) {
+            parentIds[i] = roleId(parents[i]);
+            mask |= roleMasks[parentIds[i]];
+        }
+        roleIds.put(name, id);
+        roleNames.add(name);
+        roleGrants[id] = mask(grants);
+        roleMasks[id] = mask;
+        roleParents[id] = parentIds;
+        roleMembers[id] = new IntList();
+        return id;
+    }
+
+    public int roleId(String name) {
+        Integer id = roleIds.get(name);
+        if (id == null) {
+            throw new NoSuchElementException("Unknown role: " + name);
+        }
+        return id;
+    }
+
+    /** Adds a user with direct grants and roles; returns the user id */
+    public int addUser(Set<P> direct, String... roles) {
+        int user = userCount++;
+        if (user == userMasks.length) {
+            int n = 2 * user;
+            userDirect = Arrays.copyOf(userDirect, n);
+            userMasks = Arrays.copyOf(userMasks, n);
+            userRoles = Arrays.copyOf(userRoles, n);
+        }
+        userDirect[user] = mask(direct);
+        userMasks[user] = userDirect[user];
+        userRoles[user] = new IntList();
+        for (String role : roles) {
+            assignRole(user, role);
+        }
+        return user;
+    }
+
+    public int userCount() {
+        return userCount;
+    }
+
+    public void assignRole(int user, String role) {
+        int r = roleId(role);
+        if (!userRoles[user].contains(r)) {
+            userRoles[user].add(r);
+            roleMembers[r].add(user);
+            userMasks[user] |= roleMasks[r];
+        }
+    }
+
+    public void unassignRole(int user, String role) {
+        int r = roleId(role);
+        if (userRoles[user].remove(r)) {
+            roleMembers[r].remove(user);
+            recomputeUser(user);
+        }
+    }
+
+    public void grantDirect(int user, P permission) {
+        userDirect[user] |= 1L << permission.ordinal();
+        userMasks[user] |= 1L << permission.ordinal();
+    }
+
+    public void revokeDirect(int user, P permission) {
+        userDirect[user] &= ~(1L << permission.ordinal());
+        recomputeUser(user);
+    }
+
+    /** Grants to a role: ORs the bit into the role, its descendants and their users */
+    public void grant(String role, P permission) {
+        int r = roleId(role);
+        long bit = 1L << permission.ordinal();
+        roleGrants[r] |= bit;
+        boolean[] affected = descendants(r);
+        for (int id = r; id < roleNames.size(); id++) {
+            if (affected[id] && (roleMasks[id] & bit) == 0) {
+                roleMasks[id] |= bit;
+                IntList members = roleMembers[id];
+                for (int i = 0; i < members.size; i++) {
+                    userMasks[members.values[i]] |= bit;
+                }
+            }
+        }
+    }
+
+    /** Revokes from a role: recomputes the role, its descendants and their users */
+    public void revoke(String role, P permission) {
+        int r = roleId(role);
+        roleGrants[r] &= ~(1L << permission.ordinal());
+        boolean[] affected = descendants(r);
+        boolean[] changed = new boolean[roleNames.size()];
+        for (int id = r; id < roleNames.size(); id++) {
+            if (affected[id]) {
+                long mask = roleGrants[id];
+                for (int parent : roleParents[id]) {
+                    mask |= roleMasks[parent];
+                }
+                changed[id] = mask != roleMasks[id];
+                roleMasks[id] = mask;
+            }
+        }
+        for (int id = r; id < roleNames.size(); id++) {
+            if (changed[id]) {
+                IntList members = roleMembers[id];
+                for (int i = 0; i < members.size; i++) {
+                    recomputeUser(members.values[i]);
+                }
+            }
+        }
+    }
+
+    /** Roles at or below r in the hierarchy; ids are topologically ordered, so one pass suffices */
+    private boolean[] descendants(int r) {
+        boolean[] affected = new boolean[roleNames.size()];
+        affected[r] = true;
+        for (int id = r + 1; id < roleNames.size(); id++) {
+            for (int parent : roleParents[id]) {
+                if (affected[parent]) {
+                    affected[id] = true;
+                    break;
+                }
+            }
+        }
+        return affected;
+    }
+
+    private void recomputeUser(int user) {
+        long mask = userDirect[user];
+        IntList roles = userRoles[user];
+        for (int i = 0; i < roles.size; i++) {
+            mask |= roleMasks[roles.values[i]];
+        }
+        userMasks[user] = mask;
+    }
+
+    // ===========================================
+    // CHECKS
+    // ===========================================
+
+    public boolean can(int user, P permission) {
+        return (userMasks[user] & (1L << permission.ordinal())) != 0;
+    }
+
+    public boolean canAll(int user, long required) {
+        return (userMasks[user] & required) == required;
+    }
+
+    public EnumSet<P> permissionsOf(int user) {
+        return decode(userMasks[user]);
+    }
+
+    public long roleMask(String role) {
+        return roleMasks[roleId(role)];
+    }
+
+    /**
+     * Checks count (users[i], required[i]) pairs; bit i of the result is set
+     * when user users[i] has every permission in required[i].
+     */
+    public long[] checkAll(int[] users, long[] required, int count) {
+        long[] result = new long[(count + 63) >>> 6];
+        long[] masks = userMasks;
+        for (int base = 0; base < count; base += 64) {
+            int end = Math.min(base + 64, count);
+            long word = 0;
+            for (int i = base; i < end; i++) {
+                long need = required[i];
+                long ok = (masks[users[i]] & need) == need ? 1L : 0L;
+                word |= ok << (i - base);
+            }
+            result[base >>> 6] = word;
+        }
+        return result;
+    }
+
+    /** Every user holding all of required, as a bitset over user ids: one scan of the mask column */
+    public long[] usersWithAll(long required) {
+        long[] result = new long[(userCount + 63) >>> 6];
+        long[] masks = userMasks;
+        for (int user = 0; user < userCount; user++) {
+            if ((masks[user] & required) == required) {
+                result[user >>> 6] |= 1L << user;
+            }
+        }
+        return result;
+    }
+
+    // ===========================================
+    // DEMO, TESTS AND BENCHMARK
+    // ===========================================
+
+    /** The same permissions as EnumSetDemo's, declared here so this file stands alone */
+    private enum Permission {
+        READ, WRITE, DELETE, EXECUTE, ADMIN
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=== COMPILED PERMISSION ENGINE ===\n");
+
+        rolesDemo();
+        correctnessCheck();
+        benchmark();
+    }
+
+    public static void rolesDemo() {
+        System.out.println("1. ROLES COMPILED TO MASKS");
+        System.out.println("==========================");
+
+        PermissionEngine<Permission> engine = new PermissionEngine<>(Permission.class);
+        engine.defineRole("guest", EnumSet.of(Permission.READ));
+        engine.defineRole("user", EnumSet.of(Permission.WRITE), "guest");
+        engine.defineRole("operator", EnumSet.of(Permission.EXECUTE), "user");
+        engine.defineRole("admin", EnumSet.of(Permission.DELETE, Permission.ADMIN), "operator");
+
+        for (String role : new String[] {"guest", "user", "operator", "admin"}) {
+            long mask = engine.roleMask(role);
+            System.out.printf("%-9s mask %5s = %s%n", role, Long.toBinaryString(mask), engine.decode(mask));
+        }
+
+        int alice = engine.addUser(EnumSet.noneOf(Permission.class), "user");
+        int bob = engine.addUser(EnumSet.of(Permission.EXECUTE), "guest");
+        long readWrite = engine.mask(Permission.READ, Permission.WRITE);
+        System.out.println("\nalice (user)           = " + engine.permissionsOf(alice));
+        System.out.println("bob (guest + EXECUTE)  = " + engine.permissionsOf(bob));
+        System.out.println("alice can READ+WRITE: " + engine.canAll(alice, readWrite)
+                + ", bob can READ+WRITE: " + engine.canAll(bob, readWrite));
+
+        engine.grant("guest", Permission.WRITE);
+        System.out.println("\nAfter granting WRITE to guest, bob = " + engine.permissionsOf(bob));
+        engine.revoke("guest", Permission.WRITE);
+        System.out.println("After revoking it again,        bob = " + engine.permissionsOf(bob));
+        engine.unassignRole(alice, "user");
+        System.out.println("alice without the user role       = " + engine.permissionsOf(alice) + "\n");
+    }
+
+    /** Random hierarchy and changes, compared with EnumSets recomputed from scratch */
+    public static void correctnessCheck() {
+        System.out.println("2. INCREMENTAL UPDATES vs RECOMPUTING WITH EnumSet");
+        System.out.println("==================================================");
+
+        Random random = new Random(11);
+        Permission[] all = Permission.values();
+        int checks = 0;
+        for (int round = 0; round < 50; round++) {
+            PermissionEngine<Permission> engine = new PermissionEngine<>(Permission.class);
+            int roles = 2 + random.nextInt(15);
+            List<EnumSet<Permission>> grants = new ArrayList<>();
+            List<List<Integer>> parents = new ArrayList<>();
+            for (int r = 0; r < roles; r++) {
+                EnumSet<Permission> g = randomSet(random, all);
+                List<Integer> ps = new ArrayList<>();
+                for (int p = 0; p < r; p++) {
+                    if (random.nextInt(4) == 0) {
+                        ps.add(p);
+                    }
+                }
+                grants.add(g);
+                parents.add(ps);
+                engine.defineRole("r" + r, g, ps.stream().map(p -> "r" + p).toArray(String[]::new));
+            }
+            int users = 200;
+            List<EnumSet<Permission>> direct = new ArrayList<>();
+            List<Set<Integer>> userRoles = new ArrayList<>();
+            for (int u = 0; u < users; u++) {
+                direct.add(randomSet(random, all));
+                userRoles.add(new HashSet<>());
+                engine.addUser(direct.get(u));
+            }
+            for (int op = 0; op < 2_000; op++) {
+                int u = random.nextInt(users);
+                int r = random.nextInt(roles);
+                Permission p = all[random.nextInt(all.length)];
+                switch (random.nextInt(6)) {
+                    case 0 -> { engine.assignRole(u, "r" + r); userRoles.get(u).add(r); }
+                    case 1 -> { engine.unassignRole(u, "r" + r); userRoles.get(u).remove(r); }
+                    case 2 -> { engine.grant("r" + r, p); grants.get(r).add(p); }
+                    case 3 -> { engine.revoke("r" + r, p); grants.get(r).remove(p); }
+                    case 4 -> { engine.grantDirect(u, p); direct.get(u).add(p); }
+                    default -> { engine.revokeDirect(u, p); direct.get(u).remove(p); }
+                }
+                if (op % 100 == 99) {
+                    for (int v = 0; v < users; v++) {
+                        EnumSet<Permission> expected = EnumSet.copyOf(direct.get(v));
+                        for (int role : userRoles.get(v)) {
+                            expected.addAll(effective(role, grants, parents));
+                        }
+                        check(engine.permissionsOf(v).equals(expected), "user " + v + " in round " + round);
+                        checks++;
+                    }
+                }
+            }
+        }
+        System.out.printf("50 random hierarchies x 2,000 grant/revoke/assign/unassign ops: %,d user checks, all match%n%n",
+                checks);
+    }
+
+    private static EnumSet<Permission> effective(int role, List<EnumSet<Permission>> grants, List<List<Integer>> parents) {
+        EnumSet<Permission> result = EnumSet.copyOf(grants.get(role));
+        for (int parent : parents.get(role)) {
+            result.addAll(effective(parent, grants, parents));
+        }
+        return result;
+    }
+
+    private static EnumSet<Permission> randomSet(Random random, Permission[] all) {
+        EnumSet<Permission> set = EnumSet.noneOf(Permission.class);
+        for (Permission p : all) {
+            if (random.nextInt(3) == 0) {
+                set.add(p);
+            }
+        }
+        return set;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /** 1M users, 10M (user, required set) pairs: mask columns vs one EnumSet per user */
+    public static void benchmark() {
+        System.out.println("3. BATCH CHECK THROUGHPUT");
+        System.out.println("=========================");
+
+        int users = 1_000_000;
+        int pairs = 10_000_000;
+        Random random = new Random(3);
+        Permission[] all = Permission.values();
+        PermissionEngine<Permission> engine = new PermissionEngine<>(Permission.class);
+        engine.defineRole("guest", EnumSet.of(Permission.READ));
+        engine.defineRole("user", EnumSet.of(Permission.WRITE), "guest");
+        engine.defineRole("admin", EnumSet.allOf(Permission.class), "user");
+        String[] roles = {"guest", "user", "admin"};
+        List<EnumSet<Permission>> enumSets = new ArrayList<>(users);
+        for (int u = 0; u < users; u++) {
+            int user = engine.addUser(randomSet(random, all), roles[random.nextInt(roles.length)]);
+            enumSets.add(engine.permissionsOf(user));
+        }
+        EnumSet<Permission>[] requiredSets = distinctRequiredSets(all);
+        int[] pairUsers = new int[pairs];
+        int[] pairRequired = new int[pairs];
+        long[] requiredMasks = new long[pairs];
+        for (int i = 0; i < pairs; i++) {
+            pairUsers[i] = random.nextInt(users);
+            pairRequired[i] = random.nextInt(requiredSets.length);
+            requiredMasks[i] = engine.mask(requiredSets[pairRequired[i]]);
+        }
+
+        System.out.printf("%-38s %12s %14s%n", "METHOD", "TIME", "CHECKS/SEC");
+        for (int round = 0; round < 3; round++) { // round 0 warms up the JIT
+            long t0 = System.nanoTime();
+            long granted = 0;
+            for (int i = 0; i < pairs; i++) {
+                if (enumSets.get(pairUsers[i]).containsAll(requiredSets[pairRequired[i]])) {
+                    granted++;
+                }
+            }
+            long enumNanos = System.nanoTime() - t0;
+
+            t0 = System.nanoTime();
+            long[] result = engine.checkAll(pairUsers, requiredMasks, pairs);
+            long maskNanos = System.nanoTime() - t0;
+            long maskGranted = 0;
+            for (long word : result) {
+                maskGranted += Long.bitCount(word);
+            }
+            check(maskGranted == granted, "mask and EnumSet results differ");
+
+            t0 = System.nanoTime();
+            long[] everyone = engine.usersWithAll(engine.mask(Permission.READ, Permission.EXECUTE));
+            long scanNanos = System.nanoTime() - t0;
+
+            if (round > 0) {
+                report("EnumSet.containsAll per pair", enumNanos, pairs);
+                report("checkAll over long[] columns", maskNanos, pairs);
+                report("usersWithAll (1M-user column scan)", scanNanos, users);
+                System.out.printf("  granted %,d of %,d pairs; %,d users can READ+EXECUTE%n",
+                        granted, pairs, Arrays.stream(everyone).map(Long::bitCount).sum());
+            }
+        }
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            engine.grant("guest", Permission.EXECUTE);
+            engine.revoke("guest", Permission.EXECUTE);
+        }
+        System.out.printf("%nRole change touching ~1M users (grant + revoke on guest): %.1f ms per pair%n%n",
+                (System.nanoTime() - t0) / 1e6 / 1_000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EnumSet<Permission>[] distinctRequiredSets(Permission[] all) {
+        EnumSet<Permission>[] sets = (EnumSet<Permission>[]) new EnumSet<?>[1 << all.length];
+        for (int m = 0; m < sets.length; m++) {
+            sets[m] = EnumSet.noneOf(Permission.class);
+            for (Permission p : all) {
+                if ((m & (1 << p.ordinal())) != 0) {
+                    sets[m].add(p);
+                }
+            }
+        }
+        return sets;
+    }
+
+    private static void report(String method, long nanos, int checks) {
+        System.out.printf("%-38s %9.1f ms %,14.0f%n", method, nanos / 1e6, checks * 1e9 / nanos);
+    }
+
+    // ===========================================
+    // SUPPORTING CLASSES
+    // ===========================================
+
+    /** A growable int array: role ids per user, user ids per role */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+
+        boolean contains(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size]; // order does not matter
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
+
+/*
+ * ===========================================
+ * PERMISSION ENGINE SUMMARY
+ * ===========================================
+ *
+ * 1. REPRESENTATION:
+ *    - permission set -> long, bit = 1L << ordinal (what RegularEnumSet does inside)
+ *    - role -> effective mask (own grants | parents' masks)
+ *    - users -> one long[] column of effective masks
+ *
+ * 2. CHECKS:
+ *    - one permission:  (mask & bit) != 0
+ *    - all of a set:    (mask & required) == required
+ *    - batches: loops over int[]/long[] columns, results as a bitset
+ *
+ * 3. UPDATES:
+ *    - grant: OR the bit into the role, descendants and their users
+ *    - revoke / unassign: recompute only the affected masks
+ *
+ * 4. LIMITS:
+ *    - at most 64 permissions per enum (use long[] masks beyond that)
+ *    - role members are scanned on updates: O(members) per role change
+ *    - not thread-safe
+ */
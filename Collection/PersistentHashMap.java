@@ -0,0 +1,913 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * PERSISTENT HASH ARRAY MAPPED TRIE (HAMT) WITH O(1) SNAPSHOTS
+ * ===========================================================
+ *
+ * ConcurrentHashMap's iterators (ConcurrentHashMapTutorial,
+ * HashMapVsConcurrentHashMapDemo) are WEAKLY CONSISTENT: a reader summing
+ * the map while a writer moves value from one key to another can count the
+ * amount twice or not at all. Copying a HashMap for each reader is
+ * consistent, but costs O(n) per snapshot.
+ *
+ * A PERSISTENT map never changes. with(k, v) and without(k) return a NEW
+ * version that shares everything except the path to the changed key:
+ *
+ *   version 1:  root ---- node A ---- leaf (k1, v1)
+ *                    \--- node B ---- leaf (k2, v2)
+ *   version 2:  root'---- node A'---- leaf (k1, v1')      <- 3 new nodes
+ *                    \--- node B (shared)
+ *
+ * 1. TRIE: each level uses 5 bits of the key's hash to pick one of 32
+ *    children; a bitmap says which children exist, so a node stores only
+ *    those (no empty slots). Depth is log32(n): ~4 levels for a million keys.
+ * 2. UPDATE: copy the nodes on the path from root to key - O(log32 n)
+ * 3. SNAPSHOT: a version IS a snapshot - taking one is reading a reference
+ * 4. BUILDER (transient): bulk loads mutate nodes they created themselves
+ *    in place, instead of copying the path for every key
+ * 5. PUBLISHING: PersistentHashMap.Ref holds the current version in an
+ *    AtomicReference; writers CAS in new versions, readers just get()
+ *
+ * Null keys and values are not allowed (as with Map.of).
+ */
+
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;   // null when empty
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        Builder<K, V> builder = PersistentHashMap.<K, V>empty().toBuilder();
+        map.forEach(builder::put);
+        return builder.build();
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9; // spread weak hashCodes over all 5-bit levels
+        return h ^ (h >>> 16);
+    }
+
+    // ===========================================
+    // PERSISTENT OPERATIONS
+    // ===========================================
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return root == null || key == null ? null : (V) root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /** A new version with key mapped to value; this version is unchanged */
+    public PersistentHashMap<K, V> with(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Change change = new Change();
+        Node newRoot = (root == null ? BitmapNode.EMPTY : root).assoc(null, 0, hash(key), key, value, change);
+        if (newRoot == root) {
+            return this; // same value already there
+        }
+        return new PersistentHashMap<>(newRoot, change.added ? size + 1 : size);
+    }
+
+    /** A new version without key; this version is unchanged */
+    public PersistentHashMap<K, V> without(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Change change = new Change();
+        Node newRoot = root.without(null, 0, hash(key), key, change);
+        if (!change.removed) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** A mutable builder that starts from this version and shares its nodes until it changes them */
+    public Builder<K, V> toBuilder() {
+        return new Builder<>(root, size);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException("PersistentHashMap is immutable: use with(key, value)");
+    }
+
+    @Override
+    public V remove(Object key) {
+        throw new UnsupportedOperationException("PersistentHashMap is immutable: use without(key)");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("PersistentHashMap is immutable");
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            public Iterator<Entry<K, V>> iterator() {
+                return new TrieIterator<>(root);
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** Depth of the deepest leaf (for the demo: log32 n) */
+    int depth() {
+        return root == null ? 0 : root.depth();
+    }
+
+    // ===========================================
+    // BUILDER (TRANSIENT) AND PUBLISHING
+    // ===========================================
+
+    /**
+     * Bulk-load mode: nodes created by this builder carry its edit token and
+     * are changed in place; nodes shared with earlier versions are copied
+     * once, on first touch. build() hands out a persistent version and takes
+     * a fresh token, so that version can never be changed afterwards.
+     * Not thread-safe - one builder per thread.
+     */
+    public static final class Builder<K, V> {
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        public Builder<K, V> put(K key, V value) {
+            Objects.requireNonNull(key, "key");
+            Objects.requireNonNull(value, "value");
+            Change change = new Change();
+            root = (root == null ? BitmapNode.EMPTY : root).assoc(edit, 0, hash(key), key, value, change);
+            if (change.added) {
+                size++;
+            }
+            return this;
+        }
+
+        public Builder<K, V> remove(Object key) {
+            if (root != null) {
+                Change change = new Change();
+                root = root.without(edit, 0, hash(key), key, change);
+                if (change.removed) {
+                    size--;
+                }
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public PersistentHashMap<K, V> build() {
+            edit = new Object(); // freeze everything built so far
+            return root == null ? empty() : new PersistentHashMap<>(root, size);
+        }
+    }
+
+    /**
+     * The current version of a map, published for concurrent readers.
+     * snapshot() is a volatile read; writers build a new version and CAS it
+     * in, retrying if another writer got there first.
+     */
+    public static final class Ref<K, V> {
+        private final AtomicReference<PersistentHashMap<K, V>> current;
+
+        public Ref() {
+            this(empty());
+        }
+
+        public Ref(PersistentHashMap<K, V> initial) {
+            current = new AtomicReference<>(initial);
+        }
+
+        /** A consistent point-in-time view; O(1), never blocks, never changes */
+        public PersistentHashMap<K, V> snapshot() {
+            return current.get();
+        }
+
+        /** Applies f to the current version until the CAS succeeds; f must be side-effect free */
+        public PersistentHashMap<K, V> update(UnaryOperator<PersistentHashMap<K, V>> f) {
+            while (true) {
+                PersistentHashMap<K, V> before = current.get();
+                PersistentHashMap<K, V> after = f.apply(before);
+                if (after == before || current.compareAndSet(before, after)) {
+                    return after;
+                }
+            }
+        }
+
+        public PersistentHashMap<K, V> put(K key, V value) {
+            return update(m -> m.with(key, value));
+        }
+
+        public PersistentHashMap<K, V> remove(K key) {
+            return update(m -> m.without(key));
+        }
+
+        /** Several changes published as one version, built with a transient builder */
+        public PersistentHashMap<K, V> batch(Consumer<Builder<K, V>> changes) {
+            return update(m -> {
+                Builder<K, V> builder = m.toBuilder();
+                changes.accept(builder);
+                return builder.build();
+            });
+        }
+    }
+
+    // ===========================================
+    // TRIE NODES
+    // ===========================================
+
+    /** What an assoc/without call did, reported back up the recursion */
+    private static final class Change {
+        boolean added;
+        boolean removed;
+    }
+
+    private abstract static class Node {
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node assoc(Object edit, int shift, int hash, Object key, Object value, Change change);
+
+        /** Returns this if key is absent, null if the node became empty */
+        abstract Node without(Object edit, int shift, int hash, Object key, Change change);
+
+        abstract int depth();
+    }
+
+    /**
+     * Up to 32 slots, present ones packed in hash-bit order:
+     *   array = [key0, value0, key1, value1, ...]
+     * A slot with key == null holds a child Node as its value.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        final Object edit;   // the builder allowed to change this node in place
+        int bitmap;
+        Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private static int bitFor(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private int indexOf(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bitFor(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * indexOf(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(shift + 5, hash, key);
+            }
+            return key.equals(k) ? array[i + 1] : null;
+        }
+
+        /** This node if the builder owns it, otherwise a copy it does own */
+        private BitmapNode editable(Object edit) {
+            if (edit != null && this.edit == edit) {
+                return this;
+            }
+            int n = Integer.bitCount(bitmap);
+            Object[] copy = new Object[edit == null ? 2 * n : 2 * (n + 1)]; // builders get a spare slot
+            System.arraycopy(array, 0, copy, 0, 2 * n);
+            return new BitmapNode(edit, bitmap, copy);
+        }
+
+        private BitmapNode set(Object edit, int i, Object value) {
+            BitmapNode node = editable(edit);
+            node.array[i] = value;
+            return node;
+        }
+
+        private BitmapNode set(Object edit, int i, Object a, int j, Object b) {
+            BitmapNode node = editable(edit);
+            node.array[i] = a;
+            node.array[j] = b;
+            return node;
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Change change) {
+            int bit = bitFor(hash, shift);
+            int index = indexOf(bit);
+            int i = 2 * index;
+            if ((bitmap & bit) != 0) {
+                Object k = array[i];
+                Object v = array[i + 1];
+                if (k == null) {
+                    Node child = ((Node) v).assoc(edit, shift + 5, hash, key, value, change);
+                    return child == v ? this : set(edit, i + 1, child);
+                }
+                if (key.equals(k)) {
+                    return v == value ? this : set(edit, i + 1, value);
+                }
+                // Two keys share this slot: push both one level down
+                change.added = true;
+                Node child = pair(edit, shift + 5, k, v, hash(k), key, value, hash);
+                return set(edit, i, null, i + 1, child);
+            }
+
+            change.added = true;
+            int n = Integer.bitCount(bitmap);
+            if (edit != null && this.edit == edit && array.length >= 2 * (n + 1)) {
+                System.arraycopy(array, i, array, i + 2, 2 * (n - index)); // room to insert in place
+                array[i] = key;
+                array[i + 1] = value;
+                bitmap |= bit;
+                return this;
+            }
+            Object[] grown = new Object[edit == null ? 2 * (n + 1) : 2 * (n + 2)];
+            System.arraycopy(array, 0, grown, 0, i);
+            grown[i] = key;
+            grown[i + 1] = value;
+            System.arraycopy(array, i, grown, i + 2, 2 * (n - index));
+            if (edit != null && this.edit == edit) {
+                array = grown;
+                bitmap |= bit;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap | bit, grown);
+        }
+
+        private static Node pair(Object edit, int shift, Object k1, Object v1, int h1,
+                                 Object k2, Object v2, int h2) {
+            if (h1 == h2) {
+                return new CollisionNode(edit, h1, new Object[] {k1, v1, k2, v2});
+            }
+            Change ignored = new Change();
+            return EMPTY.assoc(edit, shift, h1, k1, v1, ignored).assoc(edit, shift, h2, k2, v2, ignored);
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Change change) {
+            int bit = bitFor(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = indexOf(bit);
+            int i = 2 * index;
+            Object k = array[i];
+            if (k == null) {
+                Node child = (Node) array[i + 1];
+                Node shrunk = child.without(edit, shift + 5, hash, key, change);
+                if (shrunk == child) {
+                    return this;
+                }
+                if (shrunk != null) {
+                    Object[] single = singleEntry(shrunk);
+                    if (single != null) {
+                        return set(edit, i, single[0], i + 1, single[1]); // pull a lone entry up a level
+                    }
+                    return set(edit, i + 1, shrunk);
+                }
+                return removeSlot(edit, bit, index);
+            }
+            if (!key.equals(k)) {
+                return this;
+            }
+            change.removed = true;
+            return removeSlot(edit, bit, index);
+        }
+
+        /** The key and value if node holds exactly one entry and no children */
+        private static Object[] singleEntry(Node node) {
+            if (node instanceof BitmapNode) {
+                BitmapNode b = (BitmapNode) node;
+                if (Integer.bitCount(b.bitmap) == 1 && b.array[0] != null) {
+                    return new Object[] {b.array[0], b.array[1]};
+                }
+            } else if (((CollisionNode) node).count == 1) {
+                return new Object[] {((CollisionNode) node).array[0], ((CollisionNode) node).array[1]};
+            }
+            return null;
+        }
+
+        private Node removeSlot(Object edit, int bit, int index) {
+            if (bitmap == bit) {
+                return null;
+            }
+            int n = Integer.bitCount(bitmap);
+            int i = 2 * index;
+            if (edit != null && this.edit == edit) {
+                System.arraycopy(array, i + 2, array, i, 2 * (n - index - 1));
+                array[2 * n - 2] = null;
+                array[2 * n - 1] = null;
+                bitmap ^= bit;
+                return this;
+            }
+            Object[] shrunk = new Object[2 * (n - 1)];
+            System.arraycopy(array, 0, shrunk, 0, i);
+            System.arraycopy(array, i + 2, shrunk, i, 2 * (n - index - 1));
+            return new BitmapNode(edit, bitmap ^ bit, shrunk);
+        }
+
+        @Override
+        int depth() {
+            int deepest = 0;
+            for (int i = 0; i < 2 * Integer.bitCount(bitmap); i += 2) {
+                if (array[i] == null) {
+                    deepest = Math.max(deepest, ((Node) array[i + 1]).depth());
+                }
+            }
+            return 1 + deepest;
+        }
+    }
+
+    /** Keys whose 32-bit hashes are all equal: a plain list of pairs */
+    private static final class CollisionNode extends Node {
+        final Object edit;
+        final int hash;
+        int count;
+        Object[] array;
+
+        CollisionNode(Object edit, int hash, Object[] array) {
+            this.edit = edit;
+            this.hash = hash;
+            this.array = array;
+            this.count = array.length / 2;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < 2 * count; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Change change) {
+            if (hash != this.hash) {
+                // A different hash arrived: put this node under a bitmap node at this level
+                BitmapNode parent = new BitmapNode(edit, 1 << ((this.hash >>> shift) & 31), new Object[] {null, this});
+                return parent.assoc(edit, shift, hash, key, value, change);
+            }
+            int i = indexOf(key);
+            Object[] copy;
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                copy = array.clone();
+                copy[i + 1] = value;
+            } else {
+                change.added = true;
+                copy = Arrays.copyOf(array, 2 * count + 2);
+                copy[2 * count] = key;
+                copy[2 * count + 1] = value;
+            }
+            if (edit != null && this.edit == edit) {
+                array = copy;
+                count = copy.length / 2;
+                return this;
+            }
+            return new CollisionNode(edit, hash, copy);
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Change change) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            change.removed = true;
+            if (count == 1) {
+                return null;
+            }
+            Object[] copy = new Object[2 * count - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, 2 * count - i - 2);
+            if (edit != null && this.edit == edit) {
+                array = copy;
+                count--;
+                return this;
+            }
+            return new CollisionNode(edit, hash, copy);
+        }
+
+        @Override
+        int depth() {
+            return 1;
+        }
+    }
+
+    /** Depth-first walk with an explicit stack (at most 8 levels for 32-bit hashes) */
+    private static final class TrieIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final Object[][] arrays = new Object[10][];
+        private final int[] positions = new int[10];
+        private final int[] ends = new int[10];
+        private int top = -1;
+        private Entry<K, V> next;
+
+        TrieIterator(Node root) {
+            if (root != null) {
+                push(root);
+            }
+            advance();
+        }
+
+        private void push(Node node) {
+            top++;
+            if (node instanceof BitmapNode) {
+                arrays[top] = ((BitmapNode) node).array;
+                ends[top] = 2 * Integer.bitCount(((BitmapNode) node).bitmap);
+            } else {
+                arrays[top] = ((CollisionNode) node).array;
+                ends[top] = 2 * ((CollisionNode) node).count;
+            }
+            positions[top] = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (top >= 0) {
+                if (positions[top] >= ends[top]) {
+                    top--;
+                    continue;
+                }
+                int i = positions[top];
+                positions[top] += 2;
+                Object key = arrays[top][i];
+                Object value = arrays[top][i + 1];
+                if (key == null) {
+                    push((Node) value);
+                } else {
+                    next = new SimpleImmutableEntry<>((K) key, (V) value);
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> e = next;
+            advance();
+            return e;
+        }
+    }
+
+    // ===========================================
+    // DEMO, TESTS AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== PERSISTENT HASH MAP (HAMT) ===\n");
+
+        versionsDemo();
+        correctnessCheck();
+        consistentReaders();
+        benchmark();
+    }
+
+    public static void versionsDemo() {
+        System.out.println("1. VERSIONS SHARE STRUCTURE");
+        System.out.println("===========================");
+
+        PersistentHashMap<String, Integer> v1 = PersistentHashMap.<String, Integer>empty()
+                .with("Apple", 10).with("Banana", 20).with("Cherry", 30);
+        PersistentHashMap<String, Integer> v2 = v1.with("Banana", 25).without("Cherry");
+        System.out.println("v1 = " + new TreeMap<>(v1));
+        System.out.println("v2 = " + new TreeMap<>(v2) + "   (v1 unchanged)");
+
+        PersistentHashMap.Builder<Integer, Integer> builder = PersistentHashMap.<Integer, Integer>empty().toBuilder();
+        for (int i = 0; i < 1_000_000; i++) {
+            builder.put(i, i);
+        }
+        PersistentHashMap<Integer, Integer> big = builder.build();
+        long before = allocatedBytes();
+        PersistentHashMap<Integer, Integer> changed = big.with(42, -1);
+        long bytes = allocatedBytes() - before;
+        System.out.printf("1M entries, depth %d: with() allocated %,d bytes (the path), old get(42)=%d, new get(42)=%d%n%n",
+                big.depth(), bytes, big.get(42), changed.get(42));
+    }
+
+    /** Random operations against a HashMap, keeping every old version to check it never changes */
+    public static void correctnessCheck() {
+        System.out.println("2. CORRECTNESS vs HashMap");
+        System.out.println("=========================");
+
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            int keySpace = round % 2 == 0 ? 64 : 5_000;
+            boolean colliding = round % 4 == 1;
+            HashMap<Object, Integer> reference = new HashMap<>();
+            PersistentHashMap<Object, Integer> map = empty();
+            List<PersistentHashMap<Object, Integer>> versions = new ArrayList<>();
+            List<Map<Object, Integer>> expected = new ArrayList<>();
+            for (int op = 0; op < 20_000; op++) {
+                int k = random.nextInt(keySpace);
+                Object key = colliding ? new CollidingKey(k) : Integer.valueOf(k);
+                int choice = random.nextInt(10);
+                if (choice < 6) {
+                    map = map.with(key, op);
+                    reference.put(key, op);
+                } else if (choice < 9) {
+                    map = map.without(key);
+                    reference.remove(key);
+                } else {
+                    // a small batch through the builder
+                    Builder<Object, Integer> builder = map.toBuilder();
+                    for (int b = 0; b < 20; b++) {
+                        Object bk = colliding ? new CollidingKey(random.nextInt(keySpace)) : random.nextInt(keySpace);
+                        if (random.nextBoolean()) {
+                            builder.put(bk, -b);
+                            reference.put(bk, -b);
+                        } else {
+                            builder.remove(bk);
+                            reference.remove(bk);
+                        }
+                    }
+                    map = builder.build();
+                    builder.put(-1, -1); // the builder keeps working without touching the built version
+                }
+                if (op % 1_000 == 0) {
+                    versions.add(map);
+                    expected.add(new HashMap<>(reference));
+                }
+                check(map.size() == reference.size(), "size");
+            }
+            check(map.equals(reference) && reference.equals(map), "contents");
+            for (int v = 0; v < versions.size(); v++) {
+                check(versions.get(v).equals(expected.get(v)), "old version " + v + " changed");
+            }
+        }
+        System.out.println("20 rounds x 20,000 random with/without/builder ops (some with colliding hashes):");
+        System.out.println("contents match HashMap, and every saved old version is unchanged.\n");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A writer keeps moving money between 1,000 accounts (total stays
+     * constant). Readers sum all accounts: a consistent view always sees
+     * the same total.
+     */
+    public static void consistentReaders() throws InterruptedException {
+        System.out.println("3. CONSISTENT READERS WHILE A WRITER WORKS");
+        System.out.println("==========================================");
+
+        int accounts = 1_000;
+        long expectedTotal = accounts * 1_000L;
+        Ref<Integer, Long> ref = new Ref<>();
+        ConcurrentHashMap<Integer, Long> chm = new ConcurrentHashMap<>();
+        ref.batch(b -> {
+            for (int i = 0; i < accounts; i++) {
+                b.put(i, 1_000L);
+            }
+        });
+        for (int i = 0; i < accounts; i++) {
+            chm.put(i, 1_000L);
+        }
+
+        long[] wrong = new long[2];
+        long[] reads = new long[2];
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                int from = random.nextInt(accounts);
+                int to = random.nextInt(accounts);
+                long amount = random.nextInt(100);
+                ref.update(m -> {
+                    PersistentHashMap<Integer, Long> debited = m.with(from, m.get(from) - amount);
+                    return debited.with(to, debited.get(to) + amount);
+                });
+                // The same transfer on CHM: two separate atomic steps
+                chm.merge(from, -amount, Long::sum);
+                chm.merge(to, amount, Long::sum);
+            }
+        });
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            int which = r;
+            readers[r] = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    long total = 0;
+                    if (which == 0) {
+                        for (long v : ref.snapshot().values()) {
+                            total += v;
+                        }
+                    } else {
+                        for (long v : chm.values()) {
+                            total += v;
+                        }
+                    }
+                    reads[which]++;
+                    if (total != expectedTotal) {
+                        wrong[which]++;
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        System.out.printf("PersistentHashMap snapshots: %,d sums, %,d inconsistent%n", reads[0], wrong[0]);
+        System.out.printf("ConcurrentHashMap iteration: %,d sums, %,d inconsistent (weakly consistent)%n%n",
+                reads[1], wrong[1]);
+        check(wrong[0] == 0, "a snapshot saw a half-applied transfer");
+    }
+
+    public static void benchmark() {
+        System.out.println("4. COSTS: snapshot, update, bulk load, lookup");
+        System.out.println("=============================================");
+
+        System.out.printf("%-10s %16s %16s %14s %14s %12s %12s%n", "SIZE", "HashMap copy",
+                "HAMT snapshot", "HAMT with()", "HashMap put", "HAMT get", "HashMap get");
+        long sink = 0;
+        for (int round = 0; round < 2; round++) { // round 0 warms up the JIT
+            for (int n : new int[] {1_000, 100_000, 1_000_000}) {
+                HashMap<Integer, Integer> hashMap = new HashMap<>();
+                Builder<Integer, Integer> builder = PersistentHashMap.<Integer, Integer>empty().toBuilder();
+                for (int i = 0; i < n; i++) {
+                    hashMap.put(i, i);
+                    builder.put(i, i);
+                }
+                Ref<Integer, Integer> ref = new Ref<>(builder.build());
+
+                int copies = Math.max(3, 3_000_000 / n);
+                long t0 = System.nanoTime();
+                for (int i = 0; i < copies; i++) {
+                    sink += new HashMap<>(hashMap).size();
+                }
+                double copyNanos = (System.nanoTime() - t0) / (double) copies;
+
+                t0 = System.nanoTime();
+                for (int i = 0; i < 1_000_000; i++) {
+                    sink += ref.snapshot().size();
+                }
+                double snapshotNanos = (System.nanoTime() - t0) / 1_000_000.0;
+
+                int ops = 200_000;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                PersistentHashMap<Integer, Integer> version = ref.snapshot();
+                t0 = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    version = version.with(random.nextInt(n), i);
+                }
+                double withNanos = (System.nanoTime() - t0) / (double) ops;
+                t0 = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    hashMap.put(random.nextInt(n), i);
+                }
+                double putNanos = (System.nanoTime() - t0) / (double) ops;
+
+                t0 = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    sink += version.get(random.nextInt(n));
+                }
+                double getNanos = (System.nanoTime() - t0) / (double) ops;
+                t0 = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    sink += hashMap.get(random.nextInt(n));
+                }
+                double hashGetNanos = (System.nanoTime() - t0) / (double) ops;
+
+                if (round == 1) {
+                    System.out.printf("%,-10d %13.0f ns %13.1f ns %11.0f ns %11.0f ns %9.0f ns %9.0f ns%n",
+                            n, copyNanos, snapshotNanos, withNanos, putNanos, getNanos, hashGetNanos);
+                }
+            }
+        }
+
+        int n = 1_000_000;
+        long t0 = System.nanoTime();
+        PersistentHashMap<Integer, Integer> persistent = empty();
+        for (int i = 0; i < n; i++) {
+            persistent = persistent.with(i, i);
+        }
+        long persistentMillis = (System.nanoTime() - t0) / 1_000_000;
+        t0 = System.nanoTime();
+        Builder<Integer, Integer> builder = PersistentHashMap.<Integer, Integer>empty().toBuilder();
+        for (int i = 0; i < n; i++) {
+            builder.put(i, i);
+        }
+        PersistentHashMap<Integer, Integer> built = builder.build();
+        long builderMillis = (System.nanoTime() - t0) / 1_000_000;
+        check(built.equals(persistent), "bulk load");
+        System.out.printf("%nBulk load of 1M keys: with() one by one %,d ms, builder %,d ms (sink %d)%n%n",
+                persistentMillis, builderMillis, sink & 1);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getCurrentThreadAllocatedBytes();
+    }
+
+    /** A key whose hashCode collides often, to exercise collision nodes */
+    private static final class CollidingKey {
+        final int id;
+
+        CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 7;
+        }
+    }
+}
+
+/*
+ * ===========================================
+ * PERSISTENT HASH MAP SUMMARY
+ * ===========================================
+ *
+ * 1. STRUCTURE:
+ *    - 32-way trie on 5-bit slices of the hash, bitmap-compressed nodes
+ *    - collision nodes for keys with identical 32-bit hashes
+ *
+ * 2. OPERATIONS:
+ *    - get: O(log32 n) - about 4 node hops for a million keys
+ *    - with / without: copy the root-to-key path, share the rest
+ *    - Builder: in-place changes to nodes it owns, for bulk loads
+ *
+ * 3. CONCURRENCY:
+ *    - versions are immutable: safe to share without locks
+ *    - Ref: AtomicReference to the current version, CAS to publish
+ *    - snapshot = one volatile read; iteration is always consistent
+ *
+ * 4. COMPARED WITH:
+ *    - ConcurrentHashMap: faster updates, but weakly consistent iteration
+ *    - HashMap copy per reader: consistent, but O(n) time and memory
+ *    - Collections.unmodifiableMap: a view, not a snapshot - it still changes
+ */
@@ -0,0 +1,1003 @@
+import java.lang.ref.Reference;
+import java.util.*;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * PRIMITIVE-KEYED MAPS: IntIntMap, IntObjectMap, LongLongMap
+ * ==========================================================
+ *
+ * HashMapInternalWorkingTutorial.performanceAnalysis uses HashMap<Integer, String>
+ * and StreamsQuestions counts frequencies with
+ *
+ *     freq.put(num, freq.getOrDefault(num, 0) + 1);
+ *
+ * Every call boxes the key, and every new count boxes the value. One entry
+ * of a HashMap<Integer, Integer> costs a Node (32 bytes), an Integer key
+ * (16 bytes), an Integer value (16 bytes) and a table slot - about 70 bytes
+ * to store 8 bytes of data.
+ *
+ * The maps below store the primitives directly:
+ * 1. Parallel primitive arrays (int[] keys, int[] values), linear probing
+ * 2. Key 0 is the reserved EMPTY-slot sentinel; a real key 0 is kept in
+ *    two separate fields (hasZeroKey / zeroValue), so every int is a valid key
+ * 3. addTo() / merge() update the value in place - one probe, no boxing
+ * 4. Iteration uses a cursor (advance() / key() / value()), never Map.Entry
+ * 5. remove() uses backward-shift deletion, like OpenHashMap
+ *
+ * main() compares memory and throughput with the boxed HashMap versions
+ * on 10,000,000 entries (run with -Xmx3g; pass a smaller count as args[0]).
+ */
+
+public class PrimitiveMaps {
+
+    public static void main(String[] args) {
+        System.out.println("=== PRIMITIVE-KEYED MAPS ===\n");
+
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        frequencyExample();
+        contractCheck();
+        benchmark(n);
+    }
+
+    // ===========================================
+    // EXAMPLE 1: FREQUENCY COUNT WITHOUT BOXING
+    // ===========================================
+
+    public static void frequencyExample() {
+        System.out.println("1. FREQUENCY COUNT (StreamsQuestions, unboxed)");
+        System.out.println("==============================================");
+
+        int[] arr = {1, 2, 2, 3, 1, 1, 4, 0, 0};
+        IntIntMap freq = new IntIntMap();
+        for (int num : arr) {
+            freq.addTo(num, 1); // replaces put(num, getOrDefault(num, 0) + 1)
+        }
+        System.out.println("Frequencies: " + freq);
+
+        StringBuilder repeated = new StringBuilder();
+        for (IntIntMap.Cursor c = freq.cursor(); c.advance(); ) {
+            if (c.value() > 1) {
+                repeated.append(c.key()).append(' ');
+            }
+        }
+        System.out.println("Repeated elements: " + repeated.toString().trim());
+
+        IntObjectMap<String> names = new IntObjectMap<>();
+        names.put(42, "Alice");
+        names.computeIfAbsent(7, id -> "user-" + id);
+        System.out.println("IntObjectMap: " + names + "\n");
+    }
+
+    // ===========================================
+    // EXAMPLE 2: CHECK AGAINST HashMap
+    // ===========================================
+
+    /**
+     * Same random operations on a primitive map and a boxed HashMap.
+     * Keys include 0 (the sentinel) and negative numbers on purpose.
+     */
+    public static void contractCheck() {
+        System.out.println("2. DIFFERENTIAL CHECK (vs HashMap)");
+        System.out.println("==================================");
+
+        Random random = new Random(11);
+        IntIntMap ints = new IntIntMap(4);
+        LongLongMap longs = new LongLongMap(4);
+        IntObjectMap<String> objects = new IntObjectMap<>(4);
+        Map<Integer, Integer> refInts = new HashMap<>();
+        Map<Long, Long> refLongs = new HashMap<>();
+        Map<Integer, String> refObjects = new HashMap<>();
+
+        int ops = 500_000;
+        for (int op = 0; op < ops; op++) {
+            int key = random.nextInt(200) - 100;
+            long longKey = key * 1_000_000_007L;
+            int value = random.nextInt(1000);
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    check(ints.put(key, value) == refInts.getOrDefault(key, 0), "IntIntMap.put");
+                    refInts.put(key, value);
+                    check(longs.put(longKey, value) == refLongs.getOrDefault(longKey, 0L), "LongLongMap.put");
+                    refLongs.put(longKey, (long) value);
+                    check(Objects.equals(objects.put(key, "v" + value), refObjects.put(key, "v" + value)),
+                            "IntObjectMap.put");
+                }
+                case 1 -> {
+                    check(ints.addTo(key, value) == refInts.merge(key, value, Integer::sum), "IntIntMap.addTo");
+                    check(longs.merge(longKey, value, Math::max)
+                            == refLongs.merge(longKey, (long) value, Math::max), "LongLongMap.merge");
+                }
+                case 2 -> {
+                    check(ints.remove(key) == (refInts.remove(key) != null), "IntIntMap.remove");
+                    check(longs.remove(longKey) == (refLongs.remove(longKey) != null), "LongLongMap.remove");
+                    check(Objects.equals(objects.remove(key), refObjects.remove(key)), "IntObjectMap.remove");
+                }
+                default -> {
+                    check(ints.get(key) == refInts.getOrDefault(key, 0), "IntIntMap.get");
+                    check(longs.containsKey(longKey) == refLongs.containsKey(longKey), "LongLongMap.containsKey");
+                    check(Objects.equals(objects.get(key), refObjects.get(key)), "IntObjectMap.get");
+                }
+            }
+        }
+        check(ints.size() == refInts.size() && longs.size() == refLongs.size()
+                && objects.size() == refObjects.size(), "size");
+
+        Map<Integer, Integer> seen = new HashMap<>();
+        for (IntIntMap.Cursor c = ints.cursor(); c.advance(); ) {
+            seen.put(c.key(), c.value());
+        }
+        check(seen.equals(refInts), "IntIntMap.cursor");
+        Map<Long, Long> seenLongs = new HashMap<>();
+        for (LongLongMap.Cursor c = longs.cursor(); c.advance(); ) {
+            seenLongs.put(c.key(), c.value());
+        }
+        check(seenLongs.equals(refLongs), "LongLongMap.cursor");
+        Map<Integer, String> seenObjects = new HashMap<>();
+        for (IntObjectMap.Cursor<String> c = objects.cursor(); c.advance(); ) {
+            seenObjects.put(c.key(), c.value());
+        }
+        check(seenObjects.equals(refObjects), "IntObjectMap.cursor");
+
+        System.out.println("All " + ops + " operations matched HashMap.\n");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError("Mismatch in " + what);
+        }
+    }
+
+    // ===========================================
+    // EXAMPLE 3: MEMORY AND THROUGHPUT
+    // ===========================================
+
+    public static void benchmark(int n) {
+        String title = String.format("3. %,d RANDOM KEYS", n);
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+
+        int[] keys = new int[n];
+        Random random = new Random(3);
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        String label = "cached";
+
+        System.out.printf("%-38s %10s %10s %12s%n", "MAP", "fill ms", "read ms", "MB");
+
+        // Frequency counting, twice over the keys so every entry is updated once
+        long before = usedHeap();
+        long t0 = System.nanoTime();
+        Map<Integer, Integer> boxedCounts = new HashMap<>();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int key : keys) {
+                boxedCounts.put(key, boxedCounts.getOrDefault(key, 0) + 1);
+            }
+        }
+        long t1 = System.nanoTime();
+        long sum = 0;
+        for (int key : keys) {
+            sum += boxedCounts.get(key);
+        }
+        long t2 = System.nanoTime();
+        report("HashMap<Integer,Integer> getOrDefault", t0, t1, t2, usedHeap() - before);
+        Reference.reachabilityFence(boxedCounts);
+        boxedCounts = null;
+
+        before = usedHeap();
+        t0 = System.nanoTime();
+        IntIntMap counts = new IntIntMap();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int key : keys) {
+                counts.addTo(key, 1);
+            }
+        }
+        t1 = System.nanoTime();
+        for (int key : keys) {
+            sum += counts.get(key);
+        }
+        t2 = System.nanoTime();
+        report("IntIntMap addTo", t0, t1, t2, usedHeap() - before);
+        Reference.reachabilityFence(counts);
+        counts = null;
+
+        // performanceAnalysis style: int -> String (one shared value, so only map structure is counted)
+        before = usedHeap();
+        t0 = System.nanoTime();
+        Map<Integer, String> boxedObjects = new HashMap<>();
+        for (int key : keys) {
+            boxedObjects.put(key, label);
+        }
+        t1 = System.nanoTime();
+        for (int key : keys) {
+            sum += boxedObjects.get(key).length();
+        }
+        t2 = System.nanoTime();
+        report("HashMap<Integer,String>", t0, t1, t2, usedHeap() - before);
+        Reference.reachabilityFence(boxedObjects);
+        boxedObjects = null;
+
+        before = usedHeap();
+        t0 = System.nanoTime();
+        IntObjectMap<String> objects = new IntObjectMap<>();
+        for (int key : keys) {
+            objects.put(key, label);
+        }
+        t1 = System.nanoTime();
+        for (int key : keys) {
+            sum += objects.get(key).length();
+        }
+        t2 = System.nanoTime();
+        report("IntObjectMap<String>", t0, t1, t2, usedHeap() - before);
+        Reference.reachabilityFence(objects);
+        objects = null;
+
+        before = usedHeap();
+        t0 = System.nanoTime();
+        Map<Long, Long> boxedLongs = new HashMap<>();
+        for (int key : keys) {
+            boxedLongs.merge(key * 31L, 1L, Long::sum);
+        }
+        t1 = System.nanoTime();
+        for (int key : keys) {
+            sum += boxedLongs.get(key * 31L);
+        }
+        t2 = System.nanoTime();
+        report("HashMap<Long,Long> merge", t0, t1, t2, usedHeap() - before);
+        Reference.reachabilityFence(boxedLongs);
+        boxedLongs = null;
+
+        before = usedHeap();
+        t0 = System.nanoTime();
+        LongLongMap longs = new LongLongMap();
+        for (int key : keys) {
+            longs.addTo(key * 31L, 1L);
+        }
+        t1 = System.nanoTime();
+        for (int key : keys) {
+            sum += longs.get(key * 31L);
+        }
+        t2 = System.nanoTime();
+        report("LongLongMap addTo", t0, t1, t2, usedHeap() - before);
+        Reference.reachabilityFence(longs);
+
+        System.out.println("(checksum " + sum + "; fill for the counting maps is two passes over the keys)\n");
+    }
+
+    private static void report(String name, long t0, long t1, long t2, long bytes) {
+        System.out.printf("%-38s %,10d %,10d %,12.1f%n", name,
+                (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, bytes / (1024.0 * 1024.0));
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * int -> int map. Absent keys read as 0, which makes counting natural.
+ */
+class IntIntMap {
+    private static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private int[] values;
+    private int size;           // entries in the arrays (the zero key is not counted here)
+    private int threshold;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    IntIntMap() {
+        this(16);
+    }
+
+    IntIntMap(int expectedSize) {
+        allocate(HashSizing.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** Slot of the key, or (-slot - 1) of the empty slot where it would go */
+    private int find(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == EMPTY) {
+                return -i - 1;
+            }
+        }
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return key == EMPTY ? hasZeroKey : find(key) >= 0;
+    }
+
+    /** Value for the key, or 0 when absent */
+    public int get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = find(key);
+        return i >= 0 ? values[i] : defaultValue;
+    }
+
+    /** Returns the previous value, or 0 when the key was absent */
+    public int put(int key, int value) {
+        if (key == EMPTY) {
+            int old = zeroValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return old;
+        }
+        int i = find(key);
+        if (i >= 0) {
+            int old = values[i];
+            values[i] = value;
+            return old;
+        }
+        insertAt(-i - 1, key, value);
+        return 0;
+    }
+
+    /** Adds delta to the value (absent = 0) with a single probe; returns the new value */
+    public int addTo(int key, int delta) {
+        return merge(key, delta, Integer::sum);
+    }
+
+    /** Stores value if absent, otherwise fn(old, value); returns the stored value */
+    public int merge(int key, int value, IntBinaryOperator fn) {
+        if (key == EMPTY) {
+            zeroValue = hasZeroKey ? fn.applyAsInt(zeroValue, value) : value;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+        int i = find(key);
+        if (i >= 0) {
+            return values[i] = fn.applyAsInt(values[i], value);
+        }
+        insertAt(-i - 1, key, value);
+        return value;
+    }
+
+    private void insertAt(int i, int key, int value) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(HashSizing.checkCapacity(capacity));
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k != EMPTY) {
+                int i = slot(k, mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /** Returns true if the key was present */
+    public boolean remove(int key) {
+        if (key == EMPTY) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            zeroValue = 0;
+            return had;
+        }
+        int hole = find(key);
+        if (hole < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (HashSizing.canShift(slot(keys[i], mask), hole, i)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = 0;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Walks all entries without creating an object per entry:
+     *   for (IntIntMap.Cursor c = map.cursor(); c.advance(); ) { c.key(); c.value(); }
+     * The map must not be structurally modified during the walk.
+     */
+    final class Cursor {
+        private int pos = keys.length + 1; // keys.length is the virtual slot of key 0
+
+        public boolean advance() {
+            if (--pos == keys.length) {
+                if (hasZeroKey) {
+                    return true;
+                }
+                pos--;
+            }
+            while (pos >= 0 && keys[pos] == EMPTY) {
+                pos--;
+            }
+            return pos >= 0;
+        }
+
+        public int key() {
+            return pos == keys.length ? EMPTY : keys[pos];
+        }
+
+        public int value() {
+            return pos == keys.length ? zeroValue : values[pos];
+        }
+
+        public void setValue(int value) {
+            if (pos == keys.length) {
+                zeroValue = value;
+            } else {
+                values[pos] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (Cursor c = cursor(); c.advance(); ) {
+            joiner.add(c.key() + "=" + c.value());
+        }
+        return joiner.toString();
+    }
+}
+
+/**
+ * int -> V map. Absent keys read as null.
+ */
+class IntObjectMap<V> {
+    private static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    IntObjectMap() {
+        this(16);
+    }
+
+    IntObjectMap(int expectedSize) {
+        allocate(HashSizing.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == EMPTY) {
+                return -i - 1;
+            }
+        }
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return key == EMPTY ? hasZeroKey : find(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == EMPTY) {
+            return zeroValue;
+        }
+        int i = find(key);
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    /** Returns the previous value, or null */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == EMPTY) {
+            V old = zeroValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return old;
+        }
+        int i = find(key);
+        if (i >= 0) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        insertAt(-i - 1, key, value);
+        return null;
+    }
+
+    /** Like Map.computeIfAbsent, with an int key - nothing is boxed */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(int key, IntFunction<? extends V> mapping) {
+        if (key == EMPTY) {
+            if (!hasZeroKey || zeroValue == null) {
+                V value = mapping.apply(key);
+                if (value != null) {
+                    hasZeroKey = true;
+                    zeroValue = value;
+                }
+            }
+            return zeroValue;
+        }
+        int i = find(key);
+        if (i >= 0 && values[i] != null) {
+            return (V) values[i];
+        }
+        V value = mapping.apply(key);
+        if (value != null) {
+            if (i >= 0) {
+                values[i] = value;
+            } else {
+                insertAt(-i - 1, key, value);
+            }
+        }
+        return value;
+    }
+
+    private void insertAt(int i, int key, V value) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(HashSizing.checkCapacity(capacity));
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k != EMPTY) {
+                int i = slot(k, mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /** Returns the removed value, or null */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == EMPTY) {
+            V old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            return old;
+        }
+        int hole = find(key);
+        if (hole < 0) {
+            return null;
+        }
+        V old = (V) values[hole];
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (HashSizing.canShift(slot(keys[i], mask), hole, i)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null; // let the value be garbage collected
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+
+    public Cursor<V> cursor() {
+        return new Cursor<>(this);
+    }
+
+    /** Entry-free walk; see IntIntMap.Cursor */
+    static final class Cursor<V> {
+        private final IntObjectMap<V> map;
+        private int pos;
+
+        Cursor(IntObjectMap<V> map) {
+            this.map = map;
+            this.pos = map.keys.length + 1;
+        }
+
+        public boolean advance() {
+            int[] keys = map.keys;
+            if (--pos == keys.length) {
+                if (map.hasZeroKey) {
+                    return true;
+                }
+                pos--;
+            }
+            while (pos >= 0 && keys[pos] == EMPTY) {
+                pos--;
+            }
+            return pos >= 0;
+        }
+
+        public int key() {
+            return pos == map.keys.length ? EMPTY : map.keys[pos];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return pos == map.keys.length ? map.zeroValue : (V) map.values[pos];
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (Cursor<V> c = cursor(); c.advance(); ) {
+            joiner.add(c.key() + "=" + c.value());
+        }
+        return joiner.toString();
+    }
+}
+
+/**
+ * long -> long map. Absent keys read as 0.
+ */
+class LongLongMap {
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int threshold;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    LongLongMap() {
+        this(16);
+    }
+
+    LongLongMap(int expectedSize) {
+        allocate(HashSizing.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == EMPTY) {
+                return -i - 1;
+            }
+        }
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return key == EMPTY ? hasZeroKey : find(key) >= 0;
+    }
+
+    /** Value for the key, or 0 when absent */
+    public long get(long key) {
+        return getOrDefault(key, 0L);
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = find(key);
+        return i >= 0 ? values[i] : defaultValue;
+    }
+
+    /** Returns the previous value, or 0 when the key was absent */
+    public long put(long key, long value) {
+        if (key == EMPTY) {
+            long old = zeroValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return old;
+        }
+        int i = find(key);
+        if (i >= 0) {
+            long old = values[i];
+            values[i] = value;
+            return old;
+        }
+        insertAt(-i - 1, key, value);
+        return 0L;
+    }
+
+    /** Adds delta to the value (absent = 0) with a single probe; returns the new value */
+    public long addTo(long key, long delta) {
+        return merge(key, delta, Long::sum);
+    }
+
+    /** Stores value if absent, otherwise fn(old, value); returns the stored value */
+    public long merge(long key, long value, LongBinaryOperator fn) {
+        if (key == EMPTY) {
+            zeroValue = hasZeroKey ? fn.applyAsLong(zeroValue, value) : value;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+        int i = find(key);
+        if (i >= 0) {
+            return values[i] = fn.applyAsLong(values[i], value);
+        }
+        insertAt(-i - 1, key, value);
+        return value;
+    }
+
+    private void insertAt(int i, long key, long value) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(HashSizing.checkCapacity(capacity));
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k != EMPTY) {
+                int i = slot(k, mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /** Returns true if the key was present */
+    public boolean remove(long key) {
+        if (key == EMPTY) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            zeroValue = 0L;
+            return had;
+        }
+        int hole = find(key);
+        if (hole < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (HashSizing.canShift(slot(keys[i], mask), hole, i)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = 0L;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Entry-free walk; see IntIntMap.Cursor */
+    final class Cursor {
+        private int pos = keys.length + 1;
+
+        public boolean advance() {
+            if (--pos == keys.length) {
+                if (hasZeroKey) {
+                    return true;
+                }
+                pos--;
+            }
+            while (pos >= 0 && keys[pos] == EMPTY) {
+                pos--;
+            }
+            return pos >= 0;
+        }
+
+        public long key() {
+            return pos == keys.length ? EMPTY : keys[pos];
+        }
+
+        public long value() {
+            return pos == keys.length ? zeroValue : values[pos];
+        }
+
+        public void setValue(long value) {
+            if (pos == keys.length) {
+                zeroValue = value;
+            } else {
+                values[pos] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (Cursor c = cursor(); c.advance(); ) {
+            joiner.add(c.key() + "=" + c.value());
+        }
+        return joiner.toString();
+    }
+}
+
+/**
+ * Table sizing and the backward-shift rule shared by the primitive maps
+ */
+final class HashSizing {
+    private HashSizing() {
+    }
+
+    /** Power-of-two capacity that holds expectedSize entries under loadFactor */
+    static int capacityFor(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+        }
+        long needed = (long) Math.ceil(Math.max(expectedSize, 2) / loadFactor) + 1;
+        return checkCapacity((int) Math.min(1L << 30, Long.highestOneBit(needed - 1) << 1));
+    }
+
+    static int checkCapacity(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalStateException("Map too large");
+        }
+        return capacity;
+    }
+
+    /**
+     * May the entry at slot i, whose home slot is 'home', move back into
+     * 'hole'? Only if its home is cyclically outside (hole, i].
+     */
+    static boolean canShift(int home, int hole, int i) {
+        return hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+    }
+}
+
+/*
+ * ===========================================
+ * PRIMITIVE MAPS SUMMARY
+ * ===========================================
+ *
+ * 1. THE COST OF BOXING:
+ *    - HashMap<Integer,Integer>: Node + Integer + Integer per entry (~70 bytes)
+ *    - IntIntMap: two ints per slot (~13 bytes per entry after growth)
+ *    - Fewer objects also means much less GC work
+ *
+ * 2. THE SENTINEL:
+ *    - 0 in keys[] marks an empty slot, so no separate "used" array is needed
+ *    - The real key 0 lives in hasZeroKey / zeroValue
+ *
+ * 3. IN-PLACE UPDATES:
+ *    - getOrDefault + put probes twice and boxes twice
+ *    - addTo / merge probe once and write the primitive in place
+ *
+ * 4. ITERATION:
+ *    - A cursor exposes key()/value() as primitives; no Map.Entry objects
+ *
+ * 5. WHEN NOT TO USE THEM:
+ *    - APIs that need java.util.Map (these maps do not implement it)
+ *    - Small maps, where the difference does not matter
+ */
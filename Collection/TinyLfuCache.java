@@ -0,0 +1,960 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * BOUNDED CONCURRENT CACHE WITH W-TinyLFU ADMISSION
+ * =================================================
+ *
+ * ConcurrentHashMapTutorial.bestPractices builds its "Thread-Safe Cache" as
+ * a bare ConcurrentHashMap filled by computeIfAbsent: it never forgets
+ * anything. TinyLfuCache keeps the same lock-free reads but bounds the
+ * cache by entry count or by total weight, using W-TinyLFU (the policy
+ * behind Caffeine):
+ *
+ *   new entry -> [ WINDOW LRU 1% ] --evicted--> candidate
+ *                                                  |  admit only if the sketch says it
+ *                                                  v  is used more often than the victim
+ *                [ MAIN: PROBATION 20% | PROTECTED 80% ]  (segmented LRU)
+ *
+ * 1. FREQUENCY SKETCH: a count-min sketch of 4-bit counters remembers how
+ *    often every key (even evicted ones) was used; counters are halved
+ *    periodically so old popularity fades
+ * 2. WINDOW: recent arrivals get a short LRU stay, so bursts still hit
+ * 3. ADMISSION: a window evictee only enters the main area if it is
+ *    more frequent than the main area's LRU victim - one-hit wonders and
+ *    scans never push out the popular entries
+ * 4. PROBATION -> PROTECTED: a second hit promotes an entry
+ *
+ * CONCURRENCY: the LRU queues are not thread-safe, so they are changed only
+ * under one lock, and nobody waits for that lock on the read path:
+ * - get() records the hit in a LOSSY STRIPED RING BUFFER (dropped if full)
+ * - writes queue an add/update/remove event
+ * - whoever wins tryLock() replays the buffered events and evicts
+ */
+
+public final class TinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2, UNLINKED = -1;
+    private static final int ADD = 0, UPDATE = 1, REMOVE = 2;
+    private static final int READ_BUFFER_SIZE = 16;       // per stripe; full = drain, extra hits dropped
+    private static final int WRITE_BUFFER_SIZE = 1024;    // full = writers drain it themselves
+    private static final int WRITE_DRAIN_BATCH = 16;      // replay writes in batches, not one by one
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    // Policy state: guarded by evictionLock
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AccessDeque<K, V> window = new AccessDeque<>();
+    private final AccessDeque<K, V> probation = new AccessDeque<>();
+    private final AccessDeque<K, V> protectedQueue = new AccessDeque<>();
+    private final FrequencySketch sketch;
+    private long weightedSize;
+    private long windowWeight;
+    private long protectedWeight;
+
+    private final RingBuffer[] readBuffers;
+    private final RingBuffer writeBuffer = new RingBuffer(WRITE_BUFFER_SIZE);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private TinyLfuCache(long maximum, ToIntBiFunction<? super K, ? super V> weigher, long sketchCapacity) {
+        this.maximum = maximum;
+        this.weigher = weigher;
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(sketchCapacity);
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1) << 1;
+        this.readBuffers = new RingBuffer[Math.min(stripes, 64)];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new RingBuffer(READ_BUFFER_SIZE);
+        }
+    }
+
+    /** At most maximumSize entries */
+    public static <K, V> TinyLfuCache<K, V> maximumSize(long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        return new TinyLfuCache<>(maximumSize, (k, v) -> 1, maximumSize);
+    }
+
+    /**
+     * At most maximumWeight in total, as measured by the weigher (e.g. bytes).
+     * The sketch is sized for expectedEntries distinct keys.
+     */
+    public static <K, V> TinyLfuCache<K, V> maximumWeight(long maximumWeight,
+                                                        ToIntBiFunction<? super K, ? super V> weigher,
+                                                        long expectedEntries) {
+        if (maximumWeight <= 0 || expectedEntries <= 0) {
+            throw new IllegalArgumentException("maximumWeight and expectedEntries must be positive");
+        }
+        return new TinyLfuCache<>(maximumWeight, Objects.requireNonNull(weigher), expectedEntries);
+    }
+
+    // ===========================================
+    // READS (lock-free)
+    // ===========================================
+
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        afterRead(node);
+        return node.value;
+    }
+
+    /** Like the tutorial's computeIfAbsent, but bounded */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            hits.increment();
+            afterRead(node);
+            return node.value;
+        }
+        misses.increment();
+        boolean[] created = new boolean[1];
+        node = data.computeIfAbsent(key, k -> {
+            V value = Objects.requireNonNull(loader.apply(k));
+            created[0] = true;
+            return new Node<>(k, value, weigh(k, value));
+        });
+        if (created[0]) {
+            afterWrite(new WriteEvent<>(node, ADD));
+        } else {
+            afterRead(node);
+        }
+        return node.value;
+    }
+
+    private void afterRead(Node<K, V> node) {
+        if (!readBuffers[stripe()].offer(node)) {
+            tryDrain(); // buffer full: this hit is not recorded, but the buffer gets emptied
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 58) & (readBuffers.length - 1);
+    }
+
+    // ===========================================
+    // WRITES
+    // ===========================================
+
+    public void put(K key, V value) {
+        Objects.requireNonNull(value);
+        int weight = weigh(key, value);
+        while (true) {
+            Node<K, V> node = new Node<>(key, value, weight);
+            Node<K, V> prior = data.putIfAbsent(key, node);
+            if (prior == null) {
+                afterWrite(new WriteEvent<>(node, ADD));
+                return;
+            }
+            synchronized (prior) {
+                if (!prior.alive) {
+                    continue; // evicted or removed meanwhile: insert again
+                }
+                prior.value = value;
+                prior.weight = weight;
+            }
+            afterWrite(new WriteEvent<>(prior, UPDATE));
+            afterRead(prior);
+            return;
+        }
+    }
+
+    public V remove(K key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        synchronized (node) {
+            node.alive = false;
+        }
+        afterWrite(new WriteEvent<>(node, REMOVE));
+        return node.value;
+    }
+
+    private int weigh(K key, V value) {
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight for " + key);
+        }
+        return weight;
+    }
+
+    /**
+     * Write events are never dropped. They are replayed in batches, so the
+     * cache may briefly hold up to WRITE_DRAIN_BATCH entries too many.
+     */
+    private void afterWrite(WriteEvent<K, V> event) {
+        while (!writeBuffer.offer(event)) {
+            cleanUp(); // back-pressure: the buffer is full, so this writer drains it
+        }
+        if (writeBuffer.size() >= WRITE_DRAIN_BATCH) {
+            scheduleDrain();
+        }
+    }
+
+    /** Re-checks after unlocking, so a batch queued while we held the lock is not stranded */
+    private void scheduleDrain() {
+        do {
+            if (!evictionLock.tryLock()) {
+                return; // the holder will see our events when it re-checks
+            }
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while (writeBuffer.size() >= WRITE_DRAIN_BATCH);
+    }
+
+    private void tryDrain() {
+        if (evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /** Replays buffered events and evicts; forces all pending work, e.g. before reading size */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // ===========================================
+    // POLICY (all under evictionLock)
+    // ===========================================
+
+    @SuppressWarnings("unchecked")
+    private void maintenance() {
+        for (RingBuffer buffer : readBuffers) {
+            Object node;
+            while ((node = buffer.poll()) != null) {
+                onAccess((Node<K, V>) node);
+            }
+        }
+        Object event;
+        while ((event = writeBuffer.poll()) != null) {
+            onWrite((WriteEvent<K, V>) event);
+        }
+        evictFromMain(evictFromWindow());
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (!node.alive) {
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW -> window.moveToBack(node);
+            case PROBATION -> {
+                probation.remove(node);            // second hit: promote
+                node.queue = PROTECTED;
+                protectedQueue.add(node);
+                protectedWeight += node.policyWeight;
+                demoteFromProtected();
+            }
+            case PROTECTED -> protectedQueue.moveToBack(node);
+            default -> {
+                // not linked yet: its ADD event is still in the write buffer
+            }
+        }
+    }
+
+    private void onWrite(WriteEvent<K, V> event) {
+        Node<K, V> node = event.node;
+        switch (event.type) {
+            case ADD -> {
+                if (!node.alive || node.queue != UNLINKED) {
+                    return; // removed before we got here
+                }
+                sketch.increment(node.key);
+                node.queue = WINDOW;
+                node.policyWeight = node.weight;
+                window.add(node);
+                windowWeight += node.policyWeight;
+                weightedSize += node.policyWeight;
+            }
+            case UPDATE -> {
+                if (!node.alive || node.queue == UNLINKED) {
+                    return; // the pending ADD will read the current weight
+                }
+                setPolicyWeight(node, node.weight);
+            }
+            default -> {
+                if (node.queue != UNLINKED) {
+                    unlink(node);
+                }
+            }
+        }
+    }
+
+    private void setPolicyWeight(Node<K, V> node, int weight) {
+        long delta = weight - node.policyWeight;
+        node.policyWeight = weight;
+        weightedSize += delta;
+        if (node.queue == WINDOW) {
+            windowWeight += delta;
+        } else if (node.queue == PROTECTED) {
+            protectedWeight += delta;
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedWeight > protectedMaximum) {
+            Node<K, V> demoted = protectedQueue.first();
+            protectedQueue.remove(demoted);
+            protectedWeight -= demoted.policyWeight;
+            demoted.queue = PROBATION;
+            probation.add(demoted);
+        }
+    }
+
+    /** Moves window overflow to the back of probation; returns how many became candidates */
+    private int evictFromWindow() {
+        int candidates = 0;
+        while (windowWeight > windowMaximum) {
+            Node<K, V> node = window.first();
+            window.remove(node);
+            windowWeight -= node.policyWeight;
+            node.queue = PROBATION;
+            probation.add(node);
+            candidates++;
+        }
+        return candidates;
+    }
+
+    /**
+     * Candidates (the window evictees, at probation's back) duel the victims
+     * (probation's front); the sketch decides who stays. When probation runs
+     * out, protected and then window entries become victims.
+     */
+    private void evictFromMain(int candidates) {
+        int victimQueue = PROBATION;
+        Node<K, V> victim = probation.first();
+        Node<K, V> candidate = probation.last();
+        while (weightedSize > maximum) {
+            if (candidates <= 0) {
+                candidate = null;
+            }
+            if (victim == null && candidate == null) {
+                if (victimQueue == PROBATION) {
+                    victim = protectedQueue.first();
+                    victimQueue = PROTECTED;
+                    continue;
+                } else if (victimQueue == PROTECTED) {
+                    victim = window.first();
+                    victimQueue = WINDOW;
+                    continue;
+                }
+                break;
+            }
+            if (victim == null || victim == candidate) {
+                Node<K, V> previous = candidate.prev;
+                evict(candidate);
+                candidate = previous;
+                candidates--;
+                victim = null;
+                continue;
+            }
+            if (candidate == null) {
+                Node<K, V> next = victim.next;
+                evict(victim);
+                victim = next;
+                continue;
+            }
+            candidates--;
+            if (candidate.policyWeight <= maximum && admit(candidate.key, victim.key)) {
+                Node<K, V> next = victim.next;
+                evict(victim);
+                victim = next;
+                candidate = candidate.prev;
+            } else {
+                Node<K, V> previous = candidate.prev;
+                evict(candidate);
+                candidate = previous;
+            }
+        }
+    }
+
+    /**
+     * The candidate must be strictly more frequent. A small random chance for
+     * warm candidates stops an attacker from pinning a victim by inflating
+     * its frequency (hash flooding the sketch).
+     */
+    private boolean admit(K candidateKey, K victimKey) {
+        int candidateFrequency = sketch.frequency(candidateKey);
+        int victimFrequency = sketch.frequency(victimKey);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        if (candidateFrequency <= 5) {
+            return false;
+        }
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void evict(Node<K, V> node) {
+        synchronized (node) {
+            if (node.alive && data.remove(node.key, node)) {
+                evictions.increment();
+            }
+            node.alive = false;
+        }
+        unlink(node);
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW -> {
+                window.remove(node);
+                windowWeight -= node.policyWeight;
+            }
+            case PROBATION -> probation.remove(node);
+            case PROTECTED -> {
+                protectedQueue.remove(node);
+                protectedWeight -= node.policyWeight;
+            }
+            default -> {
+                return;
+            }
+        }
+        weightedSize -= node.policyWeight;
+        node.queue = UNLINKED;
+    }
+
+    // ===========================================
+    // SIZE AND STATS
+    // ===========================================
+
+    public long estimatedSize() {
+        return data.mappingCount();
+    }
+
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public String stats() {
+        return String.format("size=%,d weight=%,d/%,d hits=%,d misses=%,d evictions=%,d hitRate=%.1f%%",
+                estimatedSize(), weightedSize(), maximum, hits.sum(), misses.sum(), evictions.sum(),
+                100 * hitRate());
+    }
+
+    // ===========================================
+    // NODES AND QUEUES
+    // ===========================================
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile int weight;      // written by put() under the node lock
+        volatile boolean alive = true;
+        // Policy fields: evictionLock only
+        int queue = UNLINKED;
+        long policyWeight;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static final class WriteEvent<K, V> {
+        final Node<K, V> node;
+        final int type;
+
+        WriteEvent(Node<K, V> node, int type) {
+            this.node = node;
+            this.type = type;
+        }
+    }
+
+    /** Intrusive doubly linked LRU queue: front = least recently used */
+    private static final class AccessDeque<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        Node<K, V> first() {
+            return head;
+        }
+
+        Node<K, V> last() {
+            return tail;
+        }
+
+        void add(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                add(node);
+            }
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer ring: producers claim a slot by
+     * CAS on writeIndex; only the eviction lock holder polls. offer() returns
+     * false when the ring is full - the read path then simply drops the
+     * access record (lossy), the write path drains and retries (lossless).
+     */
+    private static final class RingBuffer {
+        private final AtomicReferenceArray<Object> ring;
+        private final int mask;
+        private final AtomicLong writeIndex = new AtomicLong();
+        private volatile long readIndex;
+
+        RingBuffer(int size) {
+            ring = new AtomicReferenceArray<>(size);
+            mask = size - 1;
+        }
+
+        boolean offer(Object element) {
+            while (true) {
+                long tail = writeIndex.get();
+                if (tail - readIndex > mask) {
+                    return false;
+                }
+                if (writeIndex.compareAndSet(tail, tail + 1)) {
+                    ring.lazySet((int) tail & mask, element);
+                    return true;
+                }
+            }
+        }
+
+        /** Next element, or null if empty (or the next slot is claimed but not yet written) */
+        Object poll() {
+            long head = readIndex;
+            int index = (int) head & mask;
+            Object element = ring.get(index);
+            if (element == null) {
+                return null;
+            }
+            ring.lazySet(index, null);
+            readIndex = head + 1;
+            return element;
+        }
+
+        long size() {
+            return writeIndex.get() - readIndex;
+        }
+    }
+
+    // ===========================================
+    // DEMO, HIT RATES AND THROUGHPUT
+    // ===========================================
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== W-TinyLFU BOUNDED CACHE ===\n");
+
+        tutorialCache();
+        weightedCache();
+        hitRates();
+        throughput();
+    }
+
+    /** ConcurrentHashMapTutorial.bestPractices' computeIfAbsent cache, now bounded */
+    public static void tutorialCache() {
+        System.out.println("1. THE TUTORIAL'S CACHE, BOUNDED");
+        System.out.println("================================");
+
+        TinyLfuCache<String, String> cache = TinyLfuCache.maximumSize(100);
+        String value1 = cache.get("key1", key -> {
+            System.out.println("Computing value for: " + key);
+            return "computed-value-1";
+        });
+        String value2 = cache.get("key1", key -> {
+            System.out.println("This won't be called - key exists");
+            return "different-value";
+        });
+        System.out.println("Values: " + value1 + ", " + value2);
+
+        for (int i = 0; i < 10_000; i++) {
+            cache.get("key" + (i % 50), key -> "hot");       // 50 popular keys
+            cache.get("scan-" + i, key -> "one-hit wonder"); // never requested again
+        }
+        cache.cleanUp();
+        int hotCached = 0;
+        for (int i = 0; i < 50; i++) {
+            hotCached += cache.getIfPresent("key" + i) != null ? 1 : 0;
+        }
+        System.out.println("After 10,000 one-hit wonders: " + cache.stats());
+        System.out.println("Popular keys still cached: " + hotCached + " of 50 (a ConcurrentHashMap would hold 10,051 entries)\n");
+    }
+
+    public static void weightedCache() {
+        System.out.println("2. WEIGHT-BASED LIMIT (string length as weight)");
+        System.out.println("===============================================");
+
+        TinyLfuCache<Integer, String> cache = TinyLfuCache.maximumWeight(10_000, (k, v) -> v.length(), 1_000);
+        Random random = new Random(1);
+        for (int i = 0; i < 5_000; i++) {
+            int key = random.nextInt(2_000);
+            cache.get(key, k -> "x".repeat(1 + k % 200));
+        }
+        cache.put(-1, "y".repeat(20_000)); // heavier than the whole cache: rejected at once
+        cache.cleanUp();
+        System.out.println(cache.stats());
+        System.out.println("Oversized entry kept: " + (cache.getIfPresent(-1) != null) + "\n");
+    }
+
+    /** Single-threaded trace replay: the policy, not the concurrency, decides the hit rate */
+    public static void hitRates() {
+        System.out.println("3. HIT RATE vs LRU (cache of 1,000 entries)");
+        System.out.println("===========================================");
+
+        int capacity = 1_000;
+        int length = 1_000_000;
+        Random random = new Random(42);
+        ZipfSampler zipf = new ZipfSampler(100_000, 0.9);
+
+        int[] zipfTrace = new int[length];
+        for (int i = 0; i < length; i++) {
+            zipfTrace[i] = zipf.next(random);
+        }
+        // Zipf traffic interrupted by scans: every 20,000 requests, 10,000 never-repeated keys
+        int[] scanTrace = new int[length];
+        int scanKey = 1_000_000;
+        for (int i = 0; i < length; i++) {
+            scanTrace[i] = (i % 20_000) < 10_000 ? zipf.next(random) : scanKey++;
+        }
+        // A loop slightly larger than the cache: LRU always evicts what comes next
+        int[] loopTrace = new int[length];
+        for (int i = 0; i < length; i++) {
+            loopTrace[i] = i % (capacity + capacity / 4);
+        }
+
+        System.out.printf("%-22s %10s %10s%n", "TRACE", "LRU", "W-TinyLFU");
+        String[] names = {"Zipf(0.9), 100K keys", "Zipf + scans", "loop of 1,250"};
+        int[][] traces = {zipfTrace, scanTrace, loopTrace};
+        for (int t = 0; t < traces.length; t++) {
+            Map<Integer, Integer> lru = lruCache(capacity);
+            long lruHits = 0;
+            for (int key : traces[t]) {
+                if (lru.get(key) != null) {
+                    lruHits++;
+                } else {
+                    lru.put(key, key);
+                }
+            }
+            TinyLfuCache<Integer, Integer> cache = TinyLfuCache.maximumSize(capacity);
+            for (int key : traces[t]) {
+                cache.get(key, k -> k);
+            }
+            System.out.printf("%-22s %9.1f%% %9.1f%%%n", names[t], 100.0 * lruHits / length, 100 * cache.hitRate());
+        }
+        System.out.println();
+    }
+
+    /** The usual bounded cache: a synchronized access-ordered LinkedHashMap */
+    static <K, V> Map<K, V> lruCache(int capacity) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(capacity * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    public static void throughput() throws InterruptedException {
+        int threads = 4;
+        String title = "4. THROUGHPUT (" + threads + " threads, Zipf keys, ops/ms)";
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+
+        int capacity = 10_000;
+        int[][] samples = new int[threads][1 << 20];
+        ZipfSampler zipf = new ZipfSampler(100_000, 0.9);
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            for (int i = 0; i < samples[t].length; i++) {
+                samples[t][i] = zipf.next(random);
+            }
+        }
+        Integer[] boxed = new Integer[100_000];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = i;
+        }
+
+        System.out.printf("%-34s %12s %12s%n", "CACHE", "100% READ", "75% READ");
+        for (int round = 0; round < 2; round++) { // round 0 warms up the JIT
+            for (String kind : List.of("LRU (synchronized LinkedHashMap)", "W-TinyLFU", "ConcurrentHashMap (unbounded)")) {
+                long[] results = new long[2];
+                for (int mix = 0; mix < 2; mix++) {
+                    int writePercent = mix == 0 ? 0 : 25;
+                    CacheOps ops = switch (kind) {
+                        case "W-TinyLFU" -> {
+                            TinyLfuCache<Integer, Integer> cache = TinyLfuCache.maximumSize(capacity);
+                            yield new CacheOps() {
+                                public Integer get(Integer key) {
+                                    return cache.getIfPresent(key);
+                                }
+
+                                public void put(Integer key, Integer value) {
+                                    cache.put(key, value);
+                                }
+                            };
+                        }
+                        case "ConcurrentHashMap (unbounded)" -> {
+                            ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+                            yield new CacheOps() {
+                                public Integer get(Integer key) {
+                                    return map.get(key);
+                                }
+
+                                public void put(Integer key, Integer value) {
+                                    map.put(key, value);
+                                }
+                            };
+                        }
+                        default -> {
+                            Map<Integer, Integer> lru = lruCache(capacity);
+                            yield new CacheOps() {
+                                public Integer get(Integer key) {
+                                    return lru.get(key);
+                                }
+
+                                public void put(Integer key, Integer value) {
+                                    lru.put(key, value);
+                                }
+                            };
+                        }
+                    };
+                    for (int i = 0; i < capacity; i++) {
+                        ops.put(boxed[i], i);
+                    }
+                    results[mix] = run(ops, samples, boxed, writePercent);
+                }
+                if (round == 1) {
+                    System.out.printf("%-34s %,12d %,12d%n", kind, results[0], results[1]);
+                }
+            }
+        }
+        System.out.println("(this machine has " + Runtime.getRuntime().availableProcessors()
+                + " CPU(s); lock contention only shows with real parallelism)\n");
+    }
+
+    private interface CacheOps {
+        Integer get(Integer key);
+
+        void put(Integer key, Integer value);
+    }
+
+    private static long run(CacheOps ops, int[][] samples, Integer[] keys, int writePercent)
+            throws InterruptedException {
+        long millis = 250;
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        LongAdder done = new LongAdder();
+        Thread[] workers = new Thread[samples.length];
+        for (int t = 0; t < workers.length; t++) {
+            int[] sample = samples[t];
+            workers[t] = new Thread(() -> {
+                long count = 0;
+                int i = 0;
+                while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                    Integer key = keys[sample[i]];
+                    if (ZipfSampler.percentile(i) < writePercent) {
+                        ops.put(key, key);
+                    } else {
+                        ops.get(key);
+                    }
+                    i = (i + 1) & (sample.length - 1);
+                    count++;
+                }
+                done.add(count);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return done.sum() / millis;
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Count-min sketch with 4-bit counters (max 15), four per key in one of
+ * 16-counter longs. When the number of increments reaches 10x the
+ * capacity, every counter is halved ("aging"), so the sketch tracks
+ * recent popularity rather than all-time counts.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long expectedEntries) {
+        int capacity = (int) Math.min(Math.max(expectedEntries, 16), 1 << 26);
+        table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = 10 * capacity;
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /** Halves every counter; odd counts lose their low bit, which additions accounts for */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        return (x >>> 16) ^ x;
+    }
+}
+
+/*
+ * ===========================================
+ * W-TinyLFU CACHE SUMMARY
+ * ===========================================
+ *
+ * 1. WHY NOT A BARE ConcurrentHashMap:
+ *    - computeIfAbsent caches forever: memory grows with every new key
+ *
+ * 2. WHY NOT PLAIN LRU:
+ *    - one scan of new keys flushes everything popular
+ *    - a loop slightly bigger than the cache hits 0%
+ *    - synchronized LinkedHashMap: even get() takes the lock (access order)
+ *
+ * 3. W-TinyLFU:
+ *    - count-min sketch (4-bit counters, aged by halving) estimates frequency
+ *    - 1% window LRU absorbs bursts of new keys
+ *    - window evictees must beat main's victim on frequency to get in
+ *    - segmented main area: probation, then protected after a second hit
+ *
+ * 4. CONCURRENCY:
+ *    - reads: CHM get + a lossy striped ring buffer (never blocks)
+ *    - writes: CHM write + a queued event; every 16 events, tryLock()
+ *      replays them and evicts (a full queue makes writers drain it)
+ *    - only the policy bookkeeping is serialized, never the lookups
+ *
+ * 5. LIMITS:
+ *    - maximumSize(n): every entry weighs 1
+ *    - maximumWeight(w, weigher, expectedEntries): e.g. bytes per entry;
+ *      an entry heavier than the whole cache is evicted immediately
+ */
@@ -0,0 +1,42 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ZIPF-DISTRIBUTED KEY INDEXES
+ * ============================
+ *
+ * Key i is drawn with probability ~ 1 / (i+1)^s: a few keys are very hot,
+ * most are cold - the shape of real cache and counter traffic.
+ *
+ * Shared by the benchmarks in NonBlockingHashMap, TinyLfuCache,
+ * ContentionMatrixBenchmark and ConcurrentCounterMap. Sampling is a binary
+ * search over the precomputed CDF, so build it once and reuse it.
+ * percentile() is the matching uniform draw the same benchmarks use to pick
+ * read vs write for each operation.
+ */
+
+public final class ZipfSampler {
+    private final double[] cdf;
+
+    public ZipfSampler(int n, double s) {
+        cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    public int next(Random random) {
+        int i = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    /** Deterministic uniform value in [0, 100) for op position i: multiply-shift, no modulo bias */
+    public static int percentile(int i) {
+        return (int) (((i * 0x9E3779B9) & 0xFFFFFFFFL) * 100 >>> 32);
+    }
+}
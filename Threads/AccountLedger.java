@@ -0,0 +1,333 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * STRIPED-LOCK ACCOUNT LEDGER WITH DEADLOCK-FREE TRANSFERS
+ * ========================================================
+ *
+ * Prioritydemo sketches "public synchronized void withdraw(int amount)". If all
+ * accounts lived behind that one monitor, every deposit, withdrawal and
+ * transfer in the process would wait for every other one.
+ *
+ * AccountLedger keeps millions of balances in one long[] and guards them
+ * with a fixed number of lock STRIPES (account id -> stripe):
+ * 1. Operations on different stripes run in parallel
+ * 2. A transfer locks both stripes in ascending stripe order. Every thread
+ *    uses the same global order, so no cycle - and no deadlock - can form:
+ *      Thread A: transfer(8 -> 16)  locks stripe 1, then 2
+ *      Thread B: transfer(16 -> 8)  ALSO locks stripe 1, then 2
+ * 3. postBatch() applies many postings atomically (all stripes, in order)
+ * 4. snapshot() read-locks every stripe in order for a consistent view
+ *
+ * main() benchmarks random transfers at 1-64 threads against a ledger
+ * guarded by a single lock.
+ */
+
+public class AccountLedger {
+
+    private final long[] balances;
+    private final StampedLock[] stripes;
+    private final int stripeMask;
+
+    public AccountLedger(int accounts, int stripeCount, long initialBalance) {
+        if (accounts < 1) {
+            throw new IllegalArgumentException("accounts must be positive: " + accounts);
+        }
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("stripeCount must be a power of two: " + stripeCount);
+        }
+        balances = new long[accounts];
+        Arrays.fill(balances, initialBalance);
+        stripes = new StampedLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new StampedLock();
+        }
+        stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * 8 neighbouring accounts (one 64-byte cache line of balances) share a
+     * stripe, so two stripes never write into the same cache line.
+     */
+    private int stripeOf(int account) {
+        return (account >>> 3) & stripeMask;
+    }
+
+    private void checkAccount(int account) {
+        if (account < 0 || account >= balances.length) {
+            throw new IllegalArgumentException("No such account: " + account);
+        }
+    }
+
+    private static void checkAmount(long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount must be positive: " + amount);
+        }
+    }
+
+    // ===========================================
+    // SINGLE-ACCOUNT OPERATIONS
+    // ===========================================
+
+    public long balance(int account) {
+        checkAccount(account);
+        StampedLock lock = stripes[stripeOf(account)];
+        long stamp = lock.tryOptimisticRead();
+        long balance = balances[account];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                balance = balances[account];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return balance;
+    }
+
+    public void deposit(int account, long amount) {
+        checkAccount(account);
+        checkAmount(amount);
+        StampedLock lock = stripes[stripeOf(account)];
+        long stamp = lock.writeLock();
+        try {
+            balances[account] += amount;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Returns false (and changes nothing) when funds are insufficient */
+    public boolean withdraw(int account, long amount) {
+        checkAccount(account);
+        checkAmount(amount);
+        StampedLock lock = stripes[stripeOf(account)];
+        long stamp = lock.writeLock();
+        try {
+            if (balances[account] < amount) {
+                return false;
+            }
+            balances[account] -= amount;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // ===========================================
+    // TRANSFERS
+    // ===========================================
+
+    /**
+     * Moves money between two accounts atomically. Locks are taken in
+     * ascending stripe order, so two opposite transfers cannot deadlock.
+     * Returns false (and changes nothing) when funds are insufficient.
+     */
+    public boolean transfer(int from, int to, long amount) {
+        checkAccount(from);
+        checkAccount(to);
+        checkAmount(amount);
+        if (from == to) {
+            return balance(from) >= amount;
+        }
+        int s1 = stripeOf(from);
+        int s2 = stripeOf(to);
+        int first = Math.min(s1, s2);
+        int second = Math.max(s1, s2);
+
+        long stamp1 = stripes[first].writeLock();
+        long stamp2 = first == second ? 0L : stripes[second].writeLock();
+        try {
+            if (balances[from] < amount) {
+                return false;
+            }
+            balances[from] -= amount;
+            balances[to] += amount;
+            return true;
+        } finally {
+            if (first != second) {
+                stripes[second].unlockWrite(stamp2);
+            }
+            stripes[first].unlockWrite(stamp1);
+        }
+    }
+
+    /**
+     * Applies a batch of postings (from[i] -> to[i], amounts[i]) all-or-nothing.
+     * Every stripe the batch touches is locked once, in ascending order, and
+     * the whole batch is validated before anything is changed.
+     * Returns false (and changes nothing) if any posting would overdraw.
+     */
+    public boolean postBatch(int[] from, int[] to, long[] amounts) {
+        if (from.length != to.length || from.length != amounts.length) {
+            throw new IllegalArgumentException("from, to and amounts must have the same length");
+        }
+        BitSet touched = new BitSet(stripes.length);
+        for (int i = 0; i < from.length; i++) {
+            checkAccount(from[i]);
+            checkAccount(to[i]);
+            checkAmount(amounts[i]);
+            touched.set(stripeOf(from[i]));
+            touched.set(stripeOf(to[i]));
+        }
+
+        int[] order = touched.stream().toArray(); // ascending = global lock order
+        long[] stamps = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            stamps[i] = stripes[order[i]].writeLock();
+        }
+        try {
+            // Validate on net effect per account, so A->B then B->C works in one batch
+            Map<Integer, Long> net = new HashMap<>();
+            for (int i = 0; i < from.length; i++) {
+                net.merge(from[i], -amounts[i], Long::sum);
+                net.merge(to[i], amounts[i], Long::sum);
+            }
+            for (Map.Entry<Integer, Long> e : net.entrySet()) {
+                if (balances[e.getKey()] + e.getValue() < 0) {
+                    return false;
+                }
+            }
+            for (Map.Entry<Integer, Long> e : net.entrySet()) {
+                balances[e.getKey()] += e.getValue();
+            }
+            return true;
+        } finally {
+            for (int i = order.length - 1; i >= 0; i--) {
+                stripes[order[i]].unlockWrite(stamps[i]);
+            }
+        }
+    }
+
+    // ===========================================
+    // CONSISTENT SNAPSHOT
+    // ===========================================
+
+    /**
+     * Point-in-time copy of all balances. All stripes are read-locked in
+     * ascending order, so no transfer is half-visible in the copy.
+     */
+    public long[] snapshot() {
+        long[] stamps = new long[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            stamps[i] = stripes[i].readLock();
+        }
+        try {
+            return balances.clone();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlockRead(stamps[i]);
+            }
+        }
+    }
+
+    public long totalBalance() {
+        long total = 0;
+        for (long balance : snapshot()) {
+            total += balance;
+        }
+        return total;
+    }
+
+    public int size() {
+        return balances.length;
+    }
+
+    // ===========================================
+    // EXAMPLES AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== STRIPED-LOCK ACCOUNT LEDGER ===\n");
+
+        basicExample();
+        transferBenchmark();
+    }
+
+    public static void basicExample() {
+        System.out.println("1. BASIC OPERATIONS");
+        System.out.println("===================");
+
+        AccountLedger ledger = new AccountLedger(10, 4, 1_000);
+        ledger.deposit(0, 500);
+        System.out.println("Withdraw 2000 from account 1: " + ledger.withdraw(1, 2_000));
+        System.out.println("Transfer 300 from 0 to 5: " + ledger.transfer(0, 5, 300));
+        System.out.println("Batch 2->3 (800), 3->4 (1500): "
+                + ledger.postBatch(new int[] {2, 3}, new int[] {3, 4}, new long[] {800, 1_500}));
+        System.out.println("Batch overdraws account 6: "
+                + ledger.postBatch(new int[] {6}, new int[] {7}, new long[] {5_000}));
+        System.out.println("Balances: " + Arrays.toString(ledger.snapshot()));
+        System.out.println("Total: " + ledger.totalBalance() + "\n");
+    }
+
+    public static void transferBenchmark() throws InterruptedException {
+        System.out.println("2. RANDOM TRANSFERS (transfers/ms)");
+        System.out.println("==================================");
+
+        int accounts = 1_000_000;
+        long initial = 1_000;
+        long millis = 300;
+        runTransfers(new AccountLedger(accounts, 1024, initial), 4, millis); // JIT warm-up
+        System.out.printf("%-8s %16s %16s%n", "THREADS", "striped (1024)", "single lock");
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            AccountLedger striped = new AccountLedger(accounts, 1024, initial);
+            AccountLedger single = new AccountLedger(accounts, 1, initial);
+            long s = runTransfers(striped, threads, millis);
+            long g = runTransfers(single, threads, millis);
+            System.out.printf("%-8d %,16d %,16d%n", threads, s / millis, g / millis);
+            if (striped.totalBalance() != accounts * initial || single.totalBalance() != accounts * initial) {
+                System.out.println("ERROR: money was created or destroyed!");
+            }
+        }
+        System.out.println("Total balance conserved in every run.\n");
+    }
+
+    private static long runTransfers(AccountLedger ledger, int threads, long millis) throws InterruptedException {
+        LongAdder transfers = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long local = 0;
+                while ((local & 255) != 0 || System.nanoTime() < deadline) {
+                    ledger.transfer(random.nextInt(ledger.size()), random.nextInt(ledger.size()),
+                            1 + random.nextInt(100));
+                    local++;
+                }
+                transfers.add(local);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return transfers.sum();
+    }
+}
+
+/*
+ * ===========================================
+ * LOCK STRIPING SUMMARY
+ * ===========================================
+ *
+ * 1. WHY STRIPES:
+ *    - One lock per account: millions of lock objects (memory, GC)
+ *    - One lock for all accounts: no parallelism
+ *    - N stripes: parallelism up to N with a fixed, small number of locks
+ *
+ * 2. DEADLOCK FREEDOM:
+ *    - Deadlock needs a cycle of threads waiting for each other's locks
+ *    - Taking locks in one global order (ascending stripe index) makes cycles impossible
+ *    - Same-stripe transfers take the lock only once (StampedLock is not reentrant)
+ *
+ * 3. BATCHES AND SNAPSHOTS:
+ *    - Lock every needed stripe, in order, before touching any balance
+ *    - Validate the whole batch first, then apply - all-or-nothing
+ *
+ * 4. TUNING:
+ *    - Stripe count a few times the core count keeps collisions rare
+ *    - More stripes make snapshot() slower (it locks them all)
+ */
@@ -0,0 +1,328 @@
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * NON-BLOCKING FAN-OUT / FAN-IN WITH A DEADLINE
+ * =============================================
+ *
+ * PracticalMultithreading.taskCoordinationExample waits with allOf(...).get()
+ * and then calls task.get() inside thenRun. The caller thread is parked the
+ * whole time and the slowest task decides the response time.
+ *
+ * AsyncAggregator fixes both problems:
+ * 1. Fan out N CompletableFutures under ONE global deadline
+ * 2. When the deadline fires, answer with whatever is ready
+ * 3. Branches that timed out (or failed) get their own fallback value
+ * 4. Nothing ever calls get()/join() - the caller gets a CompletableFuture back
+ *
+ * Typical use: page composition from user, product and order services
+ * with a bounded latency.
+ */
+
+public class AsyncAggregator<K, V> {
+
+    /** One timer thread shared by all aggregators; it only completes futures */
+    private static final ScheduledExecutorService DEADLINE_TIMER =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "aggregator-deadline");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final Map<K, Branch<V>> branches = new LinkedHashMap<>();
+    private boolean cancelLateBranches = true;
+
+    // ===========================================
+    // BUILDING THE FAN-OUT
+    // ===========================================
+
+    /**
+     * Adds a branch. The fallback is used if the branch misses the deadline
+     * or completes exceptionally; it receives the cause (TimeoutException for
+     * a missed deadline).
+     */
+    public AsyncAggregator<K, V> branch(K key, Supplier<CompletableFuture<V>> call,
+                                        Function<Throwable, V> fallback) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(call, "call");
+        Objects.requireNonNull(fallback, "fallback");
+        if (branches.putIfAbsent(key, new Branch<>(call, fallback)) != null) {
+            throw new IllegalArgumentException("Duplicate branch: " + key);
+        }
+        return this;
+    }
+
+    /** Adds a branch whose fallback is a fixed value */
+    public AsyncAggregator<K, V> branch(K key, Supplier<CompletableFuture<V>> call, V fallbackValue) {
+        return branch(key, call, cause -> fallbackValue);
+    }
+
+    /** Whether branches still running at the deadline should be cancelled (default true) */
+    public AsyncAggregator<K, V> cancelLateBranches(boolean cancel) {
+        this.cancelLateBranches = cancel;
+        return this;
+    }
+
+    // ===========================================
+    // FAN-IN
+    // ===========================================
+
+    /**
+     * Starts every branch and returns immediately. The returned future
+     * completes as soon as all branches are done, or at the deadline -
+     * whichever comes first. It never completes exceptionally because of a
+     * branch: failures and timeouts are turned into fallbacks.
+     */
+    public CompletableFuture<AggregateResult<K, V>> aggregate(Duration deadline) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<AggregateResult<K, V>> result = new CompletableFuture<>();
+        Map<K, CompletableFuture<V>> started = new ConcurrentHashMap<>();
+        Map<K, Outcome<V>> outcomes = new ConcurrentHashMap<>();
+        AtomicInteger pending = new AtomicInteger(branches.size());
+
+        if (branches.isEmpty()) {
+            result.complete(new AggregateResult<>(Collections.emptyMap(), 0));
+            return result;
+        }
+
+        // Timer first: a branch that completes synchronously needs it to cancel
+        ScheduledFuture<?> timer = DEADLINE_TIMER.schedule(
+                () -> finish(result, started, outcomes, startNanos, true),
+                deadline.toNanos(), TimeUnit.NANOSECONDS);
+
+        for (Map.Entry<K, Branch<V>> entry : branches.entrySet()) {
+            K key = entry.getKey();
+            Branch<V> branch = entry.getValue();
+            CompletableFuture<V> future;
+            try {
+                future = Objects.requireNonNull(branch.call.get(), "branch returned null future");
+            } catch (Throwable t) {
+                future = CompletableFuture.failedFuture(t);
+            }
+            started.put(key, future);
+
+            future.whenComplete((value, error) -> {
+                Outcome<V> outcome = error == null
+                        ? Outcome.completed(value)
+                        : Outcome.fallback(applyFallback(branch, unwrap(error)), BranchStatus.FAILED, unwrap(error));
+                outcomes.putIfAbsent(key, outcome);
+                if (pending.decrementAndGet() == 0) {
+                    timer.cancel(false);
+                    finish(result, started, outcomes, startNanos, false);
+                }
+            });
+        }
+        return result;
+    }
+
+    private void finish(CompletableFuture<AggregateResult<K, V>> result,
+                        Map<K, CompletableFuture<V>> started,
+                        Map<K, Outcome<V>> outcomes,
+                        long startNanos, boolean deadlineHit) {
+        if (result.isDone()) {
+            return;
+        }
+        Map<K, Outcome<V>> snapshot = new LinkedHashMap<>();
+        List<CompletableFuture<V>> late = new ArrayList<>();
+        for (K key : branches.keySet()) {
+            Outcome<V> outcome = outcomes.get(key);
+            if (outcome == null && deadlineHit) {
+                TimeoutException timeout = new TimeoutException("Branch '" + key + "' missed the deadline");
+                outcomes.putIfAbsent(key, Outcome.fallback(
+                        applyFallback(branches.get(key), timeout), BranchStatus.TIMED_OUT, timeout));
+                outcome = outcomes.get(key);
+                if (outcome.status() == BranchStatus.TIMED_OUT) {
+                    late.add(started.get(key));
+                }
+            }
+            snapshot.put(key, outcome);
+        }
+        if (!result.complete(new AggregateResult<>(snapshot, System.nanoTime() - startNanos))) {
+            return;
+        }
+        // Cancel only after completing, so the cancellation is not reported as a failure
+        if (cancelLateBranches) {
+            for (CompletableFuture<V> future : late) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private static <V> V applyFallback(Branch<V> branch, Throwable cause) {
+        try {
+            return branch.fallback.apply(cause);
+        } catch (RuntimeException e) {
+            return null; // a broken fallback must not break the whole page
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    // ===========================================
+    // EXAMPLE: PAGE COMPOSITION
+    // ===========================================
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== NON-BLOCKING FAN-OUT / FAN-IN WITH A DEADLINE ===\n");
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        // Same three calls as taskCoordinationExample: 2000, 1500 and 1000 ms
+        AsyncAggregator<String, String> page = new AsyncAggregator<String, String>()
+                .branch("user", () -> slowCall("User data fetched", 2000, executor),
+                        cause -> "Guest user (" + cause.getClass().getSimpleName() + ")")
+                .branch("product", () -> slowCall("Product data fetched", 1500, executor),
+                        "Product data from cache")
+                .branch("order", () -> slowCall("Order data fetched", 1000, executor),
+                        "No recent orders");
+
+        CountDownLatch done = new CountDownLatch(1);
+        page.aggregate(Duration.ofMillis(1200)).thenAccept(result -> {
+            System.out.println("Page composed in " + result.elapsedMillis() + " ms");
+            result.outcomes().forEach((key, outcome) ->
+                    System.out.println("  " + key + " -> " + outcome.value() + " [" + outcome.status() + "]"));
+            done.countDown();
+        });
+
+        // The caller thread is free the whole time
+        System.out.println("Caller thread is not blocked - doing other work...");
+
+        done.await(); // only main() waits, so the JVM does not exit early
+        executor.shutdownNow();
+        System.out.println("Async aggregation example completed!\n");
+    }
+
+    private static CompletableFuture<String> slowCall(String value, long millis, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            return value;
+        }, executor);
+    }
+
+    // ===========================================
+    // SUPPORTING TYPES
+    // ===========================================
+
+    private static final class Branch<V> {
+        final Supplier<CompletableFuture<V>> call;
+        final Function<Throwable, V> fallback;
+
+        Branch(Supplier<CompletableFuture<V>> call, Function<Throwable, V> fallback) {
+            this.call = call;
+            this.fallback = fallback;
+        }
+    }
+
+    public enum BranchStatus {
+        COMPLETED,  // real value arrived before the deadline
+        FAILED,     // branch threw - fallback value used
+        TIMED_OUT   // deadline hit first - fallback value used
+    }
+
+    /**
+     * What happened to one branch
+     */
+    public static final class Outcome<V> {
+        private final V value;
+        private final BranchStatus status;
+        private final Throwable cause;
+
+        private Outcome(V value, BranchStatus status, Throwable cause) {
+            this.value = value;
+            this.status = status;
+            this.cause = cause;
+        }
+
+        static <V> Outcome<V> completed(V value) {
+            return new Outcome<>(value, BranchStatus.COMPLETED, null);
+        }
+
+        static <V> Outcome<V> fallback(V value, BranchStatus status, Throwable cause) {
+            return new Outcome<>(value, status, cause);
+        }
+
+        public V value() {
+            return value;
+        }
+
+        public BranchStatus status() {
+            return status;
+        }
+
+        public Optional<Throwable> cause() {
+            return Optional.ofNullable(cause);
+        }
+    }
+
+    /**
+     * Result of one aggregate() call, in branch registration order
+     */
+    public static final class AggregateResult<K, V> {
+        private final Map<K, Outcome<V>> outcomes;
+        private final long elapsedNanos;
+
+        AggregateResult(Map<K, Outcome<V>> outcomes, long elapsedNanos) {
+            this.outcomes = Collections.unmodifiableMap(outcomes);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Map<K, Outcome<V>> outcomes() {
+            return outcomes;
+        }
+
+        /** Value for a branch - real or fallback */
+        public V get(K key) {
+            Outcome<V> outcome = outcomes.get(key);
+            return outcome == null ? null : outcome.value();
+        }
+
+        /** True when every branch produced its real value */
+        public boolean isComplete() {
+            return outcomes.values().stream().allMatch(o -> o.status() == BranchStatus.COMPLETED);
+        }
+
+        public long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+    }
+}
+
+/*
+ * ===========================================
+ * ASYNC AGGREGATION SUMMARY
+ * ===========================================
+ *
+ * 1. NEVER BLOCK THE CALLER:
+ *    - allOf(...).get() parks a thread for the slowest branch
+ *    - Return a CompletableFuture and let the caller chain on it
+ *
+ * 2. ONE DEADLINE FOR THE WHOLE FAN-OUT:
+ *    - Per-branch timeouts add up; a global deadline bounds the response
+ *    - A single shared timer thread completes the result at the deadline
+ *
+ * 3. PARTIAL RESULTS:
+ *    - Ready branches keep their real value
+ *    - Late or failed branches get a per-branch fallback
+ *    - Late branches are cancelled by default to free their threads
+ *
+ * 4. CAVEATS:
+ *    - Fallbacks run on the timer or completing thread - keep them cheap
+ *    - cancel(true) on a CompletableFuture does not interrupt the task;
+ *      long-running work should check its own deadline too
+ */
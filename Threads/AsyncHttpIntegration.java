@@ -0,0 +1,319 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NON-BLOCKING HTTP CALLS WITH java.net.http.HttpClient
+ * =====================================================
+ *
+ * CompleteThreadTutorial.apiCallsExample and the "apiIntegrations" pool in
+ * ECommerceBackgroundProcessing simulate remote calls with Thread.sleep on
+ * dedicated threads. In the thread-per-call model every in-flight call parks a
+ * platform thread, so 2,000 concurrent calls need 2,000 threads.
+ *
+ * AsyncApiClient uses HttpClient.sendAsync instead:
+ * 1. A call is a CompletableFuture - no thread waits for the response
+ * 2. One HttpClient is shared, so connections are pooled and reused
+ * 3. HTTP/2 is requested; against an HTTP/2 server many calls share one
+ *    connection (multiplexing). The JDK stub server below only speaks
+ *    HTTP/1.1, so the client falls back to pooled keep-alive connections.
+ *
+ * StubApiServer is an in-process com.sun.net.httpserver server with a
+ * configurable latency. The latency is served by a timer, not by sleeping
+ * server threads, so the server itself can hold thousands of pending calls.
+ *
+ * main() runs thousands of concurrent calls on a handful of threads and
+ * compares throughput and latency with the thread-per-call model.
+ */
+
+public class AsyncHttpIntegration {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== NON-BLOCKING HTTP CALLS ===\n");
+
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Duration latency = Duration.ofMillis(100);
+
+        try (StubApiServer server = StubApiServer.start(latency)) {
+            // Example 1: Same two calls as apiCallsExample, combined without blocking
+            combinedCallsExample(server);
+
+            // Example 2: Thousands of in-flight calls
+            System.out.println("2. " + calls + " CONCURRENT CALLS (" + latency.toMillis() + " ms server latency)");
+            System.out.println("===========================================");
+            // Warm-up round: JIT and connection pools, results not printed
+            benchmarkAsync(server, calls, false);
+            benchmarkThreadPerCall(server, calls, 200, false);
+
+            benchmarkAsync(server, calls, true);
+            benchmarkThreadPerCall(server, calls, 200, true);
+            benchmarkThreadPerCall(server, calls, calls, true);
+            System.out.println("(latency is measured from submission, so it includes queueing)");
+        }
+        System.out.println("Async HTTP example completed!\n");
+    }
+
+    // ===========================================
+    // EXAMPLE 1: COMBINING CALLS
+    // ===========================================
+
+    public static void combinedCallsExample(StubApiServer server) {
+        System.out.println("1. COMBINING CALLS WITHOUT BLOCKING");
+        System.out.println("===================================");
+
+        AsyncApiClient client = new AsyncApiClient(server.baseUri(), 2);
+        CompletableFuture<String> users = client.get("/users/42");
+        CompletableFuture<String> products = client.get("/products/7");
+
+        users.thenCombine(products, (u, p) -> u + " + " + p)
+                .thenAccept(result -> System.out.println("Combined result: " + result))
+                .join(); // only so the example prints before the next one starts
+
+        client.close();
+        System.out.println();
+    }
+
+    // ===========================================
+    // EXAMPLE 2: ASYNC VS THREAD-PER-CALL
+    // ===========================================
+
+    private static void benchmarkAsync(StubApiServer server, int calls, boolean print) {
+        AsyncApiClient client = new AsyncApiClient(server.baseUri(), 4);
+        Latencies latencies = new Latencies(calls);
+        int threadsBefore = Thread.activeCount();
+
+        long begin = System.nanoTime();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[calls];
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            futures[i] = client.get("/orders/" + i)
+                    .whenComplete((body, error) -> latencies.record(System.nanoTime() - start, error));
+        }
+        int peakThreads = Thread.activeCount();
+        CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+        long elapsed = System.nanoTime() - begin;
+
+        if (print) {
+            latencies.print("sendAsync, 4 threads", elapsed,
+                    "peak in flight " + client.peakInFlight() + ", +" + (peakThreads - threadsBefore) + " threads");
+        }
+        client.close();
+    }
+
+    private static void benchmarkThreadPerCall(StubApiServer server, int calls, int threads, boolean print)
+            throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Latencies latencies = new Latencies(calls);
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            URI uri = server.baseUri().resolve("/orders/" + i);
+            long start = System.nanoTime();
+            pool.submit(() -> {
+                Throwable error = null;
+                try {
+                    client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+                } catch (IOException | InterruptedException e) {
+                    error = e;
+                }
+                latencies.record(System.nanoTime() - start, error);
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - begin;
+
+        if (print) {
+            latencies.print("send, " + threads + " threads", elapsed, "one thread per in-flight call");
+        }
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Thin async wrapper over one shared HttpClient
+ */
+class AsyncApiClient implements AutoCloseable {
+    private final URI baseUri;
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    AsyncApiClient(URI baseUri, int threads) {
+        this.baseUri = baseUri;
+        // The executor only runs response callbacks; the I/O is done by the
+        // client's selector thread, so a few threads are enough.
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "http-callback");
+            t.setDaemon(true);
+            return t;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2) // falls back to HTTP/1.1 when the server can't
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+    }
+
+    /** GET the path; the body is the result, non-2xx status completes exceptionally */
+    public CompletableFuture<String> get(String path) {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        int now = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(now, Math::max);
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> inFlight.decrementAndGet())
+                .thenApply(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new CompletionException(new IOException(
+                                "HTTP " + response.statusCode() + " for " + path));
+                    }
+                    return response.body();
+                });
+    }
+
+    public int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
+
+/**
+ * In-process HTTP server that answers every GET after a fixed latency.
+ * Responses are sent from a timer thread after the handler has returned,
+ * so no server thread is held while a call is "in progress".
+ */
+class StubApiServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService handlers;
+
+    private StubApiServer(HttpServer server, ScheduledExecutorService timer, ExecutorService handlers) {
+        this.server = server;
+        this.timer = timer;
+        this.handlers = handlers;
+    }
+
+    static StubApiServer start(Duration latency) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+        ExecutorService handlers = Executors.newFixedThreadPool(2);
+        server.setExecutor(handlers);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            timer.schedule(() -> respond(exchange, "{\"path\":\"" + path + "\"}"),
+                    latency.toMillis(), TimeUnit.MILLISECONDS);
+        });
+        server.start();
+        return new StubApiServer(server, timer, handlers);
+    }
+
+    private static void respond(HttpExchange exchange, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    URI baseUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        timer.shutdownNow();
+        handlers.shutdownNow();
+    }
+}
+
+/**
+ * Collects per-call latencies and prints throughput and percentiles
+ */
+class Latencies {
+    private final long[] nanos;
+    private final AtomicInteger count = new AtomicInteger();
+    private final LongAdder errors = new LongAdder();
+
+    Latencies(int capacity) {
+        nanos = new long[capacity];
+    }
+
+    void record(long latencyNanos, Throwable error) {
+        if (error != null) {
+            errors.increment();
+        }
+        int i = count.getAndIncrement();
+        if (i < nanos.length) {
+            nanos[i] = latencyNanos;
+        }
+    }
+
+    void print(String name, long elapsedNanos, String note) {
+        int n = Math.min(count.get(), nanos.length);
+        long[] sorted = Arrays.copyOf(nanos, n);
+        Arrays.sort(sorted);
+        System.out.printf("%-22s %,8.0f calls/s  p50 %,6d ms  p99 %,6d ms  errors %d  (%s)%n",
+                name, n / (elapsedNanos / 1e9),
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99), errors.sum(), note);
+    }
+
+    private static long percentileMillis(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.min(sorted.length - 1, p * sorted.length)]);
+    }
+}
+
+/*
+ * ===========================================
+ * ASYNC HTTP SUMMARY
+ * ===========================================
+ *
+ * 1. ONE CLIENT PER APPLICATION:
+ *    - HttpClient keeps the connection pool; creating one per call throws it away
+ *
+ * 2. sendAsync vs send:
+ *    - send() parks the calling thread for the whole round trip
+ *    - sendAsync() returns at once; callbacks run when bytes arrive
+ *
+ * 3. HTTP/2:
+ *    - One connection carries many concurrent streams (multiplexing)
+ *    - Needs a server that speaks HTTP/2 (over TLS, or h2c upgrade)
+ *    - With HTTP/1.1 the client opens one pooled connection per in-flight call
+ *
+ * 4. STILL BOUND THE CONCURRENCY:
+ *    - Non-blocking does not mean unlimited: remote services have limits too
+ *    - Use a semaphore or rate limiter in front of get() for real services
+ */
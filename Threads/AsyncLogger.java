@@ -0,0 +1,582 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ASYNCHRONOUS LOW-LATENCY LOGGING
+ * ================================
+ *
+ * ExecutorServiceDemo's Callable, the ECommerceBackgroundProcessing stages and
+ * PracticalMultithreading.parallelDataProcessing all call
+ *
+ *     System.out.println("Thread " + name + " processing number: " + n);
+ *
+ * on hot paths. That line costs two things:
+ * 1. String concatenation allocates a new String every call
+ * 2. println takes the PrintStream lock and does the I/O on the caller's thread,
+ *    so all workers queue up behind the console
+ *
+ * AsyncLogger moves both off the caller:
+ * - Events go into a PREALLOCATED ring buffer of slots (no event objects)
+ * - Messages are templates with {} placeholders; arguments are stored as raw
+ *   longs or references and only FORMATTED later, on the logger thread
+ * - One background thread drains the ring in batches, formats into a reused
+ *   buffer and writes through an NIO channel (file or console)
+ *
+ * Producer side: one CAS to claim a slot + a few array stores. No locks, no
+ * allocation for primitive arguments or existing objects.
+ */
+
+public class AsyncLogger extends AsyncLoggerPad2 implements AutoCloseable {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int MAX_ARGS = 3;
+    private static final byte KIND_LONG = 1;
+    private static final byte KIND_OBJECT = 2;
+    private static final long CLOSED = 1L << 62; // set in claimed by close(): no more claims succeed
+
+    private static final VarHandle CLAIMED;
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static {
+        try {
+            CLAIMED = MethodHandles.lookup().findVarHandle(AsyncLoggerClaimed.class, "claimed", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // --- Ring buffer: one slot = one event, stored column by column ---
+    private final int mask;
+    private final long[] sequence;     // slot is readable when sequence == position + 1
+    private final byte[] levels;
+    private final long[] timestamps;
+    private final Thread[] threads;
+    private final String[] templates;
+    private final byte[] argCounts;
+    private final byte[] argKinds;     // slot * MAX_ARGS
+    private final long[] longArgs;     // slot * MAX_ARGS
+    private final Object[] objectArgs; // slot * MAX_ARGS
+
+    // claimed and consumed live in the padded superclasses (see AsyncLoggerPad0)
+
+    private final Level minLevel;
+    private final boolean dropWhenFull;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder formatFailures = new LongAdder();
+
+    // --- Consumer side ---
+    private final WritableByteChannel out;
+    private final boolean closeChannel;
+    private final ByteBuffer outBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final StringBuilder line = new StringBuilder(256);
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedSecondText = "";
+    private static final DateTimeFormatter SECOND_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private AsyncLogger(WritableByteChannel out, boolean closeChannel, int capacity,
+                        Level minLevel, boolean dropWhenFull) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.out = out;
+        this.closeChannel = closeChannel;
+        this.mask = capacity - 1;
+        this.sequence = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequence[i] = i; // slot i is free for position i
+        }
+        this.levels = new byte[capacity];
+        this.timestamps = new long[capacity];
+        this.threads = new Thread[capacity];
+        this.templates = new String[capacity];
+        this.argCounts = new byte[capacity];
+        this.argKinds = new byte[capacity * MAX_ARGS];
+        this.longArgs = new long[capacity * MAX_ARGS];
+        this.objectArgs = new Object[capacity * MAX_ARGS];
+        this.minLevel = minLevel;
+        this.dropWhenFull = dropWhenFull;
+        this.writer = new Thread(this::drainLoop, "async-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Logs to a file (appending), through a FileChannel */
+    public static AsyncLogger toFile(Path file, int capacity, Level minLevel) throws IOException {
+        return toFile(file, capacity, minLevel, false);
+    }
+
+    /** As above; with dropWhenFull, callers never wait - events are dropped and counted instead */
+    public static AsyncLogger toFile(Path file, int capacity, Level minLevel, boolean dropWhenFull)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new AsyncLogger(channel, true, capacity, minLevel, dropWhenFull);
+    }
+
+    /** Logs to the console through a channel over stdout, bypassing System.out's lock */
+    public static AsyncLogger toConsole(int capacity, Level minLevel) {
+        return new AsyncLogger(Channels.newChannel(new FileOutputStream(FileDescriptor.out)),
+                false, capacity, minLevel, false);
+    }
+
+    // ===========================================
+    // PRODUCER API (allocation-free overloads)
+    // ===========================================
+
+    public void info(String template) {
+        log(Level.INFO, template, 0, 0, 0, 0, null, null, null, (byte) 0, (byte) 0, (byte) 0);
+    }
+
+    public void info(String template, long a) {
+        log(Level.INFO, template, 1, a, 0, 0, null, null, null, KIND_LONG, (byte) 0, (byte) 0);
+    }
+
+    public void info(String template, long a, long b) {
+        log(Level.INFO, template, 2, a, b, 0, null, null, null, KIND_LONG, KIND_LONG, (byte) 0);
+    }
+
+    public void info(String template, Object a) {
+        log(Level.INFO, template, 1, 0, 0, 0, a, null, null, KIND_OBJECT, (byte) 0, (byte) 0);
+    }
+
+    public void info(String template, Object a, long b) {
+        log(Level.INFO, template, 2, 0, b, 0, a, null, null, KIND_OBJECT, KIND_LONG, (byte) 0);
+    }
+
+    public void info(String template, Object a, Object b) {
+        log(Level.INFO, template, 2, 0, 0, 0, a, b, null, KIND_OBJECT, KIND_OBJECT, (byte) 0);
+    }
+
+    public void warn(String template, Object a) {
+        log(Level.WARN, template, 1, 0, 0, 0, a, null, null, KIND_OBJECT, (byte) 0, (byte) 0);
+    }
+
+    public void error(String template, Object a) {
+        log(Level.ERROR, template, 1, 0, 0, 0, a, null, null, KIND_OBJECT, (byte) 0, (byte) 0);
+    }
+
+    /** Shared body of the overloads: up to three arguments, each a long or an object */
+    private void log(Level level, String template, int argCount,
+                    long l0, long l1, long l2, Object o0, Object o1, Object o2,
+                    byte k0, byte k1, byte k2) {
+        if (level.ordinal() < minLevel.ordinal()) {
+            return;
+        }
+        long position = claim();
+        if (position < 0) {
+            return;
+        }
+        int slot = (int) position & mask;
+        int base = slot * MAX_ARGS;
+        levels[slot] = (byte) level.ordinal();
+        timestamps[slot] = System.currentTimeMillis();
+        threads[slot] = Thread.currentThread();
+        templates[slot] = template;
+        argCounts[slot] = (byte) argCount;
+        argKinds[base] = k0;
+        argKinds[base + 1] = k1;
+        argKinds[base + 2] = k2;
+        longArgs[base] = l0;
+        longArgs[base + 1] = l1;
+        longArgs[base + 2] = l2;
+        objectArgs[base] = o0;
+        objectArgs[base + 1] = o1;
+        objectArgs[base + 2] = o2;
+        SEQUENCE.setRelease(sequence, slot, position + 1); // publish
+    }
+
+    /** Claims the next free slot; waits (or drops) while the ring is full, drops once closed */
+    private long claim() {
+        int spins = 0;
+        while (true) {
+            long position = claimed;
+            if ((position & CLOSED) != 0) { // nobody will drain this event any more
+                dropped.increment();
+                return -1;
+            }
+            long seq = (long) SEQUENCE.getAcquire(sequence, (int) position & mask);
+            if (seq == position) {
+                if (CLAIMED.compareAndSet(this, position, position + 1)) {
+                    return position;
+                }
+            } else if (seq < position) { // slot still holds an unwritten event: ring full
+                if (dropWhenFull) {
+                    dropped.increment();
+                    return -1;
+                }
+                if (++spins < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    public long droppedEvents() {
+        return dropped.sum();
+    }
+
+    /** Arguments whose toString() threw; each was written as a placeholder instead */
+    public long formatFailures() {
+        return formatFailures.sum();
+    }
+
+    // ===========================================
+    // CONSUMER: DRAIN, FORMAT, WRITE
+    // ===========================================
+
+    private void drainLoop() {
+        long idleParks = 0;
+        while (running || consumed != (claimed & ~CLOSED)) {
+            int drained = drainBatch(1024);
+            if (drained == 0) {
+                flushBuffer();
+                LockSupport.parkNanos(Math.min(1_000_000, 10_000 * ++idleParks));
+            } else {
+                idleParks = 0;
+            }
+        }
+        flushBuffer();
+    }
+
+    private int drainBatch(int limit) {
+        int n = 0;
+        long position = consumed;
+        while (n < limit) {
+            int slot = (int) position & mask;
+            if ((long) SEQUENCE.getAcquire(sequence, slot) != position + 1) {
+                break;
+            }
+            try {
+                format(slot);
+            } catch (RuntimeException e) {
+                formatFailures.increment(); // a bad event must not kill the logger thread
+            } finally {
+                // Clear references so the ring does not keep arguments alive
+                threads[slot] = null;
+                int base = slot * MAX_ARGS;
+                objectArgs[base] = null;
+                objectArgs[base + 1] = null;
+                objectArgs[base + 2] = null;
+                SEQUENCE.setRelease(sequence, slot, position + mask + 1); // free for the next lap
+            }
+            position++;
+            n++;
+        }
+        consumed = position;
+        return n;
+    }
+
+    private void format(int slot) {
+        line.setLength(0);
+        long millis = timestamps[slot];
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedSecondText = SECOND_FORMAT.format(Instant.ofEpochSecond(second));
+        }
+        line.append(cachedSecondText).append('.');
+        long ms = millis % 1000;
+        if (ms < 100) {
+            line.append('0');
+        }
+        if (ms < 10) {
+            line.append('0');
+        }
+        line.append(ms).append(' ')
+                .append(Level.values()[levels[slot]]).append(" [")
+                .append(threads[slot].getName()).append("] ");
+
+        String template = templates[slot];
+        int arg = 0;
+        int argCount = argCounts[slot];
+        int base = slot * MAX_ARGS;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '{' && i + 1 < template.length() && template.charAt(i + 1) == '}' && arg < argCount) {
+                if (argKinds[base + arg] == KIND_LONG) {
+                    line.append(longArgs[base + arg]);
+                } else {
+                    appendObject(objectArgs[base + arg]);
+                }
+                arg++;
+                i++;
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('\n');
+        encode(line);
+    }
+
+    /** The caller's toString() runs here, on the logger thread, so it may throw */
+    private void appendObject(Object value) {
+        String text;
+        try {
+            text = String.valueOf(value);
+        } catch (RuntimeException e) {
+            formatFailures.increment();
+            text = "[toString() failed: " + e.getClass().getSimpleName() + "]";
+        }
+        line.append(text);
+    }
+
+    private void encode(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (!outBuffer.hasRemaining()) {
+                    flushBuffer();
+                }
+                outBuffer.put((byte) c);
+            } else {
+                // Rare non-ASCII text: encode the rest of the line properly
+                byte[] bytes = text.subSequence(i, text.length()).toString().getBytes(StandardCharsets.UTF_8);
+                for (byte b : bytes) {
+                    if (!outBuffer.hasRemaining()) {
+                        flushBuffer();
+                    }
+                    outBuffer.put(b);
+                }
+                return;
+            }
+        }
+    }
+
+    private void flushBuffer() {
+        if (outBuffer.position() == 0) {
+            return;
+        }
+        outBuffer.flip();
+        try {
+            while (outBuffer.hasRemaining()) {
+                out.write(outBuffer);
+            }
+        } catch (IOException e) {
+            dropped.increment(); // nowhere left to report it
+        }
+        outBuffer.clear();
+    }
+
+    /**
+     * Writes everything logged so far and stops the logger thread. Marking
+     * claimed as CLOSED makes every later claim CAS fail, so an event is
+     * either claimed before close (and drained) or dropped and counted.
+     */
+    @Override
+    public void close() throws IOException {
+        long position;
+        do {
+            position = claimed;
+        } while ((position & CLOSED) == 0 && !CLAIMED.compareAndSet(this, position, position | CLOSED));
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (closeChannel) {
+            out.close();
+        }
+    }
+
+    // ===========================================
+    // EXAMPLE AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== ASYNCHRONOUS LOW-LATENCY LOGGING ===\n");
+
+        consoleExample();
+        producerCostBenchmark();
+    }
+
+    /**
+     * Example 1: parallelDataProcessing, logging through AsyncLogger
+     */
+    public static void consoleExample() throws Exception {
+        System.out.println("1. PARALLEL PROCESSING WITH ASYNC CONSOLE LOGGING");
+        System.out.println("=================================================");
+        System.out.flush();
+
+        AsyncLogger log = AsyncLogger.toConsole(1024, Level.INFO);
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int t = 0; t < 4; t++) {
+                int start = t * 5 + 1;
+                executor.submit(() -> {
+                    long localSum = 0;
+                    for (int n = start; n < start + 5; n++) {
+                        localSum += n;
+                        log.info("processing number: {}", n);
+                    }
+                    log.info("local sum: {}", localSum);
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            // toString() runs later on the logger thread; a throwing one costs one placeholder, not the logger
+            log.info("broken argument: {}", new Object() {
+                @Override
+                public String toString() {
+                    throw new IllegalStateException("not initialised");
+                }
+            });
+        } finally {
+            log.close();
+        }
+        System.out.println("format failures: " + log.formatFailures());
+        System.out.println();
+    }
+
+    /**
+     * Example 2: cost on the CALLING thread, println vs AsyncLogger, both to a file
+     */
+    public static void producerCostBenchmark() throws Exception {
+        System.out.println("2. PRODUCER-SIDE COST (4 threads, written to a temp file)");
+        System.out.println("========================================================");
+
+        int threads = 4;
+        int perThread = 50_000; // 200k events fit in the ring, so the caller never waits for the disk
+        Path printFile = Files.createTempFile("println-", ".log");
+        Path asyncFile = Files.createTempFile("async-", ".log");
+        try {
+            for (int round = 0; round < 5; round++) { // first rounds are warm-up
+                long[] printResult;
+                try (PrintStream ps = new PrintStream(new FileOutputStream(printFile.toFile()), true)) {
+                    printResult = runProducers(threads, perThread, (name, i) ->
+                            ps.println("Thread " + name + " processing number: " + i));
+                }
+                long[] asyncResult;
+                try (AsyncLogger log = AsyncLogger.toFile(asyncFile, 1 << 18, Level.INFO)) {
+                    asyncResult = runProducers(threads, perThread, (name, i) ->
+                            log.info("Thread {} processing number: {}", name, i));
+                }
+                if (round == 4) {
+                    System.out.printf("%-26s %,8d ns/call %,8d bytes allocated/call%n",
+                            "System.out-style println", printResult[0], printResult[1]);
+                    System.out.printf("%-26s %,8d ns/call %,8d bytes allocated/call%n",
+                            "AsyncLogger", asyncResult[0], asyncResult[1]);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(printFile);
+            Files.deleteIfExists(asyncFile);
+        }
+        System.out.println("Logging benchmark completed!\n");
+    }
+
+    private interface LogCall {
+        void log(String threadName, long i);
+    }
+
+    /** Returns {average ns per call, average bytes allocated per call} on the producer threads */
+    private static long[] runProducers(int threads, int perThread, LogCall call) throws InterruptedException {
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LongAdder nanos = new LongAdder();
+        LongAdder bytes = new LongAdder();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                String name = Thread.currentThread().getName();
+                long allocatedBefore = mx.getCurrentThreadAllocatedBytes();
+                long begin = System.nanoTime();
+                for (int i = 0; i < perThread; i++) {
+                    call.log(name, i);
+                }
+                nanos.add(System.nanoTime() - begin);
+                bytes.add(mx.getCurrentThreadAllocatedBytes() - allocatedBefore);
+            }, "worker-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long calls = (long) threads * perThread;
+        return new long[] {nanos.sum() / calls, bytes.sum() / calls};
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Padding around the two hot counters, the same class-hierarchy layout as
+ * LockFreeQueues' PaddedRingBuffer: producers CAS claimed while the logger
+ * thread writes consumed, so each gets 128 bytes of space on both sides and
+ * they never share a cache line with each other or with AsyncLogger's fields.
+ */
+abstract class AsyncLoggerPad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class AsyncLoggerClaimed extends AsyncLoggerPad0 {
+    volatile long claimed;     // next position producers will claim (| CLOSED once closed)
+}
+
+abstract class AsyncLoggerPad1 extends AsyncLoggerClaimed {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class AsyncLoggerConsumed extends AsyncLoggerPad1 {
+    volatile long consumed;    // next position the logger thread will read
+}
+
+abstract class AsyncLoggerPad2 extends AsyncLoggerConsumed {
+    long p40, p41, p42, p43, p44, p45, p46, p47;
+    long p50, p51, p52, p53, p54, p55, p56, p57;
+}
+
+/*
+ * ===========================================
+ * ASYNC LOGGING SUMMARY
+ * ===========================================
+ *
+ * 1. WHAT MAKES println SLOW ON HOT PATHS:
+ *    - "a" + b + "c" allocates a String (and a byte[]) every call
+ *    - PrintStream is synchronized: threads serialize on the console lock
+ *    - The I/O itself happens on the caller's thread
+ *
+ * 2. WHAT THE ASYNC LOGGER DOES INSTEAD:
+ *    - Caller: claim a ring slot (one CAS), store template + raw arguments
+ *    - claimed and consumed are padded onto separate cache lines
+ *    - Logger thread: format into a reused StringBuilder, batch into a
+ *      direct ByteBuffer, write through a FileChannel or stdout channel
+ *
+ * 3. KEEPING THE CALLER ALLOCATION-FREE:
+ *    - Pass primitives as long arguments (no boxing: typed overloads, no varargs)
+ *    - Pass existing objects by reference; they are formatted later
+ *    - Do not log mutable objects that change right after the call
+ *
+ * 4. BACKPRESSURE:
+ *    - A full ring makes callers wait (default) or drop events (dropWhenFull)
+ *    - close() drains everything still in the ring before returning
+ *    - Events logged after close() are dropped and counted, never lost silently
+ *    - An argument whose toString() throws is written as a placeholder and
+ *      counted; its slot is freed either way
+ */
@@ -0,0 +1,745 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * LOCK-FREE BOUNDED QUEUES (SPSC / MPSC / MPMC)
+ * ==============================================
+ *
+ * PracticalMultithreading.producerConsumerExample hands items over through an
+ * ArrayBlockingQueue. That queue guards put() AND take() with one ReentrantLock
+ * and signals a Condition on every single item, so producer and consumer keep
+ * bumping into each other.
+ *
+ * This file builds three array-backed queues that never take a lock:
+ * 1. SpscArrayQueue - one producer thread, one consumer thread
+ * 2. MpscArrayQueue - many producers, one consumer
+ * 3. MpmcArrayQueue - many producers, many consumers
+ *
+ * All of them offer batch operations:
+ *   drain(consumer, limit) - hand up to 'limit' items to a Consumer in one go
+ *   fill(supplier, limit)  - pull up to 'limit' items from a Supplier in one go
+ *
+ * Waiting is pluggable through IdleStrategy (busy spin, yield, back-off).
+ * main() runs a small throughput benchmark against ArrayBlockingQueue and
+ * LinkedTransferQueue.
+ */
+
+public class LockFreeQueues {
+
+    private static final int CAPACITY = 1024;
+    private static final int ITEMS_PER_PRODUCER = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== LOCK-FREE BOUNDED QUEUES ===\n");
+
+        // Example 1: Producer-Consumer with batch drain
+        batchDrainExample();
+
+        // Example 2: Throughput comparison
+        throughputComparison();
+    }
+
+    // ===========================================
+    // EXAMPLE 1: PRODUCER-CONSUMER WITH BATCH DRAIN
+    // ===========================================
+
+    public static void batchDrainExample() throws InterruptedException {
+        System.out.println("1. PRODUCER-CONSUMER WITH BATCH DRAIN");
+        System.out.println("=====================================");
+
+        SpscArrayQueue<String> queue = new SpscArrayQueue<>(8);
+
+        // Idle strategies keep per-thread backoff state: one instance per thread
+        Thread producer = new Thread(() -> {
+            IdleStrategy idle = new BackoffIdleStrategy();
+            for (int i = 1; i <= 10; i++) {
+                String item = "Item-" + i;
+                idle.reset();
+                while (!queue.offer(item)) {
+                    idle.idle();
+                }
+            }
+        }, "producer");
+
+        Thread consumer = new Thread(() -> {
+            IdleStrategy idle = new BackoffIdleStrategy();
+            int consumed = 0;
+            while (consumed < 10) {
+                int n = queue.drain(item -> System.out.println("Consumed: " + item), 4);
+                consumed += n;
+                idle.idle(n);
+            }
+        }, "consumer");
+
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+
+        System.out.println("Batch drain example completed!\n");
+    }
+
+    // ===========================================
+    // EXAMPLE 2: THROUGHPUT COMPARISON
+    // ===========================================
+
+    public static void throughputComparison() throws Exception {
+        System.out.println("2. THROUGHPUT COMPARISON (items/sec)");
+        System.out.println("====================================");
+
+        System.out.println("-- 1 producer / 1 consumer --");
+        runBenchmark("SpscArrayQueue", new SpscArrayQueue<>(CAPACITY), 1, 1, true);
+        runBenchmark("MpscArrayQueue", new MpscArrayQueue<>(CAPACITY), 1, 1, true);
+        runBenchmark("MpmcArrayQueue", new MpmcArrayQueue<>(CAPACITY), 1, 1, true);
+        runBenchmark("ArrayBlockingQueue", new BlockingQueueAdapter<>(new ArrayBlockingQueue<>(CAPACITY)), 1, 1, false);
+        runBenchmark("LinkedTransferQueue", new BlockingQueueAdapter<>(new LinkedTransferQueue<>()), 1, 1, false);
+
+        System.out.println("-- 3 producers / 1 consumer --");
+        runBenchmark("MpscArrayQueue", new MpscArrayQueue<>(CAPACITY), 3, 1, true);
+        runBenchmark("MpmcArrayQueue", new MpmcArrayQueue<>(CAPACITY), 3, 1, true);
+        runBenchmark("ArrayBlockingQueue", new BlockingQueueAdapter<>(new ArrayBlockingQueue<>(CAPACITY)), 3, 1, false);
+        runBenchmark("LinkedTransferQueue", new BlockingQueueAdapter<>(new LinkedTransferQueue<>()), 3, 1, false);
+
+        System.out.println("-- 2 producers / 2 consumers --");
+        runBenchmark("MpmcArrayQueue", new MpmcArrayQueue<>(CAPACITY), 2, 2, true);
+        runBenchmark("ArrayBlockingQueue", new BlockingQueueAdapter<>(new ArrayBlockingQueue<>(CAPACITY)), 2, 2, false);
+        runBenchmark("LinkedTransferQueue", new BlockingQueueAdapter<>(new LinkedTransferQueue<>()), 2, 2, false);
+
+        System.out.println("Throughput comparison completed!\n");
+    }
+
+    private static void runBenchmark(String name, BoundedQueue<Integer> queue,
+                                     int producers, int consumers, boolean batch) throws Exception {
+        int total = producers * ITEMS_PER_PRODUCER;
+        ExecutorService pool = Executors.newFixedThreadPool(producers + consumers);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong remaining = new AtomicLong(total);
+        Integer item = 42; // same boxed instance, so we measure the queue and not the allocator
+
+        for (int p = 0; p < producers; p++) {
+            pool.submit(() -> {
+                IdleStrategy idle = new BackoffIdleStrategy();
+                start.await();
+                int sent = 0;
+                while (sent < ITEMS_PER_PRODUCER) {
+                    int n = batch
+                            ? queue.fill(() -> item, Math.min(64, ITEMS_PER_PRODUCER - sent))
+                            : (queue.offer(item) ? 1 : 0);
+                    sent += n;
+                    idle.idle(n);
+                }
+                return null;
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            pool.submit(() -> {
+                IdleStrategy idle = new BackoffIdleStrategy();
+                start.await();
+                while (remaining.get() > 0) {
+                    int n = batch
+                            ? queue.drain(x -> { }, 64)
+                            : (queue.poll() != null ? 1 : 0);
+                    if (n > 0) {
+                        remaining.addAndGet(-n);
+                    }
+                    idle.idle(n);
+                }
+                return null;
+            });
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(2, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - begin;
+
+        System.out.printf("%-20s %,15d%n", name, (long) (total / (elapsed / 1e9)));
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Common contract for the bounded queues in this file
+ */
+interface BoundedQueue<E> {
+
+    /** Add an item; returns false instead of blocking when the queue is full */
+    boolean offer(E e);
+
+    /** Remove an item; returns null instead of blocking when the queue is empty */
+    E poll();
+
+    /** Pass up to 'limit' items to the consumer, returns how many were passed */
+    int drain(Consumer<? super E> consumer, int limit);
+
+    /** Take up to 'limit' items from the supplier, returns how many were added */
+    int fill(Supplier<? extends E> supplier, int limit);
+
+    int size();
+
+    int capacity();
+}
+
+/**
+ * What a thread does when there was no work on its last attempt
+ */
+interface IdleStrategy {
+
+    void idle();
+
+    void reset();
+
+    /** Idle only when the last attempt did no work, otherwise reset */
+    default void idle(int workCount) {
+        if (workCount > 0) {
+            reset();
+        } else {
+            idle();
+        }
+    }
+}
+
+/**
+ * Burns the CPU - lowest latency, uses a full core
+ */
+class BusySpinIdleStrategy implements IdleStrategy {
+    public void idle() {
+        Thread.onSpinWait();
+    }
+
+    public void reset() {
+    }
+}
+
+/**
+ * Gives the core to other threads between attempts
+ */
+class YieldingIdleStrategy implements IdleStrategy {
+    public void idle() {
+        Thread.yield();
+    }
+
+    public void reset() {
+    }
+}
+
+/**
+ * Spin, then yield, then park with growing sleep times
+ */
+class BackoffIdleStrategy implements IdleStrategy {
+    private static final int MAX_SPINS = 100;
+    private static final int MAX_YIELDS = 50;
+    private static final long MIN_PARK_NANOS = 1_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private int spins;
+    private int yields;
+    private long parkNanos = MIN_PARK_NANOS;
+
+    public void idle() {
+        if (spins < MAX_SPINS) {
+            spins++;
+            Thread.onSpinWait();
+        } else if (yields < MAX_YIELDS) {
+            yields++;
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+        }
+    }
+
+    public void reset() {
+        spins = 0;
+        yields = 0;
+        parkNanos = MIN_PARK_NANOS;
+    }
+}
+
+/**
+ * Fields and padding shared by the ring buffers.
+ *
+ * head and tail are separated by 128 bytes on each side, so the producer
+ * writing tail and the consumer writing head never share a cache line.
+ * SpscArrayQueue's cached copies of the other side's index sit next to
+ * their owner's index, on that owner's line.
+ */
+abstract class PaddedRingPad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class PaddedRingTail extends PaddedRingPad0 {
+    volatile long tail;
+    long cachedHead; // SPSC only: producer-owned copy of head
+}
+
+abstract class PaddedRingPad1 extends PaddedRingTail {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class PaddedRingHead extends PaddedRingPad1 {
+    volatile long head;
+    long cachedTail; // SPSC only: consumer-owned copy of tail
+}
+
+abstract class PaddedRingPad2 extends PaddedRingHead {
+    long p40, p41, p42, p43, p44, p45, p46, p47;
+    long p50, p51, p52, p53, p54, p55, p56, p57;
+}
+
+abstract class PaddedRingBuffer<E> extends PaddedRingPad2 implements BoundedQueue<E> {
+    static final VarHandle HEAD;
+    static final VarHandle TAIL;
+    static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    /**
+     * Published into a claimed slot when fill()'s supplier fails, so the slot
+     * is never left empty (a consumer would wait on it forever). Consumers
+     * free such slots and skip them.
+     */
+    static final Object TOMBSTONE = new Object();
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(PaddedRingHead.class, "head", long.class);
+            TAIL = lookup.findVarHandle(PaddedRingTail.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final Object[] elements;
+    final int mask;
+
+    PaddedRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2: " + requestedCapacity);
+        }
+        int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.elements = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    public int size() {
+        // Read head first so the result can never be negative
+        long h = (long) HEAD.getVolatile(this);
+        long t = (long) TAIL.getVolatile(this);
+        return (int) Math.max(0, Math.min(t - h, elements.length));
+    }
+}
+
+/**
+ * Single-producer / single-consumer ring buffer.
+ *
+ * Only the producer writes tail and only the consumer writes head, so plain
+ * release/acquire ordering is enough - no CAS at all. Each side caches the
+ * other side's index and re-reads it only when the cached value says full/empty.
+ */
+class SpscArrayQueue<E> extends PaddedRingBuffer<E> {
+    SpscArrayQueue(int capacity) {
+        super(capacity);
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long t = (long) TAIL.getOpaque(this);
+        if (t - cachedHead >= elements.length) {
+            cachedHead = (long) HEAD.getAcquire(this);
+            if (t - cachedHead >= elements.length) {
+                return false;
+            }
+        }
+        ELEMENTS.setRelease(elements, (int) t & mask, e);
+        TAIL.setRelease(this, t + 1);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = (long) HEAD.getOpaque(this);
+        if (h >= cachedTail) {
+            cachedTail = (long) TAIL.getAcquire(this);
+            if (h >= cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        E e = (E) elements[index];
+        elements[index] = null;
+        HEAD.setRelease(this, h + 1);
+        return e;
+    }
+
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long h = (long) HEAD.getOpaque(this);
+        long available = cachedTail - h;
+        if (available < limit) {
+            cachedTail = (long) TAIL.getAcquire(this);
+            available = cachedTail - h;
+        }
+        int n = (int) Math.min(available, limit);
+        int i = 0;
+        try {
+            while (i < n) {
+                int index = (int) (h + i) & mask;
+                E e = (E) elements[index];
+                elements[index] = null;
+                i++; // handed out: a throwing consumer must not get it again
+                consumer.accept(e);
+            }
+        } finally {
+            if (i > 0) {
+                // One release store publishes the whole batch back to the producer
+                HEAD.setRelease(this, h + i);
+            }
+        }
+        return n;
+    }
+
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        long t = (long) TAIL.getOpaque(this);
+        long free = elements.length - (t - cachedHead);
+        if (free < limit) {
+            cachedHead = (long) HEAD.getAcquire(this);
+            free = elements.length - (t - cachedHead);
+        }
+        int n = (int) Math.min(free, limit);
+        int i = 0;
+        try {
+            for (; i < n; i++) {
+                E e = supplier.get();
+                if (e == null) {
+                    throw new NullPointerException();
+                }
+                elements[(int) (t + i) & mask] = e;
+            }
+        } finally {
+            if (i > 0) {
+                // Publish what was written, even if the supplier threw part way
+                TAIL.setRelease(this, t + i);
+            }
+        }
+        return n;
+    }
+}
+
+/**
+ * Multi-producer / single-consumer ring buffer.
+ *
+ * Producers claim slots by CAS on tail and then publish the element with a
+ * release store. The consumer treats a null slot as "claimed but not yet
+ * published" and stops there, so it never reads a half-written slot.
+ */
+class MpscArrayQueue<E> extends PaddedRingBuffer<E> {
+    private volatile long producerLimit; // cached head + capacity, shared by producers
+    private static final VarHandle PRODUCER_LIMIT;
+
+    static {
+        try {
+            PRODUCER_LIMIT = MethodHandles.lookup()
+                    .findVarHandle(MpscArrayQueue.class, "producerLimit", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    MpscArrayQueue(int capacity) {
+        super(capacity);
+        producerLimit = elements.length;
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long t;
+        do {
+            t = (long) TAIL.getVolatile(this);
+            if (t >= producerLimit && !refreshProducerLimit(t + 1)) {
+                return false;
+            }
+        } while (!TAIL.compareAndSet(this, t, t + 1));
+        ELEMENTS.setRelease(elements, (int) t & mask, e);
+        return true;
+    }
+
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        long t;
+        int n;
+        do {
+            t = (long) TAIL.getVolatile(this);
+            long free = producerLimit - t;
+            if (free < limit) {
+                refreshProducerLimit(t + 1);
+                free = producerLimit - t;
+            }
+            n = (int) Math.min(free, limit);
+            if (n <= 0) {
+                return 0;
+            }
+        } while (!TAIL.compareAndSet(this, t, t + n));
+        int i = 0;
+        try {
+            for (; i < n; i++) {
+                E e = supplier.get();
+                if (e == null) {
+                    throw new NullPointerException();
+                }
+                ELEMENTS.setRelease(elements, (int) (t + i) & mask, e);
+            }
+        } finally {
+            for (; i < n; i++) { // supplier failed: the rest of the claimed slots still get published
+                ELEMENTS.setRelease(elements, (int) (t + i) & mask, TOMBSTONE);
+            }
+        }
+        return n;
+    }
+
+    private boolean refreshProducerLimit(long wanted) {
+        long limit = (long) HEAD.getVolatile(this) + elements.length;
+        PRODUCER_LIMIT.setRelease(this, limit);
+        return wanted <= limit;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long h = (long) HEAD.getOpaque(this);
+            int index = (int) h & mask;
+            Object e = ELEMENTS.getAcquire(elements, index);
+            if (e == null) {
+                return null;
+            }
+            ELEMENTS.setOpaque(elements, index, null);
+            HEAD.setRelease(this, h + 1);
+            if (e != TOMBSTONE) {
+                return (E) e;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long h = (long) HEAD.getOpaque(this);
+        int n = 0;
+        int taken = 0; // slots freed, including skipped tombstones
+        while (n < limit) {
+            int index = (int) (h + taken) & mask;
+            Object e = ELEMENTS.getAcquire(elements, index);
+            if (e == null) {
+                break;
+            }
+            ELEMENTS.setOpaque(elements, index, null);
+            taken++;
+            if (e != TOMBSTONE) {
+                consumer.accept((E) e);
+                n++;
+            }
+        }
+        if (taken > 0) {
+            HEAD.setRelease(this, h + taken);
+        }
+        return n;
+    }
+}
+
+/**
+ * Multi-producer / multi-consumer ring buffer (Dmitry Vyukov's bounded queue).
+ *
+ * Every slot carries a sequence number. A producer may write slot i only when
+ * its sequence equals the tail it claimed; a consumer may read it only when
+ * the sequence equals head + 1. Both sides claim positions with a CAS.
+ */
+class MpmcArrayQueue<E> extends PaddedRingBuffer<E> {
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] sequences;
+
+    MpmcArrayQueue(int capacity) {
+        super(capacity);
+        sequences = new long[elements.length];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long t = claimSlot();
+        if (t < 0) {
+            return false;
+        }
+        publish(t, e);
+        return true;
+    }
+
+    /** Claims the next free slot; returns its position, or -1 when full */
+    private long claimSlot() {
+        while (true) {
+            long t = (long) TAIL.getVolatile(this);
+            long seq = (long) SEQUENCES.getAcquire(sequences, (int) t & mask);
+            if (seq == t) {
+                if (TAIL.compareAndSet(this, t, t + 1)) {
+                    return t;
+                }
+            } else if (seq < t) {
+                return -1; // slot still holds an unconsumed element - full
+            }
+            // seq > t: another producer moved on, retry with the new tail
+        }
+    }
+
+    private void publish(long t, Object e) {
+        int index = (int) t & mask;
+        elements[index] = e;
+        SEQUENCES.setRelease(sequences, index, t + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long h = (long) HEAD.getVolatile(this);
+            int index = (int) h & mask;
+            long seq = (long) SEQUENCES.getAcquire(sequences, index);
+            if (seq == h + 1) {
+                if (HEAD.compareAndSet(this, h, h + 1)) {
+                    Object e = elements[index];
+                    elements[index] = null;
+                    SEQUENCES.setRelease(sequences, index, h + elements.length);
+                    if (e != TOMBSTONE) {
+                        return (E) e;
+                    }
+                }
+            } else if (seq < h + 1) {
+                return null; // slot not yet published - empty
+            }
+        }
+    }
+
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int n = 0;
+        E e;
+        while (n < limit && (e = poll()) != null) {
+            consumer.accept(e);
+            n++;
+        }
+        return n;
+    }
+
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        int n = 0;
+        long t;
+        // Claim first, then ask the supplier, so no supplied item is ever dropped
+        while (n < limit && (t = claimSlot()) >= 0) {
+            Object e = TOMBSTONE; // published instead if the supplier throws
+            try {
+                E supplied = supplier.get();
+                if (supplied == null) {
+                    throw new NullPointerException();
+                }
+                e = supplied;
+            } finally {
+                publish(t, e);
+            }
+            n++;
+        }
+        return n;
+    }
+}
+
+/**
+ * Lets java.util.concurrent queues run in the same benchmark
+ */
+class BlockingQueueAdapter<E> implements BoundedQueue<E> {
+    private final BlockingQueue<E> queue;
+
+    BlockingQueueAdapter(BlockingQueue<E> queue) {
+        this.queue = queue;
+    }
+
+    public boolean offer(E e) {
+        return queue.offer(e);
+    }
+
+    public E poll() {
+        return queue.poll();
+    }
+
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int n = 0;
+        E e;
+        while (n < limit && (e = queue.poll()) != null) {
+            consumer.accept(e);
+            n++;
+        }
+        return n;
+    }
+
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        int n = 0;
+        while (n < limit && queue.offer(supplier.get())) {
+            n++;
+        }
+        return n;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public int capacity() {
+        int remaining = queue.remainingCapacity();
+        return remaining == Integer.MAX_VALUE ? remaining : remaining + queue.size();
+    }
+}
+
+/*
+ * ===========================================
+ * LOCK-FREE QUEUE SUMMARY
+ * ===========================================
+ *
+ * 1. PICK THE NARROWEST QUEUE:
+ *    - SPSC needs no CAS at all, only ordered stores
+ *    - MPSC needs a CAS on the producer side only
+ *    - MPMC needs a CAS on both sides plus a sequence per slot
+ *
+ * 2. BATCHING:
+ *    - drain/fill publish a whole batch with one index update
+ *    - The other side sees fewer cache-line transfers per item
+ *
+ * 3. FALSE SHARING:
+ *    - head and tail live on different cache lines (class-hierarchy padding)
+ *    - Without padding, producer and consumer invalidate each other's line
+ *
+ * 4. IDLE STRATEGIES:
+ *    - BusySpin: lowest latency, one core per waiting thread
+ *    - Yielding: good latency, lets other threads run
+ *    - Backoff:  spin -> yield -> park, good default for mixed load
+ *
+ * 5. CAVEATS:
+ *    - offer/poll never block; callers decide how to wait
+ *    - null elements are not allowed (null means "empty slot")
+ *    - If fill()'s supplier throws (or returns null), the claimed slots are
+ *      published as tombstones that consumers skip, so the queue never wedges
+ */
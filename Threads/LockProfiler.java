@@ -0,0 +1,560 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.*;
+import java.util.function.Supplier;
+
+/**
+ * LOCK CONTENTION PROFILER
+ * ========================
+ *
+ * ThreadSafetyAndSynchronization compares UnsafeCounter, SafeCounter,
+ * BlockCounter, AtomicCounter and LockCounter only by their final count.
+ * That tells us the result is correct - not how long threads waited.
+ *
+ * This file adds instrumented drop-in locks:
+ * 1. ProfiledLock          - wraps ReentrantLock (implements Lock)
+ * 2. ProfiledMonitor       - surrogate for synchronized (lock) { ... } blocks
+ * 3. ProfiledReadWriteLock - wraps ReentrantReadWriteLock (implements ReadWriteLock)
+ *
+ * For every lock it records:
+ * - acquisitions, contended vs uncontended
+ * - wait time (time spent blocked before getting the lock)
+ * - hold time (time between lock and unlock)
+ * - the call sites that had to wait, so we know WHO is contending
+ *
+ * LockProfiler.report() ranks the hot locks.
+ *
+ * HOW IT STAYS CHEAP:
+ * - The uncontended path is tryLock() + a plain counter owned by the lock
+ *   holder: no shared write, no clock read
+ * - Acquisitions are added to the shared stats only on sampled acquisitions,
+ *   sampleEvery at a time
+ * - Contended acquisitions always measure wait time (they are slow anyway)
+ * - Hold time is SAMPLED (1 in sampleEvery acquisitions); the OWNER's call
+ *   site is taken on 1 in 64 of those samples, because a stack walk costs
+ *   microseconds
+ */
+
+public class LockProfiler {
+
+    private static final Map<String, LockStats> REGISTRY = new ConcurrentHashMap<>();
+
+    /** Sample 1 in N acquisitions for hold time and call site (power of two) */
+    private static volatile int sampleMask = 63;
+
+    /** Owner call sites are captured on 1 in 2^OWNER_SITE_SHIFT hold samples */
+    static final int OWNER_SITE_SHIFT = 6;
+
+    private LockProfiler() {
+    }
+
+    public static void setSampleEvery(int n) {
+        if (n < 1 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("sampleEvery must be a power of two: " + n);
+        }
+        sampleMask = n - 1;
+    }
+
+    static LockStats stats(String name) {
+        return REGISTRY.computeIfAbsent(name, LockStats::new);
+    }
+
+    static boolean sampleNow() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    static int sampleMask() {
+        return sampleMask;
+    }
+
+    public static void reset() {
+        REGISTRY.clear();
+    }
+
+    public static List<LockStats> snapshot() {
+        List<LockStats> list = new ArrayList<>(REGISTRY.values());
+        list.sort(Comparator.comparingLong(LockStats::totalWaitNanos).reversed()
+                .thenComparing(Comparator.comparingLong(LockStats::contended).reversed()));
+        return list;
+    }
+
+    /** Ranks locks by total wait time and prints the top call sites of each */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-22s %12s %10s %8s %12s %12s %12s%n",
+                "LOCK", "ACQUIRED", "CONTENDED", "CONT %", "WAIT ms", "MAX WAIT us", "AVG HOLD ns"));
+        for (LockStats s : snapshot()) {
+            sb.append(String.format("%-22s %,12d %,10d %7.2f%% %,12.1f %,12.1f %,12d%n",
+                    s.name(), s.acquisitions(), s.contended(), s.contentionPercent(),
+                    s.totalWaitNanos() / 1e6, s.maxWaitNanos() / 1e3, s.avgHoldNanos()));
+            s.topCallSites(3).forEach((site, count) ->
+                    sb.append(String.format("    waited at %-50s x%,d (sampled)%n", site, count)));
+            s.topOwnerSites(3).forEach((site, holds) ->
+                    sb.append(String.format("    held by   %-50s x%,d, avg hold %,d ns (sampled)%n",
+                            site, holds[0], holds[1])));
+        }
+        sb.append(String.format("(ACQUIRED is counted on sampled acquisitions, %d at a time)%n", sampleMask + 1));
+        return sb.toString();
+    }
+
+    /** Captures the first frame outside the lock wrappers */
+    static String callSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .skip(1) // callSite() itself
+                .filter(f -> !f.getClassName().startsWith("Profiled"))
+                .findFirst()
+                .map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    // ===========================================
+    // EXAMPLES
+    // ===========================================
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== LOCK CONTENTION PROFILER ===\n");
+
+        profileCountersExample();
+        overheadBenchmark();
+    }
+
+    /**
+     * Example 1: the counters from ThreadSafetyAndSynchronization, profiled
+     */
+    public static void profileCountersExample() throws InterruptedException {
+        System.out.println("1. PROFILING THE COUNTERS");
+        System.out.println("=========================");
+
+        LockProfiler.reset();
+        ProfiledLock counterLock = new ProfiledLock("LockCounter");
+        ProfiledMonitor blockMonitor = new ProfiledMonitor("BlockCounter");
+        ProfiledReadWriteLock configLock = new ProfiledReadWriteLock("ConfigRWLock");
+        int[] lockCount = new int[1];
+        int[] blockCount = new int[1];
+        Map<String, String> config = new HashMap<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        for (int t = 0; t < 5; t++) {
+            pool.submit(() -> {
+                for (int j = 0; j < 200_000; j++) {
+                    counterLock.lock();
+                    try {
+                        lockCount[0]++;
+                    } finally {
+                        counterLock.unlock();
+                    }
+                    blockMonitor.run(() -> blockCount[0]++);
+                    if (j % 100 == 0) {
+                        configLock.writeLock().lock();
+                        try {
+                            config.put("version", String.valueOf(j));
+                        } finally {
+                            configLock.writeLock().unlock();
+                        }
+                    } else {
+                        configLock.readLock().lock();
+                        try {
+                            config.get("version");
+                        } finally {
+                            configLock.readLock().unlock();
+                        }
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.println("LockCounter = " + lockCount[0] + ", BlockCounter = " + blockCount[0]);
+        System.out.println(report());
+    }
+
+    /**
+     * Example 2: cost of the wrapper vs a plain ReentrantLock
+     */
+    public static void overheadBenchmark() throws InterruptedException {
+        System.out.println("2. PROFILER OVERHEAD");
+        System.out.println("====================");
+
+        // Empty critical section = worst case; 'work' simulates a short real one
+        int iterations = 1_000_000;
+        for (int work : new int[] {0, 100}) {
+            for (int threads : new int[] {1, 4}) {
+                long plain = Long.MAX_VALUE;
+                long profiled = Long.MAX_VALUE;
+                // Best of 7 interleaved rounds: warm-up and scheduler noise only ever add time
+                for (int round = 0; round < 7; round++) {
+                    plain = Math.min(plain, timeLock(new ReentrantLock(), threads, iterations, work));
+                    profiled = Math.min(profiled, timeLock(new ProfiledLock("overhead"), threads, iterations, work));
+                }
+                System.out.printf("work=%3d, %d thread(s): ReentrantLock %,5d ms, ProfiledLock %,5d ms (%+.1f%%)%n",
+                        work, threads, plain / 1_000_000, profiled / 1_000_000,
+                        100.0 * (profiled - plain) / plain);
+            }
+        }
+        System.out.println("Overhead benchmark completed!\n");
+    }
+
+    private static long timeLock(Lock lock, int threads, int iterations, int work) throws InterruptedException {
+        long[] counter = new long[1];
+        Thread[] workers = new Thread[threads];
+        long begin = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < iterations; j++) {
+                    lock.lock();
+                    try {
+                        long c = counter[0] + 1;
+                        for (int w = 0; w < work; w++) {
+                            c = c * 31 + w;
+                        }
+                        counter[0] = c;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - begin;
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Counters for one named lock. LongAdder keeps recording itself from
+ * becoming a new point of contention.
+ */
+class LockStats {
+    private final String name;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder holdSamples = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final Map<String, LongAdder> callSites = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder[]> ownerSites = new ConcurrentHashMap<>(); // {holds, nanos}
+
+    LockStats(String name) {
+        this.name = name;
+    }
+
+    /** Called once per sample with the number of acquisitions the sample stands for */
+    void addAcquisitions(long count) {
+        acquisitions.add(count);
+    }
+
+    void recordContended(long waited, String site) {
+        contended.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulate(waited);
+        if (site != null) {
+            callSites.computeIfAbsent(site, k -> new LongAdder()).increment();
+        }
+    }
+
+    void recordHold(long held, String ownerSite) {
+        holdSamples.increment();
+        holdNanos.add(held);
+        if (ownerSite != null) {
+            LongAdder[] site = ownerSites.computeIfAbsent(ownerSite, k -> new LongAdder[] {new LongAdder(), new LongAdder()});
+            site[0].increment();
+            site[1].add(held);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long acquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long contended() {
+        return contended.sum();
+    }
+
+    public double contentionPercent() {
+        long total = acquisitions();
+        return total == 0 ? 0 : 100.0 * contended() / total;
+    }
+
+    public long totalWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long maxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public long avgHoldNanos() {
+        long samples = holdSamples.sum();
+        return samples == 0 ? 0 : holdNanos.sum() / samples;
+    }
+
+    public Map<String, Long> topCallSites(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        callSites.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .limit(limit)
+                .forEach(e -> top.put(e.getKey(), e.getValue().sum()));
+        return top;
+    }
+
+    /** Sites that held the lock longest in total: site -> {holds, average hold ns} */
+    public Map<String, long[]> topOwnerSites(int limit) {
+        Map<String, long[]> top = new LinkedHashMap<>();
+        ownerSites.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[1].sum(), a.getValue()[1].sum()))
+                .limit(limit)
+                .forEach(e -> {
+                    long holds = e.getValue()[0].sum();
+                    top.put(e.getKey(), new long[] {holds, e.getValue()[1].sum() / Math.max(1, holds)});
+                });
+        return top;
+    }
+}
+
+/**
+ * Lock wrapper that records into a LockStats. Works for ReentrantLock and for
+ * the read/write views of a ReentrantReadWriteLock.
+ *
+ * Exclusive locks count acquisitions in a plain field: it is only written
+ * while the lock is held, so the lock itself makes it thread-safe. Every
+ * sampleEvery-th acquisition adds sampleEvery to the shared LongAdder and
+ * starts a hold-time sample. Shared (read) locks have many holders at once
+ * and sample randomly, adding sampleEvery per sample (an unbiased estimate).
+ *
+ * A fair delegate is probed with tryLock(0, NANOSECONDS), which honours the
+ * queue; plain tryLock() would let the wrapper barge past waiting threads.
+ */
+class ProfiledLock implements Lock {
+    private final Lock delegate;
+    private final LockStats stats;
+    private final boolean shared;
+    private final boolean fair;
+
+    // Exclusive locks only - guarded by the lock itself
+    private long acquired;
+    private long holdStartNanos;
+    private String holdSite; // owner call site of the current hold sample, if captured
+
+    /** Shared (read) locks have many owners, so they need a per-thread start */
+    private final ThreadLocal<long[]> sharedHoldStart;
+
+    ProfiledLock(String name) {
+        this(name, false);
+    }
+
+    ProfiledLock(String name, boolean fair) {
+        this(new ReentrantLock(fair), name, false, fair);
+    }
+
+    ProfiledLock(Lock delegate, String name, boolean shared, boolean fair) {
+        this.delegate = delegate;
+        this.stats = LockProfiler.stats(name);
+        this.shared = shared;
+        this.fair = fair;
+        this.sharedHoldStart = shared ? ThreadLocal.withInitial(() -> new long[1]) : null;
+    }
+
+    /** Takes the lock only if that needs no waiting, without jumping a fair queue */
+    private boolean tryUncontended() {
+        if (!fair) {
+            return delegate.tryLock();
+        }
+        try {
+            return delegate.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // the slow path decides what an interrupt means
+            return false;
+        }
+    }
+
+    public void lock() {
+        if (!tryUncontended()) {
+            long start = System.nanoTime();
+            delegate.lock();
+            recordContended(start);
+        }
+        onAcquired();
+    }
+
+    public void lockInterruptibly() throws InterruptedException {
+        if (!tryUncontended()) {
+            long start = System.nanoTime();
+            delegate.lockInterruptibly();
+            recordContended(start);
+        }
+        onAcquired();
+    }
+
+    public boolean tryLock() {
+        if (!delegate.tryLock()) {
+            return false;
+        }
+        onAcquired();
+        return true;
+    }
+
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (!tryUncontended()) {
+            long start = System.nanoTime();
+            if (!delegate.tryLock(time, unit)) {
+                return false;
+            }
+            recordContended(start);
+        }
+        onAcquired();
+        return true;
+    }
+
+    public void unlock() {
+        if (shared) {
+            long[] start = sharedHoldStart.get();
+            if (start[0] != 0) {
+                stats.recordHold(System.nanoTime() - start[0], null);
+                start[0] = 0;
+            }
+        } else if (holdStartNanos != 0 && isOutermostHold()) {
+            stats.recordHold(System.nanoTime() - holdStartNanos, holdSite);
+            holdStartNanos = 0;
+            holdSite = null;
+        }
+        delegate.unlock();
+    }
+
+    public Condition newCondition() {
+        return delegate.newCondition();
+    }
+
+    private void recordContended(long start) {
+        long waited = System.nanoTime() - start;
+        stats.recordContended(waited, LockProfiler.sampleNow() ? LockProfiler.callSite() : null);
+    }
+
+    private void onAcquired() {
+        int mask = LockProfiler.sampleMask();
+        if (shared) {
+            if (LockProfiler.sampleNow()) {
+                stats.addAcquisitions(mask + 1L);
+                sharedHoldStart.get()[0] = System.nanoTime();
+            }
+            return;
+        }
+        // Deterministic 1-in-N sampling: no random number and no shared write on the fast path
+        long n = ++acquired;
+        if ((n & mask) == 0) {
+            stats.addAcquisitions(mask + 1L);
+            if (holdStartNanos == 0) { // re-entrant acquisitions keep the outermost start
+                if ((n & (((mask + 1L) << LockProfiler.OWNER_SITE_SHIFT) - 1)) == 0) {
+                    holdSite = LockProfiler.callSite();
+                }
+                holdStartNanos = System.nanoTime();
+            }
+        }
+    }
+
+    private boolean isOutermostHold() {
+        if (delegate instanceof ReentrantLock) {
+            return ((ReentrantLock) delegate).getHoldCount() == 1;
+        }
+        if (delegate instanceof ReentrantReadWriteLock.WriteLock) {
+            return ((ReentrantReadWriteLock.WriteLock) delegate).getHoldCount() == 1;
+        }
+        return true; // unknown delegate: treat it as non-reentrant
+    }
+}
+
+/**
+ * Surrogate for a synchronized block:
+ *
+ *     synchronized (lock) { count++; }   ->   monitor.run(() -> count++);
+ *
+ * Backed by a ReentrantLock so contention can be observed with tryLock();
+ * a real monitor gives no way to tell whether entry had to wait.
+ */
+class ProfiledMonitor {
+    private final ProfiledLock lock;
+
+    ProfiledMonitor(String name) {
+        this.lock = new ProfiledLock(name);
+    }
+
+    public void run(Runnable action) {
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public <T> T call(Supplier<T> action) {
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
+
+/**
+ * ReadWriteLock wrapper; the read and write sides are reported separately
+ * as "name.read" and "name.write"
+ */
+class ProfiledReadWriteLock implements ReadWriteLock {
+    private final ProfiledLock readLock;
+    private final ProfiledLock writeLock;
+
+    ProfiledReadWriteLock(String name) {
+        this(new ReentrantReadWriteLock(), name);
+    }
+
+    ProfiledReadWriteLock(ReadWriteLock delegate, String name) {
+        boolean fair = delegate instanceof ReentrantReadWriteLock && ((ReentrantReadWriteLock) delegate).isFair();
+        this.readLock = new ProfiledLock(delegate.readLock(), name + ".read", true, fair);
+        this.writeLock = new ProfiledLock(delegate.writeLock(), name + ".write", false, fair);
+    }
+
+    public Lock readLock() {
+        return readLock;
+    }
+
+    public Lock writeLock() {
+        return writeLock;
+    }
+}
+
+/*
+ * ===========================================
+ * LOCK PROFILING SUMMARY
+ * ===========================================
+ *
+ * 1. WHAT TO LOOK AT:
+ *    - Total wait time: where threads lose the most time overall
+ *    - Contention %: how often a thread found the lock taken
+ *    - Max wait: latency spikes caused by a lock
+ *    - Avg hold: long holds cause long waits for everyone else
+ *
+ * 2. KEEPING OVERHEAD LOW:
+ *    - Fast path is tryLock() + a counter guarded by the lock itself, no System.nanoTime()
+ *    - Slow path already blocks for microseconds, so timing it is free in comparison
+ *    - Hold times and stack walks are sampled (default 1 in 64)
+ *
+ * 3. FIXING A HOT LOCK:
+ *    - Shorten the critical section (move work outside the lock)
+ *    - Split the lock (lock striping) or use a ReadWriteLock/StampedLock
+ *    - Replace it with an atomic or LongAdder when it guards a counter
+ */
@@ -0,0 +1,343 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * PARALLEL MEMORY-MAPPED INGESTION OF ORDER FILES
+ * ===============================================
+ *
+ * CompleteThreadTutorial.fileProcessingExample gives each file to one thread
+ * and sleeps for a second to "process" it. A real order file can be several GB;
+ * one thread per file leaves most cores idle, and BufferedReader.readLine()
+ * builds a String (plus a char[] decode) for every line.
+ *
+ * MappedOrderIngestion:
+ * 1. Memory-maps the file with FileChannel.map (the OS pages it in, no copies
+ *    into Java heap buffers)
+ * 2. Splits it into chunks whose edges are moved to line boundaries
+ * 3. Parses the chunks in parallel, straight from the mapped bytes, into
+ *    primitive fields - no String per line, no String per field
+ *
+ * FILE FORMAT (one order per line, optional header line):
+ *   orderId,customerId,productId,quantity,priceCents
+ *   1000001,42,7,3,1999
+ *
+ * Records are handed to an OrderSink as primitives. Each worker gets its own
+ * sink, so no synchronization is needed while parsing.
+ *
+ * Run:  java MappedOrderIngestion [sizeInMB]
+ */
+
+public class MappedOrderIngestion {
+
+    /** Default chunk size: big enough to amortize task overhead, small enough to balance */
+    static final long DEFAULT_CHUNK_BYTES = 32L * 1024 * 1024;
+
+    /** Longest line we accept; a chunk maps this much extra to finish its last line */
+    static final int MAX_LINE_BYTES = 4096;
+
+    private final ExecutorService executor;
+    private final long chunkBytes;
+
+    public MappedOrderIngestion(ExecutorService executor) {
+        this(executor, DEFAULT_CHUNK_BYTES);
+    }
+
+    public MappedOrderIngestion(ExecutorService executor, long chunkBytes) {
+        if (chunkBytes < MAX_LINE_BYTES) {
+            throw new IllegalArgumentException("chunkBytes must be at least " + MAX_LINE_BYTES);
+        }
+        this.executor = executor;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Ingests one file. sinkFactory is called once per chunk; the returned
+     * sinks are handed back in file order so the caller can merge them.
+     */
+    public <S extends OrderSink> List<S> ingest(Path file, Supplier<S> sinkFactory)
+            throws IOException, InterruptedException, ExecutionException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Future<S>> futures = new ArrayList<>();
+            for (long start = 0; start < size; start += chunkBytes) {
+                long chunkStart = start;
+                long chunkEnd = Math.min(size, start + chunkBytes);
+                futures.add(executor.submit(() -> {
+                    S sink = sinkFactory.get();
+                    parseChunk(channel, size, chunkStart, chunkEnd, sink);
+                    return sink;
+                }));
+            }
+            List<S> sinks = new ArrayList<>(futures.size());
+            for (Future<S> future : futures) {
+                sinks.add(future.get());
+            }
+            return sinks;
+        }
+    }
+
+    /**
+     * Parses every line that STARTS in [start, end). The first partial line
+     * belongs to the previous chunk; the last line may run past 'end' and is
+     * finished here, which is why the mapping extends by MAX_LINE_BYTES.
+     */
+    static void parseChunk(FileChannel channel, long fileSize, long start, long end, OrderSink sink)
+            throws IOException {
+        long mapStart = start == 0 ? 0 : start - 1; // include the byte before, to see if we begin on a line
+        long mapEnd = Math.min(fileSize, end + MAX_LINE_BYTES);
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+
+        int limit = (int) (end - mapStart); // lines must start before this position
+        int pos = 0;
+        if (start != 0) {
+            // Skip the tail of a line that started in the previous chunk
+            if (buf.get(0) != '\n') {
+                while (pos < buf.limit() && buf.get(pos) != '\n') {
+                    pos++;
+                }
+            }
+            pos++;
+        }
+        if (start == 0 && pos < buf.limit() && !isDigit(buf.get(pos))) {
+            pos = skipLine(buf, pos); // header line
+        }
+
+        long[] fields = new long[5];
+        while (pos < limit) {
+            int lineStart = pos;
+            int field = 0;
+            long value = 0;
+            boolean digits = false;
+            boolean valid = true;
+            byte b = 0;
+            while (pos < buf.limit() && (b = buf.get(pos)) != '\n') {
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    digits = true;
+                } else if (b == ',') {
+                    if (field < fields.length) {
+                        fields[field] = value;
+                    }
+                    valid &= digits;
+                    field++;
+                    value = 0;
+                    digits = false;
+                } else if (b != '\r') {
+                    valid = false;
+                }
+                pos++;
+            }
+            if (field < fields.length) {
+                fields[field] = value;
+            }
+            valid &= digits && field == fields.length - 1;
+            if (valid) {
+                sink.accept(fields[0], fields[1], (int) fields[2], (int) fields[3], fields[4]);
+            } else if (pos > lineStart) {
+                sink.malformed(mapStart + lineStart);
+            }
+            pos++; // past '\n'
+        }
+    }
+
+    private static int skipLine(MappedByteBuffer buf, int pos) {
+        while (pos < buf.limit() && buf.get(pos) != '\n') {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    // ===========================================
+    // EXAMPLE AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== PARALLEL MEMORY-MAPPED ORDER INGESTION ===\n");
+
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Path file = Files.createTempFile("orders-", ".csv");
+        file.toFile().deleteOnExit();
+        try {
+            System.out.println("Generating " + sizeMb + " MB order file...");
+            generateOrders(file, sizeMb * 1024L * 1024L);
+            long bytes = Files.size(file);
+
+            int threads = Runtime.getRuntime().availableProcessors();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            MappedOrderIngestion ingestion = new MappedOrderIngestion(executor);
+
+            for (int round = 1; round <= 2; round++) { // round 1 warms JIT and page cache
+                System.out.println("\nRound " + round + ":");
+
+                long begin = System.nanoTime();
+                OrderTotals readLine = readLineBaseline(file);
+                report("BufferedReader.readLine", bytes, readLine, System.nanoTime() - begin);
+
+                begin = System.nanoTime();
+                OrderTotals mapped = OrderTotals.merge(ingestion.ingest(file, OrderTotals::new));
+                report("Mapped, " + threads + " threads", bytes, mapped, System.nanoTime() - begin);
+
+                if (!readLine.equals(mapped)) {
+                    System.out.println("MISMATCH: " + readLine + " vs " + mapped);
+                }
+            }
+            executor.shutdown();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("\nIngestion example completed!\n");
+    }
+
+    private static void report(String name, long bytes, OrderTotals totals, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("  %-26s %,8.1f MB/s %,14.0f records/s   (%s)%n",
+                name, bytes / 1048576.0 / seconds, totals.records / seconds, totals);
+    }
+
+    /** The classic way: one String per line, one String per field */
+    static OrderTotals readLineBaseline(Path file) throws IOException {
+        OrderTotals totals = new OrderTotals();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line = reader.readLine(); // header
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length != 5) {
+                    totals.malformed(0);
+                    continue;
+                }
+                try {
+                    totals.accept(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                            Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Long.parseLong(parts[4]));
+                } catch (NumberFormatException e) {
+                    totals.malformed(0);
+                }
+            }
+        }
+        return totals;
+    }
+
+    static void generateOrders(Path file, long targetBytes) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writer.write("orderId,customerId,productId,quantity,priceCents\n");
+            long written = 0;
+            long orderId = 1_000_000;
+            StringBuilder line = new StringBuilder(64);
+            while (written < targetBytes) {
+                line.setLength(0);
+                line.append(orderId++).append(',')
+                        .append(random.nextInt(5_000_000)).append(',')
+                        .append(random.nextInt(100_000)).append(',')
+                        .append(1 + random.nextInt(10)).append(',')
+                        .append(100 + random.nextInt(500_000)).append('\n');
+                writer.append(line);
+                written += line.length();
+            }
+        }
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * Receives parsed orders as primitives - implementations decide whether to
+ * aggregate, index, or copy into columns. Called by one thread per sink.
+ */
+interface OrderSink {
+    void accept(long orderId, long customerId, int productId, int quantity, long priceCents);
+
+    /** A line that could not be parsed; offset is its byte position in the file */
+    default void malformed(long offset) {
+    }
+}
+
+/**
+ * Simple aggregating sink: record count, units, revenue and a checksum
+ */
+class OrderTotals implements OrderSink {
+    long records;
+    long units;
+    long revenueCents;
+    long orderIdSum;
+    long malformedLines;
+
+    public void accept(long orderId, long customerId, int productId, int quantity, long priceCents) {
+        records++;
+        units += quantity;
+        revenueCents += quantity * priceCents;
+        orderIdSum += orderId;
+    }
+
+    public void malformed(long offset) {
+        malformedLines++;
+    }
+
+    static OrderTotals merge(List<OrderTotals> parts) {
+        OrderTotals total = new OrderTotals();
+        for (OrderTotals part : parts) {
+            total.records += part.records;
+            total.units += part.units;
+            total.revenueCents += part.revenueCents;
+            total.orderIdSum += part.orderIdSum;
+            total.malformedLines += part.malformedLines;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof OrderTotals)) {
+            return false;
+        }
+        OrderTotals other = (OrderTotals) o;
+        return records == other.records && units == other.units
+                && revenueCents == other.revenueCents && orderIdSum == other.orderIdSum
+                && malformedLines == other.malformedLines;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(records, units, revenueCents, orderIdSum, malformedLines);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("records=%,d units=%,d revenue=%,d.%02d malformed=%d",
+                records, units, revenueCents / 100, revenueCents % 100, malformedLines);
+    }
+}
+
+/*
+ * ===========================================
+ * MEMORY-MAPPED INGESTION SUMMARY
+ * ===========================================
+ *
+ * 1. WHY MAP THE FILE:
+ *    - No read() copies into a heap buffer; the parser reads page-cache pages directly
+ *    - Many threads can read different regions of the same file at once
+ *
+ * 2. SPLITTING ON LINE BOUNDARIES:
+ *    - A chunk owns every line that STARTS inside it
+ *    - It skips the partial first line and finishes its last line past 'end'
+ *
+ * 3. NO STRINGS:
+ *    - Numbers are accumulated digit by digit from bytes
+ *    - Results go to a primitive callback (OrderSink), one sink per chunk
+ *
+ * 4. LIMITS:
+ *    - One mapping is at most 2 GB, so large files are mapped per chunk
+ *    - Lines longer than MAX_LINE_BYTES at a chunk edge are cut off
+ *    - Throughput on a cold cache is bounded by the disk, not by the parser
+ */
@@ -0,0 +1,375 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * STAMPEDLOCK OPTIMISTIC READS FOR READ-MOSTLY DATA
+ * =================================================
+ *
+ * LockCounter in ThreadSafetyAndSynchronization takes its ReentrantLock even
+ * in getCount(). Readers then wait for each other, although reading never
+ * changes anything.
+ *
+ * StampedLock has three modes:
+ * 1. Optimistic read - no lock at all: read, then validate(stamp)
+ * 2. Read lock       - shared, like ReentrantReadWriteLock.readLock()
+ * 3. Write lock      - exclusive
+ *
+ * PriceCatalog below is a read-mostly shared state (product -> price plus a
+ * version number) that:
+ * - reads optimistically and falls back to a read lock only if a writer interfered
+ * - upgrades a read lock to a write lock (tryConvertToWriteLock) for
+ *   "read, decide, maybe write" updates
+ *
+ * main() compares it with ReentrantLock, ReentrantReadWriteLock and
+ * synchronized at 99/1, 90/10 and 50/50 read/write ratios.
+ */
+
+public class StampedLockCatalog {
+
+    private static final int PRODUCTS = 64;
+    private static final int THREADS = 4;
+    private static final long RUN_MILLIS = 500;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== STAMPEDLOCK OPTIMISTIC READS ===\n");
+
+        // Example 1: Basic usage
+        basicUsageExample();
+
+        // Example 2: Read/write ratio benchmark
+        ratioBenchmark();
+    }
+
+    // ===========================================
+    // EXAMPLE 1: BASIC USAGE
+    // ===========================================
+
+    public static void basicUsageExample() {
+        System.out.println("1. BASIC USAGE");
+        System.out.println("==============");
+
+        PriceCatalog catalog = new PriceCatalog(4);
+        catalog.setPrice(0, 999);
+        catalog.setPrice(1, 25_000);
+
+        System.out.println("Price of product 0: " + catalog.getPrice(0));
+        System.out.println("Snapshot: " + catalog.snapshot());
+
+        boolean changed = catalog.applyDiscountIfAbove(1, 10_000, 10);
+        System.out.println("Discount applied to product 1: " + changed + " -> " + catalog.getPrice(1));
+        changed = catalog.applyDiscountIfAbove(0, 10_000, 10);
+        System.out.println("Discount applied to product 0: " + changed + " -> " + catalog.getPrice(0));
+
+        System.out.println("Optimistic reads that needed the fallback lock: " + catalog.fallbackReads());
+        System.out.println("Basic usage example completed!\n");
+    }
+
+    // ===========================================
+    // EXAMPLE 2: READ/WRITE RATIO BENCHMARK
+    // ===========================================
+
+    public static void ratioBenchmark() throws InterruptedException {
+        System.out.println("2. READ/WRITE RATIO BENCHMARK (" + THREADS + " threads, ops/ms)");
+        System.out.println("===========================================");
+        System.out.printf("%-10s %14s %14s %14s %14s%n",
+                "READ %", "StampedLock", "RWLock", "ReentrantLock", "synchronized");
+
+        for (int readPercent : new int[] {99, 90, 50}) {
+            long stamped = run(new PriceCatalog(PRODUCTS), readPercent);
+            long rw = run(new RwLockCatalog(PRODUCTS), readPercent);
+            long reentrant = run(new ReentrantLockCatalog(PRODUCTS), readPercent);
+            long sync = run(new SynchronizedCatalog(PRODUCTS), readPercent);
+            System.out.printf("%-10s %,14d %,14d %,14d %,14d%n",
+                    readPercent + "/" + (100 - readPercent), stamped, rw, reentrant, sync);
+        }
+        System.out.println("Ratio benchmark completed!\n");
+    }
+
+    private static long run(Catalog catalog, int readPercent) throws InterruptedException {
+        // Short warm-up so JIT compilation does not land in the measured window
+        measure(catalog, readPercent, RUN_MILLIS / 5);
+        return measure(catalog, readPercent, RUN_MILLIS) / RUN_MILLIS;
+    }
+
+    private static long measure(Catalog catalog, int readPercent, long millis) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] sink = new long[THREADS];
+        Thread[] workers = new Thread[THREADS];
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+
+        for (int t = 0; t < THREADS; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long local = 0;
+                long sum = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while ((local & 1023) != 0 || System.nanoTime() < deadline) {
+                    int product = random.nextInt(PRODUCTS);
+                    if (random.nextInt(100) < readPercent) {
+                        sum += catalog.getPrice(product);
+                    } else {
+                        catalog.setPrice(product, random.nextInt(100_000));
+                    }
+                    local++;
+                }
+                sink[id] = sum;
+                ops.add(local);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum();
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * What every catalog variant in the benchmark offers
+ */
+interface Catalog {
+    long getPrice(int product);
+
+    void setPrice(int product, long cents);
+}
+
+/**
+ * Read-mostly price catalog guarded by a StampedLock.
+ * Prices are in cents; version goes up on every change so readers can
+ * detect that a snapshot is stale.
+ */
+class PriceCatalog implements Catalog {
+    private final StampedLock lock = new StampedLock();
+    private final long[] prices;
+    private long version;
+    private final LongAdder fallbackReads = new LongAdder();
+
+    PriceCatalog(int products) {
+        prices = new long[products];
+    }
+
+    /**
+     * Optimistic read: no lock, no write to shared memory. If a writer got in
+     * between tryOptimisticRead() and validate(), read again under a real read lock.
+     */
+    public long getPrice(int product) {
+        long stamp = lock.tryOptimisticRead();
+        long price = prices[product];
+        if (!lock.validate(stamp)) {
+            fallbackReads.increment();
+            stamp = lock.readLock();
+            try {
+                price = prices[product];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return price;
+    }
+
+    /**
+     * Consistent copy of all prices plus the version they belong to.
+     * Copies optimistically first; a torn copy is detected by validate().
+     */
+    public CatalogSnapshot snapshot() {
+        long stamp = lock.tryOptimisticRead();
+        long[] copy = prices.clone();
+        long v = version;
+        if (!lock.validate(stamp)) {
+            fallbackReads.increment();
+            stamp = lock.readLock();
+            try {
+                copy = prices.clone();
+                v = version;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return new CatalogSnapshot(v, copy);
+    }
+
+    public void setPrice(int product, long cents) {
+        long stamp = lock.writeLock();
+        try {
+            prices[product] = cents;
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Read, decide, maybe write. Starts with a read lock and upgrades it in
+     * place when a write is actually needed, so the common "no change" case
+     * never blocks other readers.
+     */
+    public boolean applyDiscountIfAbove(int product, long thresholdCents, int percent) {
+        long stamp = lock.readLock();
+        try {
+            while (prices[product] > thresholdCents) {
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp != 0L) {
+                    stamp = writeStamp;
+                    prices[product] = prices[product] * (100 - percent) / 100;
+                    version++;
+                    return true;
+                }
+                // Other readers hold the lock - drop ours and take the write lock explicitly
+                lock.unlockRead(stamp);
+                stamp = lock.writeLock();
+            }
+            return false;
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    public long fallbackReads() {
+        return fallbackReads.sum();
+    }
+}
+
+/**
+ * Immutable point-in-time copy of a PriceCatalog
+ */
+class CatalogSnapshot {
+    private final long version;
+    private final long[] prices;
+
+    CatalogSnapshot(long version, long[] prices) {
+        this.version = version;
+        this.prices = prices;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long price(int product) {
+        return prices[product];
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version + " " + Arrays.toString(prices);
+    }
+}
+
+/**
+ * Same catalog with ReentrantReadWriteLock - readers share, but still write
+ * the lock's reader count on every read
+ */
+class RwLockCatalog implements Catalog {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long[] prices;
+
+    RwLockCatalog(int products) {
+        prices = new long[products];
+    }
+
+    public long getPrice(int product) {
+        lock.readLock().lock();
+        try {
+            return prices[product];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setPrice(int product, long cents) {
+        lock.writeLock().lock();
+        try {
+            prices[product] = cents;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
+
+/**
+ * Same catalog with one ReentrantLock, like LockCounter
+ */
+class ReentrantLockCatalog implements Catalog {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] prices;
+
+    ReentrantLockCatalog(int products) {
+        prices = new long[products];
+    }
+
+    public long getPrice(int product) {
+        lock.lock();
+        try {
+            return prices[product];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setPrice(int product, long cents) {
+        lock.lock();
+        try {
+            prices[product] = cents;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
+
+/**
+ * Same catalog with synchronized methods, like SafeCounter
+ */
+class SynchronizedCatalog implements Catalog {
+    private final long[] prices;
+
+    SynchronizedCatalog(int products) {
+        prices = new long[products];
+    }
+
+    public synchronized long getPrice(int product) {
+        return prices[product];
+    }
+
+    public synchronized void setPrice(int product, long cents) {
+        prices[product] = cents;
+    }
+}
+
+/*
+ * ===========================================
+ * STAMPEDLOCK SUMMARY
+ * ===========================================
+ *
+ * 1. OPTIMISTIC READ PATTERN:
+ *    long stamp = lock.tryOptimisticRead();
+ *    ... copy fields into locals ...
+ *    if (!lock.validate(stamp)) { ... re-read under lock.readLock() ... }
+ *
+ * 2. RULES:
+ *    - Only read into locals before validate(); never act on unvalidated data
+ *    - StampedLock is NOT reentrant - don't call locked methods from locked methods
+ *    - No Conditions; use it for data access, not for waiting
+ *
+ * 3. WHEN IT WINS:
+ *    - Many readers, few writers (99/1, 90/10)
+ *    - Short read sections (a few fields)
+ *
+ * 4. WHEN IT DOES NOT:
+ *    - Write-heavy (50/50): optimistic reads keep failing validation
+ *    - Long reads: more chances for a writer to invalidate the stamp
+ */
@@ -0,0 +1,519 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * STRUCTURED CONCURRENCY: TASK SCOPE WITH FAIL-FAST
+ * =================================================
+ *
+ * PracticalMultithreading.errorHandlingExample calls task1.get(), task2.get()
+ * and task3.get() in submission order:
+ * - it only notices that task 2 failed AFTER waiting for task 1
+ * - it never cancels task 3, which keeps running for nothing
+ *
+ * TaskScope groups subtasks so they live and die together:
+ * 1. fork()        - start a subtask on its own thread
+ * 2. completed()   - consume results in COMPLETION order, not submission order
+ * 3. Policies:
+ *      SHUTDOWN_ON_FAILURE - first failure cancels all siblings (all-or-nothing)
+ *      SHUTDOWN_ON_SUCCESS - first success cancels all siblings (race / hedging)
+ * 4. close()       - never leaves a thread running behind the scope
+ *
+ * Threads come from a ThreadFactory, so the scope runs on platform threads or,
+ * on JDK 21+, on virtual threads (see threadFactory()).
+ *
+ * (This mirrors the JDK's preview StructuredTaskScope, which is not available
+ * on the Java 17 this repository targets.)
+ */
+
+public class TaskScope<T> implements AutoCloseable {
+
+    public enum Policy {
+        SHUTDOWN_ON_FAILURE,
+        SHUTDOWN_ON_SUCCESS
+    }
+
+    /** Named SubtaskState, not State: JDK 19+ Future already has state() returning Future.State */
+    public enum SubtaskState {
+        RUNNING,
+        SUCCESS,
+        FAILED,
+        CANCELLED
+    }
+
+    private final Policy policy;
+    private final ThreadFactory threadFactory;
+    private final List<Subtask<T>> subtasks = new ArrayList<>();
+    private final BlockingQueue<Subtask<T>> completionQueue = new LinkedBlockingQueue<>();
+    private final AtomicReference<Subtask<T>> firstFailure = new AtomicReference<>();
+    private final AtomicReference<Subtask<T>> firstSuccess = new AtomicReference<>();
+    private final Thread owner = Thread.currentThread();
+    private volatile boolean shutdown;
+    private boolean closed;
+    private int consumed;
+
+    public TaskScope(Policy policy) {
+        this(policy, threadFactory());
+    }
+
+    public TaskScope(Policy policy, ThreadFactory threadFactory) {
+        this.policy = Objects.requireNonNull(policy, "policy");
+        this.threadFactory = Objects.requireNonNull(threadFactory, "threadFactory");
+    }
+
+    /**
+     * Virtual threads when the JDK has them (21+), platform threads otherwise.
+     * Looked up reflectively so this file still compiles on Java 17. The
+     * methods come from the public Thread.Builder interface: the builder's
+     * own class is a non-public JDK class, so its methods cannot be invoked.
+     */
+    public static ThreadFactory threadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Object named = builderType.getMethod("name", String.class, long.class)
+                    .invoke(builder, "scope-vt-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(named);
+            return isVirtual(factory) ? factory : platformThreadFactory();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return platformThreadFactory(); // before JDK 21
+        }
+    }
+
+    /** True if threads from this factory are virtual (checked on a thread that is never started) */
+    public static boolean isVirtual(ThreadFactory factory) {
+        try {
+            Thread probe = factory.newThread(() -> { });
+            return Boolean.TRUE.equals(Thread.class.getMethod("isVirtual").invoke(probe));
+        } catch (ReflectiveOperationException e) {
+            return false; // no Thread.isVirtual() before JDK 21
+        }
+    }
+
+    public static ThreadFactory platformThreadFactory() {
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread t = new Thread(r, "scope-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // ===========================================
+    // FORK / JOIN
+    // ===========================================
+
+    /** Starts a subtask. After shutdown, new subtasks are cancelled immediately. */
+    public Subtask<T> fork(Callable<? extends T> task) {
+        ensureOwner();
+        if (closed) {
+            throw new IllegalStateException("Scope is closed");
+        }
+        Subtask<T> subtask = new Subtask<>(this, task);
+        synchronized (subtasks) {
+            subtasks.add(subtask);
+        }
+        if (shutdown) {
+            subtask.cancel(false);
+        } else {
+            threadFactory.newThread(subtask).start();
+        }
+        return subtask;
+    }
+
+    /**
+     * Waits until all subtasks finish or the scope is shut down by its policy.
+     * Returns this scope so calls can be chained: scope.join().throwIfFailed()
+     */
+    public TaskScope<T> join() throws InterruptedException {
+        ensureOwner();
+        while (!shutdown && consumed < subtasks.size()) {
+            completionQueue.take();
+            consumed++;
+        }
+        return this;
+    }
+
+    /** Like join() but gives up at the deadline and shuts the scope down */
+    public TaskScope<T> joinUntil(long deadlineNanos) throws InterruptedException, TimeoutException {
+        ensureOwner();
+        while (!shutdown && consumed < subtasks.size()) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0 || completionQueue.poll(remaining, TimeUnit.NANOSECONDS) == null) {
+                shutdown();
+                throw new TimeoutException("Scope deadline reached");
+            }
+            consumed++;
+        }
+        return this;
+    }
+
+    /**
+     * Next finished subtask in completion order, or null when there are no
+     * more. Cancelled siblings are skipped.
+     */
+    public Subtask<T> nextCompleted() throws InterruptedException {
+        ensureOwner();
+        while (consumed < subtasks.size()) {
+            Subtask<T> next = completionQueue.take();
+            consumed++;
+            if (next.subtaskState() != SubtaskState.CANCELLED) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /** Iterable over nextCompleted() for use in a for-each loop */
+    public Iterable<Subtask<T>> completed() {
+        return () -> new Iterator<Subtask<T>>() {
+            private Subtask<T> next;
+
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = nextCompleted();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return next != null;
+            }
+
+            public Subtask<T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Subtask<T> result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /** SHUTDOWN_ON_FAILURE: rethrows the first failure, if any */
+    public void throwIfFailed() throws ExecutionException {
+        Subtask<T> failed = firstFailure.get();
+        if (failed != null) {
+            throw new ExecutionException(failed.exception());
+        }
+    }
+
+    /** SHUTDOWN_ON_SUCCESS: result of the first subtask that succeeded */
+    public T result() throws ExecutionException {
+        Subtask<T> winner = firstSuccess.get();
+        if (winner != null) {
+            return winner.get();
+        }
+        Subtask<T> failed = firstFailure.get();
+        throw new ExecutionException("No subtask succeeded",
+                failed == null ? null : failed.exception());
+    }
+
+    /** Cancels every unfinished subtask (interrupts its thread) */
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        List<Subtask<T>> snapshot;
+        synchronized (subtasks) {
+            snapshot = new ArrayList<>(subtasks);
+        }
+        for (Subtask<T> subtask : snapshot) {
+            subtask.cancel(true);
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /** Shuts down and waits until every subtask thread has let go */
+    @Override
+    public void close() {
+        ensureOwner();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        shutdown();
+        boolean interrupted = false;
+        for (Subtask<T> subtask : subtasks) {
+            while (true) {
+                try {
+                    subtask.awaitExit();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ensureOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("Only the thread that opened the scope may use it");
+        }
+    }
+
+    /** Called from the subtask thread when it finishes */
+    private void onComplete(Subtask<T> subtask) {
+        SubtaskState state = subtask.subtaskState();
+        if (state == SubtaskState.FAILED && firstFailure.compareAndSet(null, subtask)
+                && policy == Policy.SHUTDOWN_ON_FAILURE) {
+            shutdown();
+        } else if (state == SubtaskState.SUCCESS && firstSuccess.compareAndSet(null, subtask)
+                && policy == Policy.SHUTDOWN_ON_SUCCESS) {
+            shutdown();
+        }
+        completionQueue.add(subtask);
+    }
+
+    // ===========================================
+    // SUBTASK
+    // ===========================================
+
+    /**
+     * One forked task. Wraps a FutureTask and reports back to the scope
+     * when done (success, failure or cancellation).
+     */
+    public static final class Subtask<T> extends FutureTask<T> {
+        private final TaskScope<T> scope;
+        private final CountDownLatch exited = new CountDownLatch(1);
+        private volatile boolean started;
+
+        @SuppressWarnings("unchecked")
+        Subtask(TaskScope<T> scope, Callable<? extends T> task) {
+            super((Callable<T>) task);
+            this.scope = scope;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            try {
+                super.run();
+            } finally {
+                exited.countDown();
+            }
+        }
+
+        @Override
+        protected void done() {
+            scope.onComplete(this);
+        }
+
+        void awaitExit() throws InterruptedException {
+            if (started) {
+                exited.await();
+            }
+        }
+
+        public SubtaskState subtaskState() {
+            if (!isDone()) {
+                return SubtaskState.RUNNING;
+            }
+            if (isCancelled()) {
+                return SubtaskState.CANCELLED;
+            }
+            try {
+                super.get();
+                return SubtaskState.SUCCESS;
+            } catch (ExecutionException e) {
+                return SubtaskState.FAILED;
+            } catch (InterruptedException | CancellationException e) {
+                return SubtaskState.CANCELLED;
+            }
+        }
+
+        /** Result of a successful subtask; throws if it is not SUCCESS */
+        @Override
+        public T get() {
+            if (subtaskState() != SubtaskState.SUCCESS) {
+                throw new IllegalStateException("Subtask is " + subtaskState());
+            }
+            try {
+                return super.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /** Exception of a failed subtask; throws if it is not FAILED */
+        public Throwable exception() {
+            try {
+                super.get();
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (InterruptedException | CancellationException e) {
+                // fall through
+            }
+            throw new IllegalStateException("Subtask is " + subtaskState());
+        }
+    }
+
+    // ===========================================
+    // EXAMPLES AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== STRUCTURED CONCURRENCY: TASK SCOPE ===\n");
+        System.out.println("Subtasks run on " + (isVirtual(threadFactory()) ? "virtual" : "platform")
+                + " threads (Java " + Runtime.version().feature() + ")\n");
+
+        completionOrderExample();
+        shutdownOnSuccessExample();
+        failFastComparison();
+    }
+
+    /**
+     * Example 1: results arrive in completion order, and the first failure
+     * cancels the sibling that is still running
+     */
+    public static void completionOrderExample() throws InterruptedException {
+        System.out.println("1. COMPLETION ORDER + FAIL-FAST");
+        System.out.println("===============================");
+
+        try (TaskScope<String> scope = new TaskScope<>(Policy.SHUTDOWN_ON_FAILURE)) {
+            scope.fork(() -> work("Task 1 completed successfully", 1000, null));
+            scope.fork(() -> work(null, 1500, "Task 2 failed!"));
+            scope.fork(() -> work("Task 3 completed successfully", 2000, null));
+
+            for (Subtask<String> done : scope.completed()) {
+                if (done.subtaskState() == SubtaskState.SUCCESS) {
+                    System.out.println("Result: " + done.get());
+                } else {
+                    System.out.println("Failed: " + done.exception().getMessage());
+                }
+            }
+            scope.throwIfFailed();
+        } catch (ExecutionException e) {
+            System.out.println("Scope failed fast: " + e.getCause().getMessage()
+                    + " (task 3 was cancelled)");
+        }
+        System.out.println();
+    }
+
+    /**
+     * Example 2: hedged request - ask three replicas, keep the fastest answer
+     */
+    public static void shutdownOnSuccessExample() throws Exception {
+        System.out.println("2. SHUTDOWN ON SUCCESS (HEDGED REQUEST)");
+        System.out.println("=======================================");
+
+        try (TaskScope<String> scope = new TaskScope<>(Policy.SHUTDOWN_ON_SUCCESS)) {
+            scope.fork(() -> work("replica-A", 800, null));
+            scope.fork(() -> work("replica-B", 300, null));
+            scope.fork(() -> work("replica-C", 1200, null));
+            scope.join();
+            System.out.println("Fastest replica: " + scope.result());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Example 3: time-to-failure and wasted work, Future.get() in order vs TaskScope.
+     * The failing task is submitted last but fails first - the worst case for
+     * in-order get().
+     */
+    public static void failFastComparison() throws Exception {
+        System.out.println("3. FAIL-FAST BENCHMARK");
+        System.out.println("======================");
+
+        long[] durations = {3000, 2000, 1000, 200};
+        int failing = 3;
+
+        // --- In-order Future.get() ---
+        AtomicLong wasted = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(durations.length);
+        long begin = System.nanoTime();
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < durations.length; i++) {
+            long millis = durations[i];
+            String error = i == failing ? "boom" : null;
+            futures.add(executor.submit(() -> metered(millis, error, wasted)));
+        }
+        long failedAt = -1;
+        for (Future<String> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failedAt = System.nanoTime() - begin;
+                break;
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.printf("Future.get() in order : failure seen after %4d ms, work done %5d ms%n",
+                TimeUnit.NANOSECONDS.toMillis(failedAt), wasted.get());
+
+        // --- TaskScope ---
+        wasted.set(0);
+        begin = System.nanoTime();
+        try (TaskScope<String> scope = new TaskScope<>(Policy.SHUTDOWN_ON_FAILURE)) {
+            for (int i = 0; i < durations.length; i++) {
+                long millis = durations[i];
+                String error = i == failing ? "boom" : null;
+                scope.fork(() -> metered(millis, error, wasted));
+            }
+            scope.join().throwIfFailed();
+        } catch (ExecutionException e) {
+            failedAt = System.nanoTime() - begin;
+        }
+        System.out.printf("TaskScope fail-fast   : failure seen after %4d ms, work done %5d ms%n",
+                TimeUnit.NANOSECONDS.toMillis(failedAt), wasted.get());
+        System.out.println("Fail-fast benchmark completed!\n");
+    }
+
+    private static String work(String value, long millis, String error) throws InterruptedException {
+        Thread.sleep(millis);
+        if (error != null) {
+            throw new IllegalStateException(error);
+        }
+        return value;
+    }
+
+    /** Works in 10 ms slices and counts every slice it actually spent */
+    private static String metered(long millis, String error, AtomicLong workDone) throws InterruptedException {
+        for (long spent = 0; spent < millis; spent += 10) {
+            Thread.sleep(10);
+            workDone.addAndGet(10);
+        }
+        if (error != null) {
+            throw new IllegalStateException(error);
+        }
+        return "ok";
+    }
+}
+
+/*
+ * ===========================================
+ * STRUCTURED CONCURRENCY SUMMARY
+ * ===========================================
+ *
+ * 1. WHY A SCOPE:
+ *    - Subtasks cannot outlive the block that started them
+ *    - Errors travel to the owner immediately, not when it gets around to get()
+ *
+ * 2. POLICIES:
+ *    - SHUTDOWN_ON_FAILURE: "I need all of them" (compose a page, validate an order)
+ *    - SHUTDOWN_ON_SUCCESS: "I need any of them" (replicas, hedged requests)
+ *
+ * 3. COMPLETION ORDER:
+ *    - completed() hands out subtasks as they finish
+ *    - Fast results are processed while slow ones are still running
+ *
+ * 4. CANCELLATION:
+ *    - shutdown() interrupts sibling threads
+ *    - Tasks must react to interruption (sleep, blocking I/O, isInterrupted())
+ *
+ * 5. THREADS:
+ *    - Platform threads on Java 17
+ *    - Virtual threads are picked up automatically on Java 21+
+ */
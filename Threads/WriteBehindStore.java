@@ -0,0 +1,440 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * WRITE-BEHIND BATCHING WITH GROUP COMMIT
+ * =======================================
+ *
+ * CompleteThreadTutorial.databaseOperationsExample (and the
+ * databaseOperations pool in ECommerceBackgroundProcessing) issue one insert
+ * or update per task. Against a real database every one of those is a round
+ * trip plus a commit, and every commit is a disk flush (fsync).
+ *
+ * WriteBehindStore puts a buffer in front of the store:
+ * 1. Callers' mutations are buffered per table
+ * 2. Repeated updates to the same key are COALESCED - only the last value is written
+ * 3. A background flusher writes a batch when it is big enough OR old enough
+ * 4. The whole batch is written with ONE write and ONE fsync (group commit)
+ * 5. Every caller gets a CompletableFuture that completes once ITS change is durable
+ *
+ * FileBackedStore stands in for the database: an append-only log file plus
+ * the current rows in memory.
+ */
+
+public class WriteBehindStore implements AutoCloseable {
+
+    private final FileBackedStore store;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private Map<String, Map<String, PendingWrite>> pending = new HashMap<>(); // table -> key -> write
+    private int pendingCount;
+    private Map<String, Map<String, PendingWrite>> inFlight = Map.of(); // batch being written right now
+    private long oldestPendingNanos;
+    private boolean closed;
+
+    private final Thread flusher;
+
+    public WriteBehindStore(FileBackedStore store, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.store = store;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.flusher = new Thread(this::flushLoop, "write-behind-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // ===========================================
+    // CALLER API
+    // ===========================================
+
+    /** Insert or update a row; the future completes when the change is on disk */
+    public CompletableFuture<Void> upsert(String table, String key, String value) {
+        return enqueue(table, key, Objects.requireNonNull(value, "value"));
+    }
+
+    /** Delete a row; the future completes when the delete is on disk */
+    public CompletableFuture<Void> delete(String table, String key) {
+        return enqueue(table, key, null);
+    }
+
+    private CompletableFuture<Void> enqueue(String table, String key, String value) {
+        Objects.requireNonNull(table, "table");
+        Objects.requireNonNull(key, "key");
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Store is closed");
+            }
+            Map<String, PendingWrite> rows = pending.computeIfAbsent(table, t -> new LinkedHashMap<>());
+            PendingWrite write = rows.get(key);
+            if (write == null) {
+                rows.put(key, new PendingWrite(value, ack));
+                if (pendingCount++ == 0) {
+                    oldestPendingNanos = System.nanoTime();
+                    flushNeeded.signal(); // start the delay timer
+                }
+                if (pendingCount >= maxBatchSize) {
+                    flushNeeded.signal();
+                }
+            } else {
+                write.coalesce(value, ack); // newer value wins, both callers wait for it
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ack;
+    }
+
+    /** Writes everything buffered so far and waits until it is durable */
+    public void flush() throws InterruptedException, ExecutionException {
+        CompletableFuture<Void> barrier;
+        lock.lock();
+        try {
+            if (pendingCount == 0 && inFlight.isEmpty()) {
+                return;
+            }
+            // The batch the flusher already took is not durable yet either
+            barrier = CompletableFuture.allOf(Stream.of(pending, inFlight)
+                    .flatMap(batch -> batch.values().stream())
+                    .flatMap(rows -> rows.values().stream())
+                    .flatMap(w -> w.acks.stream())
+                    .toArray(CompletableFuture<?>[]::new));
+            if (pendingCount > 0) {
+                oldestPendingNanos = System.nanoTime() - maxDelayNanos; // due now
+                flushNeeded.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        barrier.get();
+    }
+
+    /** Stops accepting writes, flushes what is buffered and waits for the flusher */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // the flusher still drains in the background
+        }
+    }
+
+    // ===========================================
+    // FLUSHER
+    // ===========================================
+
+    private void flushLoop() {
+        while (true) {
+            Map<String, Map<String, PendingWrite>> batch;
+            lock.lock();
+            try {
+                while (!closed && !batchDue()) {
+                    if (pendingCount == 0) {
+                        flushNeeded.awaitUninterruptibly();
+                    } else {
+                        long wait = oldestPendingNanos + maxDelayNanos - System.nanoTime();
+                        if (wait > 0) {
+                            try {
+                                flushNeeded.awaitNanos(wait);
+                            } catch (InterruptedException e) {
+                                closed = true;
+                            }
+                        }
+                    }
+                }
+                if (pendingCount == 0 && closed) {
+                    return;
+                }
+                batch = pending;
+                inFlight = batch;
+                pending = new HashMap<>();
+                pendingCount = 0;
+            } finally {
+                lock.unlock();
+            }
+            writeBatch(batch); // disk I/O happens outside the lock
+            lock.lock();
+            try {
+                inFlight = Map.of();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean batchDue() {
+        return pendingCount >= maxBatchSize
+                || (pendingCount > 0 && System.nanoTime() - oldestPendingNanos >= maxDelayNanos);
+    }
+
+    private void writeBatch(Map<String, Map<String, PendingWrite>> batch) {
+        List<Mutation> mutations = new ArrayList<>();
+        batch.forEach((table, rows) ->
+                rows.forEach((key, write) -> mutations.add(new Mutation(table, key, write.value))));
+        Throwable failure = null;
+        try {
+            store.commit(mutations);
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+        for (Map<String, PendingWrite> rows : batch.values()) {
+            for (PendingWrite write : rows.values()) {
+                for (CompletableFuture<Void> ack : write.acks) {
+                    if (failure == null) {
+                        ack.complete(null);
+                    } else {
+                        ack.completeExceptionally(failure);
+                    }
+                }
+            }
+        }
+    }
+
+    /** One buffered row change plus every caller waiting for it */
+    private static final class PendingWrite {
+        String value; // null = delete
+        final List<CompletableFuture<Void>> acks = new ArrayList<>(1);
+
+        PendingWrite(String value, CompletableFuture<Void> ack) {
+            this.value = value;
+            acks.add(ack);
+        }
+
+        void coalesce(String newer, CompletableFuture<Void> ack) {
+            value = newer;
+            acks.add(ack);
+        }
+    }
+
+    // ===========================================
+    // EXAMPLE AND BENCHMARK
+    // ===========================================
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== WRITE-BEHIND BATCHING WITH GROUP COMMIT ===\n");
+
+        Path dir = Files.createTempDirectory("write-behind");
+        try {
+            basicExample(dir.resolve("basic.log"));
+            throughputComparison(dir);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+        System.out.println("Write-behind example completed!\n");
+    }
+
+    /**
+     * Example 1: the three operations from databaseOperationsExample
+     */
+    public static void basicExample(Path file) throws Exception {
+        System.out.println("1. BASIC USAGE");
+        System.out.println("==============");
+
+        try (FileBackedStore store = new FileBackedStore(file);
+             WriteBehindStore db = new WriteBehindStore(store, 100, 20, TimeUnit.MILLISECONDS)) {
+
+            CompletableFuture<Void> insert = db.upsert("users", "42", "Alice");
+            db.upsert("products", "7", "price=1999");
+            CompletableFuture<Void> update = db.upsert("products", "7", "price=1799"); // coalesced
+            insert.thenRun(() -> System.out.println("User data inserted (durable)"));
+            update.thenRun(() -> System.out.println("Product price updated (durable)"));
+
+            db.flush();
+            System.out.println("products/7 = " + store.read("products", "7"));
+            System.out.println("Commits: " + store.commits() + ", rows written: " + store.rowsWritten());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Example 2: 8 writer threads, single-row commits vs write-behind group commit
+     */
+    public static void throughputComparison(Path dir) throws Exception {
+        System.out.println("2. THROUGHPUT: SINGLE-ROW COMMITS VS GROUP COMMIT");
+        System.out.println("=================================================");
+
+        int threads = 8;
+        int writesPerThread = 1_000;
+        int keys = 5_000;
+
+        // --- Single-row: every write is its own commit (write + fsync) ---
+        try (FileBackedStore store = new FileBackedStore(dir.resolve("single.log"))) {
+            long begin = System.nanoTime();
+            runWriters(threads, writesPerThread, keys, (table, key, value) -> {
+                store.commit(List.of(new Mutation(table, key, value)));
+                return CompletableFuture.completedFuture(null);
+            });
+            report("single-row commit", threads * writesPerThread, System.nanoTime() - begin, store);
+        }
+
+        // --- Write-behind: buffered, coalesced, group-committed ---
+        try (FileBackedStore store = new FileBackedStore(dir.resolve("batched.log"))) {
+            long begin = System.nanoTime();
+            try (WriteBehindStore db = new WriteBehindStore(store, 500, 5, TimeUnit.MILLISECONDS)) {
+                runWriters(threads, writesPerThread, keys, db::upsert);
+            }
+            report("write-behind batches", threads * writesPerThread, System.nanoTime() - begin, store);
+        }
+        System.out.println();
+    }
+
+    private interface Writer {
+        CompletableFuture<Void> write(String table, String key, String value) throws IOException;
+    }
+
+    /** Each thread waits for durability of all its writes, like a real caller would */
+    private static void runWriters(int threads, int writesPerThread, int keys, Writer writer) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            done.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<CompletableFuture<Void>> acks = new ArrayList<>(writesPerThread);
+                for (int i = 0; i < writesPerThread; i++) {
+                    String table = random.nextBoolean() ? "orders" : "inventory";
+                    acks.add(writer.write(table, "k" + random.nextInt(keys), "v" + i));
+                }
+                CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).get();
+                return null;
+            }));
+        }
+        for (Future<?> f : done) {
+            f.get();
+        }
+        pool.shutdown();
+    }
+
+    private static void report(String name, int writes, long nanos, FileBackedStore store) {
+        System.out.printf("%-22s %,10.0f writes/s  (%,d commits, %,d rows on disk)%n",
+                name, writes / (nanos / 1e9), store.commits(), store.rowsWritten());
+    }
+}
+
+// ===========================================
+// SUPPORTING CLASSES
+// ===========================================
+
+/**
+ * One row change; value == null means delete
+ */
+class Mutation {
+    final String table;
+    final String key;
+    final String value;
+
+    Mutation(String table, String key, String value) {
+        this.table = table;
+        this.key = key;
+        this.value = value;
+    }
+}
+
+/**
+ * Minimal durable "database": an append-only log file (the redo log) plus the
+ * current rows in memory. commit() writes all mutations with one write call
+ * and one force(), so a batch costs about the same disk time as a single row.
+ */
+class FileBackedStore implements AutoCloseable {
+    private final FileChannel log;
+    private final Map<String, Map<String, String>> tables = new ConcurrentHashMap<>();
+    private long commits;
+    private long rowsWritten;
+
+    FileBackedStore(Path file) throws IOException {
+        this.log = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /** Record format per row: op|table|key|value\n, then one fsync for the batch */
+    synchronized void commit(List<Mutation> mutations) throws IOException {
+        StringBuilder sb = new StringBuilder(mutations.size() * 32);
+        for (Mutation m : mutations) {
+            sb.append(m.value == null ? 'D' : 'U').append('|')
+                    .append(m.table).append('|').append(m.key).append('|')
+                    .append(m.value == null ? "" : m.value).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        log.force(false); // durability point - the expensive part
+        for (Mutation m : mutations) {
+            Map<String, String> rows = tables.computeIfAbsent(m.table, t -> new ConcurrentHashMap<>());
+            if (m.value == null) {
+                rows.remove(m.key);
+            } else {
+                rows.put(m.key, m.value);
+            }
+        }
+        commits++;
+        rowsWritten += mutations.size();
+    }
+
+    String read(String table, String key) {
+        Map<String, String> rows = tables.get(table);
+        return rows == null ? null : rows.get(key);
+    }
+
+    synchronized long commits() {
+        return commits;
+    }
+
+    synchronized long rowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+}
+
+/*
+ * ===========================================
+ * WRITE-BEHIND SUMMARY
+ * ===========================================
+ *
+ * 1. WHERE THE TIME GOES:
+ *    - A commit is dominated by the fsync, not by the bytes written
+ *    - N commits of 1 row cost ~N fsyncs; 1 commit of N rows costs ~1
+ *
+ * 2. BATCH TRIGGERS:
+ *    - Size: flush when maxBatchSize rows are waiting (throughput)
+ *    - Time: flush when the oldest row waited maxDelay (latency bound)
+ *
+ * 3. COALESCING:
+ *    - Hot keys updated many times per batch are written once
+ *    - Every caller still gets its own acknowledgement
+ *
+ * 4. DURABILITY CONTRACT:
+ *    - upsert() returning does NOT mean durable; the future completing does
+ *    - Readers of the store see a change only after its batch commits
+ *    - A crash loses buffered, unacknowledged writes - never acknowledged ones
+ */